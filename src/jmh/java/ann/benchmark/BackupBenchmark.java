@@ -0,0 +1,137 @@
+package ann.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import ann.neuralnetwork.Backup;
+import ann.neuralnetwork.Network;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks saving and loading a network in the text and in the binary format.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "--add-modules=jdk.incubator.vector"})
+public class BackupBenchmark
+{
+    /**
+     * The topology of the network.
+     */
+    @Param({Topologies.XOR, Topologies.MLP, Topologies.IMAGE})
+    public String topology;
+
+    /**
+     * The saved network.
+     */
+    private Network network;
+    /**
+     * The backup of the network.
+     */
+    private Backup backup;
+    /**
+     * The file in the text format.
+     */
+    private File textFile;
+    /**
+     * The file in the binary format.
+     */
+    private File binaryFile;
+
+    /**
+     * Default constructor.
+     */
+    public BackupBenchmark()
+    {
+    }
+
+    /**
+     * Prepares the network and saves it in both formats.
+     *
+     * @throws IOException if the files cannot be created.
+     */
+    @Setup
+    public void setUp() throws IOException
+    {
+        List<Integer> sizes = Topologies.parse(topology);
+        network = new Network(sizes, 0.01);
+        backup = network.serialize();
+        textFile = File.createTempFile("backup", ".txt");
+        binaryFile = File.createTempFile("backup", ".annb");
+        backup.saveToFile(textFile.getPath());
+        network.saveToBinaryFile(binaryFile.getPath());
+    }
+
+    /**
+     * Deletes the files.
+     */
+    @TearDown
+    public void tearDown()
+    {
+        textFile.delete();
+        binaryFile.delete();
+    }
+
+    /**
+     * Benchmarks serializing the network and saving it in the text format.
+     *
+     * @return whether the backup was saved.
+     */
+    @Benchmark
+    public boolean saveText()
+    {
+        return network.serialize().saveToFile(textFile.getPath());
+    }
+
+    /**
+     * Benchmarks loading a network from the text format.
+     *
+     * @return the network.
+     * @throws Exception if the backup is invalid.
+     */
+    @Benchmark
+    public Network loadText() throws Exception
+    {
+        Backup loaded = new Backup();
+        loaded.readFromFile(textFile.getPath());
+        return new Network(loaded);
+    }
+
+    /**
+     * Benchmarks saving the network in the binary format.
+     *
+     * @return whether the network was saved.
+     */
+    @Benchmark
+    public boolean saveBinary()
+    {
+        return network.saveToBinaryFile(binaryFile.getPath());
+    }
+
+    /**
+     * Benchmarks loading a network from the binary format.
+     *
+     * @return the network.
+     * @throws Exception if the file is invalid.
+     */
+    @Benchmark
+    public Network loadBinary() throws Exception
+    {
+        return Network.readFromBinaryFile(binaryFile.getPath());
+    }
+}
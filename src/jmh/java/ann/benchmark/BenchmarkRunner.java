@@ -0,0 +1,39 @@
+package ann.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler, so that the allocation rate is
+ * reported next to the throughput.
+ */
+public class BenchmarkRunner
+{
+    /**
+     * Default constructor.
+     */
+    public BenchmarkRunner()
+    {
+    }
+
+    /**
+     * The entry point of the application.
+     *
+     * @param args the JMH command-line options, e.g. a regular expression selecting the benchmarks.
+     * @throws CommandLineOptionException if the options are invalid.
+     * @throws RunnerException if the benchmarks fail.
+     */
+    public static void main(String... args) throws CommandLineOptionException, RunnerException
+    {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
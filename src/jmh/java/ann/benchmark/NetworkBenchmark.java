@@ -0,0 +1,92 @@
+package ann.benchmark;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import ann.neuralnetwork.ArrayRecord;
+import ann.neuralnetwork.Network;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the forward pass and the full training step of a network.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "--add-modules=jdk.incubator.vector"})
+public class NetworkBenchmark
+{
+    /**
+     * The topology of the network.
+     */
+    @Param({Topologies.XOR, Topologies.MLP, Topologies.IMAGE})
+    public String topology;
+
+    /**
+     * The benchmarked network.
+     */
+    private Network network;
+    /**
+     * The training record.
+     */
+    private ArrayRecord record;
+    /**
+     * The buffer of the output.
+     */
+    private double[] output;
+
+    /**
+     * Default constructor.
+     */
+    public NetworkBenchmark()
+    {
+    }
+
+    /**
+     * Prepares the network and the record.
+     */
+    @Setup
+    public void setUp()
+    {
+        List<Integer> sizes = Topologies.parse(topology);
+        network = new Network(sizes, 0.01);
+        record = Topologies.randomRecord(sizes, new Random(0));
+        output = new double[sizes.getLast()];
+    }
+
+    /**
+     * Benchmarks the forward pass.
+     *
+     * @return the output of the network.
+     * @throws Exception if the input is invalid.
+     */
+    @Benchmark
+    public double[] forward() throws Exception
+    {
+        network.computeFor(record.getInputs(), output);
+        return output;
+    }
+
+    /**
+     * Benchmarks the full training step: forward, backward and update.
+     *
+     * @throws Exception if the record is invalid.
+     */
+    @Benchmark
+    public void trainStep() throws Exception
+    {
+        network.trainRecord(record);
+    }
+}
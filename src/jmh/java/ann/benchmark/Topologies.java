@@ -0,0 +1,67 @@
+package ann.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import ann.neuralnetwork.ArrayRecord;
+
+/**
+ * Contains the helpers shared by the benchmarks.
+ */
+final class Topologies
+{
+    /**
+     * The XOR topology.
+     */
+    static final String XOR = "3,4,4,1";
+    /**
+     * A mid-size multilayer perceptron.
+     */
+    static final String MLP = "784,128,10";
+    /**
+     * The topology of the dogs-and-cats classifier.
+     */
+    static final String IMAGE = "168000,100,2";
+
+    /**
+     * Prevents instantiation.
+     */
+    private Topologies()
+    {
+    }
+
+    /**
+     * Parses a topology given as comma-separated layer sizes.
+     *
+     * @param description the description of the topology.
+     * @return the topology.
+     */
+    static List<Integer> parse(String description)
+    {
+        List<Integer> topology = new ArrayList<>();
+        for (String size : description.split(","))
+        {
+            topology.add(Integer.parseInt(size.trim()));
+        }
+        return topology;
+    }
+
+    /**
+     * Creates a random record for the specified topology.
+     *
+     * @param topology the topology.
+     * @param random the random number generator.
+     * @return the record.
+     */
+    static ArrayRecord randomRecord(List<Integer> topology, Random random)
+    {
+        ArrayRecord record = new ArrayRecord(topology.getFirst(), topology.getLast());
+        double[] inputs = record.getInputs();
+        for (int k = 0; k < inputs.length; ++k)
+        {
+            inputs[k] = random.nextDouble(0.0, 1.0);
+        }
+        record.getOutputs()[0] = 1.0;
+        return record;
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Contains the JMH benchmarks of the hot paths of the neural network.
+ */
+package ann.benchmark;
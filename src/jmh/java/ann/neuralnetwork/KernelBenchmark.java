@@ -0,0 +1,142 @@
+package ann.neuralnetwork;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the scalar and the vectorized kernels on a row as wide as the
+ * first layer of the dogs-and-cats classifier.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules=jdk.incubator.vector"})
+public class KernelBenchmark
+{
+    /**
+     * The width of the first layer of the dogs-and-cats classifier.
+     */
+    private static final int WIDTH = 168000;
+
+    /**
+     * The row of weights.
+     */
+    private double[] weights;
+    /**
+     * Four input vectors, one after another.
+     */
+    private double[] inputs;
+    /**
+     * The results of the four-vector products.
+     */
+    private double[] results;
+
+    /**
+     * Default constructor.
+     */
+    public KernelBenchmark()
+    {
+    }
+
+    /**
+     * Prepares random vectors.
+     */
+    @Setup
+    public void setUp()
+    {
+        Random random = new Random(0);
+        weights = new double[WIDTH];
+        inputs = new double[4 * WIDTH];
+        results = new double[4];
+        for (int k = 0; k < WIDTH; ++k)
+        {
+            weights[k] = random.nextDouble(-1.0, 1.0);
+        }
+        for (int k = 0; k < inputs.length; ++k)
+        {
+            inputs[k] = random.nextDouble(0.0, 1.0);
+        }
+    }
+
+    /**
+     * Benchmarks the scalar dot product.
+     *
+     * @return the dot product.
+     */
+    @Benchmark
+    public double scalarDot()
+    {
+        return Kernels.scalarDot(weights, 0, inputs, 0, WIDTH);
+    }
+
+    /**
+     * Benchmarks the vectorized dot product.
+     *
+     * @return the dot product.
+     */
+    @Benchmark
+    public double vectorDot()
+    {
+        return VectorKernels.dot(weights, 0, inputs, 0, WIDTH);
+    }
+
+    /**
+     * Benchmarks the scalar product of one row with four vectors.
+     *
+     * @return the results.
+     */
+    @Benchmark
+    public double[] scalarDot4()
+    {
+        Kernels.scalarDot4(weights, 0, inputs, 0, WIDTH, results, 0, 1, WIDTH);
+        return results;
+    }
+
+    /**
+     * Benchmarks the vectorized product of one row with four vectors.
+     *
+     * @return the results.
+     */
+    @Benchmark
+    public double[] vectorDot4()
+    {
+        VectorKernels.dot4(weights, 0, inputs, 0, WIDTH, results, 0, 1, WIDTH);
+        return results;
+    }
+
+    /**
+     * Benchmarks the scalar weight update.
+     *
+     * @return the updated row.
+     */
+    @Benchmark
+    public double[] scalarAxpy()
+    {
+        Kernels.scalarAxpy(1e-9, inputs, 0, weights, 0, WIDTH);
+        return weights;
+    }
+
+    /**
+     * Benchmarks the vectorized weight update.
+     *
+     * @return the updated row.
+     */
+    @Benchmark
+    public double[] vectorAxpy()
+    {
+        VectorKernels.axpy(1e-9, inputs, 0, weights, 0, WIDTH);
+        return weights;
+    }
+}
@@ -0,0 +1,160 @@
+package ann.main;
+
+import java.util.List;
+import java.util.Random;
+import ann.neuralnetwork.Activation;
+import ann.neuralnetwork.ArrayRecord;
+import ann.neuralnetwork.Backup;
+import ann.neuralnetwork.Network;
+import ann.neuralnetwork.Precision;
+
+/**
+ * Gathers what the tests of the transfer functions and of the classifiers
+ * share: the check of the gradient followed by the training against finite
+ * differences, and the synthetic images of two classes a classifier is
+ * trained on.
+ * <p>
+ * The gradient is checked on a small network trained on one record. The
+ * error is that of {@link Network#testRecord(ArrayRecord)}, the squared error
+ * or, with a softmax output layer, the cross-entropy, so the check holds for
+ * both.
+ * <p>
+ * A synthetic image is noise whose left half is brighter than its right half
+ * for the first class, and darker for the second, the halves being those of
+ * each run of consecutive input values of the configured width.
+ */
+final class Fixtures
+{
+    /**
+     * The learning rate of the network whose gradient is checked.
+     */
+    private static final double LEARNING_RATE = 1e-3;
+    /**
+     * The step of the finite differences.
+     */
+    private static final double STEP = 1e-6;
+
+    /**
+     * Prevents instantiation.
+     */
+    private Fixtures()
+    {
+    }
+
+    /**
+     * Compares the update of the weights by one training step with the
+     * gradient of the error computed by finite differences, for a network of
+     * the specified topology and transfer functions trained on a record of
+     * random inputs.
+     *
+     * @param random the random number generator.
+     * @param topology the topology of the network.
+     * @param activations the transfer functions of the layers, the input
+     *        layer included.
+     * @param targets the desired outputs of the record.
+     * @return the largest difference between the gradient followed by the
+     *         training and the gradient by finite differences, relative to
+     *         the largest gradient, or the largest difference itself if the
+     *         gradient is zero, as when all the rectifiers of the output
+     *         layer are off.
+     * @throws Exception if the network fails.
+     */
+    static double gradientError(Random random, List<Integer> topology, List<Activation> activations,
+            double[] targets) throws Exception
+    {
+        ArrayRecord record = new ArrayRecord(topology.getFirst(), topology.getLast());
+        for (int i = 0; i < topology.getFirst(); ++i)
+        {
+            record.getInputs()[i] = random.nextDouble(-1.0, 1.0);
+        }
+        System.arraycopy(targets, 0, record.getOutputs(), 0, targets.length);
+        Backup backup = new Network(topology, LEARNING_RATE, Precision.DOUBLE, activations).serialize();
+
+        Network trained = new Network(backup);
+        trained.trainRecord(record);
+        Backup after = trained.serialize();
+
+        double largest = 0.0;
+        double difference = 0.0;
+        for (int i = 1; i < topology.size(); ++i)
+        {
+            for (int j = 0; j < topology.get(i); ++j)
+            {
+                List<Double> weights = backup.getWeights().get(i).get(j);
+                for (int k = 0; k < weights.size(); ++k)
+                {
+                    double weight = weights.get(k);
+                    weights.set(k, weight + STEP);
+                    double above = new Network(backup).testRecord(record);
+                    weights.set(k, weight - STEP);
+                    double below = new Network(backup).testRecord(record);
+                    weights.set(k, weight);
+                    double numerical = (above - below) / (2.0 * STEP);
+                    double followed = (weight - after.getWeights().get(i).get(j).get(k)) / LEARNING_RATE;
+                    largest = Math.max(largest, Math.abs(numerical));
+                    difference = Math.max(difference, Math.abs(followed - numerical));
+                }
+            }
+        }
+        return (largest > 0.0) ? difference / largest : difference;
+    }
+
+    /**
+     * Generates synthetic images of the two classes in turn, starting with
+     * the first. The input values are drawn uniformly between the specified
+     * lower bound and one, then shifted up in the brighter half and down in
+     * the darker one.
+     *
+     * @param random the random number generator.
+     * @param count the number of images.
+     * @param inputs the number of input values of an image.
+     * @param width the width of an image.
+     * @param low the lower bound of the noise.
+     * @param shift the magnitude of the shift of the halves.
+     * @param clamped true to keep the shifted values between the lower bound
+     *        and one, as the values of a preprocessed image.
+     * @return the records of the images, whose desired outputs are one for
+     *         the class of the image and zero for the other.
+     */
+    static ArrayRecord[] images(Random random, int count, int inputs, int width, double low, double shift,
+            boolean clamped)
+    {
+        ArrayRecord[] records = new ArrayRecord[count];
+        for (int r = 0; r < count; ++r)
+        {
+            int label = r % 2;
+            records[r] = new ArrayRecord(inputs, 2);
+            double[] values = records[r].getInputs();
+            for (int i = 0; i < inputs; ++i)
+            {
+                boolean left = i % width < width / 2;
+                double value = random.nextDouble(low, 1.0) + ((left == (label == 0)) ? shift : -shift);
+                values[i] = clamped ? Math.clamp(value, low, 1.0) : value;
+            }
+            records[r].getOutputs()[label] = 1.0;
+        }
+        return records;
+    }
+
+    /**
+     * Computes the fraction of the records whose class a network predicts,
+     * as the index of the greater of its two outputs.
+     *
+     * @param network the network.
+     * @param records the records.
+     * @return the accuracy of the network.
+     * @throws Exception if the inference fails.
+     */
+    static double accuracy(Network network, ArrayRecord[] records) throws Exception
+    {
+        double[] output = new double[2];
+        int correct = 0;
+        for (ArrayRecord record : records)
+        {
+            network.computeFor(record.getInputs(), output);
+            int predicted = (output[1] > output[0]) ? 1 : 0;
+            correct += (record.getOutputs()[predicted] == 1.0) ? 1 : 0;
+        }
+        return (double) correct / records.length;
+    }
+}
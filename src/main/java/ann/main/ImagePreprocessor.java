@@ -0,0 +1,360 @@
+package ann.main;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Converts images into the inputs of a neural network.
+ * <p>
+ * The preprocessor takes the top-left region of the configured size from an
+ * image, divides it into square blocks of the configured factor and turns
+ * each block into one, or in the {@link Color#RGB} mode three, input values.
+ * The values are stored by columns of blocks, from the left to the right and
+ * each from the top to the bottom, which is the order in which the networks
+ * of the project were trained. The image is nevertheless read row by row,
+ * the order of its memory.
+ * <p>
+ * The pixels are read straight from the raster of the image when it holds
+ * interleaved bytes of sRGB, as the images decoded from JPEG files do, and
+ * through the colour model, into a temporary array, otherwise.
+ * <p>
+ * With subsampling, the blocks are not averaged: the decoder only decodes
+ * one pixel of each block, which is faster but coarser. Images are then to
+ * be read with {@link #read(Path)}.
+ * <p>
+ * A preprocessor is immutable and may be used by several threads at once.
+ */
+public final class ImagePreprocessor
+{
+    /**
+     * The conversion of the colour of a block into input values.
+     */
+    public enum Color
+    {
+        /**
+         * One value per block: the red, green and blue components packed into
+         * a 24-bit number, divided by {@code 0xFFFFFF}. This is the conversion
+         * the project started with.
+         */
+        PACKED_RGB(1),
+        /**
+         * One value per block: the luma of the block, between 0 and 1.
+         */
+        GRAYSCALE(1),
+        /**
+         * Three values per block: the red, green and blue components, each
+         * between 0 and 1.
+         */
+        RGB(3);
+
+        /**
+         * The number of values per block.
+         */
+        private final int channels;
+
+        /**
+         * Constructs a new conversion.
+         *
+         * @param channels the number of values per block.
+         */
+        Color(int channels)
+        {
+            this.channels = channels;
+        }
+
+        /**
+         * Returns the number of values per block.
+         *
+         * @return the number of values per block.
+         */
+        public int getChannels()
+        {
+            return channels;
+        }
+    }
+
+    /**
+     * The width of the region of the image, in pixels.
+     */
+    private final int width;
+    /**
+     * The height of the region of the image, in pixels.
+     */
+    private final int height;
+    /**
+     * The conversion of the colours.
+     */
+    private final Color color;
+    /**
+     * The size of the side of a block, in pixels.
+     */
+    private final int factor;
+    /**
+     * Whether the blocks are subsampled by the decoder rather than averaged.
+     */
+    private final boolean subsample;
+    /**
+     * The number of columns of blocks.
+     */
+    private final int columns;
+    /**
+     * The number of rows of blocks.
+     */
+    private final int rows;
+
+    /**
+     * Constructs a new preprocessor.
+     *
+     * @param width the width of the region of the image, in pixels.
+     * @param height the height of the region of the image, in pixels.
+     * @param color the conversion of the colours.
+     * @param factor the size of the side of a block, in pixels; 1 keeps the
+     *        resolution.
+     * @param subsample whether the decoder subsamples the blocks rather than
+     *        the preprocessor averaging them.
+     */
+    public ImagePreprocessor(int width, int height, Color color, int factor, boolean subsample)
+    {
+        assert width > 0 && height > 0 && factor > 0 && factor <= Math.min(width, height);
+
+        this.width = width;
+        this.height = height;
+        this.color = color;
+        this.factor = factor;
+        this.subsample = subsample && factor > 1;
+        columns = width / factor;
+        rows = height / factor;
+    }
+
+    /**
+     * Constructs a new preprocessor which keeps the resolution.
+     *
+     * @param width the width of the region of the image, in pixels.
+     * @param height the height of the region of the image, in pixels.
+     * @param color the conversion of the colours.
+     */
+    public ImagePreprocessor(int width, int height, Color color)
+    {
+        this(width, height, color, 1, false);
+    }
+
+    /**
+     * Returns the number of input values made of an image.
+     *
+     * @return the number of input values.
+     */
+    public int getInputSize()
+    {
+        return columns * rows * color.getChannels();
+    }
+
+    /**
+     * Reads an image from the specified file, subsampled by the decoder if
+     * the preprocessor subsamples.
+     *
+     * @param path the path of the file.
+     * @return the image, or null if the file is not an image.
+     * @throws IOException if the file cannot be read.
+     */
+    public BufferedImage read(Path path) throws IOException
+    {
+        if (!subsample)
+        {
+            return ImageIO.read(path.toFile());
+        }
+        try (ImageInputStream stream = ImageIO.createImageInputStream(path.toFile()))
+        {
+            Iterator<ImageReader> readers = (stream != null) ? ImageIO.getImageReaders(stream) : null;
+            if (readers == null || !readers.hasNext())
+            {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try
+            {
+                reader.setInput(stream, true, true);
+                ImageReadParam parameters = reader.getDefaultReadParam();
+                parameters.setSourceSubsampling(factor, factor, 0, 0);
+                return reader.read(0, parameters);
+            }
+            finally
+            {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Converts an image into input values. With subsampling, the image is to
+     * be read with {@link #read(Path)}.
+     *
+     * @param image the image.
+     * @param pixels the array to store the input values in, of at least
+     *        {@link #getInputSize()} elements.
+     * @throws Exception if the image is smaller than the region.
+     */
+    public void getPixels(BufferedImage image, double[] pixels) throws Exception
+    {
+        int step = subsample ? 1 : factor;
+        if (image.getWidth() < columns * step || image.getHeight() < rows * step)
+        {
+            throw new Exception("ImagePreprocessor.getPixels : image too small");
+        }
+
+        Raster raster = image.getRaster();
+        if (raster.getDataBuffer() instanceof DataBufferByte data
+                && raster.getSampleModel() instanceof ComponentSampleModel model
+                && image.getColorModel() instanceof ComponentColorModel colorModel
+                && colorModel.getColorSpace().isCS_sRGB() && !colorModel.isAlphaPremultiplied()
+                && model.getNumBands() >= 3 && data.getNumBanks() == 1)
+        {
+            int x = -raster.getSampleModelTranslateX();
+            int y = -raster.getSampleModelTranslateY();
+            int offset = data.getOffset() + y * model.getScanlineStride() + x * model.getPixelStride();
+            getPixels(data.getData(), offset, model.getPixelStride(), model.getScanlineStride(),
+                    model.getBandOffsets(), step, pixels);
+        }
+        else
+        {
+            int[] argb = image.getRGB(0, 0, columns * step, rows * step, null, 0, columns * step);
+            getPixels(argb, columns * step, step, pixels);
+        }
+    }
+
+    /**
+     * Converts an image made of interleaved bytes into input values.
+     *
+     * @param data the bytes of the image.
+     * @param offset the index of the first byte of the top-left pixel.
+     * @param pixelStride the distance between two adjacent pixels of a row.
+     * @param scanlineStride the distance between two adjacent rows.
+     * @param bands the offsets of the red, green and blue bytes in a pixel.
+     * @param step the size of the side of a block, in pixels.
+     * @param pixels the array to store the input values in.
+     */
+    private void getPixels(byte[] data, int offset, int pixelStride, int scanlineStride, int[] bands, int step,
+            double[] pixels)
+    {
+        int red = bands[0];
+        int green = bands[1];
+        int blue = bands[2];
+        int channels = color.getChannels();
+        for (int row = 0; row < rows; ++row)
+        {
+            for (int column = 0; column < columns; ++column)
+            {
+                int r = 0;
+                int g = 0;
+                int b = 0;
+                int start = offset + row * step * scanlineStride + column * step * pixelStride;
+                for (int j = 0; j < step; ++j)
+                {
+                    int pixel = start + j * scanlineStride;
+                    for (int i = 0; i < step; ++i, pixel += pixelStride)
+                    {
+                        r += data[pixel + red] & 0xFF;
+                        g += data[pixel + green] & 0xFF;
+                        b += data[pixel + blue] & 0xFF;
+                    }
+                }
+                store(r, g, b, step * step, pixels, (column * rows + row) * channels);
+            }
+        }
+    }
+
+    /**
+     * Converts an image given as packed ARGB values into input values.
+     *
+     * @param argb the colours of the pixels, row by row.
+     * @param scanline the number of pixels in a row.
+     * @param step the size of the side of a block, in pixels.
+     * @param pixels the array to store the input values in.
+     */
+    private void getPixels(int[] argb, int scanline, int step, double[] pixels)
+    {
+        int channels = color.getChannels();
+        for (int row = 0; row < rows; ++row)
+        {
+            for (int column = 0; column < columns; ++column)
+            {
+                int r = 0;
+                int g = 0;
+                int b = 0;
+                int start = row * step * scanline + column * step;
+                for (int j = 0; j < step; ++j)
+                {
+                    int pixel = start + j * scanline;
+                    for (int i = 0; i < step; ++i, ++pixel)
+                    {
+                        r += (argb[pixel] >> 16) & 0xFF;
+                        g += (argb[pixel] >> 8) & 0xFF;
+                        b += argb[pixel] & 0xFF;
+                    }
+                }
+                store(r, g, b, step * step, pixels, (column * rows + row) * channels);
+            }
+        }
+    }
+
+    /**
+     * Stores the input values of a block.
+     *
+     * @param r the sum of the red components of the block.
+     * @param g the sum of the green components of the block.
+     * @param b the sum of the blue components of the block.
+     * @param count the number of pixels of the block.
+     * @param pixels the array to store the input values in.
+     * @param index the index of the first value of the block.
+     */
+    private void store(int r, int g, int b, int count, double[] pixels, int index)
+    {
+        switch (color)
+        {
+            case PACKED_RGB ->
+            {
+                if (count == 1)
+                {
+                    pixels[index] = (double) ((r << 16) | (g << 8) | b) / (double) 0x00FFFFFF;
+                }
+                else
+                {
+                    pixels[index] = (r * 65536.0 + g * 256.0 + b) / count / (double) 0x00FFFFFF;
+                }
+            }
+            case GRAYSCALE ->
+            {
+                pixels[index] = (0.299 * r + 0.587 * g + 0.114 * b) / (255.0 * count);
+            }
+            default ->
+            {
+                double scale = 1.0 / (255.0 * count);
+                pixels[index] = r * scale;
+                pixels[index + 1] = g * scale;
+                pixels[index + 2] = b * scale;
+            }
+        }
+    }
+
+    /**
+     * Describes the conversion, so that inputs made by different conversions
+     * can be told apart.
+     *
+     * @return the description of the conversion.
+     */
+    @Override
+    public String toString()
+    {
+        return "%dx%d %s, blocks of %d %s".formatted(width, height, color, factor,
+                subsample ? "subsampled" : "averaged");
+    }
+}
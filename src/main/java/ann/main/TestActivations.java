@@ -0,0 +1,232 @@
+package ann.main;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import ann.neuralnetwork.Activation;
+import ann.neuralnetwork.ArrayRecord;
+import ann.neuralnetwork.Backup;
+import ann.neuralnetwork.Layer;
+import ann.neuralnetwork.Network;
+import ann.neuralnetwork.Precision;
+
+/**
+ * Tests the transfer functions of the layers: checks with finite
+ * differences that training follows the gradient of the error with each of
+ * them, that they are saved and loaded back with the network in every
+ * format, and compares the training of a wide hidden layer with the
+ * hyperbolic tangent and with the rectifier.
+ */
+public class TestActivations
+{
+    /**
+     * Default constructor.
+     */
+    public TestActivations()
+    {
+    }
+
+    /**
+     * The topology of the network whose gradient is checked.
+     */
+    private static final List<Integer> SMALL_TOPOLOGY = List.of(4, 5, 2);
+    /**
+     * The desired outputs of the record on which the gradient is checked.
+     */
+    private static final double[] TARGETS = { 0.75, 0.25 };
+    /**
+     * The topology of the network saved and loaded back.
+     */
+    private static final List<Integer> SAVED_TOPOLOGY = List.of(8, 6, 5, 2);
+    /**
+     * The transfer functions of the network saved and loaded back.
+     */
+    private static final List<Activation> SAVED_ACTIVATIONS = List.of(Activation.LINEAR, Activation.RELU,
+            Activation.SIGMOID, Activation.LEAKY_RELU);
+    /**
+     * The topology of the trained network.
+     */
+    private static final List<Integer> WIDE_TOPOLOGY = List.of(16384, 100, 2);
+    /**
+     * The width of the synthetic images.
+     */
+    private static final int WIDTH = 128;
+    /**
+     * The number of records in a batch.
+     */
+    private static final int BATCH_SIZE = 16;
+    /**
+     * The number of training records.
+     */
+    private static final int TRAINING = 256;
+    /**
+     * The number of test records.
+     */
+    private static final int TESTS = 128;
+    /**
+     * The largest number of epochs.
+     */
+    private static final int EPOCHS = 10;
+    /**
+     * The accuracy at which the training stops.
+     */
+    private static final double TARGET = 0.95;
+
+    /**
+     * Computes the largest difference between the outputs of two networks
+     * for random inputs.
+     *
+     * @param first the first network.
+     * @param second the second network.
+     * @return the largest difference.
+     * @throws Exception if the inference fails.
+     */
+    private static double difference(Network first, Network second) throws Exception
+    {
+        Random random = new Random(1);
+        double[] input = new double[SAVED_TOPOLOGY.getFirst()];
+        double[] firstOutput = new double[SAVED_TOPOLOGY.getLast()];
+        double[] secondOutput = new double[SAVED_TOPOLOGY.getLast()];
+        double difference = 0.0;
+        for (int r = 0; r < 16; ++r)
+        {
+            for (int i = 0; i < input.length; ++i)
+            {
+                input[i] = random.nextDouble(-2.0, 2.0);
+            }
+            first.computeFor(input, firstOutput);
+            second.computeFor(input, secondOutput);
+            for (int o = 0; o < firstOutput.length; ++o)
+            {
+                difference = Math.max(difference, Math.abs(firstOutput[o] - secondOutput[o]));
+            }
+        }
+        return difference;
+    }
+
+    /**
+     * Saves a network with various transfer functions in every format and
+     * loads it back.
+     *
+     * @return true if the transfer functions and the outputs are restored.
+     * @throws Exception if saving or loading fails.
+     */
+    private static boolean saveAndLoad() throws Exception
+    {
+        Path directory = Files.createTempDirectory("test-activations");
+        try
+        {
+            Network network = new Network(SAVED_TOPOLOGY, 0.01, Precision.DOUBLE, SAVED_ACTIVATIONS);
+            Path text = directory.resolve("network.txt");
+            Path binary = directory.resolve("network.annb");
+            boolean success = network.serialize().saveToFile(text.toString());
+            success &= network.saveToBinaryFile(binary.toString());
+
+            Backup fromText = new Backup();
+            success &= fromText.readFromFile(text.toString());
+            Backup fromBinary = new Backup();
+            success &= fromBinary.readFromFile(binary.toString());
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            network.writeTo(stream);
+            List<Network> loaded = List.of(new Network(fromText), new Network(fromBinary),
+                    Network.readFromBinaryFile(binary.toString()),
+                    Network.readFrom(new ByteArrayInputStream(stream.toByteArray())));
+            for (Network copy : loaded)
+            {
+                success &= copy.getActivations().equals(SAVED_ACTIVATIONS) && difference(network, copy) < 1e-12;
+            }
+            return success && fromText.getActivations().equals(SAVED_ACTIVATIONS);
+        }
+        finally
+        {
+            try (var files = Files.list(directory))
+            {
+                for (Path file : files.toList())
+                {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+    /**
+     * Trains a wide network whose hidden layer has the specified transfer
+     * function until it reaches the target accuracy.
+     *
+     * @param activation the transfer function of the hidden layer.
+     * @param training the training records.
+     * @param tests the test records.
+     * @return true if the network reaches the target accuracy.
+     * @throws Exception if the training fails.
+     */
+    private static boolean train(Activation activation, ArrayRecord[] training, ArrayRecord[] tests)
+            throws Exception
+    {
+        Network network = new Network(WIDE_TOPOLOGY, 0.01, Precision.DOUBLE,
+                List.of(Activation.LINEAR, activation, Activation.TANH));
+        ArrayRecord[] batch = new ArrayRecord[BATCH_SIZE];
+        long start = System.nanoTime();
+        double accuracy = 0.0;
+        int epoch = 0;
+        while (epoch < EPOCHS && accuracy < TARGET)
+        {
+            for (int from = 0; from < TRAINING; from += BATCH_SIZE)
+            {
+                System.arraycopy(training, from, batch, 0, BATCH_SIZE);
+                network.trainBatch(batch, BATCH_SIZE);
+            }
+            ++epoch;
+            accuracy = Fixtures.accuracy(network, tests);
+        }
+        double time = (System.nanoTime() - start) * 1e-6 / epoch;
+        System.out.println("%-10s hidden layer: accuracy %.2f%% after %d epoch(s), %.1f ms per epoch".formatted(
+                activation, 100.0 * accuracy, epoch, time));
+        return accuracy >= TARGET;
+    }
+
+    /**
+     * The entry point of the application.
+     *
+     * @param args the command-line arguments.
+     */
+    public static void main(String... args)
+    {
+        try
+        {
+            Layer.setParallel(false);
+            Random random = new Random(0);
+            boolean success = true;
+            /* The softmax is only allowed on the output layer and tested by TestSoftmax. */
+            for (Activation activation : List.of(Activation.TANH, Activation.SIGMOID, Activation.RELU,
+                    Activation.LEAKY_RELU, Activation.LINEAR))
+            {
+                double hiddenError = Fixtures.gradientError(random, SMALL_TOPOLOGY,
+                        List.of(Activation.LINEAR, activation, Activation.LINEAR), TARGETS);
+                double outputError = Fixtures.gradientError(random, SMALL_TOPOLOGY,
+                        List.of(Activation.LINEAR, Activation.TANH, activation), TARGETS);
+                System.out.println("%-10s relative gradient error %.1e in the hidden layer, %.1e in the output layer"
+                        .formatted(activation, hiddenError, outputError));
+                success &= hiddenError < 1e-6 && outputError < 1e-6;
+            }
+            success &= saveAndLoad();
+
+            ArrayRecord[] training = Fixtures.images(random, TRAINING, WIDE_TOPOLOGY.getFirst(), WIDTH, -1.0, 0.05,
+                    false);
+            ArrayRecord[] tests = Fixtures.images(random, TESTS, WIDE_TOPOLOGY.getFirst(), WIDTH, -1.0, 0.05, false);
+            for (Activation activation : List.of(Activation.TANH, Activation.RELU, Activation.LEAKY_RELU))
+            {
+                success &= train(activation, training, tests);
+            }
+            System.out.println(success ? "The transfer functions train, save and load back correctly."
+                    : "The transfer functions DO NOT train, save and load back correctly!");
+        }
+        catch (Exception e)
+        {
+            System.err.println(e);
+        }
+    }
+}
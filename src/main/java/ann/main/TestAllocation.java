@@ -0,0 +1,124 @@
+package ann.main;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+import ann.neuralnetwork.ArrayRecord;
+import ann.neuralnetwork.Network;
+
+/**
+ * Tests that the steady-state training and inference with primitive records
+ * allocate no memory per sample, by counting the bytes allocated by the
+ * current thread.
+ */
+public class TestAllocation
+{
+    /**
+     * Default constructor.
+     */
+    public TestAllocation()
+    {
+    }
+
+    /**
+     * The topology of the tested network.
+     */
+    private static final Integer[] TOPOLOGY = {256, 64, 2};
+    /**
+     * The number of samples used to warm up the network.
+     */
+    private static final int WARM_UP = 20_000;
+    /**
+     * The number of samples per measurement.
+     */
+    private static final int SAMPLES = 10_000;
+
+    /**
+     * Represents an operation performed on a sample.
+     */
+    @FunctionalInterface
+    private interface Step
+    {
+        /**
+         * Performs the operation on the specified sample.
+         *
+         * @param sample the index of the sample.
+         * @throws Exception if the operation fails.
+         */
+        void run(int sample) throws Exception;
+    }
+
+    /**
+     * Returns the number of bytes allocated so far by the current thread.
+     *
+     * @return the number of allocated bytes.
+     */
+    private static long allocatedBytes()
+    {
+        var bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return bean.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * Measures the number of bytes allocated per sample by the step.
+     *
+     * @param step the step to measure.
+     * @return the number of bytes allocated per sample.
+     * @throws Exception if the step fails.
+     */
+    private static double measure(Step step) throws Exception
+    {
+        for (int i = 0; i < WARM_UP; ++i)
+        {
+            step.run(i);
+        }
+        long start = allocatedBytes();
+        for (int i = 0; i < SAMPLES; ++i)
+        {
+            step.run(i);
+        }
+        long end = allocatedBytes();
+        return (double) (end - start) / SAMPLES;
+    }
+
+    /**
+     * The entry point of the application.
+     *
+     * @param args the command-line arguments.
+     */
+    public static void main(String... args)
+    {
+        Random random = new Random(0);
+        ArrayRecord[] records = new ArrayRecord[16];
+        for (int r = 0; r < records.length; ++r)
+        {
+            records[r] = new ArrayRecord(TOPOLOGY[0], TOPOLOGY[TOPOLOGY.length - 1]);
+            for (int k = 0; k < TOPOLOGY[0]; ++k)
+            {
+                records[r].getInputs()[k] = random.nextDouble(0.0, 0.1);
+            }
+            records[r].getOutputs()[r % 2] = 1.0;
+        }
+        double[] output = new double[TOPOLOGY[TOPOLOGY.length - 1]];
+
+        try
+        {
+            Network network = new Network(Arrays.asList(TOPOLOGY), 0.01);
+
+            double training = measure(i -> network.trainRecord(records[i % records.length]));
+            double testing = measure(i -> network.testRecord(records[i % records.length]));
+            double inference = measure(i -> network.computeFor(records[i % records.length].getInputs(), output));
+
+            System.out.println("trainRecord: %8.2f bytes/sample".formatted(training));
+            System.out.println("testRecord:  %8.2f bytes/sample".formatted(testing));
+            System.out.println("computeFor:  %8.2f bytes/sample".formatted(inference));
+            boolean success = training < 1.0 && testing < 1.0 && inference < 1.0;
+            System.out.println(success ? "The training and inference loops do not allocate."
+                    : "The training and inference loops ALLOCATE!");
+        }
+        catch (Exception e)
+        {
+            System.err.println(e);
+        }
+    }
+}
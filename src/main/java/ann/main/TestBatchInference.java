@@ -0,0 +1,78 @@
+package ann.main;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import ann.neuralnetwork.Layer;
+import ann.neuralnetwork.Network;
+
+/**
+ * Tests batched inference: compares the throughput of evaluating images
+ * one at a time and in batches, and checks that both give the same outputs.
+ */
+public class TestBatchInference
+{
+    /**
+     * Default constructor.
+     */
+    public TestBatchInference()
+    {
+    }
+
+    /**
+     * The topology of the tested network, that of the dogs-and-cats classifier.
+     */
+    private static final List<Integer> TOPOLOGY = Arrays.asList(TrainDogsAndCats.WIDTH * TrainDogsAndCats.HEIGHT,
+            100, 2);
+    /**
+     * The number of inputs.
+     */
+    private static final int INPUTS = 64;
+
+    /**
+     * The entry point of the application.
+     *
+     * @param args the command-line arguments.
+     */
+    public static void main(String... args)
+    {
+        Random random = new Random(0);
+        double[][] inputs = new double[INPUTS][TOPOLOGY.getFirst()];
+        for (var input : inputs)
+        {
+            for (int k = 0; k < input.length; ++k)
+            {
+                input[k] = random.nextDouble(0.0, 1.0);
+            }
+        }
+
+        try
+        {
+            Layer.setParallel(false);
+            Network network = new Network(TOPOLOGY, 0.01);
+            double[][] single = new double[INPUTS][TOPOLOGY.getLast()];
+            double[][] batched = new double[INPUTS][TOPOLOGY.getLast()];
+
+            for (int repetition = 0; repetition < 3; ++repetition)
+            {
+                long start = System.nanoTime();
+                for (int i = 0; i < INPUTS; ++i)
+                {
+                    network.computeFor(inputs[i], single[i]);
+                }
+                long middle = System.nanoTime();
+                network.computeForBatch(inputs, batched);
+                long end = System.nanoTime();
+
+                System.out.println("One at a time: %8.1f images/s, batched: %8.1f images/s".formatted(
+                        INPUTS / ((middle - start) * 1e-9), INPUTS / ((end - middle) * 1e-9)));
+            }
+            System.out.println(Arrays.deepEquals(single, batched) ? "Batched inference matches single inference."
+                    : "Batched inference DIFFERS from single inference!");
+        }
+        catch (Exception e)
+        {
+            System.err.println(e);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package ann.main;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.List;
+import ann.neuralnetwork.Backup;
+import ann.neuralnetwork.Network;
+import ann.neuralnetwork.WeightEncoding;
+
+/**
+ * Tests the binary format of backups: compares the time of saving and
+ * loading a network in the text and in the binary format, and checks that
+ * both, as well as streaming the network, give back the same weights. The
+ * network is streamed twice, compressed the second time, followed by other
+ * data, to check that reading a model leaves the stream right after it.
+ */
+public class TestBinaryBackup
+{
+    /**
+     * Default constructor.
+     */
+    public TestBinaryBackup()
+    {
+    }
+
+    /**
+     * The topology of the tested network.
+     */
+    private static final List<Integer> TOPOLOGY = Arrays.asList(16384, 100, 2);
+    /**
+     * The data following the streamed models.
+     */
+    private static final byte[] TRAILER = { 'E', 'N', 'D' };
+
+    /**
+     * The entry point of the application.
+     *
+     * @param args the command-line arguments.
+     */
+    public static void main(String... args)
+    {
+        try
+        {
+            Backup original = new Network(TOPOLOGY, 0.01).serialize();
+
+            long start = System.nanoTime();
+            original.saveToFile("test-backup.txt");
+            long textSaved = System.nanoTime();
+            original.saveToBinaryFile("test-backup.annb");
+            long binarySaved = System.nanoTime();
+
+            Backup fromText = new Backup();
+            fromText.readFromFile("test-backup.txt");
+            Network textNetwork = new Network(fromText);
+            long textLoaded = System.nanoTime();
+            Network binaryNetwork = Network.readFromBinaryFile("test-backup.annb");
+            long binaryLoaded = System.nanoTime();
+            Backup fromBinary = new Backup();
+            fromBinary.readFromFile("test-backup.annb");
+
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            binaryNetwork.writeTo(stream);
+            binaryNetwork.writeTo(Channels.newChannel(stream), WeightEncoding.NATIVE, true);
+            stream.write(TRAILER);
+            ByteArrayInputStream input = new ByteArrayInputStream(stream.toByteArray());
+            Network streamedNetwork = Network.readFrom(input);
+            Network compressedNetwork = Network.readFrom(input);
+            boolean trailerKept = Arrays.equals(input.readAllBytes(), TRAILER);
+
+            System.out.println("Text:   saved in %8.1f ms, loaded in %8.1f ms".formatted(
+                    (textSaved - start) * 1e-6, (textLoaded - binarySaved) * 1e-6));
+            System.out.println("Binary: saved in %8.1f ms, loaded in %8.1f ms".formatted(
+                    (binarySaved - textSaved) * 1e-6, (binaryLoaded - textLoaded) * 1e-6));
+
+            boolean success = original.getWeights().subList(1, TOPOLOGY.size())
+                    .equals(textNetwork.serialize().getWeights().subList(1, TOPOLOGY.size()))
+                    && original.getWeights().subList(1, TOPOLOGY.size())
+                            .equals(binaryNetwork.serialize().getWeights().subList(1, TOPOLOGY.size()))
+                    && original.getWeights().subList(1, TOPOLOGY.size())
+                            .equals(fromBinary.getWeights().subList(1, TOPOLOGY.size()))
+                    && original.getWeights().subList(1, TOPOLOGY.size())
+                            .equals(streamedNetwork.serialize().getWeights().subList(1, TOPOLOGY.size()))
+                    && original.getWeights().subList(1, TOPOLOGY.size())
+                            .equals(compressedNetwork.serialize().getWeights().subList(1, TOPOLOGY.size()))
+                    && trailerKept;
+            System.out.println(success ? "Both formats give back the same weights."
+                    : "The formats give back DIFFERENT weights!");
+        }
+        catch (Exception e)
+        {
+            System.err.println(e);
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package ann.main;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import ann.neuralnetwork.ArrayRecord;
+import ann.neuralnetwork.Backup;
+import ann.neuralnetwork.Checkpointer;
+import ann.neuralnetwork.Network;
+import ann.neuralnetwork.Precision;
+
+/**
+ * Tests the checkpointer: trains a network and checkpoints it after every
+ * epoch, either in full or with lossless or lossy deltas, compares how long the training stops
+ * with how long a blocking save takes and how many bytes are written, and
+ * checks that the retained checkpoints hold the weights of the network at the
+ * time they were requested. A pruned network is checkpointed too, and must be
+ * restored with the same connections, and a small network is checkpointed
+ * several times back to back, faster than the checkpoints are written, and
+ * over the checkpoints of its own chain.
+ */
+public class TestCheckpointer
+{
+    /**
+     * Default constructor.
+     */
+    public TestCheckpointer()
+    {
+    }
+
+    /**
+     * The topology of the tested network.
+     */
+    private static final List<Integer> TOPOLOGY = List.of(16384, 100, 2);
+    /**
+     * The topology of the network checkpointed back to back.
+     */
+    private static final List<Integer> SMALL_TOPOLOGY = List.of(8, 4, 2);
+    /**
+     * The number of checkpoints requested back to back, as many as there are
+     * snapshots with deltas.
+     */
+    private static final int BACK_TO_BACK = 3;
+    /**
+     * The number of times the checkpoints are requested back to back, each
+     * with a new checkpointer.
+     */
+    private static final int ROUNDS = 100;
+    /**
+     * The number of records in a batch.
+     */
+    private static final int BATCH_SIZE = 16;
+    /**
+     * The number of batches in an epoch.
+     */
+    private static final int BATCHES = 10;
+    /**
+     * The number of epochs.
+     */
+    private static final int EPOCHS = 10;
+    /**
+     * The number of checkpoints retained.
+     */
+    private static final int RETAINED = 3;
+    /**
+     * The number of checkpoints from a full one to the next in the delta
+     * mode.
+     */
+    private static final int BASE_INTERVAL = 4;
+    /**
+     * The tolerance of the lossy deltas.
+     */
+    private static final double TOLERANCE = 1e-5;
+    /**
+     * A tolerance below the spacing of the single-precision weights, which
+     * the lossy deltas cannot hold.
+     */
+    private static final double FINE_TOLERANCE = 1e-12;
+    /**
+     * The number of connections kept by each neuron of the pruned network,
+     * a tenth of the inputs of the hidden layer.
+     */
+    private static final int KEPT = TOPOLOGY.getFirst() / 10;
+
+    /**
+     * Gives the path of the checkpoint of an epoch.
+     *
+     * @param directory the directory of the checkpoints.
+     * @param epoch the number of the epoch.
+     * @return the path of the checkpoint.
+     */
+    private static Path checkpoint(Path directory, int epoch)
+    {
+        return directory.resolve("network (%02d).annb".formatted(epoch));
+    }
+
+    /**
+     * Computes the largest difference between the weights of two backups,
+     * the input layer aside.
+     *
+     * @param first the first backup.
+     * @param second the second backup.
+     * @return the largest difference.
+     */
+    private static double difference(Backup first, Backup second)
+    {
+        double difference = 0.0;
+        for (int i = 1; i < first.getWeights().size(); ++i)
+        {
+            for (int j = 0; j < first.getWeights().get(i).size(); ++j)
+            {
+                List<Double> firstWeights = first.getWeights().get(i).get(j);
+                List<Double> secondWeights = second.getWeights().get(i).get(j);
+                for (int k = 0; k < firstWeights.size(); ++k)
+                {
+                    difference = Math.max(difference, Math.abs(firstWeights.get(k) - secondWeights.get(k)));
+                }
+            }
+        }
+        return difference;
+    }
+
+    /**
+     * The entry point of the application.
+     *
+     * @param args the command-line arguments.
+     */
+    public static void main(String... args)
+    {
+        Random random = new Random(0);
+        ArrayRecord[] batch = new ArrayRecord[BATCH_SIZE];
+        for (int b = 0; b < BATCH_SIZE; ++b)
+        {
+            batch[b] = new ArrayRecord(TOPOLOGY.getFirst(), TOPOLOGY.getLast());
+            for (int i = 0; i < TOPOLOGY.getFirst(); ++i)
+            {
+                batch[b].getInputs()[i] = random.nextDouble(-1.0, 1.0);
+            }
+            batch[b].getOutputs()[b % 2] = 1.0;
+        }
+
+        for (Precision precision : List.of(Precision.DOUBLE, Precision.SINGLE))
+        {
+            test(batch, precision, 1, 0.0, false);
+            test(batch, precision, BASE_INTERVAL, 0.0, false);
+            test(batch, precision, BASE_INTERVAL, TOLERANCE, false);
+            test(batch, precision, BASE_INTERVAL, TOLERANCE, true);
+            test(batch, precision, BASE_INTERVAL, FINE_TOLERANCE, false);
+        }
+        backToBack();
+        samePath();
+    }
+
+    /**
+     * Checkpoints a small network while it trains, alternately to a rolling
+     * file and to a file of the same chain, so that the checkpoints replace
+     * their references, and checks that the last ones are restored.
+     */
+    private static void samePath()
+    {
+        Path directory = null;
+        try
+        {
+            directory = Files.createTempDirectory("test-checkpointer");
+            Network network = new Network(SMALL_TOPOLOGY, 0.01);
+            ArrayRecord record = new ArrayRecord(SMALL_TOPOLOGY.getFirst(), SMALL_TOPOLOGY.getLast());
+            Path rolling = directory.resolve("network.annb");
+            Path other = directory.resolve("other.annb");
+            Backup expected;
+            try (Checkpointer checkpointer = new Checkpointer(RETAINED, BASE_INTERVAL))
+            {
+                network.trainRecord(record);
+                checkpointer.checkpoint(network, rolling);
+                network.trainRecord(record);
+                checkpointer.checkpoint(network, rolling);
+                network.trainRecord(record);
+                checkpointer.checkpoint(network, other);
+                network.trainRecord(record);
+                checkpointer.checkpoint(network, rolling);
+                expected = network.serialize();
+                checkpointer.await();
+            }
+
+            Network restored = Network.readFromBinaryFile(rolling.toString());
+            /* The checkpoint of the other file was a delta to the replaced one, it is deleted. */
+            boolean success = difference(restored.serialize(), expected) == 0.0 && !Files.exists(other);
+            System.out.println(success ? "The checkpoints written over their chain are restored."
+                    : "The checkpoints written over their chain ARE NOT restored!");
+        }
+        catch (Exception e)
+        {
+            System.err.println(e);
+        }
+        finally
+        {
+            delete(directory);
+        }
+    }
+
+    /**
+     * Requests checkpoints of small networks back to back, right after the
+     * checkpointer is started so that the writing thread has not taken the
+     * first one yet, and checks that they are all written and restored.
+     */
+    private static void backToBack()
+    {
+        Path directory = null;
+        try
+        {
+            directory = Files.createTempDirectory("test-checkpointer");
+            Network[] networks = new Network[BACK_TO_BACK];
+            Backup[] expected = new Backup[BACK_TO_BACK];
+            for (int c = 0; c < BACK_TO_BACK; ++c)
+            {
+                networks[c] = new Network(SMALL_TOPOLOGY, 0.01);
+                expected[c] = networks[c].serialize();
+            }
+            boolean success = true;
+            for (int round = 0; round < ROUNDS; ++round)
+            {
+                try (Checkpointer checkpointer = new Checkpointer(BACK_TO_BACK, BASE_INTERVAL))
+                {
+                    for (int c = 0; c < BACK_TO_BACK; ++c)
+                    {
+                        checkpointer.checkpoint(networks[c], checkpoint(directory, c));
+                    }
+                    checkpointer.await();
+                }
+                for (int c = 0; c < BACK_TO_BACK; ++c)
+                {
+                    Network restored = Network.readFromBinaryFile(checkpoint(directory, c).toString());
+                    success &= difference(restored.serialize(), expected[c]) == 0.0;
+                }
+            }
+            System.out.println(success ? "The checkpoints requested back to back are all written."
+                    : "The checkpoints requested back to back ARE NOT all written!");
+        }
+        catch (Exception e)
+        {
+            System.err.println(e);
+        }
+        finally
+        {
+            delete(directory);
+        }
+    }
+
+    /**
+     * Deletes a directory of checkpoints with its files.
+     *
+     * @param directory the directory, or null if it was not created.
+     */
+    private static void delete(Path directory)
+    {
+        if (directory != null)
+        {
+            try (var files = Files.list(directory))
+            {
+                for (Path file : files.toList())
+                {
+                    Files.delete(file);
+                }
+                Files.delete(directory);
+            }
+            catch (Exception e)
+            {
+                System.err.println(e);
+            }
+        }
+    }
+
+    /**
+     * Trains a network and checkpoints it after every epoch.
+     *
+     * @param batch the training batch.
+     * @param precision the precision of the network.
+     * @param baseInterval the number of checkpoints from a full one to the
+     *        next.
+     * @param tolerance the tolerance of the deltas.
+     * @param pruned whether the network is pruned before the training.
+     */
+    private static void test(ArrayRecord[] batch, Precision precision, int baseInterval, double tolerance,
+            boolean pruned)
+    {
+        Path directory = null;
+        try
+        {
+            directory = Files.createTempDirectory("test-checkpointer");
+            Network network = new Network(TOPOLOGY, 0.01, precision);
+            if (pruned)
+            {
+                network.pruneToTop(KEPT);
+            }
+            Backup[] expected = new Backup[EPOCHS];
+            long blockingTime = 0;
+            long snapshotTime;
+            long writtenBytes;
+            long writingTime;
+            try (Checkpointer checkpointer = new Checkpointer(RETAINED, baseInterval, tolerance))
+            {
+                for (int epoch = 0; epoch < EPOCHS; ++epoch)
+                {
+                    for (int b = 0; b < BATCHES; ++b)
+                    {
+                        network.trainBatch(batch, BATCH_SIZE);
+                    }
+                    long start = System.nanoTime();
+                    network.saveToBinaryFile(directory.resolve("blocking.annb").toString());
+                    blockingTime += System.nanoTime() - start;
+                    checkpointer.checkpoint(network, checkpoint(directory, epoch));
+                    expected[epoch] = network.serialize();
+                }
+                checkpointer.await();
+                snapshotTime = checkpointer.getSnapshotTime();
+                writtenBytes = checkpointer.getWrittenBytes();
+                writingTime = checkpointer.getWritingTime();
+            }
+
+            /* The last checkpoints are retained, and with deltas the rest of their chains. */
+            boolean success = true;
+            int kept = 0;
+            for (int epoch = 0; epoch < EPOCHS; ++epoch)
+            {
+                Path path = checkpoint(directory, epoch);
+                if (Files.exists(path))
+                {
+                    ++kept;
+                    Backup saved = new Backup();
+                    success &= saved.readFromFile(path.toString());
+                    success &= difference(saved, expected[epoch]) <= tolerance;
+                }
+                else
+                {
+                    success &= epoch < EPOCHS - RETAINED;
+                }
+            }
+            success &= kept < RETAINED + baseInterval;
+            /* The pruned weights of a restored network stay pruned when it trains. */
+            Network restored = Network.readFromBinaryFile(checkpoint(directory, EPOCHS - 1).toString());
+            restored.trainBatch(batch, BATCH_SIZE);
+            success &= restored.getConnectionCount() == network.getConnectionCount();
+            try (var files = Files.list(directory))
+            {
+                success &= files.noneMatch(file -> file.toString().endsWith(".tmp"));
+            }
+
+            System.out.println(("%-6s, %-6s, base every %d, tolerance %.0e: blocking save %5.1f ms, checkpoint stop "
+                    + "%5.1f ms, background %6.1f ms, %8.1f KiB written per epoch, %d files kept").formatted(
+                    precision, pruned ? "pruned" : "dense", baseInterval, tolerance, blockingTime * 1e-6 / EPOCHS, snapshotTime * 1e-6 / EPOCHS,
+                    writingTime * 1e-6 / EPOCHS, writtenBytes / 1024.0 / EPOCHS, kept));
+            System.out.println(success ? "The checkpoints are written, retained and consistent."
+                    : "The checkpoints ARE NOT written, retained or consistent!");
+        }
+        catch (Exception e)
+        {
+            System.err.println(e);
+        }
+        finally
+        {
+            delete(directory);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package ann.main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import ann.neuralnetwork.Network;
+import ann.neuralnetwork.Predictor;
+
+/**
+ * Tests concurrent inference: many virtual threads compute outputs with one
+ * predictor sharing a single copy of the weights, and the results are
+ * compared with those of the network computed serially.
+ */
+public class TestConcurrentInference
+{
+    /**
+     * Default constructor.
+     */
+    public TestConcurrentInference()
+    {
+    }
+
+    /**
+     * The topology of the tested network.
+     */
+    private static final List<Integer> TOPOLOGY = Arrays.asList(4096, 100, 2);
+    /**
+     * The number of inputs.
+     */
+    private static final int INPUTS = 64;
+    /**
+     * The number of concurrent requests.
+     */
+    private static final int REQUESTS = 2000;
+
+    /**
+     * The entry point of the application.
+     *
+     * @param args the command-line arguments.
+     */
+    public static void main(String... args)
+    {
+        Random random = new Random(0);
+        double[][] inputs = new double[INPUTS][TOPOLOGY.getFirst()];
+        for (var input : inputs)
+        {
+            for (int k = 0; k < input.length; ++k)
+            {
+                input[k] = random.nextDouble(0.0, 0.1);
+            }
+        }
+
+        try
+        {
+            Network network = new Network(TOPOLOGY, 0.01);
+            double[][] expected = new double[INPUTS][TOPOLOGY.getLast()];
+            for (int i = 0; i < INPUTS; ++i)
+            {
+                network.computeFor(inputs[i], expected[i]);
+            }
+
+            Predictor predictor = new Predictor(network);
+            List<Future<Boolean>> results = new ArrayList<>(REQUESTS);
+            long start = System.nanoTime();
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor())
+            {
+                for (int r = 0; r < REQUESTS; ++r)
+                {
+                    int i = r % INPUTS;
+                    results.add(executor.submit(() -> Arrays.equals(predictor.computeFor(inputs[i]), expected[i])));
+                }
+            }
+            long end = System.nanoTime();
+
+            boolean success = true;
+            for (var result : results)
+            {
+                success &= result.get();
+            }
+            System.out.println("%d concurrent requests in %.1f ms".formatted(REQUESTS, (end - start) * 1e-6));
+            System.out.println(success ? "Concurrent inference matches serial inference."
+                    : "Concurrent inference DIFFERS from serial inference!");
+        }
+        catch (Exception e)
+        {
+            System.err.println(e);
+        }
+    }
+}
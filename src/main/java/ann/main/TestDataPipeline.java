@@ -0,0 +1,102 @@
+package ann.main;
+
+import ann.neuralnetwork.ArrayRecord;
+import ann.neuralnetwork.DataPipeline;
+
+/**
+ * Tests the data pipeline: checks that the records come in order with the
+ * skipped ones left out, and compares how long a slow consumer waits for slow
+ * records depending on the number of loading threads.
+ */
+public class TestDataPipeline
+{
+    /**
+     * Default constructor.
+     */
+    public TestDataPipeline()
+    {
+    }
+
+    /**
+     * The number of records.
+     */
+    private static final int COUNT = 400;
+    /**
+     * The number of records held by the consumer at a time.
+     */
+    private static final int BATCH_SIZE = 16;
+    /**
+     * The time to load a record, in milliseconds.
+     */
+    private static final long LOADING_TIME = 4;
+    /**
+     * The time to consume a batch, in milliseconds.
+     */
+    private static final long CONSUMING_TIME = 16;
+
+    /**
+     * Loads a record: waits as long as decoding an image would take, then
+     * writes the index in the record. Every tenth record is skipped.
+     *
+     * @param index the index of the record.
+     * @param record the record to fill.
+     * @return true unless the record is skipped.
+     * @throws InterruptedException if the thread is interrupted.
+     */
+    private static boolean load(int index, ArrayRecord record) throws InterruptedException
+    {
+        Thread.sleep(LOADING_TIME);
+        record.getInputs()[0] = index;
+        return index % 10 != 9;
+    }
+
+    /**
+     * The entry point of the application.
+     *
+     * @param args the command-line arguments.
+     */
+    public static void main(String... args)
+    {
+        boolean success = true;
+        for (int threads : new int[] {1, 2, 4, 8})
+        {
+            try (DataPipeline pipeline = new DataPipeline(TestDataPipeline::load, COUNT, 1, 1, threads,
+                    2 * BATCH_SIZE))
+            {
+                ArrayRecord[] batch = new ArrayRecord[BATCH_SIZE];
+                int count = 0;
+                int expected = 0;
+                long start = System.nanoTime();
+                while (pipeline.hasNext())
+                {
+                    ArrayRecord record = pipeline.next();
+                    if (record != null)
+                    {
+                        if (expected % 10 == 9)
+                        {
+                            ++expected;
+                        }
+                        success &= record.getInputs()[0] == expected++;
+                        batch[count++] = record;
+                    }
+                    if (count == BATCH_SIZE || !pipeline.hasNext())
+                    {
+                        Thread.sleep(CONSUMING_TIME);
+                        pipeline.release(batch, count);
+                        count = 0;
+                    }
+                }
+                long end = System.nanoTime();
+                success &= pipeline.getSkipped() == COUNT / 10;
+                System.out.println("%d thread(s): %6.1f ms in total, %6.1f ms waiting for records".formatted(
+                        threads, (end - start) * 1e-6, pipeline.getWaitingTime() * 1e-6));
+            }
+            catch (Exception e)
+            {
+                System.err.println(e);
+                success = false;
+            }
+        }
+        System.out.println(success ? "The records come in order." : "The records DO NOT come in order!");
+    }
+}
@@ -0,0 +1,148 @@
+package ann.main;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import ann.neuralnetwork.ArrayRecord;
+import ann.neuralnetwork.DatasetCache;
+
+/**
+ * Tests the dataset cache: compiles a cache of generated records, checks
+ * that they are read back unchanged and that the cache becomes stale when a
+ * source file or the settings change, and compares the speed of reading the
+ * cache with that of generating the records.
+ */
+public class TestDatasetCache
+{
+    /**
+     * Default constructor.
+     */
+    public TestDatasetCache()
+    {
+    }
+
+    /**
+     * The number of records.
+     */
+    private static final int COUNT = 500;
+    /**
+     * The number of inputs of a record.
+     */
+    private static final int INPUT_SIZE = 10_000;
+    /**
+     * The number of outputs of a record.
+     */
+    private static final int OUTPUT_SIZE = 2;
+    /**
+     * The settings of the generated dataset.
+     */
+    private static final String SETTINGS = "sines";
+
+    /**
+     * Generates a record, every seventh of which is skipped. The computation
+     * of the sines stands for the decoding of an image.
+     *
+     * @param index the index of the record.
+     * @param record the record to fill.
+     * @return true unless the record is skipped.
+     */
+    private static boolean generate(int index, ArrayRecord record)
+    {
+        double[] inputs = record.getInputs();
+        for (int i = 0; i < INPUT_SIZE; ++i)
+        {
+            inputs[i] = Math.sin(index + 1e-3 * i);
+        }
+        record.getOutputs()[0] = index % 2;
+        record.getOutputs()[1] = 1 - index % 2;
+        return index % 7 != 6;
+    }
+
+    /**
+     * The entry point of the application.
+     *
+     * @param args the command-line arguments.
+     */
+    public static void main(String... args)
+    {
+        Path directory = null;
+        try
+        {
+            directory = Files.createTempDirectory("test-dataset-cache");
+            List<Path> sources = new ArrayList<>();
+            for (int s = 0; s < 3; ++s)
+            {
+                sources.add(Files.writeString(directory.resolve("source-%d".formatted(s)), "source " + s));
+            }
+            Path path = directory.resolve("cache.annd");
+            byte[] fingerprint = DatasetCache.fingerprint(SETTINGS, sources);
+            boolean success = !DatasetCache.isValid(path, fingerprint, INPUT_SIZE, OUTPUT_SIZE);
+
+            long start = System.nanoTime();
+            int written = DatasetCache.compile(path, fingerprint, TestDatasetCache::generate, COUNT, INPUT_SIZE,
+                    OUTPUT_SIZE, 2);
+            long compiled = System.nanoTime();
+            success &= written == COUNT - COUNT / 7;
+            success &= DatasetCache.isValid(path, fingerprint, INPUT_SIZE, OUTPUT_SIZE);
+            success &= !DatasetCache.isValid(path, fingerprint, INPUT_SIZE + 1, OUTPUT_SIZE);
+            success &= !DatasetCache.isValid(path, DatasetCache.fingerprint(SETTINGS + "!", sources), INPUT_SIZE,
+                    OUTPUT_SIZE);
+
+            DatasetCache cache = new DatasetCache(path);
+            ArrayRecord record = new ArrayRecord(INPUT_SIZE, OUTPUT_SIZE);
+            ArrayRecord expected = new ArrayRecord(INPUT_SIZE, OUTPUT_SIZE);
+            int index = 0;
+            long read = System.nanoTime();
+            for (int r = 0; r < cache.getCount(); ++r)
+            {
+                cache.read(r, record);
+            }
+            long end = System.nanoTime();
+            for (int r = 0; r < cache.getCount(); ++r, ++index)
+            {
+                while (!generate(index, expected))
+                {
+                    ++index;
+                }
+                cache.read(r, record);
+                success &= Arrays.equals(record.getInputs(), expected.getInputs())
+                        && Arrays.equals(record.getOutputs(), expected.getOutputs())
+                        && cache.getInputs(r).get(INPUT_SIZE - 1) == expected.getInputs()[INPUT_SIZE - 1];
+            }
+
+            Files.setLastModifiedTime(sources.get(1), FileTime.fromMillis(0));
+            success &= !DatasetCache.isValid(path, DatasetCache.fingerprint(SETTINGS, sources), INPUT_SIZE,
+                    OUTPUT_SIZE);
+
+            System.out.println("Generated and cached in %7.1f ms, read from the cache in %7.1f ms".formatted(
+                    (compiled - start) * 1e-6, (end - read) * 1e-6));
+            System.out.println(success ? "The cache gives back the records and detects changes."
+                    : "The cache DOES NOT give back the records or detect changes!");
+        }
+        catch (Exception e)
+        {
+            System.err.println(e);
+        }
+        finally
+        {
+            if (directory != null)
+            {
+                try (var files = Files.list(directory))
+                {
+                    for (var file : files.toList())
+                    {
+                        Files.delete(file);
+                    }
+                    Files.delete(directory);
+                }
+                catch (Exception e)
+                {
+                    System.err.println(e);
+                }
+            }
+        }
+    }
+}
@@ -9,8 +9,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Random;
 import javax.imageio.ImageIO;
 import javax.swing.BoxLayout;
@@ -35,6 +33,11 @@ class NetworkPanel extends JPanel implements ActionListener
      * The height of the images.
      */
     private static final int IMAGE_HEIGHT = 375;
+    /**
+     * The conversion of the image to the inputs of the network.
+     */
+    private static final ImagePreprocessor PREPROCESSOR = new ImagePreprocessor(IMAGE_WIDTH, IMAGE_HEIGHT,
+            ImagePreprocessor.Color.PACKED_RGB);
 
     /**
      * The image to classify.
@@ -61,6 +64,14 @@ class NetworkPanel extends JPanel implements ActionListener
      * The neural network.
      */
     private Network network;
+    /**
+     * The buffer of the pixels of the image.
+     */
+    private final double[] pixels = new double[PREPROCESSOR.getInputSize()];
+    /**
+     * The buffer of the response of the network.
+     */
+    private final double[] result = new double[2];
 
     /**
      * Constructs a new panel for the neural network.
@@ -142,26 +153,6 @@ class NetworkPanel extends JPanel implements ActionListener
         }
     }
 
-    /**
-     * Retrieves the pixels of the image.
-     *
-     * @return the pixels of the image.
-     */
-    private List<Double> getPixels()
-    {
-        List<Double> pixels = new ArrayList<>(IMAGE_WIDTH * IMAGE_HEIGHT);
-        for (int i = 0; i < IMAGE_WIDTH; ++i)
-        {
-            for (int j = 0; j < IMAGE_HEIGHT; ++j)
-            {
-                int color = image.getRGB(i, j) & 0x00FFFFFF;
-                double value = (double) color / (double) 0x00FFFFFF;
-                pixels.add(value);
-            }
-        }
-        return pixels;
-    }
-
     /**
      * Decides whether the image is a cat or a dog.
      */
@@ -169,13 +160,11 @@ class NetworkPanel extends JPanel implements ActionListener
     {
         try
         {
-            List<Double> pixels = getPixels();
-            List<Double> result = network.computeFor(pixels);
-
-            assert (result.size() == 2);
+            PREPROCESSOR.getPixels(image, pixels);
+            network.computeFor(pixels, result);
 
-            double voteForCat = result.get(0);
-            double voteForDog = result.get(1);
+            double voteForCat = result[0];
+            double voteForDog = result[1];
 
             String response = "I think this is a %s (cat: %.3f, dog: %.3f)".formatted(
                     (voteForCat > voteForDog) ? "CAT" : "DOG",
@@ -0,0 +1,148 @@
+package ann.main;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.Random;
+import ann.neuralnetwork.Activation;
+import ann.neuralnetwork.Layer;
+import ann.neuralnetwork.Network;
+import ann.neuralnetwork.Precision;
+
+/**
+ * Tests the transfer function: compares the fast approximation of the
+ * hyperbolic tangent with {@link Math#tanh(double)} in accuracy and speed,
+ * checks with finite differences that training follows the gradient of the
+ * error with either of them, and that a network using both keeps them when it
+ * is saved and loaded back.
+ */
+public class TestFastTanh
+{
+    /**
+     * Default constructor.
+     */
+    public TestFastTanh()
+    {
+    }
+
+    /**
+     * The number of values passed through the transfer function.
+     */
+    private static final int VALUES = 1 << 20;
+    /**
+     * The magnitude of the largest value passed through the transfer function.
+     */
+    private static final double RANGE = 20.0;
+    /**
+     * The largest difference allowed between the fast and the exact
+     * hyperbolic tangent.
+     */
+    private static final double ERROR_BOUND = 3e-7;
+    /**
+     * The number of times the values are passed through the transfer
+     * function to time it.
+     */
+    private static final int REPETITIONS = 20;
+    /**
+     * The topology of the network whose gradient is checked.
+     */
+    private static final List<Integer> TOPOLOGY = List.of(4, 3, 2);
+    /**
+     * The desired outputs of the record on which the gradient is checked.
+     */
+    private static final double[] TARGETS = { 0.5, -0.5 };
+
+    /**
+     * Passes values through the transfer function of a layer.
+     *
+     * @param layer the layer.
+     * @param values the values.
+     * @return the time per value in nanoseconds.
+     */
+    private static double time(Layer layer, double[] values)
+    {
+        long start = System.nanoTime();
+        for (int r = 0; r < REPETITIONS; ++r)
+        {
+            layer.assign(values, 0);
+        }
+        return (double) (System.nanoTime() - start) / ((long) REPETITIONS * values.length);
+    }
+
+    /**
+     * Saves a network whose hidden layer uses the fast hyperbolic tangent and
+     * whose output layer uses the exact one in the text and binary formats,
+     * and loads it back.
+     *
+     * @return true if the transfer functions are restored.
+     * @throws Exception if saving or loading fails.
+     */
+    private static boolean saveAndLoad() throws Exception
+    {
+        List<Activation> activations = List.of(Activation.LINEAR, Activation.FAST_TANH, Activation.TANH);
+        Network network = new Network(TOPOLOGY, 0.01, Precision.DOUBLE, activations);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        network.writeTo(stream);
+        Network streamed = Network.readFrom(new ByteArrayInputStream(stream.toByteArray()));
+        Network copied = new Network(network.serialize());
+        return streamed.getActivations().equals(activations) && copied.getActivations().equals(activations);
+    }
+
+    /**
+     * The entry point of the application.
+     *
+     * @param args the command-line arguments.
+     */
+    public static void main(String... args)
+    {
+        try
+        {
+            double[] values = new double[VALUES];
+            for (int i = 0; i < VALUES; ++i)
+            {
+                values[i] = -RANGE + 2.0 * RANGE * i / (VALUES - 1);
+            }
+            Layer exactLayer = new Layer(VALUES, 0.01, Precision.DOUBLE, Activation.TANH);
+            Layer fastLayer = new Layer(VALUES, 0.01, Precision.DOUBLE, Activation.FAST_TANH);
+            double[] exact = new double[VALUES];
+            double[] fast = new double[VALUES];
+            exactLayer.assign(values, 0);
+            exactLayer.exportValues(exact);
+            fastLayer.assign(values, 0);
+            fastLayer.exportValues(fast);
+            double maxError = 0.0;
+            for (int i = 0; i < VALUES; ++i)
+            {
+                maxError = Math.max(maxError, Math.abs(fast[i] - exact[i]));
+            }
+
+            double exactTime = 0.0;
+            double fastTime = 0.0;
+            for (int repetition = 0; repetition < 3; ++repetition)
+            {
+                exactTime = time(exactLayer, values);
+                fastTime = time(fastLayer, values);
+            }
+            System.out.println("Math.tanh %.2f ns per value, fast tanh %.2f ns per value (%.1fx), max error %.1e"
+                    .formatted(exactTime, fastTime, exactTime / fastTime, maxError));
+
+            Random random = new Random(0);
+            double exactGradientError = Fixtures.gradientError(random, TOPOLOGY,
+                    List.of(Activation.LINEAR, Activation.TANH, Activation.TANH), TARGETS);
+            double fastGradientError = Fixtures.gradientError(random, TOPOLOGY,
+                    List.of(Activation.LINEAR, Activation.FAST_TANH, Activation.FAST_TANH), TARGETS);
+            System.out.println("Relative gradient error: %.1e with Math.tanh, %.1e with fast tanh".formatted(
+                    exactGradientError, fastGradientError));
+
+            boolean success = maxError <= ERROR_BOUND && fastTime < exactTime && exactGradientError < 1e-6
+                    && fastGradientError < 1e-4 && saveAndLoad();
+            System.out.println(success
+                    ? "The fast tanh is accurate, faster and saved, and training follows the gradient."
+                    : "The fast tanh IS NOT accurate, faster or saved, or training DOES NOT follow the gradient!");
+        }
+        catch (Exception e)
+        {
+            System.err.println(e);
+        }
+    }
+}
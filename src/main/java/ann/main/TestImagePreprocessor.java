@@ -0,0 +1,174 @@
+package ann.main;
+
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import javax.imageio.ImageIO;
+
+/**
+ * Tests the image preprocessor: checks that reading the raster gives the same
+ * inputs as going through the colour model pixel by pixel, for every
+ * conversion, and compares their speed and that of decoding with and without
+ * subsampling.
+ */
+public class TestImagePreprocessor
+{
+    /**
+     * Default constructor.
+     */
+    public TestImagePreprocessor()
+    {
+    }
+
+    /**
+     * The width of the images.
+     */
+    private static final int WIDTH = TrainDogsAndCats.WIDTH;
+    /**
+     * The height of the images.
+     */
+    private static final int HEIGHT = TrainDogsAndCats.HEIGHT;
+    /**
+     * The number of repetitions of the timed conversions.
+     */
+    private static final int REPETITIONS = 50;
+
+    /**
+     * Converts an image the way the project used to, pixel by pixel through
+     * the colour model.
+     *
+     * @param image the image.
+     * @param pixels the array to store the input values in.
+     */
+    private static void getPixelsByPixel(BufferedImage image, double[] pixels)
+    {
+        int index = 0;
+        for (int i = 0; i < WIDTH; ++i)
+        {
+            for (int j = 0; j < HEIGHT; ++j)
+            {
+                int color = image.getRGB(i, j) & 0x00FFFFFF;
+                pixels[index++] = (double) color / (double) 0x00FFFFFF;
+            }
+        }
+    }
+
+    /**
+     * Copies an image into a new image of the specified type.
+     *
+     * @param image the image.
+     * @param type the type of the copy.
+     * @return the copy.
+     */
+    private static BufferedImage convert(BufferedImage image, int type)
+    {
+        BufferedImage copy = new BufferedImage(image.getWidth(), image.getHeight(), type);
+        copy.createGraphics().drawImage(image, 0, 0, null);
+        return copy;
+    }
+
+    /**
+     * The entry point of the application.
+     *
+     * @param args the command-line arguments.
+     */
+    public static void main(String... args)
+    {
+        Random random = new Random(0);
+        BufferedImage image = new BufferedImage(WIDTH + 3, HEIGHT + 2, BufferedImage.TYPE_3BYTE_BGR);
+        for (int x = 0; x < image.getWidth(); ++x)
+        {
+            for (int y = 0; y < image.getHeight(); ++y)
+            {
+                image.setRGB(x, y, random.nextInt(0x01000000));
+            }
+        }
+        BufferedImage packed = convert(image, BufferedImage.TYPE_INT_RGB);
+
+        Path file = null;
+        try
+        {
+            boolean success = true;
+
+            /* The raster gives the same inputs as the colour model. */
+            ImagePreprocessor full = new ImagePreprocessor(WIDTH, HEIGHT, ImagePreprocessor.Color.PACKED_RGB);
+            double[] expected = new double[full.getInputSize()];
+            double[] pixels = new double[full.getInputSize()];
+            getPixelsByPixel(image, expected);
+            full.getPixels(image, pixels);
+            success &= Arrays.equals(pixels, expected);
+            full.getPixels(packed, pixels);
+            success &= Arrays.equals(pixels, expected);
+
+            for (var color : ImagePreprocessor.Color.values())
+            {
+                for (int factor : new int[] {1, 4})
+                {
+                    ImagePreprocessor preprocessor = new ImagePreprocessor(WIDTH, HEIGHT, color, factor, false);
+                    double[] fromBytes = new double[preprocessor.getInputSize()];
+                    double[] fromInts = new double[preprocessor.getInputSize()];
+                    preprocessor.getPixels(image, fromBytes);
+                    preprocessor.getPixels(packed, fromInts);
+                    success &= Arrays.equals(fromBytes, fromInts);
+                }
+            }
+
+            /* The speed of the conversions. */
+            long start = System.nanoTime();
+            for (int r = 0; r < REPETITIONS; ++r)
+            {
+                getPixelsByPixel(image, expected);
+            }
+            long byPixel = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int r = 0; r < REPETITIONS; ++r)
+            {
+                full.getPixels(image, pixels);
+            }
+            long byRaster = System.nanoTime() - start;
+            System.out.println("Pixel by pixel: %7.3f ms per image, raster: %7.3f ms per image".formatted(
+                    byPixel * 1e-6 / REPETITIONS, byRaster * 1e-6 / REPETITIONS));
+
+            /* Decoding with and without subsampling. */
+            file = Files.createTempFile("test-image-preprocessor", ".jpg");
+            ImageIO.write(image, "jpg", file.toFile());
+            for (boolean subsample : new boolean[] {false, true})
+            {
+                ImagePreprocessor preprocessor = new ImagePreprocessor(WIDTH, HEIGHT,
+                        ImagePreprocessor.Color.GRAYSCALE, 4, subsample);
+                double[] inputs = new double[preprocessor.getInputSize()];
+                start = System.nanoTime();
+                for (int r = 0; r < REPETITIONS; ++r)
+                {
+                    preprocessor.getPixels(preprocessor.read(file), inputs);
+                }
+                long time = System.nanoTime() - start;
+                System.out.println("%-40s: %6d inputs, %7.3f ms per image".formatted(preprocessor,
+                        preprocessor.getInputSize(), time * 1e-6 / REPETITIONS));
+            }
+
+            System.out.println(success ? "The raster gives the same inputs as the colour model."
+                    : "The raster DOES NOT give the same inputs as the colour model!");
+        }
+        catch (Exception e)
+        {
+            System.err.println(e);
+        }
+        finally
+        {
+            try
+            {
+                if (file != null)
+                {
+                    Files.delete(file);
+                }
+            }
+            catch (Exception e)
+            {
+                System.err.println(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package ann.main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import ann.neuralnetwork.Layer;
+import ann.neuralnetwork.Network;
+
+/**
+ * Tests the parallel processing of wide layers: measures the latency of
+ * single-sample inference with and without it and checks that both give
+ * the same output.
+ */
+public class TestLayerParallelism
+{
+    /**
+     * Default constructor.
+     */
+    public TestLayerParallelism()
+    {
+    }
+
+    /**
+     * The size of the input layer.
+     */
+    private static final int INPUT_SIZE = TrainDogsAndCats.WIDTH * TrainDogsAndCats.HEIGHT;
+    /**
+     * The size of the hidden layer.
+     */
+    private static final int HIDDEN_SIZE = 100;
+    /**
+     * The size of the output layer.
+     */
+    private static final int OUTPUT_SIZE = 2;
+    /**
+     * The number of inferences per measurement.
+     */
+    private static final int REPETITIONS = 50;
+
+    /**
+     * Measures the average latency of single-sample inference.
+     *
+     * @param network the network.
+     * @param input the input.
+     * @return the average latency in milliseconds.
+     * @throws Exception if the input is invalid.
+     */
+    private static double measure(Network network, List<Double> input) throws Exception
+    {
+        for (int i = 0; i < REPETITIONS; ++i)
+        {
+            network.computeFor(input);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < REPETITIONS; ++i)
+        {
+            network.computeFor(input);
+        }
+        long end = System.nanoTime();
+        return (end - start) * 1e-6 / REPETITIONS;
+    }
+
+    /**
+     * The entry point of the application.
+     *
+     * @param args the command-line arguments.
+     */
+    public static void main(String... args)
+    {
+        Random random = new Random(0);
+        List<Double> input = new ArrayList<>(INPUT_SIZE);
+        for (int k = 0; k < INPUT_SIZE; ++k)
+        {
+            input.add(random.nextDouble(0.0, 0.1));
+        }
+
+        try
+        {
+            Network network = new Network(Arrays.asList(INPUT_SIZE, HIDDEN_SIZE, OUTPUT_SIZE), 0.01);
+
+            Layer.setParallel(false);
+            List<Double> serialOutput = network.computeFor(input);
+            double serialLatency = measure(network, input);
+
+            Layer.setParallel(true);
+            List<Double> parallelOutput = network.computeFor(input);
+            double parallelLatency = measure(network, input);
+
+            System.out.println("Serial:   %8.3f ms".formatted(serialLatency));
+            System.out.println("Parallel: %8.3f ms (%d cores), speedup %5.2f".formatted(parallelLatency,
+                    Runtime.getRuntime().availableProcessors(), serialLatency / parallelLatency));
+            System.out.println(serialOutput.equals(parallelOutput) ? "Parallel inference matches serial inference."
+                    : "Parallel inference DIFFERS from serial inference!");
+        }
+        catch (Exception e)
+        {
+            System.err.println(e);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package ann.main;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import ann.neuralnetwork.ArrayRecord;
+import ann.neuralnetwork.Network;
+import ann.neuralnetwork.ParallelTrainer;
+
+/**
+ * Tests the training metrics: trains a network single-threaded and in
+ * parallel while a flight recording runs, then reads the metrics through the
+ * platform MBean server and counts the recorded events. Checks that every
+ * phase of every layer is timed, and that inference adds neither time nor
+ * events. Running it with {@code -Dann.metrics=false} shows the throughput
+ * without the metrics.
+ */
+public class TestMetrics
+{
+    /**
+     * Default constructor.
+     */
+    public TestMetrics()
+    {
+    }
+
+    /**
+     * The topology of the tested network.
+     */
+    private static final List<Integer> TOPOLOGY = List.of(1024, 128, 2);
+    /**
+     * The number of records in a batch.
+     */
+    private static final int BATCH_SIZE = 32;
+    /**
+     * The number of batches of each kind of training.
+     */
+    private static final int BATCHES = 200;
+
+    /**
+     * Counts the phase events recorded so far.
+     *
+     * @param recording the flight recording.
+     * @return the number of {@code ann.LayerPhase} events.
+     * @throws Exception if the recording cannot be dumped or read.
+     */
+    private static int countPhases(Recording recording) throws Exception
+    {
+        Path file = Files.createTempFile("test-metrics", ".jfr");
+        try
+        {
+            recording.dump(file);
+            int phases = 0;
+            for (RecordedEvent event : RecordingFile.readAllEvents(file))
+            {
+                phases += "ann.LayerPhase".equals(event.getEventType().getName()) ? 1 : 0;
+            }
+            return phases;
+        }
+        finally
+        {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * The entry point of the application.
+     *
+     * @param args the command-line arguments.
+     */
+    public static void main(String... args)
+    {
+        Random random = new Random(0);
+        ArrayRecord[] batch = new ArrayRecord[BATCH_SIZE];
+        for (int b = 0; b < BATCH_SIZE; ++b)
+        {
+            batch[b] = new ArrayRecord(TOPOLOGY.getFirst(), TOPOLOGY.getLast());
+            for (int i = 0; i < TOPOLOGY.getFirst(); ++i)
+            {
+                batch[b].getInputs()[i] = random.nextDouble(-1.0, 1.0);
+            }
+            batch[b].getOutputs()[b % 2] = 1.0;
+        }
+
+        Path file = null;
+        try (Recording recording = new Recording())
+        {
+            recording.enable("ann.LayerPhase");
+            recording.enable("ann.TrainingBatch");
+            recording.start();
+
+            Network network = new Network(TOPOLOGY, 0.01);
+            ObjectName name = network.getMetrics().register("test-metrics");
+            long start = System.nanoTime();
+            for (int b = 0; b < BATCHES; ++b)
+            {
+                network.trainBatch(batch, BATCH_SIZE);
+            }
+            try (ParallelTrainer trainer = new ParallelTrainer(network, 4))
+            {
+                for (int b = 0; b < BATCHES; ++b)
+                {
+                    trainer.trainBatch(batch, BATCH_SIZE);
+                }
+            }
+            long end = System.nanoTime();
+            double[] trainingForward = network.getMetrics().getForwardMillis();
+            int trainingPhases = countPhases(recording);
+
+            /* Inference is not part of the training. */
+            double[][] inputs = new double[BATCH_SIZE][];
+            for (int b = 0; b < BATCH_SIZE; ++b)
+            {
+                inputs[b] = batch[b].getInputs();
+                network.testRecord(batch[b]);
+                network.computeFor(inputs[b], new double[TOPOLOGY.getLast()]);
+            }
+            network.computeForBatch(inputs);
+            boolean inferenceIgnored = Arrays.equals(trainingForward, network.getMetrics().getForwardMillis())
+                    && countPhases(recording) == trainingPhases;
+            recording.stop();
+
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            System.out.println("%.1f samples/s measured outside".formatted(
+                    2.0 * BATCHES * BATCH_SIZE / ((end - start) * 1e-9)));
+            for (var attribute : List.of("Samples", "Batches", "SamplesPerSecond", "RunningLoss",
+                    "AllocatedBytes"))
+            {
+                System.out.println("%-16s = %s".formatted(attribute, server.getAttribute(name, attribute)));
+            }
+            double[] forward = (double[]) server.getAttribute(name, "ForwardMillis");
+            double[] backward = (double[]) server.getAttribute(name, "BackwardMillis");
+            double[] update = (double[]) server.getAttribute(name, "UpdateMillis");
+            boolean allTimed = true;
+            for (int i = 1; i < forward.length; ++i)
+            {
+                System.out.println("layer %d: forward %8.2f ms, backward %8.2f ms, update %8.2f ms".formatted(
+                        i, forward[i], backward[i], update[i]));
+                allTimed &= forward[i] > 0.0 && backward[i] > 0.0 && update[i] > 0.0;
+            }
+            long samples = (Long) server.getAttribute(name, "Samples");
+            network.getMetrics().unregister();
+
+            file = Files.createTempFile("test-metrics", ".jfr");
+            recording.dump(file);
+            int phases = 0;
+            int batches = 0;
+            for (RecordedEvent event : RecordingFile.readAllEvents(file))
+            {
+                switch (event.getEventType().getName())
+                {
+                    case "ann.LayerPhase" -> ++phases;
+                    case "ann.TrainingBatch" -> ++batches;
+                    default ->
+                    {
+                    }
+                }
+            }
+            System.out.println("%d phase events, %d batch events recorded".formatted(phases, batches));
+            boolean enabled = !"false".equals(System.getProperty("ann.metrics"));
+            boolean success = enabled
+                    ? samples == 2L * BATCHES * BATCH_SIZE && batches == 2 * BATCHES && phases > 0 && allTimed
+                            && inferenceIgnored
+                    : samples == 0 && batches == 0 && phases == 0;
+            System.out.println(success ? "The training metrics are collected and recorded."
+                    : "The training metrics ARE NOT collected or recorded!");
+        }
+        catch (Exception e)
+        {
+            System.err.println(e);
+        }
+        finally
+        {
+            try
+            {
+                if (file != null)
+                {
+                    Files.delete(file);
+                }
+            }
+            catch (Exception e)
+            {
+                System.err.println(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package ann.main;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import ann.neuralnetwork.Backup;
+import ann.neuralnetwork.Network;
+import ann.neuralnetwork.Precision;
+import ann.neuralnetwork.WeightEncoding;
+
+/**
+ * Tests the export of networks with reduced weight encodings: compares the
+ * size and the loading time of the exported models with those of the text
+ * and the native binary formats, and checks that they load back through a
+ * backup, a mapped file and a stream, with weights and outputs within the
+ * accuracy of their encoding.
+ */
+public class TestModelExport
+{
+    /**
+     * Default constructor.
+     */
+    public TestModelExport()
+    {
+    }
+
+    /**
+     * The topology of the tested network.
+     */
+    private static final List<Integer> TOPOLOGY = List.of(16384, 100, 2);
+    /**
+     * The number of times each model is loaded to time it.
+     */
+    private static final int LOADS = 5;
+
+    /**
+     * Computes the largest difference between the weights of two backups,
+     * the input layer aside.
+     *
+     * @param first the first backup.
+     * @param second the second backup.
+     * @return the largest difference.
+     */
+    private static double difference(Backup first, Backup second)
+    {
+        double difference = 0.0;
+        for (int i = 1; i < TOPOLOGY.size(); ++i)
+        {
+            for (int j = 0; j < TOPOLOGY.get(i); ++j)
+            {
+                List<Double> firstWeights = first.getWeights().get(i).get(j);
+                List<Double> secondWeights = second.getWeights().get(i).get(j);
+                for (int k = 0; k < firstWeights.size(); ++k)
+                {
+                    difference = Math.max(difference, Math.abs(firstWeights.get(k) - secondWeights.get(k)));
+                }
+            }
+        }
+        return difference;
+    }
+
+    /**
+     * Computes the largest weight of a backup in magnitude, the biases and the
+     * input layer aside.
+     *
+     * @param backup the backup.
+     * @return the largest weight in magnitude.
+     */
+    private static double largest(Backup backup)
+    {
+        double largest = 0.0;
+        for (int i = 1; i < TOPOLOGY.size(); ++i)
+        {
+            for (List<Double> neuron : backup.getWeights().get(i))
+            {
+                for (int k = 0; k < neuron.size() - 1; ++k)
+                {
+                    largest = Math.max(largest, Math.abs(neuron.get(k)));
+                }
+            }
+        }
+        return largest;
+    }
+
+    /**
+     * Gives the largest error expected on a weight in the specified encoding.
+     *
+     * @param encoding the encoding of the weights.
+     * @param largest the largest weight in magnitude.
+     * @return the largest error.
+     */
+    private static double tolerance(WeightEncoding encoding, double largest)
+    {
+        return switch (encoding)
+        {
+            case NATIVE -> 0.0;
+            case FLOAT16 -> largest * Math.scalb(1.0, -11) + Math.scalb(1.0, -25);
+            case INT8 -> largest / 254.0 * 1.001;
+        };
+    }
+
+    /**
+     * The entry point of the application.
+     *
+     * @param args the command-line arguments.
+     */
+    public static void main(String... args)
+    {
+        Random random = new Random(0);
+        double[] input = new double[TOPOLOGY.getFirst()];
+        for (int i = 0; i < input.length; ++i)
+        {
+            input[i] = random.nextDouble(-1.0, 1.0);
+        }
+        for (Precision precision : List.of(Precision.DOUBLE, Precision.SINGLE))
+        {
+            test(precision, input);
+        }
+    }
+
+    /**
+     * Exports a network of the specified precision with every encoding, with
+     * and without compression, and loads it back.
+     *
+     * @param precision the precision of the network.
+     * @param input the input the outputs are compared for.
+     */
+    private static void test(Precision precision, double[] input)
+    {
+        Path directory = null;
+        try
+        {
+            directory = Files.createTempDirectory("test-model-export");
+            Network network = new Network(TOPOLOGY, 0.01, precision);
+            Backup original = network.serialize();
+            double[] expected = new double[TOPOLOGY.getLast()];
+            network.computeFor(input, expected);
+            double largest = largest(original);
+
+            Path text = directory.resolve("network.txt");
+            original.saveToFile(text.toString());
+            long start = System.nanoTime();
+            for (int l = 0; l < LOADS; ++l)
+            {
+                Backup backup = new Backup();
+                backup.readFromFile(text.toString());
+                new Network(backup);
+            }
+            long textTime = (System.nanoTime() - start) / LOADS;
+            System.out.println("%-6s text            : %8.1f KiB, loaded in %7.2f ms".formatted(precision,
+                    Files.size(text) / 1024.0, textTime * 1e-6));
+
+            boolean success = true;
+            for (WeightEncoding encoding : WeightEncoding.values())
+            {
+                for (boolean compressed : List.of(false, true))
+                {
+                    Path path = directory.resolve("network-%s-%b.annb".formatted(encoding, compressed));
+                    success &= network.saveToBinaryFile(path.toString(), encoding, compressed);
+
+                    /* Warms up the loading, then times it. */
+                    Network.readFromBinaryFile(path.toString());
+                    start = System.nanoTime();
+                    Network loaded = null;
+                    for (int l = 0; l < LOADS; ++l)
+                    {
+                        loaded = Network.readFromBinaryFile(path.toString());
+                    }
+                    long time = (System.nanoTime() - start) / LOADS;
+
+                    Backup fromFile = new Backup();
+                    success &= fromFile.readFromFile(path.toString());
+                    Network fromBackup = new Network(fromFile);
+                    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+                    network.writeTo(Channels.newChannel(stream), encoding, compressed);
+                    Network streamed = Network.readFrom(new ByteArrayInputStream(stream.toByteArray()));
+                    Path resaved = directory.resolve("resaved.annb");
+                    success &= fromFile.saveToBinaryFile(resaved.toString(), encoding, compressed);
+                    Backup fromResaved = new Backup();
+                    success &= fromResaved.readFromFile(resaved.toString());
+
+                    double error = difference(original, loaded.serialize());
+                    double[] output = new double[TOPOLOGY.getLast()];
+                    fromBackup.computeFor(input, output);
+                    double outputError = 0.0;
+                    for (int o = 0; o < output.length; ++o)
+                    {
+                        outputError = Math.max(outputError, Math.abs(output[o] - expected[o]));
+                    }
+                    success &= loaded.getPrecision() == precision;
+                    success &= error <= tolerance(encoding, largest);
+                    success &= difference(loaded.serialize(), fromFile) == 0.0;
+                    success &= difference(loaded.serialize(), streamed.serialize()) == 0.0;
+                    success &= difference(fromFile, fromResaved) <= tolerance(encoding, largest);
+                    success &= stream.size() == Files.size(path);
+
+                    System.out.println(("%-6s %-7s %-10s: %8.1f KiB (%5.1fx smaller than text), loaded in %7.2f ms, "
+                            + "weight error %.1e, output error %.1e").formatted(precision, encoding,
+                            compressed ? "compressed" : "plain", Files.size(path) / 1024.0,
+                            (double) Files.size(text) / Files.size(path), time * 1e-6, error, outputError));
+                }
+            }
+            System.out.println(success ? "The exported models load back within the accuracy of their encoding."
+                    : "The exported models DO NOT load back within the accuracy of their encoding!");
+        }
+        catch (Exception e)
+        {
+            System.err.println(e);
+        }
+        finally
+        {
+            if (directory != null)
+            {
+                try (var files = Files.list(directory))
+                {
+                    for (Path file : files.toList())
+                    {
+                        Files.delete(file);
+                    }
+                    Files.delete(directory);
+                }
+                catch (Exception e)
+                {
+                    System.err.println(e);
+                }
+            }
+        }
+    }
+}
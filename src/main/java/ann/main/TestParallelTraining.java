@@ -0,0 +1,163 @@
+package ann.main;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import ann.neuralnetwork.Backup;
+import ann.neuralnetwork.IORecord;
+import ann.neuralnetwork.Network;
+import ann.neuralnetwork.ParallelTrainer;
+
+/**
+ * Tests the data-parallel training of a neural network: measures how the
+ * throughput scales with the number of threads and checks that the result
+ * matches single-threaded training.
+ */
+public class TestParallelTraining
+{
+    /**
+     * Default constructor.
+     */
+    public TestParallelTraining()
+    {
+    }
+
+    /**
+     * The size of the input layer.
+     */
+    private static final int INPUT_SIZE = 4096;
+    /**
+     * The size of the hidden layer.
+     */
+    private static final int HIDDEN_SIZE = 100;
+    /**
+     * The size of the output layer.
+     */
+    private static final int OUTPUT_SIZE = 2;
+    /**
+     * The number of records in a batch.
+     */
+    private static final int BATCH_SIZE = 64;
+    /**
+     * The number of batches per measurement.
+     */
+    private static final int BATCHES = 20;
+    /**
+     * The maximal difference of weights allowed between parallel and single-threaded training.
+     */
+    private static final double TOLERANCE = 1e-9;
+
+    /**
+     * Prepares a batch of random training records.
+     *
+     * @param random the random number generator.
+     * @return the training records.
+     */
+    private static List<IORecord> prepareBatch(Random random)
+    {
+        List<IORecord> batch = new ArrayList<>(BATCH_SIZE);
+        for (int b = 0; b < BATCH_SIZE; ++b)
+        {
+            List<Double> inputs = new ArrayList<>(INPUT_SIZE);
+            for (int k = 0; k < INPUT_SIZE; ++k)
+            {
+                inputs.add(random.nextDouble(0.0, 0.1));
+            }
+            List<Double> outputs = (b % 2 == 0) ? Arrays.asList(1.0, 0.0) : Arrays.asList(0.0, 1.0);
+            batch.add(new IORecord(inputs, outputs));
+        }
+        return batch;
+    }
+
+    /**
+     * Returns the maximal absolute difference between the weights of two networks.
+     *
+     * @param first the first network.
+     * @param second the second network.
+     * @return the maximal difference.
+     */
+    private static double maxDifference(Network first, Network second)
+    {
+        var firstWeights = first.serialize().getWeights();
+        var secondWeights = second.serialize().getWeights();
+        double difference = 0.0;
+        for (int i = 0; i < firstWeights.size(); ++i)
+        {
+            for (int j = 0; j < firstWeights.get(i).size(); ++j)
+            {
+                List<Double> a = firstWeights.get(i).get(j);
+                List<Double> b = secondWeights.get(i).get(j);
+                for (int k = 0; k < a.size(); ++k)
+                {
+                    difference = Math.max(difference, Math.abs(a.get(k) - b.get(k)));
+                }
+            }
+        }
+        return difference;
+    }
+
+    /**
+     * The entry point of the application.
+     *
+     * @param args the command-line arguments; optionally the maximal number of threads.
+     */
+    public static void main(String... args)
+    {
+        int maxThreads = (args.length > 0) ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+
+        Random random = new Random(0);
+        List<List<IORecord>> batches = new ArrayList<>(BATCHES);
+        for (int i = 0; i < BATCHES; ++i)
+        {
+            batches.add(prepareBatch(random));
+        }
+
+        try
+        {
+            Backup initial = new Network(Arrays.asList(INPUT_SIZE, HIDDEN_SIZE, OUTPUT_SIZE), 0.01).serialize();
+
+            /* Reference: single-threaded training. */
+            Network reference = new Network(initial);
+            for (var batch : batches)
+            {
+                reference.trainBatch(batch);
+            }
+
+            /* Parallel training with an increasing number of threads. */
+            double baseline = 0.0;
+            boolean success = true;
+            for (int threads = 1; threads <= maxThreads; threads *= 2)
+            {
+                Network network = new Network(initial);
+                long start;
+                long end;
+                try (ParallelTrainer trainer = new ParallelTrainer(network, threads))
+                {
+                    start = System.nanoTime();
+                    for (var batch : batches)
+                    {
+                        trainer.trainBatch(batch);
+                    }
+                    end = System.nanoTime();
+                }
+
+                double samplesPerSecond = (double) BATCHES * BATCH_SIZE / ((end - start) * 1e-9);
+                if (threads == 1)
+                {
+                    baseline = samplesPerSecond;
+                }
+                double difference = maxDifference(reference, network);
+                success &= difference <= TOLERANCE;
+                System.out.println("%2d thread(s): %10.1f samples/s, speedup %5.2f, max difference %.3e".formatted(
+                        threads, samplesPerSecond, samplesPerSecond / baseline, difference));
+            }
+            System.out.println(success ? "Parallel training matches single-threaded training."
+                    : "Parallel training DIFFERS from single-threaded training!");
+        }
+        catch (Exception e)
+        {
+            System.err.println(e);
+        }
+    }
+}
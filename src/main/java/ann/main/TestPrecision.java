@@ -0,0 +1,138 @@
+package ann.main;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import ann.neuralnetwork.Backup;
+import ann.neuralnetwork.Layer;
+import ann.neuralnetwork.Network;
+import ann.neuralnetwork.Precision;
+
+/**
+ * Tests the precisions of networks: compares the inference throughput and
+ * the outputs of the dogs-and-cats topology in each precision, and checks
+ * that backups of each precision load back unchanged.
+ */
+public class TestPrecision
+{
+    /**
+     * Default constructor.
+     */
+    public TestPrecision()
+    {
+    }
+
+    /**
+     * The topology of the tested network, that of the dogs-and-cats classifier.
+     */
+    private static final List<Integer> TOPOLOGY = Arrays.asList(TrainDogsAndCats.WIDTH * TrainDogsAndCats.HEIGHT,
+            100, 2);
+    /**
+     * The number of inputs.
+     */
+    private static final int INPUTS = 32;
+
+    /**
+     * Checks that a network survives a round trip through both backup formats.
+     *
+     * @param network the network.
+     * @return true if the weights are the same after the round trips. The
+     *         weights of the input layer are not compared, as they are not
+     *         backed up.
+     * @throws Exception if the backup fails.
+     */
+    private static boolean roundTrip(Network network) throws Exception
+    {
+        Backup backup = network.serialize();
+        backup.saveToFile("test-precision.txt");
+        Backup fromText = new Backup();
+        fromText.readFromFile("test-precision.txt");
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        network.writeTo(stream);
+        Network fromBinary = Network.readFrom(new ByteArrayInputStream(stream.toByteArray()));
+
+        new java.io.File("test-precision.txt").delete();
+        return fromText.getPrecision() == network.getPrecision()
+                && fromBinary.getPrecision() == network.getPrecision()
+                && connections(new Network(fromText).serialize()).equals(connections(backup))
+                && connections(fromBinary.serialize()).equals(connections(backup));
+    }
+
+    /**
+     * Gives the weights of the backup beyond the input layer.
+     *
+     * @param backup the backup.
+     * @return the weights of the hidden and output layers.
+     */
+    private static List<List<List<Double>>> connections(Backup backup)
+    {
+        List<List<List<Double>>> weights = backup.getWeights();
+        return weights.subList(1, weights.size());
+    }
+
+    /**
+     * The entry point of the application.
+     *
+     * @param args the command-line arguments.
+     */
+    public static void main(String... args)
+    {
+        Random random = new Random(0);
+        double[][] inputs = new double[INPUTS][TOPOLOGY.getFirst()];
+        for (var input : inputs)
+        {
+            for (int k = 0; k < input.length; ++k)
+            {
+                input[k] = random.nextDouble(0.0, 1.0);
+            }
+        }
+
+        try
+        {
+            Layer.setParallel(false);
+            Backup initial = new Network(TOPOLOGY, 0.01).serialize();
+            double[][] reference = null;
+            boolean success = true;
+            for (Precision precision : Precision.values())
+            {
+                Backup backup = new Backup(initial.getTopology(), initial.getLearningRate(), precision,
+                        initial.getWeights());
+                Network network = new Network(backup);
+
+                double[][] outputs = network.computeForBatch(inputs);
+                long start = System.nanoTime();
+                for (int repetition = 0; repetition < 5; ++repetition)
+                {
+                    outputs = network.computeForBatch(inputs);
+                }
+                long end = System.nanoTime();
+
+                double difference = 0.0;
+                if (reference == null)
+                {
+                    reference = outputs;
+                }
+                for (int i = 0; i < INPUTS; ++i)
+                {
+                    for (int j = 0; j < outputs[i].length; ++j)
+                    {
+                        difference = Math.max(difference, Math.abs(outputs[i][j] - reference[i][j]));
+                    }
+                }
+                boolean restored = roundTrip(network);
+                success &= restored;
+                System.out.println("%-6s: %8.1f images/s, max difference from double %.3e, backups %s".formatted(
+                        precision, 5 * INPUTS / ((end - start) * 1e-9), difference, restored ? "ok" : "DIFFER"));
+            }
+            System.out.println(success ? "Backups of all precisions load back unchanged."
+                    : "Backups of some precision DO NOT load back unchanged!");
+        }
+        catch (Exception e)
+        {
+            System.err.println(e);
+        }
+    }
+}
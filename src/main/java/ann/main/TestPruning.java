@@ -0,0 +1,337 @@
+package ann.main;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import ann.neuralnetwork.ArrayRecord;
+import ann.neuralnetwork.Backup;
+import ann.neuralnetwork.Layer;
+import ann.neuralnetwork.Network;
+import ann.neuralnetwork.Precision;
+
+/**
+ * Tests the magnitude pruning of networks: checks that a pruned network
+ * computes and trains like the fully connected network whose pruned weights
+ * are held at zero, that it is saved and loaded back pruned in the text and
+ * the binary formats, and compares its file size and latency per image with
+ * those of the fully connected network.
+ */
+public class TestPruning
+{
+    /**
+     * Default constructor.
+     */
+    public TestPruning()
+    {
+    }
+
+    /**
+     * The topology of the tested network.
+     */
+    private static final List<Integer> TOPOLOGY = List.of(16384, 100, 2);
+    /**
+     * The topology of the timed network, that of the dogs-and-cats classifier.
+     */
+    private static final List<Integer> TIMED_TOPOLOGY = List.of(TrainDogsAndCats.WIDTH * TrainDogsAndCats.HEIGHT,
+            100, 2);
+    /**
+     * The number of connections kept by each neuron when keeping the largest
+     * weights, a tenth of the inputs of the first hidden layer.
+     */
+    private static final int KEPT = TOPOLOGY.getFirst() / 10;
+    /**
+     * The number of records in a batch.
+     */
+    private static final int BATCH_SIZE = 16;
+    /**
+     * The largest difference allowed between the pruned network and the
+     * fully connected one, the sums being ordered differently.
+     */
+    private static final double TOLERANCE = 1e-9;
+    /**
+     * The number of images evaluated to time the inference.
+     */
+    private static final int TIMED = 100;
+
+    /**
+     * Generates a batch of random records.
+     *
+     * @param random the random number generator.
+     * @param topology the topology of the network.
+     * @return the batch.
+     */
+    private static ArrayRecord[] batch(Random random, List<Integer> topology)
+    {
+        ArrayRecord[] batch = new ArrayRecord[BATCH_SIZE];
+        for (int r = 0; r < BATCH_SIZE; ++r)
+        {
+            batch[r] = new ArrayRecord(topology.getFirst(), topology.getLast());
+            double[] inputs = batch[r].getInputs();
+            for (int i = 0; i < inputs.length; ++i)
+            {
+                inputs[i] = random.nextDouble(-1.0, 1.0);
+            }
+            batch[r].getOutputs()[r % 2] = 1.0;
+        }
+        return batch;
+    }
+
+    /**
+     * Computes the largest difference between the outputs of two networks.
+     *
+     * @param first the first network.
+     * @param second the second network.
+     * @param records the records whose inputs are evaluated.
+     * @return the largest difference.
+     * @throws Exception if the inference fails.
+     */
+    private static double difference(Network first, Network second, ArrayRecord[] records) throws Exception
+    {
+        double[] firstOutput = new double[TOPOLOGY.getLast()];
+        double[] secondOutput = new double[TOPOLOGY.getLast()];
+        double difference = 0.0;
+        for (ArrayRecord record : records)
+        {
+            first.computeFor(record.getInputs(), firstOutput);
+            second.computeFor(record.getInputs(), secondOutput);
+            for (int o = 0; o < firstOutput.length; ++o)
+            {
+                difference = Math.max(difference, Math.abs(firstOutput[o] - secondOutput[o]));
+            }
+        }
+        return difference;
+    }
+
+    /**
+     * Computes the largest difference between the weights of a pruned
+     * network and those of a fully connected one at the kept connections.
+     *
+     * @param pruned the backup of the pruned network.
+     * @param dense the backup of the fully connected network.
+     * @return the largest difference.
+     */
+    private static double keptDifference(Backup pruned, Backup dense)
+    {
+        double difference = 0.0;
+        for (int i = 1; i < TOPOLOGY.size(); ++i)
+        {
+            int[][] connections = pruned.getConnections().get(i);
+            for (int j = 0; j < TOPOLOGY.get(i); ++j)
+            {
+                List<Double> prunedWeights = pruned.getWeights().get(i).get(j);
+                List<Double> denseWeights = dense.getWeights().get(i).get(j);
+                for (int input : connections[j])
+                {
+                    difference = Math.max(difference,
+                            Math.abs(prunedWeights.get(input) - denseWeights.get(input)));
+                }
+                difference = Math.max(difference, Math.abs(prunedWeights.getLast() - denseWeights.getLast()));
+            }
+        }
+        return difference;
+    }
+
+    /**
+     * Checks that the weights of the pruned connections of a network are
+     * zero and that the kept ones are at least the threshold in magnitude.
+     *
+     * @param backup the backup of the pruned network.
+     * @param threshold the threshold of the pruning.
+     * @return the number of connections kept.
+     */
+    private static long checkThreshold(Backup backup, double threshold)
+    {
+        long kept = 0;
+        for (int i = 1; i < TOPOLOGY.size(); ++i)
+        {
+            for (List<Double> neuron : backup.getWeights().get(i))
+            {
+                for (int k = 0; k < neuron.size() - 1; ++k)
+                {
+                    double magnitude = Math.abs(neuron.get(k));
+                    if (magnitude >= threshold)
+                    {
+                        ++kept;
+                    }
+                    else if (magnitude != 0.0)
+                    {
+                        return -1;
+                    }
+                }
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Times the inference of a network, one image at a time.
+     *
+     * @param network the network.
+     * @param records the records of the images.
+     * @return the time per image in nanoseconds.
+     * @throws Exception if the inference fails.
+     */
+    private static double time(Network network, ArrayRecord[] records) throws Exception
+    {
+        double[] output = new double[TIMED_TOPOLOGY.getLast()];
+        long start = System.nanoTime();
+        for (int i = 0; i < TIMED; ++i)
+        {
+            network.computeFor(records[i % records.length].getInputs(), output);
+        }
+        return (double) (System.nanoTime() - start) / TIMED;
+    }
+
+    /**
+     * The entry point of the application.
+     *
+     * @param args the command-line arguments.
+     */
+    public static void main(String... args)
+    {
+        Layer.setParallel(false);
+        boolean success = true;
+        for (Precision precision : List.of(Precision.DOUBLE, Precision.SINGLE))
+        {
+            success &= test(precision);
+        }
+        success &= timeInference();
+        System.out.println(success ? "The pruned networks compute, train and load back like the dense ones."
+                : "The pruned networks DO NOT compute, train and load back like the dense ones!");
+    }
+
+    /**
+     * Prunes networks of the specified precision and compares them with
+     * fully connected networks, then saves and loads them back.
+     *
+     * @param precision the precision of the networks.
+     * @return true if the test passes, false otherwise.
+     */
+    private static boolean test(Precision precision)
+    {
+        Path directory = null;
+        try
+        {
+            directory = Files.createTempDirectory("test-pruning");
+            Random random = new Random(0);
+            ArrayRecord[] batch = batch(random, TOPOLOGY);
+            Network network = new Network(TOPOLOGY, 0.01, precision);
+            Backup original = network.serialize();
+
+            /* Pruning by threshold keeps exactly the weights above it. */
+            Network thresholded = new Network(original);
+            double threshold = 0.5 * Math.sqrt(3.0 / TOPOLOGY.getFirst());
+            long kept = thresholded.prune(threshold);
+            boolean success = kept == checkThreshold(thresholded.serialize(), threshold)
+                    && kept < network.getConnectionCount();
+
+            /*
+             * Keeping the largest weights computes and trains like a dense network holding zeros, for one
+             * step, after which the dense network no longer holds zeros.
+             */
+            Network pruned = new Network(original);
+            long topKept = pruned.pruneToTop(KEPT);
+            Backup prunedBackup = pruned.serialize();
+            Network dense = new Network(new Backup(TOPOLOGY, 0.01, precision, prunedBackup.getWeights()));
+            success &= topKept == (long) KEPT * TOPOLOGY.get(1) + (long) TOPOLOGY.get(1) * TOPOLOGY.get(2);
+            double outputError = difference(pruned, dense, batch);
+            pruned.trainBatch(batch, BATCH_SIZE);
+            dense.trainBatch(batch, BATCH_SIZE);
+            Backup trained = pruned.serialize();
+            double weightError = keptDifference(trained, dense.serialize());
+            double tolerance = precision.isSingle() ? 1e-4 : TOLERANCE;
+            success &= outputError <= tolerance && weightError <= tolerance;
+            success &= pruned.getConnectionCount() == topKept;
+
+            /* The pruned network is saved and loaded back pruned. */
+            Path text = directory.resolve("pruned.txt");
+            Path binary = directory.resolve("pruned.annb");
+            Path resaved = directory.resolve("resaved.annb");
+            Path full = directory.resolve("dense.annb");
+            success &= trained.saveToFile(text.toString());
+            success &= pruned.saveToBinaryFile(binary.toString());
+            success &= dense.saveToBinaryFile(full.toString());
+            Backup fromText = new Backup();
+            success &= fromText.readFromFile(text.toString());
+            Backup fromBinary = new Backup();
+            success &= fromBinary.readFromFile(binary.toString());
+            success &= fromBinary.saveToBinaryFile(resaved.toString());
+            Network textNetwork = new Network(fromText);
+            Network binaryNetwork = Network.readFromBinaryFile(binary.toString());
+            Network backupNetwork = new Network(fromBinary);
+            for (Network loaded : List.of(textNetwork, binaryNetwork, backupNetwork))
+            {
+                success &= loaded.getConnectionCount() == topKept && difference(pruned, loaded, batch) == 0.0;
+            }
+            success &= trained.getWeights().subList(1, TOPOLOGY.size())
+                    .equals(fromBinary.getWeights().subList(1, TOPOLOGY.size()));
+            success &= Files.mismatch(binary, resaved) == -1;
+
+            System.out.println(("%-6s kept %d of %d weights above %.4f, %d with the %d largest per neuron; "
+                    + "output error %.1e, weight error after training %.1e").formatted(precision, kept,
+                    network.getConnectionCount(), threshold, topKept, KEPT, outputError, weightError));
+            System.out.println("%-6s binary file %.1f KiB pruned vs %.1f KiB dense".formatted(precision,
+                    Files.size(binary) / 1024.0, Files.size(full) / 1024.0));
+            return success && Files.size(binary) * 4 < Files.size(full);
+        }
+        catch (Exception e)
+        {
+            System.err.println(e);
+            return false;
+        }
+        finally
+        {
+            if (directory != null)
+            {
+                try (var files = Files.list(directory))
+                {
+                    for (Path file : files.toList())
+                    {
+                        Files.delete(file);
+                    }
+                    Files.delete(directory);
+                }
+                catch (Exception e)
+                {
+                    System.err.println(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Compares the latency per image of the dogs-and-cats classifier before
+     * and after keeping a tenth of its connections.
+     *
+     * @return true if the pruned network is faster, false otherwise.
+     */
+    private static boolean timeInference()
+    {
+        try
+        {
+            ArrayRecord[] records = batch(new Random(1), TIMED_TOPOLOGY);
+            Network network = new Network(TIMED_TOPOLOGY, 0.01);
+            double denseTime = 0.0;
+            for (int repetition = 0; repetition < 3; ++repetition)
+            {
+                denseTime = time(network, records);
+            }
+            long connections = network.getConnectionCount();
+            network.pruneToTop(TIMED_TOPOLOGY.getFirst() / 10);
+            double prunedTime = 0.0;
+            for (int repetition = 0; repetition < 3; ++repetition)
+            {
+                prunedTime = time(network, records);
+            }
+            System.out.println("Latency per image: %.1f us with %d weights, %.1f us with %d".formatted(
+                    denseTime * 1e-3, connections, prunedTime * 1e-3, network.getConnectionCount()));
+            return prunedTime < denseTime;
+        }
+        catch (Exception e)
+        {
+            System.err.println(e);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package ann.main;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import ann.neuralnetwork.ArrayDataset;
+import ann.neuralnetwork.ArrayRecord;
+import ann.neuralnetwork.Layer;
+import ann.neuralnetwork.Network;
+import ann.neuralnetwork.Precision;
+import ann.neuralnetwork.QuantizationReport;
+import ann.neuralnetwork.QuantizedNetwork;
+
+/**
+ * Tests the int8 quantized inference: trains a network of the topology of
+ * the dogs-and-cats classifier on synthetic images, quantizes it, compares
+ * the accuracy of the quantized network with that of the network, its weight
+ * memory and latency per image with those of networks in double and single
+ * precision, and
+ * checks that quantizing the backup gives the same network.
+ */
+public class TestQuantizedInference
+{
+    /**
+     * Default constructor.
+     */
+    public TestQuantizedInference()
+    {
+    }
+
+    /**
+     * The topology of the tested network, that of the dogs-and-cats classifier.
+     */
+    private static final List<Integer> TOPOLOGY = List.of(TrainDogsAndCats.WIDTH * TrainDogsAndCats.HEIGHT, 100,
+            2);
+    /**
+     * The number of records in a batch.
+     */
+    private static final int BATCH_SIZE = 16;
+    /**
+     * The number of training records.
+     */
+    private static final int TRAINING = 256;
+    /**
+     * The number of test records.
+     */
+    private static final int TESTS = 128;
+    /**
+     * The number of epochs.
+     */
+    private static final int EPOCHS = 4;
+    /**
+     * The learning rate: the inputs of an image are all positive, so a larger
+     * rate moves the weighted sums of the hidden neurons far enough in one
+     * step to saturate them.
+     */
+    private static final double LEARNING_RATE = 1e-4;
+    /**
+     * The number of images evaluated to time the inference.
+     */
+    private static final int TIMED = 200;
+
+    /**
+     * Times the inference of a network, one image at a time.
+     *
+     * @param network the network.
+     * @param records the records of the images.
+     * @return the time per image in nanoseconds.
+     * @throws Exception if the inference fails.
+     */
+    private static double time(Network network, ArrayRecord[] records) throws Exception
+    {
+        double[] output = new double[TOPOLOGY.getLast()];
+        long start = System.nanoTime();
+        for (int i = 0; i < TIMED; ++i)
+        {
+            network.computeFor(records[i % records.length].getInputs(), output);
+        }
+        return (double) (System.nanoTime() - start) / TIMED;
+    }
+
+    /**
+     * Times the inference of a quantized network, one image at a time.
+     *
+     * @param network the quantized network.
+     * @param records the records of the images.
+     * @return the time per image in nanoseconds.
+     * @throws Exception if the inference fails.
+     */
+    private static double time(QuantizedNetwork network, ArrayRecord[] records) throws Exception
+    {
+        double[] output = new double[TOPOLOGY.getLast()];
+        long start = System.nanoTime();
+        for (int i = 0; i < TIMED; ++i)
+        {
+            network.computeFor(records[i % records.length].getInputs(), output);
+        }
+        return (double) (System.nanoTime() - start) / TIMED;
+    }
+
+    /**
+     * The entry point of the application.
+     *
+     * @param args the command-line arguments.
+     */
+    public static void main(String... args)
+    {
+        try
+        {
+            Layer.setParallel(false);
+            Random random = new Random(0);
+            ArrayRecord[] training = Fixtures.images(random, TRAINING, TOPOLOGY.getFirst(), TrainDogsAndCats.WIDTH,
+                    0.0, 0.25, true);
+            ArrayRecord[] tests = Fixtures.images(random, TESTS, TOPOLOGY.getFirst(), TrainDogsAndCats.WIDTH, 0.0,
+                    0.25, true);
+
+            Network network = new Network(TOPOLOGY, LEARNING_RATE);
+            ArrayRecord[] batch = new ArrayRecord[BATCH_SIZE];
+            for (int epoch = 0; epoch < EPOCHS; ++epoch)
+            {
+                for (int from = 0; from < TRAINING; from += BATCH_SIZE)
+                {
+                    System.arraycopy(training, from, batch, 0, BATCH_SIZE);
+                    network.trainBatch(batch, BATCH_SIZE);
+                }
+            }
+            /* The latency does not depend on the weights, so the single-precision network is not trained. */
+            Network single = new Network(TOPOLOGY, network.getLearningRate(), Precision.SINGLE);
+
+            QuantizedNetwork quantized = new QuantizedNetwork(network);
+            QuantizationReport report = quantized.compareWith(network, new ArrayDataset(tests));
+            System.out.println(report);
+
+            long weights = 0;
+            for (int i = 1; i < TOPOLOGY.size(); ++i)
+            {
+                weights += (long) TOPOLOGY.get(i) * TOPOLOGY.get(i - 1);
+            }
+            System.out.println("Weight memory: double %.1f KiB, single %.1f KiB, int8 %.1f KiB".formatted(
+                    weights * Double.BYTES / 1024.0, weights * Float.BYTES / 1024.0,
+                    quantized.getWeightBytes() / 1024.0));
+
+            double doubleTime = 0.0;
+            double singleTime = 0.0;
+            double quantizedTime = 0.0;
+            for (int repetition = 0; repetition < 3; ++repetition)
+            {
+                doubleTime = time(network, tests);
+                singleTime = time(single, tests);
+                quantizedTime = time(quantized, tests);
+            }
+            System.out.println("Latency per image: double %.1f us, single %.1f us, int8 %.1f us".formatted(
+                    doubleTime * 1e-3, singleTime * 1e-3, quantizedTime * 1e-3));
+
+            /* Quantizing the backup gives the same network. */
+            QuantizedNetwork fromBackup = new QuantizedNetwork(network.serialize());
+            boolean same = true;
+            for (ArrayRecord test : tests)
+            {
+                same &= Arrays.equals(quantized.computeFor(test.getInputs()),
+                        fromBackup.computeFor(test.getInputs()));
+            }
+
+            boolean success = same && report.getReferenceAccuracy() > 0.9
+                    && report.getQuantizedAccuracy() >= report.getReferenceAccuracy() - 0.02
+                    && report.getAgreement() >= 0.95
+                    && quantized.getWeightBytes() * 4 <= weights * Float.BYTES * 1.01;
+            System.out.println(success ? "The quantized network keeps the accuracy with four times less memory."
+                    : "The quantized network DOES NOT keep the accuracy with four times less memory!");
+        }
+        catch (Exception e)
+        {
+            System.err.println(e);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package ann.main;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import ann.neuralnetwork.ArrayDataset;
+import ann.neuralnetwork.ArrayRecord;
+import ann.neuralnetwork.Backup;
+import ann.neuralnetwork.Network;
+import ann.neuralnetwork.ParallelTrainer;
+import ann.neuralnetwork.Sampler;
+
+/**
+ * Tests the sampler: checks that every epoch is a permutation which depends
+ * on the seed and the epoch, that stratified epochs spread the classes
+ * evenly, that splits are disjoint and complete, and that training on ranges
+ * of a sampler gives the same network as training on gathered batches.
+ */
+public class TestSampler
+{
+    /**
+     * Default constructor.
+     */
+    public TestSampler()
+    {
+    }
+
+    /**
+     * The number of records.
+     */
+    private static final int COUNT = 1000;
+    /**
+     * The number of records in a batch.
+     */
+    private static final int BATCH_SIZE = 20;
+
+    /**
+     * Gives the indices of an epoch of the sampler.
+     *
+     * @param sampler the sampler.
+     * @param epoch the number of the epoch.
+     * @return the indices of the records in the order of the epoch.
+     */
+    private static int[] epoch(Sampler sampler, int epoch)
+    {
+        int[] indices = new int[sampler.size()];
+        for (int p = 0; p < indices.length; ++p)
+        {
+            indices[p] = sampler.get(epoch, p);
+        }
+        return indices;
+    }
+
+    /**
+     * Checks that the indices are a permutation of the specified indices.
+     *
+     * @param indices the indices.
+     * @param expected the expected indices, sorted.
+     * @return true if the sorted indices are the expected ones.
+     */
+    private static boolean isPermutation(int[] indices, int[] expected)
+    {
+        int[] sorted = indices.clone();
+        Arrays.sort(sorted);
+        return Arrays.equals(sorted, expected);
+    }
+
+    /**
+     * The entry point of the application.
+     *
+     * @param args the command-line arguments.
+     */
+    public static void main(String... args)
+    {
+        Random random = new Random(0);
+        ArrayRecord[] records = new ArrayRecord[COUNT];
+        for (int r = 0; r < COUNT; ++r)
+        {
+            records[r] = new ArrayRecord(8, 2);
+            for (int i = 0; i < 8; ++i)
+            {
+                records[r].getInputs()[i] = random.nextDouble(-1.0, 1.0);
+            }
+            /* A quarter of the records are of the second class. */
+            records[r].getOutputs()[(r % 4 == 3) ? 1 : 0] = 1.0;
+        }
+        int[] all = new int[COUNT];
+        Arrays.setAll(all, r -> r);
+
+        try
+        {
+            ArrayDataset dataset = new ArrayDataset(records);
+            boolean success = true;
+
+            /* Plain permutations. */
+            Sampler sampler = new Sampler(COUNT, 7);
+            int[] first = epoch(sampler, 0);
+            success &= isPermutation(first, all) && isPermutation(epoch(sampler, 1), all);
+            success &= Arrays.equals(first, epoch(new Sampler(COUNT, 7), 0));
+            success &= !Arrays.equals(first, epoch(sampler, 1));
+            success &= !Arrays.equals(first, epoch(new Sampler(COUNT, 8), 0));
+            success &= !Arrays.equals(first, all);
+
+            /* Stratified permutations: each window of four holds one record of the second class. */
+            Sampler stratified = Sampler.stratified(dataset, 7);
+            int[] mixed = epoch(stratified, 3);
+            success &= isPermutation(mixed, all);
+            for (int window = 0; window < COUNT; window += 4)
+            {
+                int second = 0;
+                for (int p = window; p < window + 4; ++p)
+                {
+                    second += dataset.getLabel(mixed[p]);
+                }
+                success &= second == 1;
+            }
+
+            /* Splits. */
+            Sampler[] split = stratified.split(0.2);
+            int[] training = epoch(split[0], 0);
+            int[] validation = epoch(split[1], 0);
+            int[] both = Arrays.copyOf(training, COUNT);
+            System.arraycopy(validation, 0, both, training.length, validation.length);
+            success &= validation.length == COUNT / 5 && isPermutation(both, all);
+            success &= Arrays.stream(validation).map(dataset::getLabel).sum() == COUNT / 20;
+
+            /* Training on ranges of the sampler. */
+            Backup initial = new Network(List.of(8, 16, 2), 0.1).serialize();
+            Network gathered = new Network(initial);
+            ArrayRecord[] batch = new ArrayRecord[BATCH_SIZE];
+            for (int from = 0; from < training.length; from += BATCH_SIZE)
+            {
+                int count = Math.min(BATCH_SIZE, training.length - from);
+                for (int b = 0; b < count; ++b)
+                {
+                    batch[b] = records[training[from + b]];
+                }
+                gathered.trainBatch(batch, count);
+            }
+            try (ParallelTrainer trainer = new ParallelTrainer(new Network(initial), 4))
+            {
+                for (int from = 0; from < split[0].size(); from += BATCH_SIZE)
+                {
+                    trainer.trainBatch(dataset, split[0], 0, from, Math.min(from + BATCH_SIZE, split[0].size()));
+                }
+                success &= trainer.getNetwork().serialize().getWeights().equals(gathered.serialize().getWeights());
+            }
+
+            System.out.println(success ? "The sampler shuffles, stratifies and splits correctly."
+                    : "The sampler DOES NOT shuffle, stratify or split correctly!");
+        }
+        catch (Exception e)
+        {
+            System.err.println(e);
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package ann.main;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import ann.neuralnetwork.Activation;
+import ann.neuralnetwork.ArrayRecord;
+import ann.neuralnetwork.Backup;
+import ann.neuralnetwork.Layer;
+import ann.neuralnetwork.Network;
+import ann.neuralnetwork.Precision;
+import ann.neuralnetwork.QuantizedNetwork;
+
+/**
+ * Tests the softmax output layer: checks with finite differences that
+ * training follows the gradient of the cross-entropy, that the outputs are
+ * probabilities whether the layer is computed serially or in parallel, that
+ * the softmax is saved and loaded back with the network and kept by the
+ * quantized network, and compares the number of epochs a classifier takes to
+ * reach the target accuracy with a softmax output and with a hyperbolic
+ * tangent output trained on the squared error.
+ */
+public class TestSoftmax
+{
+    /**
+     * Default constructor.
+     */
+    public TestSoftmax()
+    {
+    }
+
+    /**
+     * The topology of the network whose gradient is checked.
+     */
+    private static final List<Integer> SMALL_TOPOLOGY = List.of(4, 5, 3);
+    /**
+     * The topology of the network whose softmax layer is computed in
+     * parallel.
+     */
+    private static final List<Integer> WIDE_TOPOLOGY = List.of(256, 1024);
+    /**
+     * The topology of the network saved and loaded back.
+     */
+    private static final List<Integer> SAVED_TOPOLOGY = List.of(8, 6, 3);
+    /**
+     * The topology of the trained classifier.
+     */
+    private static final List<Integer> CLASSIFIER_TOPOLOGY = List.of(1024, 32, 2);
+    /**
+     * The width of the synthetic images.
+     */
+    private static final int WIDTH = 64;
+    /**
+     * The number of records in a batch.
+     */
+    private static final int BATCH_SIZE = 16;
+    /**
+     * The number of training records.
+     */
+    private static final int TRAINING = 512;
+    /**
+     * The number of test records.
+     */
+    private static final int TESTS = 256;
+    /**
+     * The number of classifiers trained with each output layer.
+     */
+    private static final int RUNS = 3;
+    /**
+     * The largest number of epochs.
+     */
+    private static final int EPOCHS = 30;
+    /**
+     * The accuracy at which the training stops.
+     */
+    private static final double TARGET = 0.95;
+
+    /**
+     * Checks that the values are probabilities.
+     *
+     * @param values the values.
+     * @return true if the values are non-negative and sum to one.
+     */
+    private static boolean isDistribution(double[] values)
+    {
+        double sum = 0.0;
+        boolean positive = true;
+        for (double value : values)
+        {
+            positive &= value >= 0.0;
+            sum += value;
+        }
+        return positive && Math.abs(sum - 1.0) < 1e-9;
+    }
+
+    /**
+     * Computes the outputs of a wide softmax layer serially and in parallel.
+     *
+     * @param random the random number generator.
+     * @return true if the outputs are the same probabilities.
+     * @throws Exception if the inference fails.
+     */
+    private static boolean computeInParallel(Random random) throws Exception
+    {
+        Network network = new Network(WIDE_TOPOLOGY, 0.01, Precision.DOUBLE,
+                List.of(Activation.LINEAR, Activation.SOFTMAX));
+        double[] input = new double[WIDE_TOPOLOGY.getFirst()];
+        for (int i = 0; i < input.length; ++i)
+        {
+            input[i] = random.nextDouble(-4.0, 4.0);
+        }
+        double[] serial = new double[WIDE_TOPOLOGY.getLast()];
+        double[] parallel = new double[WIDE_TOPOLOGY.getLast()];
+        Layer.setParallel(false);
+        network.computeFor(input, serial);
+        Layer.setParallel(true);
+        network.computeFor(input, parallel);
+        Layer.setParallel(false);
+        boolean same = true;
+        for (int o = 0; o < serial.length; ++o)
+        {
+            same &= Math.abs(serial[o] - parallel[o]) < 1e-15;
+        }
+        return same && isDistribution(serial);
+    }
+
+    /**
+     * Saves a network with a softmax output layer in every format, loads it
+     * back and quantizes it.
+     *
+     * @param random the random number generator.
+     * @return true if the softmax and the outputs are restored, and the
+     *         quantized network computes probabilities close to them.
+     * @throws Exception if saving, loading or the inference fails.
+     */
+    private static boolean saveAndLoad(Random random) throws Exception
+    {
+        List<Activation> activations = List.of(Activation.LINEAR, Activation.RELU, Activation.SOFTMAX);
+        Network network = new Network(SAVED_TOPOLOGY, 0.01, Precision.DOUBLE, activations);
+        Path directory = Files.createTempDirectory("test-softmax");
+        Path text = directory.resolve("network.txt");
+        Path binary = directory.resolve("network.annb");
+        try
+        {
+            boolean success = network.serialize().saveToFile(text.toString());
+            success &= network.saveToBinaryFile(binary.toString());
+            Backup fromText = new Backup();
+            success &= fromText.readFromFile(text.toString());
+            List<Network> loaded = List.of(new Network(fromText), Network.readFromBinaryFile(binary.toString()));
+            QuantizedNetwork quantized = new QuantizedNetwork(network);
+
+            double[] input = new double[SAVED_TOPOLOGY.getFirst()];
+            double[] expected = new double[SAVED_TOPOLOGY.getLast()];
+            double[] output = new double[SAVED_TOPOLOGY.getLast()];
+            for (int r = 0; r < 16; ++r)
+            {
+                for (int i = 0; i < input.length; ++i)
+                {
+                    input[i] = random.nextDouble(-2.0, 2.0);
+                }
+                network.computeFor(input, expected);
+                success &= isDistribution(expected);
+                for (Network copy : loaded)
+                {
+                    copy.computeFor(input, output);
+                    for (int o = 0; o < output.length; ++o)
+                    {
+                        success &= Math.abs(output[o] - expected[o]) < 1e-12;
+                    }
+                    success &= copy.getActivations().equals(activations);
+                }
+                quantized.computeFor(input, output);
+                success &= isDistribution(output);
+                for (int o = 0; o < output.length; ++o)
+                {
+                    success &= Math.abs(output[o] - expected[o]) < 0.05;
+                }
+            }
+            return success;
+        }
+        finally
+        {
+            Files.deleteIfExists(text);
+            Files.deleteIfExists(binary);
+            Files.delete(directory);
+        }
+    }
+
+    /**
+     * Trains a classifier with the specified output layer until it reaches
+     * the target accuracy.
+     *
+     * @param output the transfer function of the output layer.
+     * @param seed the seed of the records.
+     * @return the number of epochs, or {@code EPOCHS + 1} if the classifier
+     *         does not reach the target accuracy.
+     * @throws Exception if the training fails.
+     */
+    private static int epochsToTarget(Activation output, long seed) throws Exception
+    {
+        Random random = new Random(seed);
+        ArrayRecord[] training = Fixtures.images(random, TRAINING, CLASSIFIER_TOPOLOGY.getFirst(), WIDTH, -1.0,
+                0.05, false);
+        ArrayRecord[] tests = Fixtures.images(random, TESTS, CLASSIFIER_TOPOLOGY.getFirst(), WIDTH, -1.0, 0.05,
+                false);
+
+        Network network = new Network(CLASSIFIER_TOPOLOGY, 0.01, Precision.DOUBLE,
+                List.of(Activation.LINEAR, Activation.TANH, output));
+        ArrayRecord[] batch = new ArrayRecord[BATCH_SIZE];
+        for (int epoch = 1; epoch <= EPOCHS; ++epoch)
+        {
+            for (int from = 0; from < TRAINING; from += BATCH_SIZE)
+            {
+                System.arraycopy(training, from, batch, 0, BATCH_SIZE);
+                network.trainBatch(batch, BATCH_SIZE);
+            }
+            if (Fixtures.accuracy(network, tests) >= TARGET)
+            {
+                return epoch;
+            }
+        }
+        return EPOCHS + 1;
+    }
+
+    /**
+     * Describes a number of epochs to reach the target accuracy.
+     *
+     * @param epochs the number of epochs, {@code EPOCHS + 1} if the target
+     *        accuracy is not reached.
+     * @return the description of the number of epochs.
+     */
+    private static String describe(int epochs)
+    {
+        return (epochs <= EPOCHS) ? "%d".formatted(epochs) : "more than %d".formatted(EPOCHS);
+    }
+
+    /**
+     * The entry point of the application.
+     *
+     * @param args the command-line arguments.
+     */
+    public static void main(String... args)
+    {
+        try
+        {
+            Layer.setParallel(false);
+            Random random = new Random(0);
+            double gradientError = Fixtures.gradientError(random, SMALL_TOPOLOGY,
+                    List.of(Activation.LINEAR, Activation.TANH, Activation.SOFTMAX), new double[] { 0.0, 1.0, 0.0 });
+            System.out.println("Relative gradient error of the cross-entropy: %.1e".formatted(gradientError));
+            boolean success = gradientError < 1e-6;
+            success &= computeInParallel(random);
+            success &= saveAndLoad(random);
+
+            int squaredErrorEpochs = 0;
+            int crossEntropyEpochs = 0;
+            for (int run = 0; run < RUNS; ++run)
+            {
+                int squaredError = epochsToTarget(Activation.TANH, run);
+                int crossEntropy = epochsToTarget(Activation.SOFTMAX, run);
+                System.out.println(("Run %d: %.0f%% accuracy in %s epoch(s) with tanh and the squared error, "
+                        + "in %s with softmax and the cross-entropy").formatted(run, 100.0 * TARGET,
+                        describe(squaredError), describe(crossEntropy)));
+                squaredErrorEpochs += squaredError;
+                crossEntropyEpochs += crossEntropy;
+                success &= crossEntropy <= EPOCHS;
+            }
+            success &= crossEntropyEpochs < squaredErrorEpochs;
+            System.out.println(success ? "The softmax output trains on the cross-entropy in fewer epochs."
+                    : "The softmax output DOES NOT train on the cross-entropy in fewer epochs!");
+        }
+        catch (Exception e)
+        {
+            System.err.println(e);
+        }
+    }
+}
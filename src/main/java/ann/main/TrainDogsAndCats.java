@@ -1,14 +1,11 @@
 package ann.main;
 
 import java.awt.image.BufferedImage;
-import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import javax.imageio.ImageIO;
 import ann.neuralnetwork.*;
 
 /**
@@ -31,52 +28,138 @@ public class TrainDogsAndCats
      * The height of the images.
      */
     public static final int HEIGHT = 375;
+    /**
+     * The number of images in a training batch.
+     */
+    public static final int BATCH_SIZE = 32;
 
     /**
-     * The image to classify.
+     * The directory of the images.
+     */
+    private static final String DIRECTORY = "C:/Users/Użytkownik/Pictures/Cats & Dogs/";
+    /**
+     * The number of images of each kind in an epoch.
+     */
+    private static final int IMAGES = 1000;
+    /**
+     * The number of threads decoding the images.
+     */
+    private static final int DECODERS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    /**
+     * The number of images decoded ahead of the training, on top of a batch.
+     */
+    private static final int PREFETCH = 2 * BATCH_SIZE;
+    /**
+     * The path of the cache of the decoded images.
+     */
+    private static final Path CACHE = Paths.get("dogs-and-cats.annd");
+    /**
+     * The seed of the order of the images and of the validation split.
+     */
+    private static final long SEED = 2024;
+    /**
+     * The fraction of the images kept for validation.
+     */
+    private static final double VALIDATION = 0.1;
+    /**
+     * The conversion of the images to inputs. The cache is made again when it
+     * changes.
+     */
+    private static final ImagePreprocessor PREPROCESSOR = new ImagePreprocessor(WIDTH, HEIGHT,
+            ImagePreprocessor.Color.PACKED_RGB);
+    /**
+     * The number of checkpoints of the network retained.
+     */
+    private static final int CHECKPOINTS = 3;
+    /**
+     * The number of checkpoints from a full one to the next, the ones in
+     * between being deltas.
+     */
+    private static final int BASE_INTERVAL = 5;
+    /**
+     * The largest difference allowed between a weight and its value restored
+     * from a delta checkpoint.
+     */
+    private static final double DELTA_TOLERANCE = 1e-6;
+
+    /**
+     * The desired output for a cat.
+     */
+    private static final double[] CAT = {1.0, 0.0};
+    /**
+     * The desired output for a dog.
+     */
+    private static final double[] DOG = {0.0, 1.0};
+
+    /**
+     * Returns the path of the image of the specified index of the training
+     * sequence, in which the cats and the dogs alternate.
+     *
+     * @param index the index of the image in the training sequence.
+     * @return the path of the image.
      */
-    private static BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_3BYTE_BGR);
+    private static Path getSource(int index)
+    {
+        return Paths.get(DIRECTORY, "%s/%d.jpg".formatted(index % 2 == 0 ? "Cats" : "Dogs", index / 2));
+    }
 
     /**
-     * Returns the pixels of the image.
+     * Loads the image of the specified index of the training sequence into
+     * the specified record along with its label. The method may be called
+     * concurrently.
      *
-     * @return the pixels of the image.
+     * @param index the index of the image in the training sequence.
+     * @param record the record to fill.
+     * @return true if the image was loaded successfully, false otherwise.
      */
-    public static List<Double> getPixels()
+    private static boolean loadRecord(int index, ArrayRecord record)
     {
-        List<Double> pixels = new ArrayList<>(WIDTH * HEIGHT);
-        for (int i = 0; i < WIDTH; ++i)
+        Path path = getSource(index);
+        try
         {
-            for (int j = 0; j < HEIGHT; ++j)
+            BufferedImage image = PREPROCESSOR.read(path);
+            if (image == null)
             {
-                int color = image.getRGB(i, j) & 0x00FFFFFF;
-                double value = (double) color / (double) 0x00FFFFFF;
-                pixels.add(value);
+                throw new Exception("not an image");
             }
+            PREPROCESSOR.getPixels(image, record.getInputs());
         }
-        return pixels;
+        catch (Exception e)
+        {
+            System.err.println("\nImage %s was not loaded! %s".formatted(path, e.getMessage()));
+            return false;
+        }
+        double[] label = (index % 2 == 0) ? CAT : DOG;
+        System.arraycopy(label, 0, record.getOutputs(), 0, label.length);
+        return true;
     }
 
     /**
-     * Loads an image from the specified path.
+     * Opens the cache of the decoded images, decoding the images into it
+     * first if the cache is missing or if the images or their preprocessing
+     * changed since it was made.
      *
-     * @param path the path of the image.
-     * @return true if the image was loaded successfully, false otherwise.
+     * @param inputSize the size of the input layer.
+     * @param outputSize the size of the output layer.
+     * @return the cache.
+     * @throws Exception if the images cannot be decoded or the cache cannot be
+     *         written or read.
      */
-    public static boolean loadImage(String path)
+    private static DatasetCache openCache(int inputSize, int outputSize) throws Exception
     {
-        boolean success = true;
-        try
+        List<Path> sources = new ArrayList<>(2 * IMAGES);
+        for (int i = 0; i < 2 * IMAGES; ++i)
         {
-            InputStream stream = Files.newInputStream(Paths.get(path));
-            image = ImageIO.read(stream);
+            sources.add(getSource(i));
         }
-        catch (IOException e)
+        byte[] fingerprint = DatasetCache.fingerprint(PREPROCESSOR.toString(), sources);
+        if (!DatasetCache.isValid(CACHE, fingerprint, inputSize, outputSize))
         {
-            image = null;
-            success = false;
+            System.out.println("decoding the images into %s".formatted(CACHE));
+            DatasetCache.compile(CACHE, fingerprint, TrainDogsAndCats::loadRecord, sources.size(), inputSize,
+                    outputSize, DECODERS);
         }
-        return success;
+        return new DatasetCache(CACHE);
     }
 
     /**
@@ -88,58 +171,119 @@ public class TrainDogsAndCats
     {
         System.out.println("Train Dogs & Cats");
         
-        int inputSize = WIDTH * HEIGHT;
+        int inputSize = PREPROCESSOR.getInputSize();
         int outputSize = 2;
         int hiddenSize = 100;
         
         Backup source = new Backup();
-        source.readFromFile("dogs-and-cats-net.txt");
-        //Network network = new Network(Arrays.asList(inputSize, hiddenSize, outputSize), 0.01);
+        if (!source.readFromFile("dogs-and-cats-net.txt") || source.getTopology().getFirst() != inputSize)
+        {
+            /* The saved network does not fit the preprocessing, a new one is trained. */
+            source = new Network(Arrays.asList(inputSize, hiddenSize, outputSize), 0.01).serialize();
+        }
         
+        int firstEpoch = 40;
+        int lastEpoch = 50;
+        DatasetCache cache;
         try
         {
-            Network network = new Network(source);
-            for (int epoch = 40; epoch < 50; ++epoch)
+            cache = openCache(inputSize, outputSize);
+        }
+        catch (Exception e)
+        {
+            System.err.println(e);
+            return;
+        }
+        Sampler[] samplers = Sampler.stratified(cache, SEED).split(VALIDATION);
+        Sampler training = samplers[0];
+        Sampler validation = samplers[1];
+        int records = training.size();
+        DataPipeline.Loader loader = (index, record) ->
+        {
+            cache.read(training.get(firstEpoch + index / records, index % records), record);
+            return true;
+        };
+
+        try (ParallelTrainer trainer = new ParallelTrainer(new Network(source),
+                Runtime.getRuntime().availableProcessors());
+                DataPipeline pipeline = new DataPipeline(loader, (lastEpoch - firstEpoch) * records, inputSize,
+                        outputSize, DECODERS, BATCH_SIZE + PREFETCH);
+                Checkpointer checkpointer = new Checkpointer(CHECKPOINTS, BASE_INTERVAL, DELTA_TOLERANCE))
+        {
+            Network network = trainer.getNetwork();
+            network.getMetrics().register("dogs-and-cats");
+            ArrayRecord[] batch = new ArrayRecord[BATCH_SIZE];
+            int count = 0;
+            for (int epoch = firstEpoch; epoch < lastEpoch; ++epoch)
             {
                 System.out.println("-------------------- EPOCH %d --------------------".formatted(epoch));
+                long waitingTime = pipeline.getWaitingTime();
+                long start = System.nanoTime();
                 
                 /* Training */
                 
-                for (int i = 0; i < 1000; ++i)
+                for (int i = 0; i < records; ++i)
                 {
-                    System.out.print(String.format("%3d ", i));
-                    if (i % 50 == 49)
-                    {
-                        System.out.println();
-                    }
-                    
-                    /* Cat */
-                    if (loadImage("C:/Users/Użytkownik/Pictures/Cats & Dogs/Cats/%d.jpg".formatted(i)))
-                    {
-                        IORecord record = new IORecord(getPixels(), Arrays.asList(1.0, 0.0));
-                        network.trainRecord(record);
-                    }
-                    else
+                    if (i % 2 == 0)
                     {
-                        System.err.println("\nImage Cats/%d.jpg was not loaded!".formatted(i));
+                        System.out.print(String.format("%3d ", i / 2));
+                        if (i / 2 % 50 == 49)
+                        {
+                            System.out.println("| " + network.getMetrics());
+                        }
                     }
 
-                    /* Dog */
-                    if (loadImage("C:/Users/Użytkownik/Pictures/Cats & Dogs/Dogs/%d.jpg".formatted(i)))
+                    ArrayRecord record = pipeline.next();
+                    if (record != null)
                     {
-                        IORecord record = new IORecord(getPixels(), Arrays.asList(0.0, 1.0));
-                        network.trainRecord(record);
+                        batch[count++] = record;
                     }
-                    else
+                    if (count == BATCH_SIZE)
                     {
-                        System.err.println("\nImage Dogs/%d.jpg was not loaded!".formatted(i));
+                        trainer.trainBatch(batch, count);
+                        pipeline.release(batch, count);
+                        count = 0;
                     }
                 }
+                trainer.trainBatch(batch, count);
+                pipeline.release(batch, count);
+                count = 0;
+
+                System.out.println("waited for images %.1f s of %.1f s".formatted(
+                        (pipeline.getWaitingTime() - waitingTime) * 1e-9, (System.nanoTime() - start) * 1e-9));
 
-                Backup backup = network.serialize();
-                backup.saveToFile("network (%02d).txt".formatted(epoch));
-                System.out.println("\nbackuping");
+                /* Validation */
+
+                double error = 0.0;
+                ArrayRecord buffer = new ArrayRecord(inputSize, outputSize);
+                for (int p = 0; p < validation.size(); ++p)
+                {
+                    error += network.testRecord(cache.read(validation.get(epoch, p), buffer));
+                }
+                System.out.println("validation error = %.6f".formatted(error / Math.max(1, validation.size())));
+                long snapshotTime = checkpointer.getSnapshotTime();
+                checkpointer.checkpoint(network, Paths.get("network (%02d).annb".formatted(epoch)));
+                System.out.println("backuping, stopped the training for %.1f ms".formatted(
+                        (checkpointer.getSnapshotTime() - snapshotTime) * 1e-6));
+            }
+            checkpointer.await();
+
+            /* Quantization for serving */
+
+            QuantizedNetwork quantized = new QuantizedNetwork(network);
+            QuantizationReport report = new QuantizationReport();
+            ArrayRecord buffer = new ArrayRecord(inputSize, outputSize);
+            double[] output = new double[outputSize];
+            double[] quantizedOutput = new double[outputSize];
+            for (int p = 0; p < validation.size(); ++p)
+            {
+                int index = validation.get(lastEpoch, p);
+                ArrayRecord record = cache.read(index, buffer);
+                network.computeFor(record.getInputs(), output);
+                quantized.computeFor(record.getInputs(), quantizedOutput);
+                report.add(output, quantizedOutput, cache.getLabel(index));
             }
+            System.out.println("int8 inference on the validation images: " + report);
         }
         catch (Exception e)
         {
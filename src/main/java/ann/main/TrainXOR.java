@@ -2,9 +2,11 @@ package ann.main;
 
 import java.util.Arrays;
 import java.util.List;
+import ann.neuralnetwork.ArrayDataset;
 import ann.neuralnetwork.Backup;
 import ann.neuralnetwork.IORecord;
 import ann.neuralnetwork.Network;
+import ann.neuralnetwork.Sampler;
 
 /**
  * Trains a neural network to solve the XOR problem.
@@ -41,12 +43,14 @@ public class TrainXOR
         );
         try
         {
-            /* Train. */
+            /* Train, in a new order in each epoch. */
+            ArrayDataset dataset = ArrayDataset.of(records);
+            Sampler sampler = new Sampler(dataset.getCount(), 0);
             for (int epoch = 0; epoch < 1000; ++epoch)
             {
-                for (var record : records)
+                for (int position = 0; position < sampler.size(); ++position)
                 {
-                    network.trainRecord(record);
+                    network.trainRecord(dataset.read(sampler.get(epoch, position), null));
                 }
             }
             
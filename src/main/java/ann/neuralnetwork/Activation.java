@@ -0,0 +1,63 @@
+package ann.neuralnetwork;
+
+/**
+ * Lists the transfer functions a layer can pass the values of its neurons
+ * through.
+ * <p>
+ * Each layer has one transfer function, chosen when the network is
+ * constructed, and applies it to whole ranges of values at once, so that each
+ * loop calls a single function which the JIT compiler inlines. The
+ * derivative of each function is computed from its output, except for the
+ * softmax, whose gradient is fused with that of the cross-entropy.
+ * <p>
+ * The weights of a layer whose transfer function is a rectifier are drawn
+ * with a variance of two over the number of its inputs, and those of the
+ * other layers with a variance of one over it.
+ */
+public enum Activation
+{
+    /**
+     * The hyperbolic tangent, as computed by {@link Math#tanh(double)}.
+     */
+    TANH,
+    /**
+     * The logistic function {@code 1 / (1 + exp(-x))}.
+     */
+    SIGMOID,
+    /**
+     * The rectifier {@code max(0, x)}.
+     */
+    RELU,
+    /**
+     * The leaky rectifier, {@code x} for positive values and {@code 0.01 x}
+     * otherwise.
+     */
+    LEAKY_RELU,
+    /**
+     * The identity, typically for an output layer fitting unbounded values.
+     */
+    LINEAR,
+    /**
+     * The normalized exponential {@code exp(x_j) / sum(exp(x_k))} over the
+     * neurons of the layer, whose outputs are the probabilities of the
+     * classes. It is only allowed on the output layer, whose error is then
+     * the cross-entropy of the outputs with the desired probabilities instead
+     * of the squared error.
+     */
+    SOFTMAX,
+    /**
+     * A fast rational approximation of the hyperbolic tangent, within 3e-7
+     * of it, whose derivative is taken as that of the hyperbolic tangent.
+     */
+    FAST_TANH;
+
+    /**
+     * Checks whether the transfer function is a rectifier.
+     *
+     * @return true for {@code RELU} and {@code LEAKY_RELU}.
+     */
+    boolean isRectifier()
+    {
+        return this == RELU || this == LEAKY_RELU;
+    }
+}
@@ -0,0 +1,340 @@
+package ann.neuralnetwork;
+
+/**
+ * Contains the kernels of the transfer functions of the neurons, applied to
+ * ranges of flat arrays of values.
+ * <p>
+ * The transfer function is evaluated once per neuron and sample, in the
+ * forward pass. Its derivative is computed from the output value kept by the
+ * layer, for instance {@code 1 - y * y} for {@code y = tanh(x)}, so the
+ * backward pass does not evaluate the transfer function again. The softmax
+ * and the cross-entropy are differentiated together, their combined gradient
+ * being the difference between the outputs and the targets. The kernels
+ * switch on the {@link Activation} once per range, each case being a loop
+ * calling a single function.
+ * <p>
+ * The exact kernel calls {@link Math#tanh(double)}. The fast kernel evaluates
+ * a rational approximation, an odd polynomial of degree 13 divided by an even
+ * polynomial of degree 6, on the input clamped to [-7.9053, 7.9053], which
+ * stays within {@link #FAST_TANH_ERROR} of the hyperbolic tangent everywhere.
+ * Its loop has no branch, so the JIT compiler can vectorize it.
+ */
+final class Activations
+{
+    /**
+     * The largest difference between the fast and the exact hyperbolic
+     * tangent.
+     */
+    static final double FAST_TANH_ERROR = 3e-7;
+    /**
+     * The magnitude beyond which the input of the fast hyperbolic tangent is
+     * clamped.
+     */
+    private static final double CLAMP = 7.90531110763549805;
+    /**
+     * The coefficient of the first power in the numerator of the fast
+     * hyperbolic tangent.
+     */
+    private static final double A1 = 4.89352455891786e-03;
+    /**
+     * The coefficient of the third power in the numerator.
+     */
+    private static final double A3 = 6.37261928875436e-04;
+    /**
+     * The coefficient of the fifth power in the numerator.
+     */
+    private static final double A5 = 1.48572235717979e-05;
+    /**
+     * The coefficient of the seventh power in the numerator.
+     */
+    private static final double A7 = 5.12229709037114e-08;
+    /**
+     * The coefficient of the ninth power in the numerator.
+     */
+    private static final double A9 = -8.60467152213735e-11;
+    /**
+     * The coefficient of the eleventh power in the numerator.
+     */
+    private static final double A11 = 2.00018790482477e-13;
+    /**
+     * The coefficient of the thirteenth power in the numerator.
+     */
+    private static final double A13 = -2.76076847742355e-16;
+    /**
+     * The constant coefficient of the denominator of the fast hyperbolic
+     * tangent.
+     */
+    private static final double B0 = 4.89352518554385e-03;
+    /**
+     * The coefficient of the second power in the denominator.
+     */
+    private static final double B2 = 2.26843463243900e-03;
+    /**
+     * The coefficient of the fourth power in the denominator.
+     */
+    private static final double B4 = 1.18534705686654e-04;
+    /**
+     * The coefficient of the sixth power in the denominator.
+     */
+    private static final double B6 = 1.19825839466702e-06;
+    /**
+     * The slope of the leaky rectifier for negative values.
+     */
+    static final double LEAKY_SLOPE = 0.01;
+
+    /**
+     * Prevents instantiation.
+     */
+    private Activations()
+    {
+    }
+
+    /**
+     * Computes an approximation of the hyperbolic tangent.
+     *
+     * @param x the input value.
+     * @return the approximate hyperbolic tangent of the input.
+     */
+    static double fastTanh(double x)
+    {
+        double clamped = Math.max(-CLAMP, Math.min(CLAMP, x));
+        double square = clamped * clamped;
+        double numerator = ((((((A13 * square + A11) * square + A9) * square + A7) * square + A5) * square + A3)
+                * square + A1) * clamped;
+        double denominator = ((B6 * square + B4) * square + B2) * square + B0;
+        return numerator / denominator;
+    }
+
+    /**
+     * Passes the specified range of input values through the specified
+     * transfer function. For the softmax, the range is that of the values of
+     * one sample.
+     *
+     * @param activation the transfer function.
+     * @param inputs the input values.
+     * @param outputs the array receiving the output values.
+     * @param from the first value, inclusive.
+     * @param to the last value, exclusive.
+     */
+    static void apply(Activation activation, double[] inputs, double[] outputs, int from, int to)
+    {
+        switch (activation)
+        {
+            case TANH -> tanh(inputs, outputs, from, to, false);
+            case FAST_TANH -> tanh(inputs, outputs, from, to, true);
+            case SIGMOID ->
+            {
+                for (int k = from; k < to; ++k)
+                {
+                    outputs[k] = sigmoid(inputs[k]);
+                }
+            }
+            case RELU ->
+            {
+                for (int k = from; k < to; ++k)
+                {
+                    outputs[k] = Math.max(0.0, inputs[k]);
+                }
+            }
+            case LEAKY_RELU ->
+            {
+                for (int k = from; k < to; ++k)
+                {
+                    outputs[k] = Math.max(inputs[k], LEAKY_SLOPE * inputs[k]);
+                }
+            }
+            case LINEAR -> System.arraycopy(inputs, from, outputs, from, to - from);
+            case SOFTMAX -> softmax(inputs, outputs, from, to);
+        }
+    }
+
+    /**
+     * Passes the specified range of input values through the softmax. The
+     * largest input is subtracted from all of them first, which leaves the
+     * outputs unchanged but keeps the exponentials from overflowing.
+     *
+     * @param inputs the input values.
+     * @param outputs the array receiving the output values.
+     * @param from the first value, inclusive.
+     * @param to the last value, exclusive.
+     */
+    static void softmax(double[] inputs, double[] outputs, int from, int to)
+    {
+        double largest = Double.NEGATIVE_INFINITY;
+        for (int k = from; k < to; ++k)
+        {
+            largest = Math.max(largest, inputs[k]);
+        }
+        double sum = 0.0;
+        for (int k = from; k < to; ++k)
+        {
+            outputs[k] = Math.exp(inputs[k] - largest);
+            sum += outputs[k];
+        }
+        double scale = 1.0 / sum;
+        for (int k = from; k < to; ++k)
+        {
+            outputs[k] *= scale;
+        }
+    }
+
+    /**
+     * Computes the logistic function.
+     *
+     * @param x the input value.
+     * @return the logistic function of the input.
+     */
+    private static double sigmoid(double x)
+    {
+        return 1.0 / (1.0 + Math.exp(-x));
+    }
+
+    /**
+     * Passes the specified range of input values through the hyperbolic
+     * tangent.
+     *
+     * @param inputs the input values.
+     * @param outputs the array receiving the output values.
+     * @param from the first value, inclusive.
+     * @param to the last value, exclusive.
+     * @param fast true to use the fast approximation, false to use
+     *        {@link Math#tanh(double)}.
+     */
+    static void tanh(double[] inputs, double[] outputs, int from, int to, boolean fast)
+    {
+        if (fast)
+        {
+            for (int k = from; k < to; ++k)
+            {
+                outputs[k] = fastTanh(inputs[k]);
+            }
+        }
+        else
+        {
+            for (int k = from; k < to; ++k)
+            {
+                outputs[k] = Math.tanh(inputs[k]);
+            }
+        }
+    }
+
+    /**
+     * Returns the derivative of the hyperbolic tangent from its output.
+     *
+     * @param y the output value, the hyperbolic tangent of the input.
+     * @return the derivative at the input.
+     */
+    static double tanhDerivative(double y)
+    {
+        return 1.0 - y * y;
+    }
+
+    /**
+     * Returns the derivative of the specified transfer function from its
+     * output. For the softmax, it is the derivative of an output with respect
+     * to its own input only.
+     *
+     * @param activation the transfer function.
+     * @param y the output value.
+     * @return the derivative at the input.
+     */
+    static double derivative(Activation activation, double y)
+    {
+        return switch (activation)
+        {
+            case TANH, FAST_TANH -> tanhDerivative(y);
+            case SIGMOID -> y * (1.0 - y);
+            case RELU -> (y > 0.0) ? 1.0 : 0.0;
+            case LEAKY_RELU -> (y > 0.0) ? 1.0 : LEAKY_SLOPE;
+            case LINEAR -> 1.0;
+            case SOFTMAX -> y * (1.0 - y);
+        };
+    }
+
+    /**
+     * Multiplies the specified range of gradients by the derivative of the
+     * specified transfer function, computed from the output values. The
+     * softmax being only allowed on the output layer, its case is never used
+     * on hidden gradients.
+     *
+     * @param activation the transfer function.
+     * @param gradients the gradients.
+     * @param outputs the output values.
+     * @param from the first value, inclusive.
+     * @param to the last value, exclusive.
+     */
+    static void multiplyDerivative(Activation activation, double[] gradients, double[] outputs, int from, int to)
+    {
+        switch (activation)
+        {
+            case TANH, FAST_TANH ->
+            {
+                for (int k = from; k < to; ++k)
+                {
+                    gradients[k] *= tanhDerivative(outputs[k]);
+                }
+            }
+            case SIGMOID, SOFTMAX ->
+            {
+                for (int k = from; k < to; ++k)
+                {
+                    gradients[k] *= outputs[k] * (1.0 - outputs[k]);
+                }
+            }
+            case RELU ->
+            {
+                for (int k = from; k < to; ++k)
+                {
+                    gradients[k] = (outputs[k] > 0.0) ? gradients[k] : 0.0;
+                }
+            }
+            case LEAKY_RELU ->
+            {
+                for (int k = from; k < to; ++k)
+                {
+                    gradients[k] *= (outputs[k] > 0.0) ? 1.0 : LEAKY_SLOPE;
+                }
+            }
+            case LINEAR ->
+            {
+            }
+        }
+    }
+
+    /**
+     * Returns the term of the cross-entropy for one class.
+     *
+     * @param target the desired probability of the class.
+     * @param p the probability of the class computed by the softmax.
+     * @return {@code -target * log(p)}, zero when the target is, and finite
+     *         when the probability has underflowed to zero.
+     */
+    static double crossEntropy(double target, double p)
+    {
+        return (target != 0.0) ? -target * Math.log(Math.max(p, Double.MIN_NORMAL)) : 0.0;
+    }
+
+    /**
+     * Computes in one pass the gradients of the cross-entropy of the softmax
+     * of a sample with respect to the inputs of the softmax, which are the
+     * differences {@code p - target} when the targets sum to one, and the
+     * cross-entropy itself.
+     *
+     * @param outputs the probabilities computed by the softmax.
+     * @param targets the desired probabilities of the sample.
+     * @param gradients the array receiving the gradients.
+     * @param offset the index of the first output of the sample.
+     * @return the cross-entropy of the sample.
+     */
+    static double softmaxCrossEntropy(double[] outputs, double[] targets, double[] gradients, int offset)
+    {
+        double error = 0.0;
+        for (int j = 0; j < targets.length; ++j)
+        {
+            double p = outputs[offset + j];
+            gradients[offset + j] = p - targets[j];
+            error += crossEntropy(targets[j], p);
+        }
+        return error;
+    }
+}
@@ -0,0 +1,142 @@
+package ann.neuralnetwork;
+
+import java.util.List;
+
+/**
+ * Represents a dataset whose records are kept in memory as array records.
+ */
+public final class ArrayDataset implements Dataset
+{
+    /**
+     * The records.
+     */
+    private final ArrayRecord[] records;
+    /**
+     * The number of inputs of a record.
+     */
+    private final int inputSize;
+    /**
+     * The number of outputs of a record.
+     */
+    private final int outputSize;
+
+    /**
+     * Constructs a new dataset of the specified records, without copying them.
+     *
+     * @param records the records, all of the same sizes.
+     * @throws Exception if the records are of different sizes or there are none.
+     */
+    public ArrayDataset(ArrayRecord... records) throws Exception
+    {
+        if (records.length == 0)
+        {
+            throw new Exception("ArrayDataset : no records");
+        }
+        this.records = records;
+        inputSize = records[0].getInputs().length;
+        outputSize = records[0].getOutputs().length;
+        for (var record : records)
+        {
+            if (record.getInputs().length != inputSize || record.getOutputs().length != outputSize)
+            {
+                throw new Exception("ArrayDataset : incompatible vectors");
+            }
+        }
+    }
+
+    /**
+     * Constructs a new dataset of the values of the specified records.
+     *
+     * @param records the records, all of the same sizes.
+     * @return the dataset.
+     * @throws Exception if the records are of different sizes or there are none.
+     */
+    public static ArrayDataset of(List<IORecord> records) throws Exception
+    {
+        ArrayRecord[] arrays = new ArrayRecord[records.size()];
+        for (int r = 0; r < arrays.length; ++r)
+        {
+            List<Double> inputs = records.get(r).getInputs();
+            List<Double> outputs = records.get(r).getOutputs();
+            arrays[r] = new ArrayRecord(inputs.size(), outputs.size());
+            for (int i = 0; i < inputs.size(); ++i)
+            {
+                arrays[r].getInputs()[i] = inputs.get(i);
+            }
+            for (int o = 0; o < outputs.size(); ++o)
+            {
+                arrays[r].getOutputs()[o] = outputs.get(o);
+            }
+        }
+        return new ArrayDataset(arrays);
+    }
+
+    /**
+     * Returns the number of records.
+     *
+     * @return the number of records.
+     */
+    @Override
+    public int getCount()
+    {
+        return records.length;
+    }
+
+    /**
+     * Returns the number of inputs of a record.
+     *
+     * @return the number of inputs.
+     */
+    @Override
+    public int getInputSize()
+    {
+        return inputSize;
+    }
+
+    /**
+     * Returns the number of outputs of a record.
+     *
+     * @return the number of outputs.
+     */
+    @Override
+    public int getOutputSize()
+    {
+        return outputSize;
+    }
+
+    /**
+     * Gives the record of the specified index itself, leaving the buffer
+     * untouched.
+     *
+     * @param index the index of the record.
+     * @param buffer the unused buffer.
+     * @return the record.
+     */
+    @Override
+    public ArrayRecord read(int index, ArrayRecord buffer)
+    {
+        return records[index];
+    }
+
+    /**
+     * Returns the class of the record of the specified index, which is the
+     * index of its greatest output.
+     *
+     * @param index the index of the record.
+     * @return the class of the record.
+     */
+    @Override
+    public int getLabel(int index)
+    {
+        double[] outputs = records[index].getOutputs();
+        int label = 0;
+        for (int o = 1; o < outputs.length; ++o)
+        {
+            if (outputs[o] > outputs[label])
+            {
+                label = o;
+            }
+        }
+        return label;
+    }
+}
@@ -0,0 +1,64 @@
+package ann.neuralnetwork;
+
+/**
+ * Represents a single input-output record for a neural network, with the
+ * values kept in primitive arrays.
+ * <p>
+ * Unlike {@link IORecord}, the record does not box its values, and its
+ * arrays may be filled again to reuse the record for another sample.
+ */
+public class ArrayRecord
+{
+    /**
+     * The input values of the record.
+     */
+    private final double[] inputs;
+    /**
+     * The output values of the record.
+     */
+    private final double[] outputs;
+
+    /**
+     * Constructs a new input-output record with the specified input and output values.
+     * The record refers to the arrays directly, without copying them.
+     *
+     * @param inputs the input values.
+     * @param outputs the output values.
+     */
+    public ArrayRecord(double[] inputs, double[] outputs)
+    {
+        this.inputs = inputs;
+        this.outputs = outputs;
+    }
+
+    /**
+     * Constructs a new input-output record with zeroed values of the specified sizes.
+     *
+     * @param inputSize the number of input values.
+     * @param outputSize the number of output values.
+     */
+    public ArrayRecord(int inputSize, int outputSize)
+    {
+        this(new double[inputSize], new double[outputSize]);
+    }
+
+    /**
+     * Returns the input values of the record.
+     *
+     * @return the input values.
+     */
+    public double[] getInputs()
+    {
+        return inputs;
+    }
+
+    /**
+     * Returns the output values of the record.
+     *
+     * @return the output values.
+     */
+    public double[] getOutputs()
+    {
+        return outputs;
+    }
+}
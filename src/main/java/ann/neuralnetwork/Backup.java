@@ -3,13 +3,32 @@ package ann.neuralnetwork;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Scanner;
 
 /**
  * Represents a backup of a neural network.
+ * <p>
+ * A backup can be saved as text or in the binary format described in
+ * {@link BinaryModel}. Reading detects the format of the file, and also
+ * restores the delta checkpoints of {@link DeltaModel}. In the text format, a
+ * precision other than double follows the learning rate, and then, unless
+ * all layers use the hyperbolic tangent, {@code ACTIVATIONS} and the
+ * {@link Activation} of each layer.
+ * <p>
+ * The backup of a pruned network also holds the connections kept by each
+ * neuron of its pruned layers, the weights of the pruned connections being
+ * zero. Both formats then store only the kept connections: in the text
+ * format, {@code SPARSE} and 1 for each pruned layer or 0 otherwise follow
+ * the learning rate, the precision and the activations, and each neuron of a pruned layer is
+ * written as the number of its connections, each input followed by its
+ * weight, and the bias.
  */
 public class Backup
 {
@@ -21,10 +40,24 @@ public class Backup
      * The learning rate of the network.
      */
     private double learningRate;
+    /**
+     * The precision of the weights of the network.
+     */
+    private Precision precision = Precision.DOUBLE;
     /**
      * The connection weights of the network.
      */
     private List<List<List<Double>>> weights;
+    /**
+     * The inputs kept by each neuron of each layer, the input layer included,
+     * with null for a fully connected layer, or null if no layer is pruned.
+     */
+    private List<int[][]> connections;
+    /**
+     * The transfer function of each layer, or null if all are hyperbolic
+     * tangents.
+     */
+    private List<Activation> activations;
 
     /**
      * Constructs a new backup.
@@ -42,10 +75,68 @@ public class Backup
      * @param weights the connection weights of the network.
      */
     public Backup(List<Integer> topology, double learningRate, List<List<List<Double>>> weights)
+    {
+        this(topology, learningRate, Precision.DOUBLE, weights);
+    }
+
+    /**
+     * Constructs a new backup with the specified topology, learning rate, precision and connection weights.
+     *
+     * @param topology the topology of the network.
+     * @param learningRate the learning rate of the network.
+     * @param precision the precision of the weights of the network.
+     * @param weights the connection weights of the network.
+     */
+    public Backup(List<Integer> topology, double learningRate, Precision precision,
+            List<List<List<Double>>> weights)
+    {
+        this(topology, learningRate, precision, weights, null);
+    }
+
+    /**
+     * Constructs a new backup of a pruned network with the specified
+     * topology, learning rate, precision, connection weights and connections.
+     *
+     * @param topology the topology of the network.
+     * @param learningRate the learning rate of the network.
+     * @param precision the precision of the weights of the network.
+     * @param weights the connection weights of the network, zero for the
+     *        pruned connections.
+     * @param connections the increasing inputs kept by each neuron of each
+     *        layer, with null for a fully connected layer, or null if no
+     *        layer is pruned.
+     */
+    public Backup(List<Integer> topology, double learningRate, Precision precision,
+            List<List<List<Double>>> weights, List<int[][]> connections)
+    {
+        this(topology, learningRate, precision, weights, connections, null);
+    }
+
+    /**
+     * Constructs a new backup of a network, possibly pruned, with the
+     * specified topology, learning rate, precision, connection weights,
+     * connections and transfer functions.
+     *
+     * @param topology the topology of the network.
+     * @param learningRate the learning rate of the network.
+     * @param precision the precision of the weights of the network.
+     * @param weights the connection weights of the network, zero for the
+     *        pruned connections.
+     * @param connections the increasing inputs kept by each neuron of each
+     *        layer, with null for a fully connected layer, or null if no
+     *        layer is pruned.
+     * @param activations the transfer function of each layer, the input
+     *        layer included, or null if all are hyperbolic tangents.
+     */
+    public Backup(List<Integer> topology, double learningRate, Precision precision,
+            List<List<List<Double>>> weights, List<int[][]> connections, List<Activation> activations)
     {
         this.topology = topology;
         this.learningRate = learningRate;
+        this.precision = precision;
         this.weights = weights;
+        this.connections = connections;
+        this.activations = activations;
     }
 
     /**
@@ -68,6 +159,16 @@ public class Backup
         return learningRate;
     }
 
+    /**
+     * Returns the precision of the weights of the network.
+     *
+     * @return the precision of the weights of the network.
+     */
+    public Precision getPrecision()
+    {
+        return precision;
+    }
+
     /**
      * Returns the connection weights of the network.
      *
@@ -78,6 +179,48 @@ public class Backup
         return weights;
     }
 
+    /**
+     * Returns the connections kept by the neurons of the pruned layers.
+     *
+     * @return the increasing inputs kept by each neuron of each layer, with
+     *         null for a fully connected layer, or null if no layer is pruned.
+     */
+    public List<int[][]> getConnections()
+    {
+        return connections;
+    }
+
+    /**
+     * Returns the transfer functions of the layers.
+     *
+     * @return the transfer function of each layer, the input layer included.
+     */
+    public List<Activation> getActivations()
+    {
+        return (activations != null) ? activations : Collections.nCopies(topology.size(), Activation.TANH);
+    }
+
+    /**
+     * Checks whether all layers use the hyperbolic tangent.
+     *
+     * @return true if no layer uses another transfer function.
+     */
+    private boolean isTanh()
+    {
+        return Collections.frequency(getActivations(), Activation.TANH) == topology.size();
+    }
+
+    /**
+     * Checks whether the specified layer is pruned.
+     *
+     * @param layer the index of the layer.
+     * @return true if the layer is pruned.
+     */
+    private boolean isPruned(int layer)
+    {
+        return connections != null && connections.get(layer) != null;
+    }
+
     /**
      * Saves the backup to the specified file.
      *
@@ -98,6 +241,28 @@ public class Backup
             }
             writer.write("\r\n");
             writer.write(((Double) learningRate).toString());
+            if (precision != Precision.DOUBLE)
+            {
+                writer.write(" ");
+                writer.write(precision.name());
+            }
+            if (!isTanh())
+            {
+                writer.write(" ACTIVATIONS");
+                for (Activation activation : getActivations())
+                {
+                    writer.write(" ");
+                    writer.write(activation.name());
+                }
+            }
+            if (connections != null)
+            {
+                writer.write(" SPARSE");
+                for (int i = 0; i < topology.size(); ++i)
+                {
+                    writer.write(isPruned(i) ? " 1" : " 0");
+                }
+            }
             writer.write("\r\n\r\n\r\n");
             for (int i = 1; i < weights.size(); ++i)
             {
@@ -105,6 +270,22 @@ public class Backup
                 for (int j = 0; j < layer.size(); ++j)
                 {
                     List<Double> neuron = layer.get(j);
+                    if (isPruned(i))
+                    {
+                        int[] inputs = connections.get(i)[j];
+                        writer.write(((Integer) inputs.length).toString());
+                        writer.write(" ");
+                        for (int input : inputs)
+                        {
+                            writer.write(((Integer) input).toString());
+                            writer.write(" ");
+                            writer.write(neuron.get(input).toString());
+                            writer.write(" ");
+                        }
+                        writer.write(neuron.getLast().toString());
+                        writer.write(" \r\n");
+                        continue;
+                    }
                     for (int k = 0; k < neuron.size(); ++k)
                     {
                         Double connection = neuron.get(k);
@@ -124,12 +305,254 @@ public class Backup
     }
 
     /**
-     * Reads the backup from the specified file.
+     * Saves the backup to the specified file in the binary format.
+     *
+     * @param path the path of the file to save the backup to.
+     * @return true if the backup was saved successfully, false otherwise.
+     */
+    public boolean saveToBinaryFile(String path)
+    {
+        return saveToBinaryFile(path, WeightEncoding.NATIVE, false);
+    }
+
+    /**
+     * Exports the backup to the specified file in the binary format, with the
+     * weights in the specified encoding and optionally compressed.
+     *
+     * @param path the path of the file to save the backup to.
+     * @param encoding the encoding of the weights.
+     * @param compressed true to compress the weights and the biases, false
+     *        otherwise.
+     * @return true if the backup was saved successfully, false otherwise.
+     */
+    public boolean saveToBinaryFile(String path, WeightEncoding encoding, boolean compressed)
+    {
+        boolean success = true;
+        try (FileChannel channel = FileChannel.open(Path.of(path), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+        {
+            BinaryModel.Writer writer = new BinaryModel.Writer(channel);
+            boolean[] sparse = new boolean[topology.size()];
+            for (int i = 0; i < topology.size(); ++i)
+            {
+                sparse[i] = isPruned(i);
+            }
+            writer.writeHeader(topology, learningRate, precision, encoding, compressed, sparse, getActivations());
+            for (int i = 1; i < weights.size(); ++i)
+            {
+                List<List<Double>> layer = weights.get(i);
+                int columns = topology.get(i - 1);
+                double[] row = new double[columns];
+                float[] singleRow = new float[columns];
+                if (sparse[i])
+                {
+                    int[][] inputs = connections.get(i);
+                    int[] rowStarts = new int[inputs.length + 1];
+                    for (int j = 0; j < inputs.length; ++j)
+                    {
+                        rowStarts[j + 1] = rowStarts[j] + inputs[j].length;
+                    }
+                    int[] indices = new int[rowStarts[inputs.length]];
+                    for (int j = 0; j < inputs.length; ++j)
+                    {
+                        System.arraycopy(inputs[j], 0, indices, rowStarts[j], inputs[j].length);
+                    }
+                    writer.putConnections(rowStarts, indices);
+                }
+                for (int j = 0; j < layer.size(); ++j)
+                {
+                    List<Double> neuron = layer.get(j);
+                    int count = sparse[i] ? connections.get(i)[j].length : columns;
+                    for (int k = 0; k < count; ++k)
+                    {
+                        int input = sparse[i] ? connections.get(i)[j][k] : k;
+                        row[k] = neuron.get(input);
+                        singleRow[k] = neuron.get(input).floatValue();
+                    }
+                    if (precision.isSingle())
+                    {
+                        writer.putWeights(singleRow, 1, count);
+                    }
+                    else
+                    {
+                        writer.putWeights(row, 1, count);
+                    }
+                }
+                for (List<Double> neuron : layer)
+                {
+                    writer.putDouble(neuron.getLast());
+                }
+            }
+            writer.finish();
+        }
+        catch (IOException e)
+        {
+            success = false;
+        }
+        return success;
+    }
+
+    /**
+     * Reads the backup from the specified file, either in the text or in the
+     * binary format.
      *
      * @param path the path of the file to read the backup from.
      * @return true if the backup was read successfully, false otherwise.
      */
     public boolean readFromFile(String path)
+    {
+        try
+        {
+            if (BinaryModel.isBinary(Path.of(path)))
+            {
+                return readFromBinaryFile(path);
+            }
+            if (DeltaModel.isDelta(Path.of(path)))
+            {
+                return readFromDeltaFile(path);
+            }
+        }
+        catch (IOException e)
+        {
+            return false;
+        }
+        return readFromTextFile(path);
+    }
+
+    /**
+     * Reads the backup from the specified file in the binary format.
+     *
+     * @param path the path of the file to read the backup from.
+     * @return true if the backup was read successfully, false otherwise.
+     */
+    private boolean readFromBinaryFile(String path)
+    {
+        boolean success = true;
+        try
+        {
+            BinaryModel.Reader reader = BinaryModel.Reader.map(Path.of(path));
+            reader.readHeader();
+            topology = reader.getTopology();
+            learningRate = reader.getLearningRate();
+            precision = reader.getPrecision();
+            activations = reader.getActivations();
+            connections = null;
+
+            weights = new ArrayList<>(topology.size());
+            List<List<Double>> inputLayer = new ArrayList<>(topology.getFirst());
+            for (int j = 0; j < topology.getFirst(); ++j)
+            {
+                inputLayer.add(Arrays.asList(0.0));
+            }
+            weights.add(inputLayer);
+            for (int i = 1; i < topology.size(); ++i)
+            {
+                int thisLayerSize = topology.get(i);
+                int prevLayerSize = topology.get(i - 1);
+                List<List<Double>> layerWeights = new ArrayList<>(thisLayerSize);
+                double[] row = new double[prevLayerSize];
+                float[] singleRow = new float[prevLayerSize];
+                int[][] inputs = null;
+                if (reader.isSparse(i))
+                {
+                    int[] rowStarts = new int[thisLayerSize + 1];
+                    int[] indices = reader.getConnections(rowStarts, prevLayerSize);
+                    inputs = new int[thisLayerSize][];
+                    for (int j = 0; j < thisLayerSize; ++j)
+                    {
+                        inputs[j] = Arrays.copyOfRange(indices, rowStarts[j], rowStarts[j + 1]);
+                    }
+                    if (connections == null)
+                    {
+                        connections = new ArrayList<>(Collections.nCopies(topology.size(), null));
+                    }
+                    connections.set(i, inputs);
+                }
+                for (int j = 0; j < thisLayerSize; ++j)
+                {
+                    List<Double> neuronWeights = new ArrayList<>(prevLayerSize + 1);
+                    int count = (inputs != null) ? inputs[j].length : prevLayerSize;
+                    if (precision.isSingle())
+                    {
+                        reader.getWeights(singleRow, 1, count);
+                        for (int k = 0; k < count; ++k)
+                        {
+                            row[k] = singleRow[k];
+                        }
+                    }
+                    else
+                    {
+                        reader.getWeights(row, 1, count);
+                    }
+                    if (inputs != null)
+                    {
+                        for (int k = 0; k < prevLayerSize; ++k)
+                        {
+                            neuronWeights.add(0.0);
+                        }
+                        for (int k = 0; k < count; ++k)
+                        {
+                            neuronWeights.set(inputs[j][k], row[k]);
+                        }
+                    }
+                    else
+                    {
+                        for (int k = 0; k < prevLayerSize; ++k)
+                        {
+                            neuronWeights.add(row[k]);
+                        }
+                    }
+                    layerWeights.add(neuronWeights);
+                }
+                for (List<Double> neuronWeights : layerWeights)
+                {
+                    neuronWeights.add(reader.getDouble());
+                }
+                weights.add(layerWeights);
+            }
+            reader.checkEnd();
+        }
+        catch (Exception e)
+        {
+            success = false;
+        }
+        return success;
+    }
+
+    /**
+     * Reads the backup from the specified delta checkpoint, restored from the
+     * chain of its references.
+     *
+     * @param path the path of the file to read the backup from.
+     * @return true if the backup was read successfully, false otherwise.
+     */
+    private boolean readFromDeltaFile(String path)
+    {
+        boolean success = true;
+        try
+        {
+            Backup backup = Network.readFromBinaryFile(path).serialize();
+            topology = backup.topology;
+            learningRate = backup.learningRate;
+            precision = backup.precision;
+            weights = backup.weights;
+            connections = backup.connections;
+            activations = backup.activations;
+        }
+        catch (Exception e)
+        {
+            success = false;
+        }
+        return success;
+    }
+
+    /**
+     * Reads the backup from the specified file in the text format.
+     *
+     * @param path the path of the file to read the backup from.
+     * @return true if the backup was read successfully, false otherwise.
+     */
+    private boolean readFromTextFile(String path)
     {
         boolean success = true;
 
@@ -151,6 +574,44 @@ public class Backup
             
             learningRate = Double.parseDouble(scanner.next());
 
+            /* Precision */
+
+            precision = Precision.DOUBLE;
+            if (scanner.hasNext("[A-Z]+") && !scanner.hasNext("SPARSE") && !scanner.hasNext("ACTIVATIONS"))
+            {
+                precision = Precision.valueOf(scanner.next());
+            }
+
+            /* Transfer Functions */
+
+            activations = null;
+            if (scanner.hasNext("ACTIVATIONS"))
+            {
+                scanner.next();
+                activations = new ArrayList<>(networkSize);
+                for (int i = 0; i < networkSize; ++i)
+                {
+                    activations.add(Activation.valueOf(scanner.next()));
+                }
+                if (activations.subList(0, networkSize - 1).contains(Activation.SOFTMAX))
+                {
+                    throw new Exception("Backup.readFromTextFile : softmax on a hidden layer");
+                }
+            }
+
+            /* Pruned Layers */
+
+            connections = null;
+            if (scanner.hasNext("SPARSE"))
+            {
+                scanner.next();
+                connections = new ArrayList<>(networkSize);
+                for (int i = 0; i < networkSize; ++i)
+                {
+                    connections.add((scanner.nextInt() == 1) ? new int[topology.get(i)][] : null);
+                }
+            }
+
             /* Connection Weights */
             
             weights = new ArrayList<>(networkSize);
@@ -176,7 +637,23 @@ public class Backup
                     /* Neuron */
                     
                     List<Double> neuronWeights = new ArrayList<>(prevLayerSize + 1);
-                    for (int k = 0; k < prevLayerSize; ++k)
+                    if (isPruned(i))
+                    {
+                        int[] inputs = new int[scanner.nextInt()];
+                        for (int k = 0; k < prevLayerSize; ++k)
+                        {
+                            neuronWeights.add(0.0);
+                        }
+                        for (int k = 0; k < inputs.length; ++k)
+                        {
+                            /* Kept Connection */
+
+                            inputs[k] = scanner.nextInt();
+                            neuronWeights.set(inputs[k], Double.parseDouble(scanner.next()));
+                        }
+                        connections.get(i)[j] = inputs;
+                    }
+                    for (int k = 0; !isPruned(i) && k < prevLayerSize; ++k)
                     {
                         /* Connection */
                         
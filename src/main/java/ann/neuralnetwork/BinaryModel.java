@@ -0,0 +1,1386 @@
+package ann.neuralnetwork;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Defines the binary format of a backup of a neural network.
+ * <p>
+ * All values are little-endian. The file consists of:
+ * <ul>
+ * <li>the magic number {@code "ANNB"} and the version of the format,</li>
+ * <li>the ordinal of the {@link Precision} of the weights,</li>
+ * <li>the ordinal of the {@link WeightEncoding} of the weights, and 1 if the
+ * weights are compressed or 0 otherwise,</li>
+ * <li>the number of layers followed by their sizes, from version 4 by 1 for
+ * each pruned layer or 0 otherwise, and from version 5 by the ordinal of the
+ * {@link Activation} of each layer, padded to 8 bytes,</li>
+ * <li>the learning rate,</li>
+ * <li>for each layer but the input layer, its weights as a row-major matrix
+ * with one row per neuron, followed by the biases of its neurons as
+ * doubles,</li>
+ * <li>the CRC-32 checksum of all the preceding bytes, as a long.</li>
+ * </ul>
+ * The weights of the {@code NATIVE} encoding are floats in single or mixed
+ * precision and doubles otherwise. Those of the {@code FLOAT16} encoding are
+ * half-precision floats. Each row of the {@code INT8} encoding is a float
+ * scale followed by one byte per weight, the weight divided by the scale.
+ * <p>
+ * The weights of a pruned layer are compressed sparse rows: the number of
+ * connections kept by each neuron and the input of each connection, as ints
+ * padded to 8 bytes, then the weights of the connections neuron by neuron, as
+ * rows of the encoding.
+ * <p>
+ * When the weights are compressed, everything between the learning rate and
+ * the checksum is cut into blocks of at most 64 KiB, each written as its
+ * length, the length of its compressed form, as ints, and its compressed
+ * form, with deflate. The checksum covers the file as written.
+ * <p>
+ * Version 1 of the format had no precision field and only double weights,
+ * version 2 had no encoding and compression fields, version 3 had no pruned
+ * layers, and version 4 had only hyperbolic tangents; such files can still
+ * be read. A model is written in the oldest version able to hold it.
+ */
+final class BinaryModel
+{
+    /**
+     * The magic number of the format, the bytes {@code "ANNB"} read as a little-endian int.
+     */
+    static final int MAGIC = 0x424E4E41;
+    /**
+     * The version of the format.
+     */
+    static final int VERSION = 5;
+    /**
+     * The size of the buffer used for writing, which is also the largest size
+     * of a block before compression.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /**
+     * The largest size of a compressed block, deflate expanding
+     * incompressible data by a few bytes per 16 KiB.
+     */
+    private static final int MAX_COMPRESSED_SIZE = BUFFER_SIZE + BUFFER_SIZE / 16;
+    /**
+     * The largest value of a weight encoded as a byte.
+     */
+    private static final int INT8_RANGE = 127;
+
+    /**
+     * Prevents instantiation.
+     */
+    private BinaryModel()
+    {
+    }
+
+    /**
+     * Checks whether the specified file starts with the magic number of the format.
+     *
+     * @param path the path of the file.
+     * @return true if the file is in the binary format, false otherwise.
+     * @throws IOException if the file cannot be read.
+     */
+    static boolean isBinary(Path path) throws IOException
+    {
+        return hasMagic(path, MAGIC);
+    }
+
+    /**
+     * Checks whether the specified file starts with the specified magic number.
+     *
+     * @param path the path of the file.
+     * @param expected the magic number.
+     * @return true if the file starts with the magic number, false otherwise.
+     * @throws IOException if the file cannot be read.
+     */
+    static boolean hasMagic(Path path, int expected) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            int read = 0;
+            while (magic.hasRemaining() && read >= 0)
+            {
+                read = channel.read(magic);
+            }
+            return !magic.hasRemaining() && magic.getInt(0) == expected;
+        }
+    }
+
+    /**
+     * Counts the ints of a header before its padding.
+     *
+     * @param version the version of the format.
+     * @param layers the number of layers.
+     * @return the number of ints from the magic number to the last size.
+     */
+    private static int headerInts(int version, int layers)
+    {
+        int fields = (version >= 3) ? 5 : (version >= 2) ? 3 : 2;
+        int perLayer = (version >= 5) ? 3 : (version >= 4) ? 2 : 1;
+        return fields + 1 + perLayer * layers;
+    }
+
+    /**
+     * Encodes a weight as a byte scaled so that the largest weight of its row
+     * is {@code INT8_RANGE} in magnitude.
+     *
+     * @param value the weight.
+     * @param scale the scale of the row, zero if all its weights are zero.
+     * @return the encoded weight.
+     */
+    private static byte encodeInt8(double value, float scale)
+    {
+        return (scale > 0.0f) ? (byte) Math.clamp(Math.round(value / scale), -INT8_RANGE, INT8_RANGE) : 0;
+    }
+
+    /**
+     * Writes a model to a channel through a fixed-size buffer, computing the
+     * checksum on the way.
+     */
+    static final class Writer
+    {
+        /**
+         * The channel to write to.
+         */
+        private final WritableByteChannel channel;
+        /**
+         * The buffer of pending bytes.
+         */
+        private final ByteBuffer buffer;
+        /**
+         * The checksum of the bytes written so far.
+         */
+        private final CRC32 checksum;
+        /**
+         * The encoding of the weights.
+         */
+        private WeightEncoding encoding = WeightEncoding.NATIVE;
+        /**
+         * The compressor of the blocks, or null if the bytes are written as
+         * they are.
+         */
+        private Deflater deflater;
+        /**
+         * The buffer of a compressed block, or null if the bytes are written
+         * as they are.
+         */
+        private ByteBuffer block;
+
+        /**
+         * Constructs a new writer to the specified channel.
+         *
+         * @param channel the channel to write to.
+         */
+        Writer(WritableByteChannel channel)
+        {
+            this.channel = channel;
+            buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            checksum = new CRC32();
+        }
+
+        /**
+         * Writes the header of a model whose weights are written natively and
+         * uncompressed.
+         *
+         * @param topology the topology of the network.
+         * @param learningRate the learning rate of the network.
+         * @param precision the precision of the weights.
+         * @throws IOException if writing fails.
+         */
+        void writeHeader(List<Integer> topology, double learningRate, Precision precision) throws IOException
+        {
+            writeHeader(topology, learningRate, precision, WeightEncoding.NATIVE, false);
+        }
+
+        /**
+         * Writes the header of the model, after which the weights are written
+         * in the specified encoding and possibly compressed.
+         *
+         * @param topology the topology of the network.
+         * @param learningRate the learning rate of the network.
+         * @param precision the precision of the weights.
+         * @param weightEncoding the encoding of the weights.
+         * @param compressed whether the weights are compressed.
+         * @throws IOException if writing fails.
+         */
+        void writeHeader(List<Integer> topology, double learningRate, Precision precision,
+                WeightEncoding weightEncoding, boolean compressed) throws IOException
+        {
+            writeHeader(topology, learningRate, precision, weightEncoding, compressed, null, null);
+        }
+
+        /**
+         * Writes the header of the model, after which the weights are written
+         * in the specified encoding, possibly compressed, and as compressed
+         * sparse rows for the pruned layers.
+         *
+         * @param topology the topology of the network.
+         * @param learningRate the learning rate of the network.
+         * @param precision the precision of the weights.
+         * @param weightEncoding the encoding of the weights.
+         * @param compressed whether the weights are compressed.
+         * @param sparse whether each layer is pruned, or null if none is.
+         * @param activations the transfer function of each layer, or null if
+         *        all are hyperbolic tangents.
+         * @throws IOException if writing fails.
+         */
+        void writeHeader(List<Integer> topology, double learningRate, Precision precision,
+                WeightEncoding weightEncoding, boolean compressed, boolean[] sparse, List<Activation> activations)
+                throws IOException
+        {
+            boolean pruned = false;
+            for (int i = 0; sparse != null && i < sparse.length; ++i)
+            {
+                pruned |= sparse[i];
+            }
+            boolean tanh = activations == null
+                    || Collections.frequency(activations, Activation.TANH) == topology.size();
+            int version = !tanh ? VERSION
+                    : pruned ? 4 : (weightEncoding == WeightEncoding.NATIVE && !compressed) ? 2 : 3;
+            putInt(MAGIC);
+            putInt(version);
+            putInt(precision.ordinal());
+            if (version >= 3)
+            {
+                putInt(weightEncoding.ordinal());
+                putInt(compressed ? 1 : 0);
+            }
+            putInt(topology.size());
+            for (var size : topology)
+            {
+                putInt(size);
+            }
+            for (int i = 0; version >= 4 && i < topology.size(); ++i)
+            {
+                putInt((sparse != null && sparse[i]) ? 1 : 0);
+            }
+            for (int i = 0; version >= 5 && i < topology.size(); ++i)
+            {
+                putInt(activations.get(i).ordinal());
+            }
+            if (headerInts(version, topology.size()) % 2 != 0)
+            {
+                putInt(0);
+            }
+            putDouble(learningRate);
+            encoding = weightEncoding;
+            if (compressed)
+            {
+                compress();
+            }
+        }
+
+        /**
+         * Compresses everything written from now on up to the checksum, in
+         * blocks of at most 64 KiB.
+         *
+         * @throws IOException if writing the pending bytes fails.
+         */
+        void compress() throws IOException
+        {
+            flush();
+            deflater = new Deflater(Deflater.BEST_SPEED);
+            block = ByteBuffer.allocate(2 * Integer.BYTES + MAX_COMPRESSED_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        /**
+         * Writes the weights of a layer, or some of its rows, in the encoding
+         * of the model.
+         *
+         * @param values the weights, as a row-major matrix.
+         * @param rows the number of rows.
+         * @param columns the number of columns.
+         * @throws IOException if writing fails.
+         */
+        void putWeights(double[] values, int rows, int columns) throws IOException
+        {
+            putWeights(values, 0, rows, columns);
+        }
+
+        /**
+         * Writes the weights of a layer, or some of its rows, starting at the
+         * specified index of an array, in the encoding of the model.
+         *
+         * @param values the array of the weights, as a row-major matrix.
+         * @param offset the index of the first weight.
+         * @param rows the number of rows.
+         * @param columns the number of columns.
+         * @throws IOException if writing fails.
+         */
+        void putWeights(double[] values, int offset, int rows, int columns) throws IOException
+        {
+            switch (encoding)
+            {
+                case NATIVE -> putDoubles(values, offset, rows * columns);
+                case FLOAT16 ->
+                {
+                    for (int k = offset; k < offset + rows * columns; ++k)
+                    {
+                        putShort(Float.floatToFloat16((float) values[k]));
+                    }
+                }
+                case INT8 ->
+                {
+                    for (int j = 0; j < rows; ++j)
+                    {
+                        double largest = 0.0;
+                        for (int k = offset + j * columns; k < offset + (j + 1) * columns; ++k)
+                        {
+                            largest = Math.max(largest, Math.abs(values[k]));
+                        }
+                        float scale = (float) (largest / INT8_RANGE);
+                        putFloat(scale);
+                        for (int k = offset + j * columns; k < offset + (j + 1) * columns; ++k)
+                        {
+                            putByte(encodeInt8(values[k], scale));
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Writes the weights of a layer, or some of its rows, in the encoding
+         * of the model.
+         *
+         * @param values the weights, as a row-major matrix.
+         * @param rows the number of rows.
+         * @param columns the number of columns.
+         * @throws IOException if writing fails.
+         */
+        void putWeights(float[] values, int rows, int columns) throws IOException
+        {
+            putWeights(values, 0, rows, columns);
+        }
+
+        /**
+         * Writes the weights of a layer, or some of its rows, starting at the
+         * specified index of an array, in the encoding of the model.
+         *
+         * @param values the array of the weights, as a row-major matrix.
+         * @param offset the index of the first weight.
+         * @param rows the number of rows.
+         * @param columns the number of columns.
+         * @throws IOException if writing fails.
+         */
+        void putWeights(float[] values, int offset, int rows, int columns) throws IOException
+        {
+            switch (encoding)
+            {
+                case NATIVE -> putFloats(values, offset, rows * columns);
+                case FLOAT16 ->
+                {
+                    for (int k = offset; k < offset + rows * columns; ++k)
+                    {
+                        putShort(Float.floatToFloat16(values[k]));
+                    }
+                }
+                case INT8 ->
+                {
+                    for (int j = 0; j < rows; ++j)
+                    {
+                        float largest = 0.0f;
+                        for (int k = offset + j * columns; k < offset + (j + 1) * columns; ++k)
+                        {
+                            largest = Math.max(largest, Math.abs(values[k]));
+                        }
+                        float scale = largest / INT8_RANGE;
+                        putFloat(scale);
+                        for (int k = offset + j * columns; k < offset + (j + 1) * columns; ++k)
+                        {
+                            putByte(encodeInt8(values[k], scale));
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Writes the connections of a pruned layer: the number of connections
+         * kept by each neuron, then the input of each connection, padded to 8
+         * bytes.
+         *
+         * @param rowStarts the index of the first connection of each neuron,
+         *        followed by the number of connections.
+         * @param columns the input of each connection.
+         * @throws IOException if writing fails.
+         */
+        void putConnections(int[] rowStarts, int[] columns) throws IOException
+        {
+            int rows = rowStarts.length - 1;
+            for (int j = 0; j < rows; ++j)
+            {
+                putInt(rowStarts[j + 1] - rowStarts[j]);
+            }
+            for (int p = 0; p < rowStarts[rows]; ++p)
+            {
+                putInt(columns[p]);
+            }
+            if ((rows + rowStarts[rows]) % 2 != 0)
+            {
+                putInt(0);
+            }
+        }
+
+        /**
+         * Writes a byte.
+         *
+         * @param value the value to write.
+         * @throws IOException if writing fails.
+         */
+        private void putByte(byte value) throws IOException
+        {
+            if (!buffer.hasRemaining())
+            {
+                flush();
+            }
+            buffer.put(value);
+        }
+
+        /**
+         * Writes a short.
+         *
+         * @param value the value to write.
+         * @throws IOException if writing fails.
+         */
+        private void putShort(short value) throws IOException
+        {
+            if (buffer.remaining() < Short.BYTES)
+            {
+                flush();
+            }
+            buffer.putShort(value);
+        }
+
+        /**
+         * Writes an int.
+         *
+         * @param value the value to write.
+         * @throws IOException if writing fails.
+         */
+        void putInt(int value) throws IOException
+        {
+            if (buffer.remaining() < Integer.BYTES)
+            {
+                flush();
+            }
+            buffer.putInt(value);
+        }
+
+        /**
+         * Writes a double.
+         *
+         * @param value the value to write.
+         * @throws IOException if writing fails.
+         */
+        void putDouble(double value) throws IOException
+        {
+            if (buffer.remaining() < Double.BYTES)
+            {
+                flush();
+            }
+            buffer.putDouble(value);
+        }
+
+        /**
+         * Writes a long.
+         *
+         * @param value the value to write.
+         * @throws IOException if writing fails.
+         */
+        void putLong(long value) throws IOException
+        {
+            if (buffer.remaining() < Long.BYTES)
+            {
+                flush();
+            }
+            buffer.putLong(value);
+        }
+
+        /**
+         * Writes the specified range of an array of bytes.
+         *
+         * @param values the array.
+         * @param offset the index of the first byte to write.
+         * @param length the number of bytes to write.
+         * @throws IOException if writing fails.
+         */
+        void putBytes(byte[] values, int offset, int length) throws IOException
+        {
+            while (length > 0)
+            {
+                if (!buffer.hasRemaining())
+                {
+                    flush();
+                }
+                int count = Math.min(length, buffer.remaining());
+                buffer.put(values, offset, count);
+                offset += count;
+                length -= count;
+            }
+        }
+
+        /**
+         * Writes the specified range of an array of doubles.
+         *
+         * @param values the array.
+         * @param offset the index of the first value to write.
+         * @param length the number of values to write.
+         * @throws IOException if writing fails.
+         */
+        void putDoubles(double[] values, int offset, int length) throws IOException
+        {
+            while (length > 0)
+            {
+                if (buffer.remaining() < Double.BYTES)
+                {
+                    flush();
+                }
+                int count = Math.min(length, buffer.remaining() / Double.BYTES);
+                buffer.asDoubleBuffer().put(values, offset, count);
+                buffer.position(buffer.position() + count * Double.BYTES);
+                offset += count;
+                length -= count;
+            }
+        }
+
+        /**
+         * Writes a float.
+         *
+         * @param value the value to write.
+         * @throws IOException if writing fails.
+         */
+        void putFloat(float value) throws IOException
+        {
+            if (buffer.remaining() < Float.BYTES)
+            {
+                flush();
+            }
+            buffer.putFloat(value);
+        }
+
+        /**
+         * Writes the specified range of an array of floats.
+         *
+         * @param values the array.
+         * @param offset the index of the first value to write.
+         * @param length the number of values to write.
+         * @throws IOException if writing fails.
+         */
+        void putFloats(float[] values, int offset, int length) throws IOException
+        {
+            while (length > 0)
+            {
+                if (buffer.remaining() < Float.BYTES)
+                {
+                    flush();
+                }
+                int count = Math.min(length, buffer.remaining() / Float.BYTES);
+                buffer.asFloatBuffer().put(values, offset, count);
+                buffer.position(buffer.position() + count * Float.BYTES);
+                offset += count;
+                length -= count;
+            }
+        }
+
+        /**
+         * Writes the checksum and flushes the buffer.
+         *
+         * @throws IOException if writing fails.
+         */
+        void finish() throws IOException
+        {
+            flush();
+            if (deflater != null)
+            {
+                deflater.end();
+                deflater = null;
+                block = null;
+            }
+            buffer.putLong(checksum.getValue());
+            buffer.flip();
+            while (buffer.hasRemaining())
+            {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        /**
+         * Writes the pending bytes to the channel, as a compressed block if
+         * the weights are compressed.
+         *
+         * @throws IOException if writing fails.
+         */
+        private void flush() throws IOException
+        {
+            buffer.flip();
+            if (deflater == null)
+            {
+                write(buffer);
+            }
+            else if (buffer.hasRemaining())
+            {
+                int length = buffer.remaining();
+                deflater.reset();
+                deflater.setInput(buffer);
+                deflater.finish();
+                block.clear();
+                block.position(2 * Integer.BYTES);
+                while (!deflater.finished())
+                {
+                    deflater.deflate(block);
+                }
+                block.putInt(0, length);
+                block.putInt(Integer.BYTES, block.position() - 2 * Integer.BYTES);
+                block.flip();
+                write(block);
+            }
+            buffer.clear();
+        }
+
+        /**
+         * Writes bytes to the channel and adds them to the checksum.
+         *
+         * @param bytes the bytes to write.
+         * @throws IOException if writing fails.
+         */
+        private void write(ByteBuffer bytes) throws IOException
+        {
+            checksum.update(bytes.duplicate());
+            while (bytes.hasRemaining())
+            {
+                channel.write(bytes);
+            }
+        }
+    }
+
+    /**
+     * Reads a model either from a buffer holding the whole model, typically a
+     * file mapped into memory, or from a channel through a fixed-size buffer.
+     * <p>
+     * The checksum of a whole buffer is verified before anything is read,
+     * while the checksum of a channel is computed on the way and verified by
+     * {@link #checkEnd()}. The compressed blocks are decompressed one at a
+     * time as they are read.
+     */
+    static final class Reader
+    {
+        /**
+         * The buffer of the bytes of the file.
+         */
+        private final ByteBuffer source;
+        /**
+         * The buffer to read the values from: the buffer of the bytes of the
+         * file, or that of the decompressed block once the header is read if
+         * the weights are compressed.
+         */
+        private ByteBuffer buffer;
+        /**
+         * The channel refilling the buffer of the bytes of the file, or null
+         * if the buffer holds the whole model.
+         */
+        private final ReadableByteChannel channel;
+        /**
+         * The checksum of the bytes read from the channel so far, or null if
+         * the buffer holds the whole model.
+         */
+        private final CRC32 checksum;
+        /**
+         * The position in the buffer of the bytes of the file up to which the
+         * bytes have been added to the checksum.
+         */
+        private int counted;
+        /**
+         * The decompressor of the blocks, or null if the weights are not
+         * compressed.
+         */
+        private Inflater inflater;
+        /**
+         * The encoding of the weights.
+         */
+        private WeightEncoding encoding = WeightEncoding.NATIVE;
+        /**
+         * The topology of the network.
+         */
+        private List<Integer> topology;
+        /**
+         * The learning rate of the network.
+         */
+        private double learningRate;
+        /**
+         * The precision of the weights.
+         */
+        private Precision precision;
+        /**
+         * Whether each layer is pruned.
+         */
+        private boolean[] sparse;
+        /**
+         * The transfer function of each layer.
+         */
+        private List<Activation> activations;
+
+        /**
+         * Constructs a new reader of the specified buffer and verifies its checksum.
+         *
+         * @param buffer the buffer holding the whole model.
+         * @throws IOException if the checksum does not match.
+         */
+        Reader(ByteBuffer buffer) throws IOException
+        {
+            source = buffer.order(ByteOrder.LITTLE_ENDIAN);
+            this.buffer = source;
+            channel = null;
+            checksum = null;
+            int end = buffer.limit() - Long.BYTES;
+            if (end < 0)
+            {
+                throw new IOException("BinaryModel : truncated file");
+            }
+            CRC32 expected = new CRC32();
+            expected.update(buffer.slice(0, end));
+            if (expected.getValue() != buffer.getLong(end))
+            {
+                throw new IOException("BinaryModel : checksum mismatch");
+            }
+            source.limit(end);
+        }
+
+        /**
+         * Constructs a new reader of the specified channel.
+         *
+         * @param channel the channel to read from.
+         */
+        Reader(ReadableByteChannel channel)
+        {
+            source = ByteBuffer.allocate(2 * Integer.BYTES + MAX_COMPRESSED_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            source.flip();
+            buffer = source;
+            this.channel = channel;
+            checksum = new CRC32();
+            counted = 0;
+        }
+
+        /**
+         * Maps the specified file into memory and constructs a reader of it.
+         *
+         * @param path the path of the file.
+         * @return the reader.
+         * @throws IOException if the file cannot be mapped or is corrupt.
+         */
+        static Reader map(Path path) throws IOException
+        {
+            try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ))
+            {
+                if (file.size() > Integer.MAX_VALUE)
+                {
+                    throw new IOException("BinaryModel : file too large to map");
+                }
+                MappedByteBuffer mapped = file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+                return new Reader(mapped);
+            }
+        }
+
+        /**
+         * Makes sure that the buffer holds at least the specified number of
+         * bytes, decompressing the next blocks if needed.
+         *
+         * @param bytes the number of bytes.
+         * @throws IOException if the model ends too early or a block is
+         *         invalid.
+         */
+        private void require(int bytes) throws IOException
+        {
+            require(bytes, bytes);
+        }
+
+        /**
+         * Makes sure that the buffer holds at least the specified number of
+         * bytes, decompressing the next blocks if needed.
+         *
+         * @param bytes the number of bytes.
+         * @param wanted the number of bytes the caller is about to read, at
+         *        least {@code bytes}, up to which the buffer is refilled from
+         *        the channel.
+         * @throws IOException if the model ends too early or a block is
+         *         invalid.
+         */
+        private void require(int bytes, long wanted) throws IOException
+        {
+            if (inflater == null)
+            {
+                requireSource(bytes, wanted);
+                return;
+            }
+            while (buffer.remaining() < bytes)
+            {
+                requireSource(2 * Integer.BYTES);
+                int length = source.getInt();
+                int compressedLength = source.getInt();
+                buffer.compact();
+                if (length <= 0 || length > buffer.remaining() || compressedLength <= 0
+                        || compressedLength > MAX_COMPRESSED_SIZE)
+                {
+                    throw new IOException("BinaryModel : invalid block");
+                }
+                requireSource(compressedLength);
+                inflater.reset();
+                inflater.setInput(source.slice(source.position(), compressedLength));
+                source.position(source.position() + compressedLength);
+                int end = buffer.position() + length;
+                buffer.limit(end);
+                try
+                {
+                    while (buffer.hasRemaining() && !inflater.finished())
+                    {
+                        if (inflater.inflate(buffer) == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                        {
+                            break;
+                        }
+                    }
+                }
+                catch (DataFormatException e)
+                {
+                    throw new IOException("BinaryModel : invalid block", e);
+                }
+                if (buffer.hasRemaining() || !inflater.finished())
+                {
+                    throw new IOException("BinaryModel : invalid block");
+                }
+                buffer.flip();
+            }
+        }
+
+        /**
+         * Makes sure that the buffer of the bytes of the file holds at least
+         * the specified number of bytes, refilling it from the channel if
+         * needed.
+         *
+         * @param bytes the number of bytes.
+         * @throws IOException if the model ends too early.
+         */
+        private void requireSource(int bytes) throws IOException
+        {
+            requireSource(bytes, bytes);
+        }
+
+        /**
+         * Makes sure that the buffer of the bytes of the file holds at least
+         * the specified number of bytes, refilling it from the channel if
+         * needed. The channel is never read beyond the bytes the caller is
+         * about to read, so that it is left right after the model.
+         *
+         * @param bytes the number of bytes.
+         * @param wanted the number of bytes the caller is about to read, at
+         *        least {@code bytes}.
+         * @throws IOException if the model ends too early.
+         */
+        private void requireSource(int bytes, long wanted) throws IOException
+        {
+            if (source.remaining() >= bytes)
+            {
+                return;
+            }
+            if (channel == null)
+            {
+                throw new IOException("BinaryModel : truncated file");
+            }
+            checksum.update(source.slice(counted, source.position() - counted));
+            source.compact();
+            counted = 0;
+            source.limit((int) Math.min(source.capacity(), Math.max(bytes, wanted)));
+            while (source.position() < bytes)
+            {
+                if (channel.read(source) < 0)
+                {
+                    throw new IOException("BinaryModel : truncated file");
+                }
+            }
+            source.flip();
+        }
+
+        /**
+         * Reads the header of the model.
+         *
+         * @throws IOException if the header is invalid.
+         */
+        void readHeader() throws IOException
+        {
+            if (getInt() != MAGIC)
+            {
+                throw new IOException("BinaryModel : not a binary model");
+            }
+            int version = getInt();
+            if (version < 1 || version > VERSION)
+            {
+                throw new IOException("BinaryModel : unsupported version " + version);
+            }
+            precision = Precision.DOUBLE;
+            if (version >= 2)
+            {
+                int ordinal = getInt();
+                if (ordinal < 0 || ordinal >= Precision.values().length)
+                {
+                    throw new IOException("BinaryModel : invalid precision");
+                }
+                precision = Precision.values()[ordinal];
+            }
+            encoding = WeightEncoding.NATIVE;
+            boolean compressed = false;
+            if (version >= 3)
+            {
+                int ordinal = getInt();
+                if (ordinal < 0 || ordinal >= WeightEncoding.values().length)
+                {
+                    throw new IOException("BinaryModel : invalid encoding");
+                }
+                encoding = WeightEncoding.values()[ordinal];
+                int compression = getInt();
+                if (compression != 0 && compression != 1)
+                {
+                    throw new IOException("BinaryModel : invalid compression");
+                }
+                compressed = compression == 1;
+            }
+            int layers = getInt();
+            if (layers < 2)
+            {
+                throw new IOException("BinaryModel : invalid topology");
+            }
+            topology = new ArrayList<>(layers);
+            for (int i = 0; i < layers; ++i)
+            {
+                int size = getInt();
+                if (size <= 0)
+                {
+                    throw new IOException("BinaryModel : invalid topology");
+                }
+                topology.add(size);
+            }
+            sparse = new boolean[layers];
+            for (int i = 0; version >= 4 && i < layers; ++i)
+            {
+                int flag = getInt();
+                if (flag != 0 && flag != 1 || (i == 0 && flag == 1))
+                {
+                    throw new IOException("BinaryModel : invalid pruning");
+                }
+                sparse[i] = flag == 1;
+            }
+            activations = new ArrayList<>(Collections.nCopies(layers, Activation.TANH));
+            for (int i = 0; version >= 5 && i < layers; ++i)
+            {
+                int ordinal = getInt();
+                if (ordinal < 0 || ordinal >= Activation.values().length
+                        || (i < layers - 1 && ordinal == Activation.SOFTMAX.ordinal()))
+                {
+                    throw new IOException("BinaryModel : invalid activation");
+                }
+                activations.set(i, Activation.values()[ordinal]);
+            }
+            if (headerInts(version, layers) % 2 != 0)
+            {
+                getInt();
+            }
+            learningRate = getDouble();
+            if (compressed)
+            {
+                decompress();
+            }
+        }
+
+        /**
+         * Decompresses everything read from now on up to the checksum, block
+         * by block, as written after {@link Writer#compress()}.
+         */
+        void decompress()
+        {
+            inflater = new Inflater();
+            buffer = ByteBuffer.allocate(2 * BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.flip();
+        }
+
+        /**
+         * Returns the topology read from the header.
+         *
+         * @return the topology of the network.
+         */
+        List<Integer> getTopology()
+        {
+            return topology;
+        }
+
+        /**
+         * Returns the learning rate read from the header.
+         *
+         * @return the learning rate of the network.
+         */
+        double getLearningRate()
+        {
+            return learningRate;
+        }
+
+        /**
+         * Returns the precision read from the header.
+         *
+         * @return the precision of the weights.
+         */
+        Precision getPrecision()
+        {
+            return precision;
+        }
+
+        /**
+         * Returns the encoding of the weights read from the header.
+         *
+         * @return the encoding of the weights.
+         */
+        WeightEncoding getEncoding()
+        {
+            return encoding;
+        }
+
+        /**
+         * Returns the transfer functions of the layers read from the header.
+         *
+         * @return the transfer function of each layer.
+         */
+        List<Activation> getActivations()
+        {
+            return activations;
+        }
+
+        /**
+         * Checks whether the specified layer is pruned, according to the
+         * header.
+         *
+         * @param layer the index of the layer.
+         * @return true if the weights of the layer are compressed sparse rows.
+         */
+        boolean isSparse(int layer)
+        {
+            return sparse[layer];
+        }
+
+        /**
+         * Reads the connections of a pruned layer.
+         *
+         * @param rowStarts the array receiving the index of the first
+         *        connection of each neuron, followed by the number of
+         *        connections.
+         * @param inputs the number of inputs of the layer.
+         * @return the input of each connection.
+         * @throws IOException if the model ends too early or the connections
+         *         are invalid.
+         */
+        int[] getConnections(int[] rowStarts, int inputs) throws IOException
+        {
+            int rows = rowStarts.length - 1;
+            rowStarts[0] = 0;
+            for (int j = 0; j < rows; ++j)
+            {
+                require(Integer.BYTES, (long) (rows - j) * Integer.BYTES);
+                int count = getInt();
+                if (count < 0 || count > inputs || rowStarts[j] > Integer.MAX_VALUE - count)
+                {
+                    throw new IOException("BinaryModel : invalid connections");
+                }
+                rowStarts[j + 1] = rowStarts[j] + count;
+            }
+            int[] columns = new int[rowStarts[rows]];
+            for (int j = 0; j < rows; ++j)
+            {
+                for (int p = rowStarts[j]; p < rowStarts[j + 1]; ++p)
+                {
+                    require(Integer.BYTES, (long) (columns.length - p) * Integer.BYTES);
+                    columns[p] = getInt();
+                    if (columns[p] < 0 || columns[p] >= inputs || (p > rowStarts[j] && columns[p] <= columns[p - 1]))
+                    {
+                        throw new IOException("BinaryModel : invalid connections");
+                    }
+                }
+            }
+            if ((rows + columns.length) % 2 != 0)
+            {
+                getInt();
+            }
+            return columns;
+        }
+
+        /**
+         * Reads the weights of a layer, or some of its rows, in the encoding
+         * of the model.
+         *
+         * @param values the array receiving the weights, as a row-major matrix.
+         * @param rows the number of rows.
+         * @param columns the number of columns.
+         * @throws IOException if the model ends too early.
+         */
+        void getWeights(double[] values, int rows, int columns) throws IOException
+        {
+            getWeights(values, 0, rows, columns);
+        }
+
+        /**
+         * Reads the weights of a layer, or some of its rows, into an array
+         * from the specified index, in the encoding of the model.
+         *
+         * @param values the array receiving the weights, as a row-major matrix.
+         * @param offset the index of the first weight.
+         * @param rows the number of rows.
+         * @param columns the number of columns.
+         * @throws IOException if the model ends too early.
+         */
+        void getWeights(double[] values, int offset, int rows, int columns) throws IOException
+        {
+            switch (encoding)
+            {
+                case NATIVE -> getDoubles(values, offset, rows * columns);
+                case FLOAT16 ->
+                {
+                    for (int k = offset; k < offset + rows * columns; ++k)
+                    {
+                        require(Short.BYTES, (long) (offset + rows * columns - k) * Short.BYTES);
+                        values[k] = Float.float16ToFloat(buffer.getShort());
+                    }
+                }
+                case INT8 ->
+                {
+                    for (int j = 0; j < rows; ++j)
+                    {
+                        float scale = getFloat();
+                        for (int k = offset + j * columns; k < offset + (j + 1) * columns; ++k)
+                        {
+                            require(1, offset + (j + 1) * columns - k);
+                            values[k] = buffer.get() * scale;
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Reads the weights of a layer, or some of its rows, in the encoding
+         * of the model.
+         *
+         * @param values the array receiving the weights, as a row-major matrix.
+         * @param rows the number of rows.
+         * @param columns the number of columns.
+         * @throws IOException if the model ends too early, or if the weights
+         *         are doubles.
+         */
+        void getWeights(float[] values, int rows, int columns) throws IOException
+        {
+            getWeights(values, 0, rows, columns);
+        }
+
+        /**
+         * Reads the weights of a layer, or some of its rows, into an array
+         * from the specified index, in the encoding of the model.
+         *
+         * @param values the array receiving the weights, as a row-major matrix.
+         * @param offset the index of the first weight.
+         * @param rows the number of rows.
+         * @param columns the number of columns.
+         * @throws IOException if the model ends too early, or if the weights
+         *         are doubles.
+         */
+        void getWeights(float[] values, int offset, int rows, int columns) throws IOException
+        {
+            switch (encoding)
+            {
+                case NATIVE ->
+                {
+                    if (!precision.isSingle())
+                    {
+                        throw new IOException("BinaryModel : double weights read as floats");
+                    }
+                    getFloats(values, offset, rows * columns);
+                }
+                case FLOAT16 ->
+                {
+                    for (int k = offset; k < offset + rows * columns; ++k)
+                    {
+                        require(Short.BYTES, (long) (offset + rows * columns - k) * Short.BYTES);
+                        values[k] = Float.float16ToFloat(buffer.getShort());
+                    }
+                }
+                case INT8 ->
+                {
+                    for (int j = 0; j < rows; ++j)
+                    {
+                        float scale = getFloat();
+                        for (int k = offset + j * columns; k < offset + (j + 1) * columns; ++k)
+                        {
+                            require(1, offset + (j + 1) * columns - k);
+                            values[k] = buffer.get() * scale;
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Reads an int.
+         *
+         * @return the value read.
+         * @throws IOException if the model ends too early.
+         */
+        int getInt() throws IOException
+        {
+            require(Integer.BYTES);
+            return buffer.getInt();
+        }
+
+        /**
+         * Reads a double.
+         *
+         * @return the value read.
+         * @throws IOException if the model ends too early.
+         */
+        double getDouble() throws IOException
+        {
+            require(Double.BYTES);
+            return buffer.getDouble();
+        }
+
+        /**
+         * Reads a long.
+         *
+         * @return the value read.
+         * @throws IOException if the model ends too early.
+         */
+        long getLong() throws IOException
+        {
+            require(Long.BYTES);
+            return buffer.getLong();
+        }
+
+        /**
+         * Reads bytes into the specified range of an array.
+         *
+         * @param values the array.
+         * @param offset the index of the first byte to read.
+         * @param length the number of bytes to read.
+         * @throws IOException if the model ends too early.
+         */
+        void getBytes(byte[] values, int offset, int length) throws IOException
+        {
+            while (length > 0)
+            {
+                require(1, length);
+                int count = Math.min(length, buffer.remaining());
+                buffer.get(values, offset, count);
+                offset += count;
+                length -= count;
+            }
+        }
+
+        /**
+         * Reads doubles into the specified range of an array.
+         *
+         * @param values the array.
+         * @param offset the index of the first value to read.
+         * @param length the number of values to read.
+         * @throws IOException if the model ends too early.
+         */
+        void getDoubles(double[] values, int offset, int length) throws IOException
+        {
+            while (length > 0)
+            {
+                require(Double.BYTES, (long) length * Double.BYTES);
+                int count = Math.min(length, buffer.remaining() / Double.BYTES);
+                buffer.asDoubleBuffer().get(values, offset, count);
+                buffer.position(buffer.position() + count * Double.BYTES);
+                offset += count;
+                length -= count;
+            }
+        }
+
+        /**
+         * Reads a float.
+         *
+         * @return the value read.
+         * @throws IOException if the model ends too early.
+         */
+        float getFloat() throws IOException
+        {
+            require(Float.BYTES);
+            return buffer.getFloat();
+        }
+
+        /**
+         * Reads floats into the specified range of an array.
+         *
+         * @param values the array.
+         * @param offset the index of the first value to read.
+         * @param length the number of values to read.
+         * @throws IOException if the model ends too early.
+         */
+        void getFloats(float[] values, int offset, int length) throws IOException
+        {
+            while (length > 0)
+            {
+                require(Float.BYTES, (long) length * Float.BYTES);
+                int count = Math.min(length, buffer.remaining() / Float.BYTES);
+                buffer.asFloatBuffer().get(values, offset, count);
+                buffer.position(buffer.position() + count * Float.BYTES);
+                offset += count;
+                length -= count;
+            }
+        }
+
+        /**
+         * Checks that the whole model has been read and, for a channel, that
+         * its checksum matches. The channel is left right after the checksum,
+         * so the model may be followed by other data, while a buffer must end
+         * there.
+         *
+         * @throws IOException if there are bytes left or the checksum does not match.
+         */
+        void checkEnd() throws IOException
+        {
+            if (inflater != null)
+            {
+                boolean trailing = buffer.hasRemaining();
+                inflater.end();
+                inflater = null;
+                buffer = source;
+                if (trailing)
+                {
+                    throw new IOException("BinaryModel : unexpected trailing bytes");
+                }
+            }
+            if (channel != null)
+            {
+                checksum.update(source.slice(counted, source.position() - counted));
+                counted = source.position();
+                requireSource(Long.BYTES);
+                if (checksum.getValue() != source.getLong())
+                {
+                    throw new IOException("BinaryModel : checksum mismatch");
+                }
+            }
+            else if (source.hasRemaining())
+            {
+                throw new IOException("BinaryModel : unexpected trailing bytes");
+            }
+        }
+    }
+}
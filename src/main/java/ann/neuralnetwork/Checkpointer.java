@@ -0,0 +1,515 @@
+package ann.neuralnetwork;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Saves checkpoints of a network in the binary format on a background
+ * thread, so that the training stops only for the time of copying the
+ * weights.
+ * <p>
+ * {@link #checkpoint(Network, Path)} copies the weights and the biases of the
+ * network into one of two snapshots and hands it to the writing thread: one
+ * snapshot can be written while the other is being filled, and the training
+ * waits only if a checkpoint is requested while two are still pending. With
+ * deltas, a third snapshot holds the reference of the next delta, and is
+ * filled like the others until there is such a reference. A
+ * checkpoint is written to a temporary file in the same directory, forced to
+ * the disk and renamed atomically to its final name, so that a file with the
+ * name of a checkpoint is always complete.
+ * <p>
+ * With a base interval above one, only every so many checkpoints are written
+ * in full: the ones in between are deltas to the previous checkpoint, as
+ * described in {@link DeltaModel}, which cost a fraction of the disk space
+ * and I/O when the weights change little between checkpoints. The deltas are
+ * lossless by default; with a tolerance, the differences are quantized so
+ * that the parameters which changed less than the tolerance cost almost
+ * nothing, and every restored parameter is within the tolerance: the
+ * differences are quantized a little finer than the tolerance to leave room
+ * for the rounding of the restored parameters, and a delta which would still
+ * not restore them all so, because a difference is too large or the
+ * tolerance is below the spacing of single-precision weights, is written
+ * lossless instead. A delta is
+ * restored by {@link Network#readFromBinaryFile(String)} from the chain of
+ * checkpoints back to its base, so a delta and its references must stay in
+ * the same directory. A checkpoint written over one of the chain of the
+ * previous checkpoint, such as a checkpoint written to the same file every
+ * epoch, is full, and the deltas which followed the replaced checkpoint are
+ * deleted.
+ * <p>
+ * Only the last checkpoints are retained: the oldest files written by the
+ * checkpointer are deleted when the newer ones exceed the retention, a whole
+ * chain from a base at a time, so that all the retained checkpoints can be
+ * restored.
+ * <p>
+ * The failure of a write is reported by the next call to
+ * {@link #checkpoint(Network, Path)} or {@link #await()}.
+ */
+public final class Checkpointer implements AutoCloseable
+{
+    /**
+     * The number of snapshots, one being written while the other is filled,
+     * besides the reference of the deltas.
+     */
+    private static final int SNAPSHOTS = 2;
+    /**
+     * The suffix of the temporary files.
+     */
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    /**
+     * The number of checkpoints retained.
+     */
+    private final int retained;
+    /**
+     * The number of checkpoints from a full one to the next, the first one
+     * full and the others deltas.
+     */
+    private final int baseInterval;
+    /**
+     * The largest difference allowed between a parameter and its restored
+     * value in a delta, zero for lossless deltas.
+     */
+    private final double tolerance;
+    /**
+     * The snapshots which are neither pending nor being written.
+     */
+    private final ArrayBlockingQueue<ParameterSnapshot> free;
+    /**
+     * The snapshots waiting to be written.
+     */
+    private final ArrayBlockingQueue<ParameterSnapshot> pending;
+    /**
+     * The paths of the pending snapshots, in the same order.
+     */
+    private final ArrayBlockingQueue<Path> pendingPaths;
+    /**
+     * The paths of the retained checkpoints, grouped by chain from a full
+     * checkpoint, the oldest first; only used by the writing thread.
+     */
+    private final ArrayDeque<ArrayDeque<Path>> chains = new ArrayDeque<>();
+    /**
+     * The snapshot of the last checkpoint written as it is restored, the
+     * reference of the next delta, or null if the next checkpoint is full;
+     * only used by the writing thread.
+     */
+    private ParameterSnapshot reference;
+    /**
+     * The path of the last checkpoint written; only used by the writing
+     * thread.
+     */
+    private Path referencePath;
+    /**
+     * The number of checkpoints in the current chain; only used by the
+     * writing thread.
+     */
+    private int chainLength;
+    /**
+     * The writing thread.
+     */
+    private final Thread thread;
+    /**
+     * The number of checkpoints requested.
+     */
+    private long requested;
+    /**
+     * The number of checkpoints written or failed.
+     */
+    private long completed;
+    /**
+     * The failure of a write, if any.
+     */
+    private Exception failure;
+    /**
+     * The time the callers of {@link #checkpoint(Network, Path)} spent in it,
+     * in nanoseconds.
+     */
+    private long snapshotTime;
+    /**
+     * The time the writing thread spent writing, in nanoseconds.
+     */
+    private long writingTime;
+    /**
+     * The number of bytes of the checkpoints written.
+     */
+    private long writtenBytes;
+
+    /**
+     * Constructs a new checkpointer writing full checkpoints only and starts
+     * its writing thread.
+     *
+     * @param retained the number of checkpoints retained, at least one.
+     */
+    public Checkpointer(int retained)
+    {
+        this(retained, 1);
+    }
+
+    /**
+     * Constructs a new checkpointer writing lossless deltas and starts its
+     * writing thread.
+     *
+     * @param retained the number of checkpoints retained, at least one.
+     * @param baseInterval the number of checkpoints from a full one to the
+     *        next, the ones in between being deltas; one for full checkpoints
+     *        only.
+     */
+    public Checkpointer(int retained, int baseInterval)
+    {
+        this(retained, baseInterval, 0.0);
+    }
+
+    /**
+     * Constructs a new checkpointer and starts its writing thread.
+     *
+     * @param retained the number of checkpoints retained, at least one.
+     * @param baseInterval the number of checkpoints from a full one to the
+     *        next, the ones in between being deltas; one for full checkpoints
+     *        only.
+     * @param tolerance the largest difference allowed between a parameter
+     *        and its value restored from a delta, zero for lossless deltas.
+     */
+    public Checkpointer(int retained, int baseInterval, double tolerance)
+    {
+        assert (retained > 0 && baseInterval > 0 && tolerance >= 0.0);
+
+        this.retained = retained;
+        this.baseInterval = baseInterval;
+        this.tolerance = tolerance;
+        int snapshots = (baseInterval > 1) ? SNAPSHOTS + 1 : SNAPSHOTS;
+        free = new ArrayBlockingQueue<>(snapshots);
+        for (int s = 0; s < snapshots; ++s)
+        {
+            free.add(new ParameterSnapshot());
+        }
+        pending = new ArrayBlockingQueue<>(snapshots);
+        pendingPaths = new ArrayBlockingQueue<>(snapshots);
+        thread = Thread.ofPlatform().daemon().name("checkpointer").start(this::run);
+    }
+
+    /**
+     * Requests a checkpoint of the specified network. The weights are copied
+     * at once and written to the file later.
+     *
+     * @param network the network, which must not be training meanwhile.
+     * @param path the path of the checkpoint file.
+     * @throws Exception if a previous checkpoint could not be written, or if
+     *         the thread is interrupted while waiting for a free snapshot.
+     */
+    public void checkpoint(Network network, Path path) throws Exception
+    {
+        long start = System.nanoTime();
+        synchronized (this)
+        {
+            if (failure != null)
+            {
+                throw new Exception("Checkpointer.checkpoint : " + failure, failure);
+            }
+        }
+        ParameterSnapshot snapshot = free.take();
+        snapshot.copyFrom(network);
+        synchronized (this)
+        {
+            pendingPaths.add(path.toAbsolutePath().normalize());
+            pending.add(snapshot);
+            ++requested;
+            snapshotTime += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Waits until all the requested checkpoints are written.
+     *
+     * @throws Exception if a checkpoint could not be written, or if the
+     *         thread is interrupted.
+     */
+    public synchronized void await() throws Exception
+    {
+        while (completed < requested)
+        {
+            wait();
+        }
+        if (failure != null)
+        {
+            throw new Exception("Checkpointer.await : " + failure, failure);
+        }
+    }
+
+    /**
+     * Returns the time the training spent requesting checkpoints.
+     *
+     * @return the time, in nanoseconds.
+     */
+    public synchronized long getSnapshotTime()
+    {
+        return snapshotTime;
+    }
+
+    /**
+     * Returns the time the writing thread spent writing checkpoints.
+     *
+     * @return the time, in nanoseconds.
+     */
+    public synchronized long getWritingTime()
+    {
+        return writingTime;
+    }
+
+    /**
+     * Returns the number of bytes of the checkpoints written, full or deltas.
+     *
+     * @return the number of bytes.
+     */
+    public synchronized long getWrittenBytes()
+    {
+        return writtenBytes;
+    }
+
+    /**
+     * Writes the pending snapshots until the checkpointer is closed.
+     */
+    private void run()
+    {
+        try
+        {
+            while (true)
+            {
+                ParameterSnapshot snapshot = pending.take();
+                Path path;
+                synchronized (this)
+                {
+                    path = pendingPaths.remove();
+                }
+                long start = System.nanoTime();
+                Exception error = null;
+                long bytes = 0;
+                try
+                {
+                    bytes = write(snapshot, path);
+                }
+                catch (IOException e)
+                {
+                    error = e;
+                }
+                synchronized (this)
+                {
+                    writingTime += System.nanoTime() - start;
+                    writtenBytes += bytes;
+                    if (failure == null)
+                    {
+                        failure = error;
+                    }
+                    ++completed;
+                    notifyAll();
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            /* The checkpointer is closed. */
+        }
+    }
+
+    /**
+     * Writes a snapshot as a full checkpoint or as a delta to the previous
+     * one, records it for the retention and keeps it as the reference of the
+     * next delta. The snapshot is given back to the free ones once it is no
+     * longer needed, and the next checkpoint is full if writing fails.
+     *
+     * @param snapshot the snapshot.
+     * @param path the absolute and normalized path of the checkpoint file.
+     * @return the number of bytes written.
+     * @throws IOException if writing or renaming fails.
+     */
+    private long write(ParameterSnapshot snapshot, Path path) throws IOException
+    {
+        /* A delta must not replace its reference, nor any checkpoint its chain goes through. */
+        boolean full = reference == null || chainLength == baseInterval || !snapshot.hasSameShape(reference)
+                || !path.getParent().equals(referencePath.getParent()) || chains.getLast().contains(path);
+        /* A lossy delta is written only if it restores every parameter within the tolerance. */
+        double deltaTolerance = (full || tolerance == 0.0) ? tolerance : snapshot.deltaTolerance(reference, tolerance);
+        try
+        {
+            write(snapshot, full ? null : reference, path, deltaTolerance);
+            retain(path, full);
+        }
+        catch (IOException e)
+        {
+            free.add(snapshot);
+            release();
+            throw e;
+        }
+        if (baseInterval == 1)
+        {
+            free.add(snapshot);
+        }
+        else if (full || deltaTolerance == 0.0)
+        {
+            /* The snapshot is restored exactly, it becomes the reference. */
+            release();
+            reference = snapshot;
+        }
+        else
+        {
+            /* The reference was turned into the restored snapshot. */
+            free.add(snapshot);
+        }
+        referencePath = path;
+        chainLength = full ? 1 : chainLength + 1;
+        return Files.size(path);
+    }
+
+    /**
+     * Gives back the reference snapshot to the free ones, so that the next
+     * checkpoint is full.
+     */
+    private void release()
+    {
+        if (reference != null)
+        {
+            free.add(reference);
+            reference = null;
+            referencePath = null;
+        }
+    }
+
+    /**
+     * Writes a snapshot to a temporary file, forces it to the disk and renames
+     * it to the specified path. The temporary file is deleted if anything
+     * fails.
+     *
+     * @param snapshot the snapshot.
+     * @param deltaReference the snapshot of the previous checkpoint, to write
+     *        a delta to, or null to write a full checkpoint.
+     * @param path the path of the checkpoint file.
+     * @param deltaTolerance the tolerance of the delta, zero for a lossless
+     *        delta.
+     * @throws IOException if writing or renaming fails.
+     */
+    private void write(ParameterSnapshot snapshot, ParameterSnapshot deltaReference, Path path,
+            double deltaTolerance) throws IOException
+    {
+        Path temporary = path.resolveSibling(path.getFileName() + TEMPORARY_SUFFIX);
+        try
+        {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+            {
+                if (deltaReference == null)
+                {
+                    snapshot.writeTo(channel);
+                }
+                else
+                {
+                    DeltaModel.write(channel, snapshot, deltaReference, referencePath.getFileName().toString(),
+                            deltaTolerance);
+                }
+                channel.force(true);
+            }
+            try
+            {
+                Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException e)
+            {
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        catch (IOException e)
+        {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+    }
+
+    /**
+     * Records a written checkpoint and deletes the oldest chains of
+     * checkpoints which are not needed to keep the retained ones. A
+     * checkpoint written over an older one of another chain cuts that chain:
+     * the deltas following the replaced checkpoint can no longer be restored,
+     * so they are deleted.
+     *
+     * @param path the path of the written checkpoint.
+     * @param full whether the checkpoint is full, starting a new chain.
+     * @throws IOException if a checkpoint cannot be deleted.
+     */
+    private void retain(Path path, boolean full) throws IOException
+    {
+        int count = 0;
+        for (var chain : chains)
+        {
+            if (chain.contains(path))
+            {
+                while (!chain.getLast().equals(path))
+                {
+                    Files.deleteIfExists(chain.removeLast());
+                }
+                chain.removeLast();
+            }
+            count += chain.size();
+        }
+        chains.removeIf(ArrayDeque::isEmpty);
+        if (full || chains.isEmpty())
+        {
+            chains.addLast(new ArrayDeque<>());
+        }
+        chains.getLast().addLast(path);
+        ++count;
+        while (count - chains.getFirst().size() >= retained)
+        {
+            for (var old : chains.removeFirst())
+            {
+                Files.deleteIfExists(old);
+                --count;
+            }
+        }
+    }
+
+    /**
+     * Waits until the requested checkpoints are written, then stops the
+     * writing thread. A failure is not reported, {@link #await()} is to be
+     * called first for that.
+     */
+    @Override
+    public void close()
+    {
+        boolean interrupted = false;
+        synchronized (this)
+        {
+            while (completed < requested)
+            {
+                try
+                {
+                    wait();
+                }
+                catch (InterruptedException e)
+                {
+                    interrupted = true;
+                }
+            }
+        }
+        thread.interrupt();
+        while (thread.isAlive())
+        {
+            try
+            {
+                thread.join();
+            }
+            catch (InterruptedException e)
+            {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package ann.neuralnetwork;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Loads records on background threads ahead of the thread which consumes
+ * them, typically a trainer.
+ * <p>
+ * The records are identified by indices from zero to the count of the
+ * pipeline and are delivered in the order of their indices, whatever the
+ * number of loading threads. The pipeline owns a fixed number of record
+ * buffers: the loading threads fill the free buffers, and the consumer gives
+ * each buffer back with {@link #release(ArrayRecord)} once it no longer needs
+ * it. When all the buffers are filled or held by the consumer, the loading
+ * threads wait, so the pipeline never runs further ahead than its capacity.
+ * The consumer may hold at most {@code capacity - 1} records at a time.
+ * <p>
+ * The pipeline measures how long the consumer waits for the records, which
+ * tells whether the loading keeps up with the consumer.
+ */
+public final class DataPipeline implements AutoCloseable
+{
+    /**
+     * Loads a record into a buffer of the pipeline.
+     */
+    @FunctionalInterface
+    public interface Loader
+    {
+        /**
+         * Loads the record of the specified index. The method is called
+         * concurrently by the loading threads.
+         *
+         * @param index the index of the record.
+         * @param record the record to fill.
+         * @return true if the record was loaded, false if it is to be
+         *         skipped.
+         * @throws Exception if the loading fails, which stops the pipeline.
+         */
+        boolean load(int index, ArrayRecord record) throws Exception;
+    }
+
+    /**
+     * The state of a slot whose record is not loaded yet.
+     */
+    private static final byte PENDING = 0;
+    /**
+     * The state of a slot whose record is loaded.
+     */
+    private static final byte LOADED = 1;
+    /**
+     * The state of a slot whose record was skipped by the loader.
+     */
+    private static final byte SKIPPED = 2;
+
+    /**
+     * The loader of the records.
+     */
+    private final Loader loader;
+    /**
+     * The number of records.
+     */
+    private final int count;
+    /**
+     * The buffers which are neither loading, loaded nor held by the consumer.
+     */
+    private final ArrayBlockingQueue<ArrayRecord> free;
+    /**
+     * The records in flight, at their index modulo the capacity.
+     */
+    private final ArrayRecord[] slots;
+    /**
+     * The states of the slots.
+     */
+    private final byte[] states;
+    /**
+     * The loading threads.
+     */
+    private final Thread[] threads;
+    /**
+     * The lock under which the loading threads claim the indices, so that the
+     * buffers are taken in the order of the indices.
+     */
+    private final Object claimLock = new Object();
+    /**
+     * The index of the next record to be claimed by a loading thread.
+     */
+    private int claimed;
+    /**
+     * The index of the next record to be delivered to the consumer.
+     */
+    private int delivered;
+    /**
+     * The failure of a loading thread, if any.
+     */
+    private Exception failure;
+    /**
+     * Whether the pipeline is closed.
+     */
+    private volatile boolean closed;
+    /**
+     * The time the consumer waited for the records, in nanoseconds.
+     */
+    private long waitingTime;
+    /**
+     * The time the loading threads spent in the loader, in nanoseconds.
+     */
+    private long loadingTime;
+    /**
+     * The number of records skipped by the loader.
+     */
+    private int skipped;
+
+    /**
+     * Constructs a new pipeline and starts its loading threads.
+     *
+     * @param loader the loader of the records.
+     * @param count the number of records.
+     * @param inputSize the number of input values of a record.
+     * @param outputSize the number of output values of a record.
+     * @param threads the number of loading threads.
+     * @param capacity the number of record buffers.
+     */
+    public DataPipeline(Loader loader, int count, int inputSize, int outputSize, int threads, int capacity)
+    {
+        assert count >= 0 && threads > 0 && capacity > 1;
+
+        this.loader = loader;
+        this.count = count;
+        free = new ArrayBlockingQueue<>(capacity);
+        for (int b = 0; b < capacity; ++b)
+        {
+            free.add(new ArrayRecord(inputSize, outputSize));
+        }
+        slots = new ArrayRecord[capacity];
+        states = new byte[capacity];
+
+        this.threads = new Thread[threads];
+        for (int t = 0; t < threads; ++t)
+        {
+            this.threads[t] = Thread.ofPlatform().daemon().name("data-pipeline-" + t).start(this::run);
+        }
+    }
+
+    /**
+     * The loop of a loading thread: claims the next index along with a free
+     * buffer, loads the record and publishes it to the consumer.
+     */
+    private void run()
+    {
+        try
+        {
+            while (!closed)
+            {
+                int index;
+                ArrayRecord record;
+                synchronized (claimLock)
+                {
+                    if (claimed == count)
+                    {
+                        return;
+                    }
+                    record = free.take();
+                    index = claimed++;
+                }
+
+                long start = System.nanoTime();
+                boolean loaded = loader.load(index, record);
+                long time = System.nanoTime() - start;
+
+                synchronized (this)
+                {
+                    int slot = index % slots.length;
+                    slots[slot] = record;
+                    states[slot] = loaded ? LOADED : SKIPPED;
+                    loadingTime += time;
+                    notifyAll();
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            /* The pipeline is closed. */
+        }
+        catch (Exception e)
+        {
+            synchronized (this)
+            {
+                if (failure == null)
+                {
+                    failure = e;
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Tells whether there are records which were not delivered yet.
+     *
+     * @return true if {@link #next()} is to be called again.
+     */
+    public synchronized boolean hasNext()
+    {
+        return delivered < count;
+    }
+
+    /**
+     * Gives the record of the next index, waiting for it to be loaded if
+     * needed. The record is to be given back with
+     * {@link #release(ArrayRecord)}.
+     *
+     * @return the record, or null if the loader skipped it.
+     * @throws Exception if all the records were delivered, if the pipeline is
+     *         closed, if a loading thread failed or if the thread is
+     *         interrupted.
+     */
+    public synchronized ArrayRecord next() throws Exception
+    {
+        if (delivered == count || closed)
+        {
+            throw new Exception("DataPipeline.next : no more records");
+        }
+        int slot = delivered % slots.length;
+        if (states[slot] == PENDING && failure == null)
+        {
+            long start = System.nanoTime();
+            while (states[slot] == PENDING && failure == null)
+            {
+                wait();
+            }
+            waitingTime += System.nanoTime() - start;
+        }
+        if (states[slot] == PENDING)
+        {
+            throw new Exception("DataPipeline.next : " + failure, failure);
+        }
+
+        ArrayRecord record = slots[slot];
+        boolean loaded = states[slot] == LOADED;
+        slots[slot] = null;
+        states[slot] = PENDING;
+        ++delivered;
+        if (loaded)
+        {
+            return record;
+        }
+        ++skipped;
+        free.add(record);
+        return null;
+    }
+
+    /**
+     * Gives back a record delivered by {@link #next()}, so that its buffer
+     * can be filled again.
+     *
+     * @param record the record.
+     */
+    public void release(ArrayRecord record)
+    {
+        free.add(record);
+    }
+
+    /**
+     * Gives back the records delivered by {@link #next()}.
+     *
+     * @param records the array of the records.
+     * @param count the number of records to give back from the beginning of
+     *        the array.
+     */
+    public void release(ArrayRecord[] records, int count)
+    {
+        for (int r = 0; r < count; ++r)
+        {
+            free.add(records[r]);
+            records[r] = null;
+        }
+    }
+
+    /**
+     * Returns the number of records.
+     *
+     * @return the number of records.
+     */
+    public int getCount()
+    {
+        return count;
+    }
+
+    /**
+     * Returns the number of records delivered so far, including the skipped
+     * ones.
+     *
+     * @return the number of delivered records.
+     */
+    public synchronized int getDelivered()
+    {
+        return delivered;
+    }
+
+    /**
+     * Returns the number of records skipped by the loader so far.
+     *
+     * @return the number of skipped records.
+     */
+    public synchronized int getSkipped()
+    {
+        return skipped;
+    }
+
+    /**
+     * Returns the time the consumer has waited for the records.
+     *
+     * @return the waiting time, in nanoseconds.
+     */
+    public synchronized long getWaitingTime()
+    {
+        return waitingTime;
+    }
+
+    /**
+     * Returns the time the loading threads have spent in the loader, summed
+     * over the threads.
+     *
+     * @return the loading time, in nanoseconds.
+     */
+    public synchronized long getLoadingTime()
+    {
+        return loadingTime;
+    }
+
+    /**
+     * Stops the loading threads and waits for them to finish.
+     */
+    @Override
+    public void close()
+    {
+        closed = true;
+        for (var thread : threads)
+        {
+            thread.interrupt();
+        }
+        boolean interrupted = false;
+        for (var thread : threads)
+        {
+            while (thread.isAlive())
+            {
+                try
+                {
+                    thread.join();
+                }
+                catch (InterruptedException e)
+                {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package ann.neuralnetwork;
+
+/**
+ * Represents a dataset of records accessed by index.
+ * <p>
+ * The records are not moved when the dataset is shuffled or split: a
+ * {@link Sampler} only permutes the indices, and the records are read where
+ * they are, when they are needed.
+ */
+public interface Dataset
+{
+    /**
+     * Returns the number of records.
+     *
+     * @return the number of records.
+     */
+    int getCount();
+
+    /**
+     * Returns the number of inputs of a record.
+     *
+     * @return the number of inputs.
+     */
+    int getInputSize();
+
+    /**
+     * Returns the number of outputs of a record.
+     *
+     * @return the number of outputs.
+     */
+    int getOutputSize();
+
+    /**
+     * Gives the record of the specified index, either copied into the
+     * specified buffer or, if the dataset keeps its records in memory, the
+     * record itself, which is then not to be modified. The method may be
+     * called concurrently with different buffers.
+     *
+     * @param index the index of the record.
+     * @param buffer the record to fill if needed.
+     * @return the record.
+     */
+    ArrayRecord read(int index, ArrayRecord buffer);
+
+    /**
+     * Returns the class of the record of the specified index, which is the
+     * index of its greatest output, as for one-hot outputs.
+     *
+     * @param index the index of the record.
+     * @return the class of the record.
+     */
+    int getLabel(int index);
+}
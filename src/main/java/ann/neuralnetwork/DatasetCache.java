@@ -0,0 +1,394 @@
+package ann.neuralnetwork;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Represents a dataset of pre-processed records kept in a file mapped into
+ * memory, so that the records are loaded once and then read at the speed of
+ * memory, in any order.
+ * <p>
+ * All values are little-endian. The file consists of:
+ * <ul>
+ * <li>the magic number {@code "ANND"} and the version of the format,</li>
+ * <li>the number of records, the number of inputs and the number of outputs
+ * of a record, padded to 8 bytes,</li>
+ * <li>the fingerprint of the sources and the settings of the dataset,</li>
+ * <li>the records, each as its inputs followed by its outputs, as
+ * doubles.</li>
+ * </ul>
+ * The fingerprint identifies what the records were made of: a cache whose
+ * fingerprint differs from the expected one is stale and is to be compiled
+ * again. A cache is written to a temporary file which replaces the cache only
+ * once complete, so an interrupted compilation never leaves a cache which
+ * looks valid.
+ */
+public final class DatasetCache implements Dataset
+{
+    /**
+     * The magic number of the format, the bytes {@code "ANND"} read as a little-endian int.
+     */
+    static final int MAGIC = 0x444E4E41;
+    /**
+     * The version of the format.
+     */
+    static final int VERSION = 1;
+    /**
+     * The size of a fingerprint, in bytes.
+     */
+    static final int FINGERPRINT_SIZE = 32;
+    /**
+     * The size of the header, in bytes.
+     */
+    static final int HEADER_SIZE = 6 * Integer.BYTES + FINGERPRINT_SIZE;
+
+    /**
+     * The number of records.
+     */
+    private final int count;
+    /**
+     * The number of inputs of a record.
+     */
+    private final int inputSize;
+    /**
+     * The number of outputs of a record.
+     */
+    private final int outputSize;
+    /**
+     * The number of records in each chunk of the mapping.
+     */
+    private final int chunkSize;
+    /**
+     * The chunks of the mapping, each holding whole records, since a single
+     * mapping is limited to 2 GiB.
+     */
+    private final DoubleBuffer[] chunks;
+
+    /**
+     * Maps the specified cache into memory.
+     *
+     * @param path the path of the cache.
+     * @throws IOException if the file cannot be mapped or is not a valid cache.
+     */
+    public DatasetCache(Path path) throws IOException
+    {
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            ByteBuffer header = readHeader(file);
+            if (header == null)
+            {
+                throw new IOException("DatasetCache : not a valid dataset cache");
+            }
+            count = header.getInt(2 * Integer.BYTES);
+            inputSize = header.getInt(3 * Integer.BYTES);
+            outputSize = header.getInt(4 * Integer.BYTES);
+
+            long recordBytes = (long) (inputSize + outputSize) * Double.BYTES;
+            chunkSize = (int) Math.max(Math.min(Integer.MAX_VALUE / recordBytes, count), 1);
+            chunks = new DoubleBuffer[(count + chunkSize - 1) / chunkSize];
+            for (int c = 0; c < chunks.length; ++c)
+            {
+                int records = Math.min(chunkSize, count - c * chunkSize);
+                chunks[c] = file.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + c * chunkSize * recordBytes,
+                        records * recordBytes).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+            }
+        }
+    }
+
+    /**
+     * Reads the header of a cache and checks its consistency with the size of
+     * the file.
+     *
+     * @param file the channel of the cache.
+     * @return the header, or null if the file is not a valid cache.
+     * @throws IOException if the file cannot be read.
+     */
+    private static ByteBuffer readHeader(FileChannel file) throws IOException
+    {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        int read = 0;
+        while (header.hasRemaining() && read >= 0)
+        {
+            read = file.read(header, header.position());
+        }
+        if (header.hasRemaining() || header.getInt(0) != MAGIC || header.getInt(Integer.BYTES) != VERSION)
+        {
+            return null;
+        }
+        int count = header.getInt(2 * Integer.BYTES);
+        int inputSize = header.getInt(3 * Integer.BYTES);
+        int outputSize = header.getInt(4 * Integer.BYTES);
+        if (count < 0 || inputSize <= 0 || outputSize <= 0
+                || file.size() != HEADER_SIZE + (long) count * (inputSize + outputSize) * Double.BYTES)
+        {
+            return null;
+        }
+        return header;
+    }
+
+    /**
+     * Checks whether the specified file is a complete cache with the specified
+     * fingerprint and sizes of records.
+     *
+     * @param path the path of the cache.
+     * @param fingerprint the expected fingerprint.
+     * @param inputSize the expected number of inputs of a record.
+     * @param outputSize the expected number of outputs of a record.
+     * @return true if the cache can be used, false if it is missing or stale.
+     */
+    public static boolean isValid(Path path, byte[] fingerprint, int inputSize, int outputSize)
+    {
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            ByteBuffer header = readHeader(file);
+            if (header == null || header.getInt(3 * Integer.BYTES) != inputSize
+                    || header.getInt(4 * Integer.BYTES) != outputSize)
+            {
+                return false;
+            }
+            byte[] stored = new byte[FINGERPRINT_SIZE];
+            header.get(6 * Integer.BYTES, stored);
+            return Arrays.equals(stored, fingerprint);
+        }
+        catch (IOException e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Computes the fingerprint of a dataset made of the specified files with
+     * the specified settings. The fingerprint changes when a file is added,
+     * removed, renamed, resized or modified, or when the settings change.
+     *
+     * @param settings the description of the pre-processing of the files.
+     * @param files the source files, in the order of the records.
+     * @return the fingerprint.
+     * @throws IOException if the attributes of a file cannot be read.
+     */
+    public static byte[] fingerprint(String settings, List<Path> files) throws IOException
+    {
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IOException("DatasetCache : " + e.getMessage(), e);
+        }
+        ByteBuffer attributes = ByteBuffer.allocate(2 * Long.BYTES);
+        digest.update(settings.getBytes(StandardCharsets.UTF_8));
+        for (var file : files)
+        {
+            digest.update((byte) 0);
+            digest.update(file.toString().getBytes(StandardCharsets.UTF_8));
+            attributes.clear();
+            if (Files.exists(file))
+            {
+                attributes.putLong(Files.size(file));
+                attributes.putLong(Files.getLastModifiedTime(file).toMillis());
+            }
+            else
+            {
+                attributes.putLong(-1);
+                attributes.putLong(-1);
+            }
+            digest.update(attributes.flip());
+        }
+        return digest.digest();
+    }
+
+    /**
+     * Loads the records with the specified loader and writes them to a cache.
+     * The records which the loader skips are left out of the cache.
+     *
+     * @param path the path of the cache.
+     * @param fingerprint the fingerprint of the dataset.
+     * @param loader the loader of the records.
+     * @param count the number of records to load.
+     * @param inputSize the number of inputs of a record.
+     * @param outputSize the number of outputs of a record.
+     * @param threads the number of loading threads.
+     * @return the number of records in the cache.
+     * @throws Exception if loading or writing fails.
+     */
+    public static int compile(Path path, byte[] fingerprint, DataPipeline.Loader loader, int count, int inputSize,
+            int outputSize, int threads) throws Exception
+    {
+        assert fingerprint.length == FINGERPRINT_SIZE;
+
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        int written = 0;
+        boolean complete = false;
+        try (FileChannel file = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+                DataPipeline pipeline = new DataPipeline(loader, count, inputSize, outputSize, threads, 4 * threads))
+        {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(0).putInt(inputSize).putInt(outputSize).putInt(0);
+            header.put(fingerprint).flip();
+            write(file, header);
+
+            ByteBuffer buffer = ByteBuffer.allocate((inputSize + outputSize) * Double.BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            DoubleBuffer values = buffer.asDoubleBuffer();
+            while (pipeline.hasNext())
+            {
+                ArrayRecord record = pipeline.next();
+                if (record == null)
+                {
+                    continue;
+                }
+                values.clear();
+                values.put(record.getInputs(), 0, inputSize).put(record.getOutputs(), 0, outputSize);
+                pipeline.release(record);
+                buffer.clear();
+                write(file, buffer);
+                ++written;
+            }
+
+            header.clear();
+            header.putInt(written).flip();
+            file.write(header, 2 * Integer.BYTES);
+            file.force(true);
+            complete = true;
+        }
+        finally
+        {
+            if (!complete)
+            {
+                Files.deleteIfExists(temporary);
+            }
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return written;
+    }
+
+    /**
+     * Writes the whole content of a buffer to a channel.
+     *
+     * @param file the channel.
+     * @param buffer the buffer.
+     * @throws IOException if writing fails.
+     */
+    private static void write(FileChannel file, ByteBuffer buffer) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            file.write(buffer);
+        }
+    }
+
+    /**
+     * Returns the number of records.
+     *
+     * @return the number of records.
+     */
+    @Override
+    public int getCount()
+    {
+        return count;
+    }
+
+    /**
+     * Returns the number of inputs of a record.
+     *
+     * @return the number of inputs.
+     */
+    @Override
+    public int getInputSize()
+    {
+        return inputSize;
+    }
+
+    /**
+     * Returns the number of outputs of a record.
+     *
+     * @return the number of outputs.
+     */
+    @Override
+    public int getOutputSize()
+    {
+        return outputSize;
+    }
+
+    /**
+     * Copies the record of the specified index into the specified record,
+     * straight from the mapped file. The method may be called concurrently.
+     *
+     * @param index the index of the record.
+     * @param record the record to fill.
+     * @return the filled record.
+     */
+    @Override
+    public ArrayRecord read(int index, ArrayRecord record)
+    {
+        DoubleBuffer chunk = chunks[index / chunkSize];
+        int offset = (index % chunkSize) * (inputSize + outputSize);
+        chunk.get(offset, record.getInputs(), 0, inputSize);
+        chunk.get(offset + inputSize, record.getOutputs(), 0, outputSize);
+        return record;
+    }
+
+    /**
+     * Returns the class of the record of the specified index, which is the
+     * index of its greatest output, read straight from the mapped file.
+     *
+     * @param index the index of the record.
+     * @return the class of the record.
+     */
+    @Override
+    public int getLabel(int index)
+    {
+        DoubleBuffer chunk = chunks[index / chunkSize];
+        int offset = (index % chunkSize) * (inputSize + outputSize) + inputSize;
+        int label = 0;
+        for (int o = 1; o < outputSize; ++o)
+        {
+            if (chunk.get(offset + o) > chunk.get(offset + label))
+            {
+                label = o;
+            }
+        }
+        return label;
+    }
+
+    /**
+     * Gives a read-only view of the inputs of the record of the specified
+     * index, without copying them.
+     *
+     * @param index the index of the record.
+     * @return the view of the inputs.
+     */
+    public DoubleBuffer getInputs(int index)
+    {
+        int offset = (index % chunkSize) * (inputSize + outputSize);
+        return chunks[index / chunkSize].slice(offset, inputSize);
+    }
+
+    /**
+     * Gives a read-only view of the outputs of the record of the specified
+     * index, without copying them.
+     *
+     * @param index the index of the record.
+     * @return the view of the outputs.
+     */
+    public DoubleBuffer getOutputs(int index)
+    {
+        int offset = (index % chunkSize) * (inputSize + outputSize);
+        return chunks[index / chunkSize].slice(offset + inputSize, outputSize);
+    }
+}
@@ -0,0 +1,309 @@
+package ann.neuralnetwork;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Defines the format of a delta checkpoint of a neural network: the
+ * difference between the parameters of the network and those of a reference
+ * checkpoint, written in the same directory either in the binary format of
+ * {@link BinaryModel} or as another delta.
+ * <p>
+ * All values are little-endian. The file consists of:
+ * <ul>
+ * <li>the magic number {@code "ANNX"} and the version of the format,</li>
+ * <li>the ordinal of the {@link Precision} of the weights,</li>
+ * <li>the number of layers followed by their sizes, padded to 8 bytes,</li>
+ * <li>the learning rate,</li>
+ * <li>the tolerance of the delta, zero for a lossless delta,</li>
+ * <li>the CRC-32 checksum of the parameters of the reference, as a long, in
+ * the order and encoding of the binary format, the connections of its pruned
+ * layers included,</li>
+ * <li>the length of the file name of the reference, as an int, followed by
+ * the name in UTF-8,</li>
+ * <li>the delta, cut into blocks of at most 64 KiB compressed with deflate,
+ * each written as its length, the length of its compressed form, as ints,
+ * and its compressed form, as the compressed weights of
+ * {@link BinaryModel},</li>
+ * <li>the CRC-32 checksum of all the preceding bytes, as a long.</li>
+ * </ul>
+ * Once decompressed, the delta holds, for each layer but the input layer, the
+ * weights, only those of the kept connections for a pruned layer, followed by
+ * the biases, in chunks of 4096 parameters whose bytes
+ * are grouped by significance, the lowest first. In a lossless delta, each
+ * parameter is XORed bit for bit with the same parameter of the reference.
+ * Otherwise, each parameter is the difference with the reference as a whole
+ * number of steps of twice the tolerance, as a zigzag-encoded int, and most
+ * differences are zero. Each restored parameter is within the tolerance of
+ * the written one before it is rounded to its precision; the
+ * {@link Checkpointer} therefore writes a lossy delta with a tolerance
+ * smaller than its own by the spacing of the parameters, and only if no
+ * difference saturates the int, so that the rounded parameters are within
+ * its tolerance.
+ * <p>
+ * A delta is restored by reading the chain of references back to a full
+ * model and applying the deltas in the opposite order, checking the checksum
+ * of the reference of each delta. The reference of a lossy delta is the
+ * restored reference, so the errors do not add up along the chain. The delta
+ * is compressed and decompressed block by block, so neither writing nor
+ * reading it holds more than a block besides the parameters.
+ * <p>
+ * Version 1 of the format held the delta as a single deflate stream preceded
+ * by its length; such deltas are no longer read.
+ */
+final class DeltaModel
+{
+    /**
+     * The magic number of the format, the bytes {@code "ANNX"} read as a little-endian int.
+     */
+    static final int MAGIC = 0x584E4E41;
+    /**
+     * The version of the format.
+     */
+    static final int VERSION = 2;
+    /**
+     * The maximum number of deltas between a delta and its full model, which
+     * guards against cyclic references.
+     */
+    private static final int MAX_CHAIN = 1 << 16;
+    /**
+     * The largest length of the file name of a reference, in bytes.
+     */
+    private static final int MAX_NAME_LENGTH = 1 << 16;
+
+    /**
+     * A delta read up to its compressed part.
+     */
+    private static final class Delta
+    {
+        /**
+         * The reader of the delta, positioned at the compressed part.
+         */
+        private final BinaryModel.Reader reader;
+        /**
+         * The topology of the network.
+         */
+        private final List<Integer> topology;
+        /**
+         * The learning rate of the network.
+         */
+        private final double learningRate;
+        /**
+         * The precision of the weights.
+         */
+        private final Precision precision;
+        /**
+         * The tolerance of the delta.
+         */
+        private final double tolerance;
+        /**
+         * The checksum of the parameters of the reference.
+         */
+        private final long referenceChecksum;
+
+        /**
+         * Constructs a new delta.
+         *
+         * @param reader the reader of the delta, positioned at the compressed
+         *        part.
+         * @param topology the topology of the network.
+         * @param learningRate the learning rate of the network.
+         * @param precision the precision of the weights.
+         * @param tolerance the tolerance of the delta.
+         * @param referenceChecksum the checksum of the parameters of the
+         *        reference.
+         */
+        private Delta(BinaryModel.Reader reader, List<Integer> topology, double learningRate, Precision precision,
+                double tolerance, long referenceChecksum)
+        {
+            this.reader = reader;
+            this.topology = topology;
+            this.learningRate = learningRate;
+            this.precision = precision;
+            this.tolerance = tolerance;
+            this.referenceChecksum = referenceChecksum;
+        }
+    }
+
+    /**
+     * Prevents instantiation.
+     */
+    private DeltaModel()
+    {
+    }
+
+    /**
+     * Checks whether the specified file starts with the magic number of the format.
+     *
+     * @param path the path of the file.
+     * @return true if the file is a delta checkpoint, false otherwise.
+     * @throws IOException if the file cannot be read.
+     */
+    static boolean isDelta(Path path) throws IOException
+    {
+        return BinaryModel.hasMagic(path, MAGIC);
+    }
+
+    /**
+     * Writes the delta from a reference snapshot to another snapshot of the
+     * same shape. A lossy delta turns the reference into the snapshot restored
+     * from the delta.
+     *
+     * @param channel the channel to write to; it is not closed.
+     * @param snapshot the snapshot.
+     * @param reference the snapshot of the reference checkpoint, as restored.
+     * @param referenceName the file name of the reference checkpoint, in the
+     *        directory of the delta.
+     * @param tolerance the largest difference allowed between a parameter and
+     *        its restored value, zero for a lossless delta.
+     * @throws IOException if writing fails.
+     */
+    static void write(WritableByteChannel channel, ParameterSnapshot snapshot, ParameterSnapshot reference,
+            String referenceName, double tolerance) throws IOException
+    {
+        long referenceChecksum = reference.checksum();
+        BinaryModel.Writer writer = new BinaryModel.Writer(channel);
+        List<Integer> topology = snapshot.getTopology();
+        writer.putInt(MAGIC);
+        writer.putInt(VERSION);
+        writer.putInt(snapshot.getPrecision().ordinal());
+        writer.putInt(topology.size());
+        for (var size : topology)
+        {
+            writer.putInt(size);
+        }
+        if (topology.size() % 2 != 0)
+        {
+            writer.putInt(0);
+        }
+        writer.putDouble(snapshot.getLearningRate());
+        writer.putDouble(tolerance);
+        writer.putLong(referenceChecksum);
+        byte[] name = referenceName.getBytes(StandardCharsets.UTF_8);
+        writer.putInt(name.length);
+        writer.putBytes(name, 0, name.length);
+        writer.compress();
+        snapshot.writeDelta(writer, reference, tolerance);
+        writer.finish();
+    }
+
+    /**
+     * Reads a checkpoint, either a full model in the binary format or a
+     * delta, which is restored from the chain of its references.
+     *
+     * @param path the path of the checkpoint.
+     * @return the snapshot of the parameters of the checkpoint.
+     * @throws IOException if a checkpoint of the chain cannot be read, is
+     *         invalid or does not match the checksum expected by its delta.
+     */
+    static ParameterSnapshot read(Path path) throws IOException
+    {
+        List<Delta> deltas = new ArrayList<>();
+        Path current = path;
+        while (isDelta(current))
+        {
+            if (deltas.size() == MAX_CHAIN)
+            {
+                throw new IOException("DeltaModel : chain of deltas too long");
+            }
+            BinaryModel.Reader reader = BinaryModel.Reader.map(current);
+            deltas.add(readHeader(reader));
+            int length = reader.getInt();
+            if (length <= 0 || length > MAX_NAME_LENGTH)
+            {
+                throw new IOException("DeltaModel : invalid reference name");
+            }
+            byte[] name = new byte[length];
+            reader.getBytes(name, 0, name.length);
+            current = current.resolveSibling(new String(name, StandardCharsets.UTF_8));
+        }
+
+        BinaryModel.Reader base = BinaryModel.Reader.map(current);
+        base.readHeader();
+        ParameterSnapshot snapshot = new ParameterSnapshot();
+        snapshot.readFrom(base);
+        for (int d = deltas.size() - 1; d >= 0; --d)
+        {
+            apply(deltas.get(d), snapshot);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Reads the header of a delta, up to the name of its reference.
+     *
+     * @param reader the reader of the delta.
+     * @return the delta.
+     * @throws IOException if the header is invalid.
+     */
+    private static Delta readHeader(BinaryModel.Reader reader) throws IOException
+    {
+        if (reader.getInt() != MAGIC)
+        {
+            throw new IOException("DeltaModel : not a delta");
+        }
+        int version = reader.getInt();
+        if (version != VERSION)
+        {
+            throw new IOException("DeltaModel : unsupported version " + version);
+        }
+        int ordinal = reader.getInt();
+        if (ordinal < 0 || ordinal >= Precision.values().length)
+        {
+            throw new IOException("DeltaModel : invalid precision");
+        }
+        int layers = reader.getInt();
+        if (layers < 2)
+        {
+            throw new IOException("DeltaModel : invalid topology");
+        }
+        List<Integer> topology = new ArrayList<>(layers);
+        for (int i = 0; i < layers; ++i)
+        {
+            topology.add(reader.getInt());
+        }
+        if (layers % 2 != 0)
+        {
+            reader.getInt();
+        }
+        double learningRate = reader.getDouble();
+        double tolerance = reader.getDouble();
+        if (!(tolerance >= 0.0 && tolerance < Double.POSITIVE_INFINITY))
+        {
+            throw new IOException("DeltaModel : invalid tolerance");
+        }
+        long referenceChecksum = reader.getLong();
+        return new Delta(reader, topology, learningRate, Precision.values()[ordinal], tolerance,
+                referenceChecksum);
+    }
+
+    /**
+     * Applies a delta to the snapshot of its reference.
+     *
+     * @param delta the delta.
+     * @param snapshot the snapshot of the reference, turned into the snapshot
+     *        of the delta.
+     * @throws IOException if the delta is invalid or does not match the
+     *         reference.
+     */
+    private static void apply(Delta delta, ParameterSnapshot snapshot) throws IOException
+    {
+        if (!delta.topology.equals(snapshot.getTopology()) || delta.precision != snapshot.getPrecision())
+        {
+            throw new IOException("DeltaModel : reference of another shape");
+        }
+        if (delta.referenceChecksum != snapshot.checksum())
+        {
+            throw new IOException("DeltaModel : reference checksum mismatch");
+        }
+        BinaryModel.Reader reader = delta.reader;
+        reader.decompress();
+        snapshot.applyDelta(reader, delta.tolerance);
+        reader.checkEnd();
+        snapshot.setLearningRate(delta.learningRate);
+    }
+}
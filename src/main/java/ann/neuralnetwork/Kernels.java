@@ -0,0 +1,664 @@
+package ann.neuralnetwork;
+
+/**
+ * Contains the numerical kernels used by the layers of a neural network.
+ * <p>
+ * Matrices are stored in row-major order in flat arrays, one row per neuron
+ * and one column per input of the neuron.
+ * <p>
+ * The basic kernels are dispatched at startup either to {@link VectorKernels},
+ * when the {@code jdk.incubator.vector} module is present and the platform
+ * has vectors of doubles, or to the scalar loops of this class. The system
+ * property {@code ann.vector=false} forces the scalar loops.
+ * <p>
+ * The kernels on {@code float[]} matrices serve networks in single or mixed
+ * {@link Precision}. Their "wide" variants accumulate in doubles. The kernels
+ * on {@code byte[]} vectors serve the {@link QuantizedNetwork} and accumulate
+ * in ints.
+ */
+final class Kernels
+{
+    /**
+     * The number of columns processed at a time by the blocked kernels.
+     */
+    private static final int BLOCK_SIZE = 1024;
+    /**
+     * The largest number of products of bytes summed in ints, 2^16 products
+     * of at most 2^14 in magnitude staying below 2^31.
+     */
+    private static final int BYTE_BLOCK_SIZE = 1 << 16;
+    /**
+     * Whether the basic kernels are vectorized.
+     */
+    static final boolean VECTORIZED = isVectorAvailable();
+
+    /**
+     * Prevents instantiation.
+     */
+    private Kernels()
+    {
+    }
+
+    /**
+     * Checks whether the vectorized kernels can and should be used.
+     *
+     * @return true if the vectorized kernels are available.
+     */
+    private static boolean isVectorAvailable()
+    {
+        if (!Boolean.parseBoolean(System.getProperty("ann.vector", "true"))
+                || ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty())
+        {
+            return false;
+        }
+        try
+        {
+            return VectorKernels.isSupported();
+        }
+        catch (LinkageError e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Computes the dot product of two vectors.
+     *
+     * @param a the first vector.
+     * @param aOffset the offset of the first vector.
+     * @param b the second vector.
+     * @param bOffset the offset of the second vector.
+     * @param length the length of the vectors.
+     * @return the dot product.
+     */
+    static double dot(double[] a, int aOffset, double[] b, int bOffset, int length)
+    {
+        if (VECTORIZED)
+        {
+            return VectorKernels.dot(a, aOffset, b, bOffset, length);
+        }
+        return scalarDot(a, aOffset, b, bOffset, length);
+    }
+
+    /**
+     * Computes the dot product of two vectors with a scalar loop.
+     *
+     * @param a the first vector.
+     * @param aOffset the offset of the first vector.
+     * @param b the second vector.
+     * @param bOffset the offset of the second vector.
+     * @param length the length of the vectors.
+     * @return the dot product.
+     */
+    static double scalarDot(double[] a, int aOffset, double[] b, int bOffset, int length)
+    {
+        double sum = 0.0;
+        for (int i = 0; i < length; ++i)
+        {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    /**
+     * Computes the dot products of one vector with four vectors and adds them
+     * to the results. Each sum is the same as that of {@link #dot}.
+     *
+     * @param a the shared vector.
+     * @param aOffset the offset of the shared vector.
+     * @param x the array holding the four vectors.
+     * @param xOffset the offset of the first of the four vectors.
+     * @param xStride the distance between the four vectors.
+     * @param results the array of results.
+     * @param rOffset the index of the result of the first vector.
+     * @param rStride the distance between the results.
+     * @param length the length of the vectors.
+     */
+    static void dot4(double[] a, int aOffset, double[] x, int xOffset, int xStride, double[] results, int rOffset,
+            int rStride, int length)
+    {
+        if (VECTORIZED)
+        {
+            VectorKernels.dot4(a, aOffset, x, xOffset, xStride, results, rOffset, rStride, length);
+        }
+        else
+        {
+            scalarDot4(a, aOffset, x, xOffset, xStride, results, rOffset, rStride, length);
+        }
+    }
+
+    /**
+     * Computes the dot products of one vector with four vectors with a scalar
+     * loop and adds them to the results.
+     *
+     * @param a the shared vector.
+     * @param aOffset the offset of the shared vector.
+     * @param x the array holding the four vectors.
+     * @param xOffset the offset of the first of the four vectors.
+     * @param xStride the distance between the four vectors.
+     * @param results the array of results.
+     * @param rOffset the index of the result of the first vector.
+     * @param rStride the distance between the results.
+     * @param length the length of the vectors.
+     */
+    static void scalarDot4(double[] a, int aOffset, double[] x, int xOffset, int xStride, double[] results,
+            int rOffset, int rStride, int length)
+    {
+        int x0 = xOffset;
+        int x1 = x0 + xStride;
+        int x2 = x1 + xStride;
+        int x3 = x2 + xStride;
+        double s0 = 0.0;
+        double s1 = 0.0;
+        double s2 = 0.0;
+        double s3 = 0.0;
+        for (int i = 0; i < length; ++i)
+        {
+            double w = a[aOffset + i];
+            s0 += w * x[x0 + i];
+            s1 += w * x[x1 + i];
+            s2 += w * x[x2 + i];
+            s3 += w * x[x3 + i];
+        }
+        results[rOffset] += s0;
+        results[rOffset + rStride] += s1;
+        results[rOffset + 2 * rStride] += s2;
+        results[rOffset + 3 * rStride] += s3;
+    }
+
+    /**
+     * Adds the scaled vector x to the vector y.
+     *
+     * @param alpha the scale of x.
+     * @param x the vector to add.
+     * @param xOffset the offset of x.
+     * @param y the vector to add to.
+     * @param yOffset the offset of y.
+     * @param length the length of the vectors.
+     */
+    static void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length)
+    {
+        if (VECTORIZED)
+        {
+            VectorKernels.axpy(alpha, x, xOffset, y, yOffset, length);
+        }
+        else
+        {
+            scalarAxpy(alpha, x, xOffset, y, yOffset, length);
+        }
+    }
+
+    /**
+     * Adds the scaled vector x to the vector y with a scalar loop.
+     *
+     * @param alpha the scale of x.
+     * @param x the vector to add.
+     * @param xOffset the offset of x.
+     * @param y the vector to add to.
+     * @param yOffset the offset of y.
+     * @param length the length of the vectors.
+     */
+    static void scalarAxpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length)
+    {
+        for (int i = 0; i < length; ++i)
+        {
+            y[yOffset + i] += alpha * x[xOffset + i];
+        }
+    }
+
+    /**
+     * Multiplies the specified rows of the matrix by each of the vectors and
+     * adds the bias.
+     * <p>
+     * The columns are processed in blocks small enough for a block of a row
+     * and the matching blocks of the vectors to stay in the cache, and each
+     * row block is multiplied by four vectors at a time. Thus each row of the
+     * matrix is loaded once per batch rather than once per vector. The sum for
+     * a vector does not depend on the size of the batch.
+     *
+     * @param matrix the matrix.
+     * @param rows the number of rows of the matrix.
+     * @param columns the number of columns of the matrix.
+     * @param vectors the batch of vectors of length columns.
+     * @param bias the bias of length rows.
+     * @param results the batch of results of length rows.
+     * @param batchSize the number of vectors in the batch.
+     * @param rowFrom the first row to multiply, inclusive.
+     * @param rowTo the last row to multiply, exclusive.
+     */
+    static void multiply(double[] matrix, int rows, int columns, double[] vectors, double[] bias, double[] results,
+            int batchSize, int rowFrom, int rowTo)
+    {
+        for (int b = 0; b < batchSize; ++b)
+        {
+            System.arraycopy(bias, rowFrom, results, b * rows + rowFrom, rowTo - rowFrom);
+        }
+        for (int block = 0; block < columns; block += BLOCK_SIZE)
+        {
+            int length = Math.min(BLOCK_SIZE, columns - block);
+            for (int j = rowFrom; j < rowTo; ++j)
+            {
+                int row = j * columns + block;
+                int b = 0;
+                for (; b + 4 <= batchSize; b += 4)
+                {
+                    dot4(matrix, row, vectors, b * columns + block, columns, results, b * rows + j, rows, length);
+                }
+                for (; b < batchSize; ++b)
+                {
+                    results[b * rows + j] += dot(matrix, row, vectors, b * columns + block, length);
+                }
+            }
+        }
+    }
+
+    /**
+     * Multiplies the specified columns of the transposed matrix by each of
+     * the vectors.
+     *
+     * @param matrix the matrix.
+     * @param rows the number of rows of the matrix.
+     * @param columns the number of columns of the matrix.
+     * @param vectors the batch of vectors of length rows.
+     * @param results the batch of results of length columns.
+     * @param batchSize the number of vectors in the batch.
+     * @param columnFrom the first column to multiply, inclusive.
+     * @param columnTo the last column to multiply, exclusive.
+     */
+    static void multiplyTransposed(double[] matrix, int rows, int columns, double[] vectors, double[] results,
+            int batchSize, int columnFrom, int columnTo)
+    {
+        int length = columnTo - columnFrom;
+        for (int b = 0; b < batchSize; ++b)
+        {
+            for (int k = columnFrom; k < columnTo; ++k)
+            {
+                results[b * columns + k] = 0.0;
+            }
+        }
+        for (int j = 0; j < rows; ++j)
+        {
+            for (int b = 0; b < batchSize; ++b)
+            {
+                axpy(vectors[b * rows + j], matrix, j * columns + columnFrom, results, b * columns + columnFrom,
+                        length);
+            }
+        }
+    }
+
+    /**
+     * Subtracts the scaled sum of the outer products of the pairs of vectors
+     * from the specified rows of the matrix.
+     *
+     * @param rate the scale of the outer products.
+     * @param matrix the matrix.
+     * @param rows the number of rows of the matrix.
+     * @param columns the number of columns of the matrix.
+     * @param left the batch of vectors of length rows.
+     * @param right the batch of vectors of length columns.
+     * @param batchSize the number of pairs of vectors in the batch.
+     * @param rowFrom the first row to update, inclusive.
+     * @param rowTo the last row to update, exclusive.
+     */
+    static void subtractOuter(double rate, double[] matrix, int rows, int columns, double[] left, double[] right,
+            int batchSize, int rowFrom, int rowTo)
+    {
+        for (int j = rowFrom; j < rowTo; ++j)
+        {
+            for (int b = 0; b < batchSize; ++b)
+            {
+                axpy(-rate * left[b * rows + j], right, b * columns, matrix, j * columns, columns);
+            }
+        }
+    }
+
+    /**
+     * Computes the dot product of two vectors of floats, accumulated in floats.
+     *
+     * @param a the first vector.
+     * @param aOffset the offset of the first vector.
+     * @param b the second vector.
+     * @param bOffset the offset of the second vector.
+     * @param length the length of the vectors.
+     * @return the dot product.
+     */
+    static float dot(float[] a, int aOffset, float[] b, int bOffset, int length)
+    {
+        if (VECTORIZED)
+        {
+            return VectorKernels.dot(a, aOffset, b, bOffset, length);
+        }
+        return scalarDot(a, aOffset, b, bOffset, length);
+    }
+
+    /**
+     * Computes the dot product of two vectors of floats with a scalar loop,
+     * accumulated in floats.
+     *
+     * @param a the first vector.
+     * @param aOffset the offset of the first vector.
+     * @param b the second vector.
+     * @param bOffset the offset of the second vector.
+     * @param length the length of the vectors.
+     * @return the dot product.
+     */
+    static float scalarDot(float[] a, int aOffset, float[] b, int bOffset, int length)
+    {
+        float sum = 0.0f;
+        for (int i = 0; i < length; ++i)
+        {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    /**
+     * Computes the dot product of two vectors of floats, accumulated in doubles.
+     *
+     * @param a the first vector.
+     * @param aOffset the offset of the first vector.
+     * @param b the second vector.
+     * @param bOffset the offset of the second vector.
+     * @param length the length of the vectors.
+     * @return the dot product.
+     */
+    static double wideDot(float[] a, int aOffset, float[] b, int bOffset, int length)
+    {
+        if (VECTORIZED)
+        {
+            return VectorKernels.wideDot(a, aOffset, b, bOffset, length);
+        }
+        return scalarWideDot(a, aOffset, b, bOffset, length);
+    }
+
+    /**
+     * Computes the dot product of two vectors of floats with a scalar loop,
+     * accumulated in doubles.
+     *
+     * @param a the first vector.
+     * @param aOffset the offset of the first vector.
+     * @param b the second vector.
+     * @param bOffset the offset of the second vector.
+     * @param length the length of the vectors.
+     * @return the dot product.
+     */
+    static double scalarWideDot(float[] a, int aOffset, float[] b, int bOffset, int length)
+    {
+        double sum = 0.0;
+        for (int i = 0; i < length; ++i)
+        {
+            sum += (double) a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    /**
+     * Computes the dot products of one vector of floats with four vectors of
+     * floats and adds them to the results. Each sum is the same as that of
+     * {@link #dot(float[], int, float[], int, int)} or, if wide, of
+     * {@link #wideDot(float[], int, float[], int, int)}.
+     *
+     * @param a the shared vector.
+     * @param aOffset the offset of the shared vector.
+     * @param x the array holding the four vectors.
+     * @param xOffset the offset of the first of the four vectors.
+     * @param xStride the distance between the four vectors.
+     * @param results the array of results.
+     * @param rOffset the index of the result of the first vector.
+     * @param rStride the distance between the results.
+     * @param length the length of the vectors.
+     * @param wide whether to accumulate in doubles.
+     */
+    static void dot4(float[] a, int aOffset, float[] x, int xOffset, int xStride, double[] results, int rOffset,
+            int rStride, int length, boolean wide)
+    {
+        if (VECTORIZED)
+        {
+            VectorKernels.dot4(a, aOffset, x, xOffset, xStride, results, rOffset, rStride, length, wide);
+        }
+        else
+        {
+            scalarDot4(a, aOffset, x, xOffset, xStride, results, rOffset, rStride, length, wide);
+        }
+    }
+
+    /**
+     * Computes the dot products of one vector of floats with four vectors of
+     * floats with a scalar loop and adds them to the results.
+     *
+     * @param a the shared vector.
+     * @param aOffset the offset of the shared vector.
+     * @param x the array holding the four vectors.
+     * @param xOffset the offset of the first of the four vectors.
+     * @param xStride the distance between the four vectors.
+     * @param results the array of results.
+     * @param rOffset the index of the result of the first vector.
+     * @param rStride the distance between the results.
+     * @param length the length of the vectors.
+     * @param wide whether to accumulate in doubles.
+     */
+    static void scalarDot4(float[] a, int aOffset, float[] x, int xOffset, int xStride, double[] results,
+            int rOffset, int rStride, int length, boolean wide)
+    {
+        for (int v = 0; v < 4; ++v)
+        {
+            results[rOffset + v * rStride] += wide
+                    ? scalarWideDot(a, aOffset, x, xOffset + v * xStride, length)
+                    : scalarDot(a, aOffset, x, xOffset + v * xStride, length);
+        }
+    }
+
+    /**
+     * Adds the scaled vector of floats x to the vector of floats y.
+     *
+     * @param alpha the scale of x.
+     * @param x the vector to add.
+     * @param xOffset the offset of x.
+     * @param y the vector to add to.
+     * @param yOffset the offset of y.
+     * @param length the length of the vectors.
+     */
+    static void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int length)
+    {
+        if (VECTORIZED)
+        {
+            VectorKernels.axpy(alpha, x, xOffset, y, yOffset, length);
+        }
+        else
+        {
+            scalarAxpy(alpha, x, xOffset, y, yOffset, length);
+        }
+    }
+
+    /**
+     * Adds the scaled vector of floats x to the vector of floats y with a scalar loop.
+     *
+     * @param alpha the scale of x.
+     * @param x the vector to add.
+     * @param xOffset the offset of x.
+     * @param y the vector to add to.
+     * @param yOffset the offset of y.
+     * @param length the length of the vectors.
+     */
+    static void scalarAxpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int length)
+    {
+        for (int i = 0; i < length; ++i)
+        {
+            y[yOffset + i] += alpha * x[xOffset + i];
+        }
+    }
+
+    /**
+     * Adds the scaled vector of floats x to the vector of doubles y.
+     *
+     * @param alpha the scale of x.
+     * @param x the vector to add.
+     * @param xOffset the offset of x.
+     * @param y the vector to add to.
+     * @param yOffset the offset of y.
+     * @param length the length of the vectors.
+     */
+    static void axpy(double alpha, float[] x, int xOffset, double[] y, int yOffset, int length)
+    {
+        for (int i = 0; i < length; ++i)
+        {
+            y[yOffset + i] += alpha * x[xOffset + i];
+        }
+    }
+
+    /**
+     * Multiplies the specified rows of the matrix of floats by each of the
+     * vectors of floats and adds the bias. The columns are blocked as in
+     * {@link #multiply(double[], int, int, double[], double[], double[], int, int, int)}.
+     *
+     * @param matrix the matrix.
+     * @param rows the number of rows of the matrix.
+     * @param columns the number of columns of the matrix.
+     * @param vectors the batch of vectors of length columns.
+     * @param bias the bias of length rows.
+     * @param results the batch of results of length rows.
+     * @param batchSize the number of vectors in the batch.
+     * @param rowFrom the first row to multiply, inclusive.
+     * @param rowTo the last row to multiply, exclusive.
+     * @param wide whether to accumulate in doubles.
+     */
+    static void multiply(float[] matrix, int rows, int columns, float[] vectors, double[] bias, double[] results,
+            int batchSize, int rowFrom, int rowTo, boolean wide)
+    {
+        for (int b = 0; b < batchSize; ++b)
+        {
+            System.arraycopy(bias, rowFrom, results, b * rows + rowFrom, rowTo - rowFrom);
+        }
+        for (int block = 0; block < columns; block += BLOCK_SIZE)
+        {
+            int length = Math.min(BLOCK_SIZE, columns - block);
+            for (int j = rowFrom; j < rowTo; ++j)
+            {
+                int row = j * columns + block;
+                int b = 0;
+                for (; b + 4 <= batchSize; b += 4)
+                {
+                    dot4(matrix, row, vectors, b * columns + block, columns, results, b * rows + j, rows, length,
+                            wide);
+                }
+                for (; b < batchSize; ++b)
+                {
+                    results[b * rows + j] += wide
+                            ? wideDot(matrix, row, vectors, b * columns + block, length)
+                            : dot(matrix, row, vectors, b * columns + block, length);
+                }
+            }
+        }
+    }
+
+    /**
+     * Multiplies the specified columns of the transposed matrix of floats by
+     * each of the vectors.
+     *
+     * @param matrix the matrix.
+     * @param rows the number of rows of the matrix.
+     * @param columns the number of columns of the matrix.
+     * @param vectors the batch of vectors of length rows.
+     * @param results the batch of results of length columns.
+     * @param batchSize the number of vectors in the batch.
+     * @param columnFrom the first column to multiply, inclusive.
+     * @param columnTo the last column to multiply, exclusive.
+     */
+    static void multiplyTransposed(float[] matrix, int rows, int columns, double[] vectors, double[] results,
+            int batchSize, int columnFrom, int columnTo)
+    {
+        int length = columnTo - columnFrom;
+        for (int b = 0; b < batchSize; ++b)
+        {
+            for (int k = columnFrom; k < columnTo; ++k)
+            {
+                results[b * columns + k] = 0.0;
+            }
+        }
+        for (int j = 0; j < rows; ++j)
+        {
+            for (int b = 0; b < batchSize; ++b)
+            {
+                axpy(vectors[b * rows + j], matrix, j * columns + columnFrom, results, b * columns + columnFrom,
+                        length);
+            }
+        }
+    }
+
+    /**
+     * Subtracts the scaled sum of the outer products of the pairs of vectors
+     * from the specified rows of the matrix of floats.
+     *
+     * @param rate the scale of the outer products.
+     * @param matrix the matrix.
+     * @param rows the number of rows of the matrix.
+     * @param columns the number of columns of the matrix.
+     * @param left the batch of vectors of length rows.
+     * @param right the batch of vectors of floats of length columns.
+     * @param batchSize the number of pairs of vectors in the batch.
+     * @param rowFrom the first row to update, inclusive.
+     * @param rowTo the last row to update, exclusive.
+     */
+    static void subtractOuter(double rate, float[] matrix, int rows, int columns, double[] left, float[] right,
+            int batchSize, int rowFrom, int rowTo)
+    {
+        for (int j = rowFrom; j < rowTo; ++j)
+        {
+            for (int b = 0; b < batchSize; ++b)
+            {
+                axpy((float) (-rate * left[b * rows + j]), right, b * columns, matrix, j * columns, columns);
+            }
+        }
+    }
+
+    /**
+     * Computes the dot product of two vectors of bytes, accumulated in ints
+     * over blocks short enough not to overflow and summed in a long.
+     *
+     * @param a the first vector.
+     * @param aOffset the offset of the first vector.
+     * @param b the second vector.
+     * @param bOffset the offset of the second vector.
+     * @param length the length of the vectors.
+     * @return the dot product.
+     */
+    static long dot(byte[] a, int aOffset, byte[] b, int bOffset, int length)
+    {
+        long sum = 0;
+        for (int from = 0; from < length; from += BYTE_BLOCK_SIZE)
+        {
+            int count = Math.min(BYTE_BLOCK_SIZE, length - from);
+            if (VECTORIZED)
+            {
+                sum += VectorKernels.dot(a, aOffset + from, b, bOffset + from, count);
+            }
+            else
+            {
+                sum += scalarDot(a, aOffset + from, b, bOffset + from, count);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Computes the dot product of two vectors of bytes with a scalar loop,
+     * accumulated in ints. The vectors must be short enough for the sum not
+     * to overflow.
+     *
+     * @param a the first vector.
+     * @param aOffset the offset of the first vector.
+     * @param b the second vector.
+     * @param bOffset the offset of the second vector.
+     * @param length the length of the vectors.
+     * @return the dot product.
+     */
+    static int scalarDot(byte[] a, int aOffset, byte[] b, int bOffset, int length)
+    {
+        int sum = 0;
+        for (int i = 0; i < length; ++i)
+        {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+}
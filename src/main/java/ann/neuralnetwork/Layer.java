@@ -1,17 +1,125 @@
 package ann.neuralnetwork;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * Represents a layer of neurons in a neural network.
+ * <p>
+ * The parameters and the state of the neurons are kept in contiguous arrays.
+ * The weights form a row-major matrix with one row per neuron of this layer
+ * and one column per neuron of the previous layer. The state of the neurons
+ * is kept for a batch of samples, one row per sample.
+ * <p>
+ * In single or mixed {@link Precision} the weights are kept as floats, and
+ * the output values are mirrored as floats to feed the next layer.
+ * <p>
+ * The values of the neurons pass through the transfer function of the
+ * layer, its {@link Activation}, whose kernels are in {@link Activations}.
+ * <p>
+ * A layer is fully connected to the previous one until it is pruned. The
+ * weights of a pruned layer are kept as compressed sparse rows: only the kept
+ * connections are stored, neuron by neuron, along with their inputs, and the
+ * kernels of {@link SparseKernels} skip the pruned ones, which stay pruned
+ * while the layer is trained.
+ * <p>
+ * When a layer is wide enough, its neurons are split into chunks which are
+ * processed on a shared fork-join pool. Smaller layers are processed serially,
+ * since for them the cost of the tasks would exceed the work.
  */
 public class Layer implements Serializable
 {
     /**
-     * The neurons of the layer.
+     * The size of the layer.
      */
-    private final List<Neuron> neurons;
+    private final int size;
+    /**
+     * The learning rate of the layer.
+     */
+    private final double rate;
+    /**
+     * The number of inputs of each neuron, i.e. the size of the previous layer.
+     */
+    private int inputSize;
+    /**
+     * The precision of the weights of the layer.
+     */
+    private final Precision precision;
+    /**
+     * The transfer function of the neurons of the layer.
+     */
+    private final Activation activation;
+    /**
+     * The connection weights of the layer in double precision, or null in single precision.
+     */
+    private double[] weights;
+    /**
+     * The connection weights of the layer in single precision, or null in double precision.
+     */
+    private float[] singleWeights;
+    /**
+     * The index in the weights of the first connection of each neuron,
+     * followed by the number of kept connections, or null if the layer is
+     * fully connected.
+     */
+    private int[] rowStarts;
+    /**
+     * The input of each kept connection, in the order of the weights and
+     * increasing for each neuron, or null if the layer is fully connected.
+     */
+    private int[] columns;
+    /**
+     * The biases of the neurons.
+     */
+    private final double[] biases;
+    /**
+     * The number of samples the state of the layer can hold.
+     */
+    private int capacity;
+    /**
+     * The input values of the neurons for each sample.
+     */
+    private double[] inputValues;
+    /**
+     * The output values of the neurons for each sample.
+     */
+    private double[] outputValues;
+    /**
+     * The output values of the neurons for each sample as floats, or null in double precision.
+     */
+    private float[] singleOutputValues;
+    /**
+     * The gradients of the neurons for each sample.
+     */
+    private double[] gradients;
+    /**
+     * The previous layer, or null for the input layer.
+     */
+    private Layer previous;
+    /**
+     * The next layer, or null for the output layer.
+     */
+    private Layer next;
+
+    /**
+     * The random number generator.
+     */
+    private static final Random random = new Random();
+    /**
+     * The minimal number of multiply-adds of an operation to process it in parallel.
+     */
+    private static final long PARALLEL_THRESHOLD = 1L << 16;
+    /**
+     * The pool processing the chunks of the layers.
+     */
+    private static final ForkJoinPool pool = ForkJoinPool.commonPool();
+    /**
+     * Whether wide layers are processed in parallel.
+     */
+    private static volatile boolean parallel = true;
 
     /**
      * Constructs a new layer with the specified size and learning rate.
@@ -21,78 +129,659 @@ public class Layer implements Serializable
      */
     public Layer(int size, double learningRate)
     {
-        assert (size > 0);
+        this(size, learningRate, Precision.DOUBLE);
+    }
+
+    /**
+     * Constructs a new layer with the specified size, learning rate and precision.
+     *
+     * @param size the size of the layer.
+     * @param learningRate the learning rate of the layer.
+     * @param precision the precision of the weights of the layer.
+     */
+    public Layer(int size, double learningRate, Precision precision)
+    {
+        this(size, learningRate, precision, Activation.TANH);
+    }
+
+    /**
+     * Constructs a new layer with the specified size, learning rate, precision
+     * and transfer function.
+     *
+     * @param size the size of the layer.
+     * @param learningRate the learning rate of the layer.
+     * @param precision the precision of the weights of the layer.
+     * @param activation the transfer function of the neurons of the layer.
+     */
+    public Layer(int size, double learningRate, Precision precision, Activation activation)
+    {
+        assert (size > 0);
+        assert (learningRate > 0.0 && learningRate < 1.0);
+
+        this.size = size;
+        rate = learningRate;
+        this.precision = precision;
+        this.activation = activation;
+        inputSize = 0;
+        if (precision.isSingle())
+        {
+            singleWeights = new float[0];
+            singleOutputValues = new float[size];
+        }
+        else
+        {
+            weights = new double[0];
+        }
+        biases = new double[size];
+        for (int j = 0; j < size; ++j)
+        {
+            biases[j] = random.nextDouble(-1.0, +1.0);
+        }
+        capacity = 1;
+        inputValues = new double[size];
+        outputValues = new double[size];
+        gradients = new double[size];
+    }
+
+    /**
+     * Constructs a replica of the specified layer. The replica shares the
+     * parameters of the layer but has its own state.
+     *
+     * @param shared the layer to replicate.
+     * @param previous the replica of the previous layer, or null for the input layer.
+     */
+    Layer(Layer shared, Layer previous)
+    {
+        size = shared.size;
+        rate = shared.rate;
+        precision = shared.precision;
+        activation = shared.activation;
+        inputSize = shared.inputSize;
+        weights = shared.weights;
+        singleWeights = shared.singleWeights;
+        rowStarts = shared.rowStarts;
+        columns = shared.columns;
+        biases = shared.biases;
+        capacity = 1;
+        inputValues = new double[size];
+        outputValues = new double[size];
+        if (precision.isSingle())
+        {
+            singleOutputValues = new float[size];
+        }
+        gradients = new double[size];
+        this.previous = previous;
+        if (previous != null)
+        {
+            previous.next = this;
+        }
+    }
+
+    /**
+     * Ensures that the layer can hold the state of the specified number of samples.
+     *
+     * @param batchSize the number of samples.
+     */
+    public void ensureCapacity(int batchSize)
+    {
+        assert (batchSize > 0);
+
+        if (batchSize > capacity)
+        {
+            capacity = batchSize;
+            inputValues = new double[capacity * size];
+            outputValues = new double[capacity * size];
+            if (precision.isSingle())
+            {
+                singleOutputValues = new float[capacity * size];
+            }
+            gradients = new double[capacity * size];
+        }
+    }
+
+    /**
+     * Joins the specified layers together. The weights of the next layer are
+     * drawn uniformly with a variance of one over the number of its inputs,
+     * or two for a rectifier, so that the sums of wide layers do not saturate
+     * or blow up the transfer function.
+     *
+     * @param prev the previous layer.
+     * @param next the next layer.
+     */
+    public static void joinLayers(Layer prev, Layer next)
+    {
+        assert (prev != null && next != null);
+        assert (prev.next == null && next.previous == null);
+        assert (prev.precision == next.precision);
+        assert (prev.activation != Activation.SOFTMAX);
+
+        prev.next = next;
+        next.previous = prev;
+        next.inputSize = prev.size;
+        int count = next.size * prev.size;
+        double bound = Math.sqrt((next.activation.isRectifier() ? 6.0 : 3.0) / prev.size);
+        if (next.precision.isSingle())
+        {
+            next.singleWeights = new float[count];
+            for (int i = 0; i < count; ++i)
+            {
+                next.singleWeights[i] = random.nextFloat((float) -bound, (float) +bound);
+            }
+        }
+        else
+        {
+            next.weights = new double[count];
+            for (int i = 0; i < count; ++i)
+            {
+                next.weights[i] = random.nextDouble(-bound, +bound);
+            }
+        }
+    }
+
+    /**
+     * Returns the precision of the weights of the layer.
+     *
+     * @return the precision of the layer.
+     */
+    public Precision getPrecision()
+    {
+        return precision;
+    }
+
+    /**
+     * Returns the transfer function of the neurons of the layer.
+     *
+     * @return the transfer function of the layer.
+     */
+    public Activation getActivation()
+    {
+        return activation;
+    }
+
+    /**
+     * Returns the weight at the specified index of the weight matrix.
+     *
+     * @param index the index of the weight.
+     * @return the weight.
+     */
+    private double getWeight(int index)
+    {
+        if (rowStarts != null)
+        {
+            int position = find(index / inputSize, index % inputSize);
+            return (position >= 0) ? getValue(position) : 0.0;
+        }
+        return getValue(index);
+    }
+
+    /**
+     * Returns the weight at the specified position in the array of weights.
+     *
+     * @param position the position of the weight.
+     * @return the weight.
+     */
+    private double getValue(int position)
+    {
+        return precision.isSingle() ? singleWeights[position] : weights[position];
+    }
+
+    /**
+     * Finds the position of a connection in the array of weights of the
+     * pruned layer.
+     *
+     * @param neuron the index of the neuron.
+     * @param input the index of the input.
+     * @return the position of the connection, or a negative number if the
+     *         connection is pruned.
+     */
+    private int find(int neuron, int input)
+    {
+        return Arrays.binarySearch(columns, rowStarts[neuron], rowStarts[neuron + 1], input);
+    }
+
+    /**
+     * Copies the weights of a neuron into the specified array, in double
+     * precision.
+     *
+     * @param neuron the index of the neuron.
+     * @param row the array receiving the weights, sized for the input of the
+     *        layer.
+     */
+    void copyWeights(int neuron, double[] row)
+    {
+        if (rowStarts != null)
+        {
+            Arrays.fill(row, 0, inputSize, 0.0);
+            for (int p = rowStarts[neuron]; p < rowStarts[neuron + 1]; ++p)
+            {
+                row[columns[p]] = getValue(p);
+            }
+            return;
+        }
+        for (int k = 0; k < inputSize; ++k)
+        {
+            row[k] = getWeight(neuron * inputSize + k);
+        }
+    }
+
+    /**
+     * Returns the bias of a neuron.
+     *
+     * @param neuron the index of the neuron.
+     * @return the bias.
+     */
+    double getBias(int neuron)
+    {
+        return biases[neuron];
+    }
+
+    /**
+     * Sets the weight at the specified index of the weight matrix. The weight
+     * of a pruned connection is ignored.
+     *
+     * @param index the index of the weight.
+     * @param weight the weight.
+     */
+    private void setWeight(int index, double weight)
+    {
+        int position = index;
+        if (rowStarts != null)
+        {
+            position = find(index / inputSize, index % inputSize);
+            if (position < 0)
+            {
+                return;
+            }
+        }
+        if (precision.isSingle())
+        {
+            singleWeights[position] = (float) weight;
+        }
+        else
+        {
+            weights[position] = weight;
+        }
+    }
+
+    /**
+     * Returns the number of connections of the layer with the previous one.
+     *
+     * @return the number of connections kept.
+     */
+    long getConnectionCount()
+    {
+        return (rowStarts != null) ? rowStarts[size] : (long) size * inputSize;
+    }
+
+    /**
+     * Checks whether the layer is pruned, i.e. its weights are compressed
+     * sparse rows.
+     *
+     * @return true if the layer is pruned.
+     */
+    boolean isPruned()
+    {
+        return rowStarts != null;
+    }
+
+    /**
+     * Returns the inputs of each neuron of the pruned layer.
+     *
+     * @return the indices of the inputs kept by each neuron, increasing, or
+     *         null if the layer is fully connected.
+     */
+    int[][] getConnections()
+    {
+        if (rowStarts == null)
+        {
+            return null;
+        }
+        int[][] connections = new int[size][];
+        for (int j = 0; j < size; ++j)
+        {
+            connections[j] = Arrays.copyOfRange(columns, rowStarts[j], rowStarts[j + 1]);
+        }
+        return connections;
+    }
+
+    /**
+     * Prunes the layer, keeping the specified connections with their current
+     * weights. The layer must not have replicas yet.
+     *
+     * @param connections the indices of the inputs kept by each neuron,
+     *        increasing.
+     * @throws Exception if the connections are invalid.
+     */
+    void setConnections(int[][] connections) throws Exception
+    {
+        if (connections.length != size)
+        {
+            throw new Exception("Layer.setConnections : invalid number of neurons");
+        }
+        int[] starts = new int[size + 1];
+        for (int j = 0; j < size; ++j)
+        {
+            for (int p = 0; p < connections[j].length; ++p)
+            {
+                int input = connections[j][p];
+                if (input < 0 || input >= inputSize || (p > 0 && input <= connections[j][p - 1]))
+                {
+                    throw new Exception("Layer.setConnections : invalid input");
+                }
+            }
+            starts[j + 1] = Math.addExact(starts[j], connections[j].length);
+        }
+        int[] indices = new int[starts[size]];
+        double[] values = new double[starts[size]];
+        for (int j = 0; j < size; ++j)
+        {
+            for (int p = 0; p < connections[j].length; ++p)
+            {
+                indices[starts[j] + p] = connections[j][p];
+                values[starts[j] + p] = getWeight(j * inputSize + connections[j][p]);
+            }
+        }
+        rowStarts = starts;
+        columns = indices;
+        if (precision.isSingle())
+        {
+            singleWeights = new float[values.length];
+            for (int p = 0; p < values.length; ++p)
+            {
+                singleWeights[p] = (float) values[p];
+            }
+        }
+        else
+        {
+            weights = values;
+        }
+    }
+
+    /**
+     * Prunes the connections whose weights are smaller than the specified
+     * threshold in magnitude.
+     *
+     * @param threshold the smallest magnitude of the weights kept.
+     * @throws Exception if the layer cannot be pruned.
+     */
+    void prune(double threshold) throws Exception
+    {
+        int[][] connections = new int[size][];
+        double[] row = new double[inputSize];
+        for (int j = 0; j < size; ++j)
+        {
+            copyWeights(j, row);
+            int count = 0;
+            int[] kept = new int[inputSize];
+            for (int k = 0; k < inputSize; ++k)
+            {
+                if (Math.abs(row[k]) >= threshold && isKept(j, k))
+                {
+                    kept[count++] = k;
+                }
+            }
+            connections[j] = Arrays.copyOf(kept, count);
+        }
+        setConnections(connections);
+    }
+
+    /**
+     * Prunes all but the specified number of connections of each neuron, the
+     * ones with the largest weights in magnitude being kept.
+     *
+     * @param count the number of connections kept by each neuron.
+     * @throws Exception if the layer cannot be pruned.
+     */
+    void pruneToTop(int count) throws Exception
+    {
+        int[][] connections = new int[size][];
+        double[] row = new double[inputSize];
+        double[] magnitudes = new double[inputSize];
+        for (int j = 0; j < size; ++j)
+        {
+            copyWeights(j, row);
+            int candidates = 0;
+            for (int k = 0; k < inputSize; ++k)
+            {
+                if (isKept(j, k))
+                {
+                    magnitudes[candidates++] = Math.abs(row[k]);
+                }
+            }
+            if (count >= candidates)
+            {
+                connections[j] = (rowStarts != null)
+                        ? Arrays.copyOfRange(columns, rowStarts[j], rowStarts[j + 1]) : allInputs();
+                continue;
+            }
+            /* Keeps the weights above the smallest magnitude kept, then the first ones equal to it. */
+            Arrays.sort(magnitudes, 0, candidates);
+            double smallest = magnitudes[candidates - count];
+            int above = 0;
+            for (int k = 0; k < inputSize; ++k)
+            {
+                above += (isKept(j, k) && Math.abs(row[k]) > smallest) ? 1 : 0;
+            }
+            int ties = count - above;
+            int[] kept = new int[count];
+            int position = 0;
+            for (int k = 0; k < inputSize && position < count; ++k)
+            {
+                double magnitude = Math.abs(row[k]);
+                if (isKept(j, k) && (magnitude > smallest || (magnitude == smallest && ties-- > 0)))
+                {
+                    kept[position++] = k;
+                }
+            }
+            connections[j] = kept;
+        }
+        setConnections(connections);
+    }
+
+    /**
+     * Checks whether a connection is kept, i.e. the layer is fully connected
+     * or the connection was not pruned.
+     *
+     * @param neuron the index of the neuron.
+     * @param input the index of the input.
+     * @return true if the connection is kept.
+     */
+    private boolean isKept(int neuron, int input)
+    {
+        return rowStarts == null || find(neuron, input) >= 0;
+    }
+
+    /**
+     * Lists the inputs of a fully connected neuron.
+     *
+     * @return the indices of all the inputs.
+     */
+    private int[] allInputs()
+    {
+        int[] inputs = new int[inputSize];
+        for (int k = 0; k < inputSize; ++k)
+        {
+            inputs[k] = k;
+        }
+        return inputs;
+    }
+
+    /**
+     * Passes the specified range of input values through the transfer function.
+     *
+     * @param from the first index in the batch of input values, inclusive.
+     * @param to the last index in the batch of input values, exclusive.
+     */
+    private void activate(int from, int to)
+    {
+        Activations.apply(activation, inputValues, outputValues, from, to);
+        if (singleOutputValues != null)
+        {
+            for (int k = from; k < to; ++k)
+            {
+                singleOutputValues[k] = (float) outputValues[k];
+            }
+        }
+    }
+
+    /**
+     * Enables or disables the parallel processing of wide layers.
+     *
+     * @param enabled true to process wide layers in parallel, false to process all layers serially.
+     */
+    public static void setParallel(boolean enabled)
+    {
+        parallel = enabled;
+    }
+
+    /**
+     * Checks whether an operation on the layer is large enough to be split
+     * into chunks processed in parallel.
+     *
+     * @param count the number of neurons.
+     * @param work the number of multiply-adds of the operation.
+     * @return true if the operation should be processed in parallel.
+     */
+    private static boolean isParallel(int count, long work)
+    {
+        return parallel && work >= PARALLEL_THRESHOLD && count > 1;
+    }
+
+    /**
+     * Performs the action on the range of neurons split into chunks which are
+     * processed in parallel.
+     *
+     * @param count the number of neurons.
+     * @param action the action to perform on each chunk.
+     */
+    private static void forEachChunk(int count, RangeTask.Action action)
+    {
+        int grain = Math.max(1, count / (4 * pool.getParallelism()));
+        RangeTask task = new RangeTask(0, count, grain, action);
+        if (ForkJoinTask.inForkJoinPool())
+        {
+            task.invoke();
+        }
+        else
+        {
+            pool.invoke(task);
+        }
+    }
+
+    /**
+     * Assigns the specified input values to the neurons of the layer.
+     *
+     * @param input the input values.
+     */
+    public void assign(List<Double> input)
+    {
+        assign(input, 0);
+    }
+
+    /**
+     * Assigns the specified input values to the neurons of the layer for the specified sample.
+     *
+     * @param input the input values.
+     * @param sample the index of the sample in the batch.
+     */
+    public void assign(List<Double> input, int sample)
+    {
+        assert (input.size() == size);
+        assert (sample < capacity);
 
-        neurons = new ArrayList<>(size);
-        for (int i = 0; i < size; ++i)
+        int offset = sample * size;
+        for (int j = 0; j < size; ++j)
         {
-            neurons.add(new Neuron(learningRate));
+            inputValues[offset + j] = input.get(j);
         }
+        activate(offset, offset + size);
     }
 
     /**
-     * Joins the specified layers together.
+     * Assigns the specified input values to the neurons of the layer for the specified sample.
      *
-     * @param prev the previous layer.
-     * @param next the next layer.
+     * @param input the input values.
+     * @param sample the index of the sample in the batch.
      */
-    public static void joinLayers(Layer prev, Layer next)
+    public void assign(double[] input, int sample)
     {
-        assert (prev != null && next != null);
+        assert (input.length == size);
+        assert (sample < capacity);
 
-        for (var tail : prev.neurons)
-        {
-            for (var head : next.neurons)
-            {
-                Connection.joinNeurons(tail, head);
-            }
-        }
+        int offset = sample * size;
+        System.arraycopy(input, 0, inputValues, offset, size);
+        activate(offset, offset + size);
     }
 
     /**
-     * Assigns the specified input values to the neurons of the layer.
+     * Computes the values of the neurons of the layer.
+     */
+    public void computeValues()
+    {
+        computeValues(1);
+    }
+
+    /**
+     * Computes the values of the neurons of the layer for a batch of samples.
      *
-     * @param input the input values.
+     * @param batchSize the number of samples in the batch.
      */
-    public void assign(List<Double> input)
+    public void computeValues(int batchSize)
     {
-        assert (input.size() == neurons.size());
+        assert (batchSize <= capacity);
 
-        int i = 0;
-        for (var neuron : neurons)
+        if (isParallel(size, batchSize * getConnectionCount()))
+        {
+            forEachChunk(size, (from, to) -> computeValues(batchSize, from, to));
+        }
+        else
+        {
+            computeValues(batchSize, 0, size);
+        }
+        if (activation == Activation.SOFTMAX)
         {
-            neuron.setValue(input.get(i++));
+            for (int b = 0; b < batchSize; ++b)
+            {
+                activate(b * size, (b + 1) * size);
+            }
         }
     }
 
     /**
-     * Computes the values of the neurons of the layer.
+     * Computes the values of the specified neurons of the layer for a batch of
+     * samples. The softmax depends on all the neurons of a sample, so it is
+     * applied by the caller once all of them are computed.
+     *
+     * @param batchSize the number of samples in the batch.
+     * @param from the first neuron to compute, inclusive.
+     * @param to the last neuron to compute, exclusive.
      */
-    public void computeValues()
+    private void computeValues(int batchSize, int from, int to)
     {
-        for (var neuron : neurons)
+        if (rowStarts != null && precision.isSingle())
+        {
+            SparseKernels.multiply(singleWeights, rowStarts, columns, size, inputSize, previous.singleOutputValues,
+                    biases, inputValues, batchSize, from, to, precision == Precision.MIXED);
+        }
+        else if (rowStarts != null)
         {
-            neuron.computeValue();
+            SparseKernels.multiply(weights, rowStarts, columns, size, inputSize, previous.outputValues, biases,
+                    inputValues, batchSize, from, to);
+        }
+        else if (precision.isSingle())
+        {
+            Kernels.multiply(singleWeights, size, inputSize, previous.singleOutputValues, biases, inputValues,
+                    batchSize, from, to, precision == Precision.MIXED);
+        }
+        else
+        {
+            Kernels.multiply(weights, size, inputSize, previous.outputValues, biases, inputValues, batchSize,
+                    from, to);
+        }
+        for (int b = 0; activation != Activation.SOFTMAX && b < batchSize; ++b)
+        {
+            activate(b * size + from, b * size + to);
         }
-        
-//        List<Thread> threads = new ArrayList<>(neurons.size());
-//        for (var neuron : neurons)
-//        {
-//            Thread thread = new Thread(() -> neuron.computeValue());
-//            thread.start();
-//            threads.add(thread);
-//        }
-//        for (var thread : threads)
-//        {
-//            try
-//            {
-//                thread.join();
-//            }
-//            catch (InterruptedException e)
-//            {
-//                System.err.println(e);
-//            }
-//        }
     }
 
     /**
@@ -102,16 +791,42 @@ public class Layer implements Serializable
      */
     public List<Double> exportValues()
     {
-        List<Double> result = new ArrayList<>(neurons.size());
-        for (var neuron : neurons)
+        List<Double> result = new ArrayList<>(size);
+        for (int j = 0; j < size; ++j)
         {
-            result.add(neuron.getValue());
+            result.add(outputValues[j]);
         }
         return result;
     }
 
     /**
-     * Calculates the error of the layer.
+     * Exports the values of the neurons of the layer into the specified array.
+     *
+     * @param output the array to store the values of the neurons in.
+     */
+    public void exportValues(double[] output)
+    {
+        exportValues(output, 0);
+    }
+
+    /**
+     * Exports the values of the neurons of the layer for the specified sample
+     * into the specified array.
+     *
+     * @param output the array to store the values of the neurons in.
+     * @param sample the index of the sample in the batch.
+     */
+    public void exportValues(double[] output, int sample)
+    {
+        assert (output.length == size);
+        assert (sample < capacity);
+
+        System.arraycopy(outputValues, sample * size, output, 0, size);
+    }
+
+    /**
+     * Calculates the error of the layer: the cross-entropy for a softmax
+     * layer, the squared error otherwise.
      *
      * @param desiredOutputs the desired outputs.
      * @return the error of the layer.
@@ -121,8 +836,40 @@ public class Layer implements Serializable
         double aggregateError = 0.0;
         for (int i = 0; i < desiredOutputs.size(); ++i)
         {
-            double partialError = neurons.get(i).getValue() - desiredOutputs.get(i);
-            aggregateError += partialError * partialError;
+            if (activation == Activation.SOFTMAX)
+            {
+                aggregateError += Activations.crossEntropy(desiredOutputs.get(i), outputValues[i]);
+            }
+            else
+            {
+                double partialError = outputValues[i] - desiredOutputs.get(i);
+                aggregateError += partialError * partialError;
+            }
+        }
+        return aggregateError;
+    }
+
+    /**
+     * Calculates the error of the layer: the cross-entropy for a softmax
+     * layer, the squared error otherwise.
+     *
+     * @param desiredOutputs the desired outputs.
+     * @return the error of the layer.
+     */
+    public double calculateError(double[] desiredOutputs)
+    {
+        double aggregateError = 0.0;
+        for (int i = 0; i < desiredOutputs.length; ++i)
+        {
+            if (activation == Activation.SOFTMAX)
+            {
+                aggregateError += Activations.crossEntropy(desiredOutputs[i], outputValues[i]);
+            }
+            else
+            {
+                double partialError = outputValues[i] - desiredOutputs[i];
+                aggregateError += partialError * partialError;
+            }
         }
         return aggregateError;
     }
@@ -131,37 +878,75 @@ public class Layer implements Serializable
      * Computes the output gradients of the neurons of the layer.
      *
      * @param desiredOutputs the desired outputs.
+     * @return the error of the layer.
+     */
+    public double computeOutputGradients(List<Double> desiredOutputs)
+    {
+        return computeOutputGradients(desiredOutputs, 0);
+    }
+
+    /**
+     * Computes the output gradients of the neurons of the layer for the specified sample.
+     * For a softmax layer, they are the gradients of the cross-entropy with
+     * respect to the inputs of the softmax, computed in the same pass.
+     *
+     * @param desiredOutputs the desired outputs.
+     * @param sample the index of the sample in the batch.
+     * @return the error of the layer for the sample.
      */
-    public void computeOutputGradients(List<Double> desiredOutputs)
-    {
-        assert (desiredOutputs.size() == neurons.size());
-        
-        int i = 0;
-        for (var neuron : neurons)
-        {
-            neuron.computeOutputGradient(desiredOutputs.get(i++));
-        }
-        
-//        int i = 0;
-//        List<Thread> threads = new ArrayList<>(neurons.size());
-//        for (var neuron : neurons)
-//        {
-//            Double desiredOutput = desiredOutputs.get(i++);
-//            Thread thread = new Thread(() -> neuron.computeOutputGradient(desiredOutput));
-//            thread.start();
-//            threads.add(thread);
-//        }
-//        for (var thread : threads)
-//        {
-//            try
-//            {
-//                thread.join();
-//            }
-//            catch (InterruptedException e)
-//            {
-//                System.err.println(e);
-//            }
-//        }
+    public double computeOutputGradients(List<Double> desiredOutputs, int sample)
+    {
+        assert (desiredOutputs.size() == size);
+        assert (sample < capacity);
+
+        int offset = sample * size;
+        double error = 0.0;
+        for (int j = 0; j < size; ++j)
+        {
+            double value = outputValues[offset + j];
+            double difference = value - desiredOutputs.get(j);
+            if (activation == Activation.SOFTMAX)
+            {
+                gradients[offset + j] = difference;
+                error += Activations.crossEntropy(desiredOutputs.get(j), value);
+            }
+            else
+            {
+                gradients[offset + j] = 2.0 * difference * Activations.derivative(activation, value);
+                error += difference * difference;
+            }
+        }
+        return error;
+    }
+
+    /**
+     * Computes the output gradients of the neurons of the layer for the specified sample.
+     * For a softmax layer, they are the gradients of the cross-entropy with
+     * respect to the inputs of the softmax, computed in the same pass.
+     *
+     * @param desiredOutputs the desired outputs.
+     * @param sample the index of the sample in the batch.
+     * @return the error of the layer for the sample.
+     */
+    public double computeOutputGradients(double[] desiredOutputs, int sample)
+    {
+        assert (desiredOutputs.length == size);
+        assert (sample < capacity);
+
+        int offset = sample * size;
+        if (activation == Activation.SOFTMAX)
+        {
+            return Activations.softmaxCrossEntropy(outputValues, desiredOutputs, gradients, offset);
+        }
+        double error = 0.0;
+        for (int j = 0; j < size; ++j)
+        {
+            double value = outputValues[offset + j];
+            double difference = value - desiredOutputs[j];
+            gradients[offset + j] = 2.0 * difference * Activations.derivative(activation, value);
+            error += difference * difference;
+        }
+        return error;
     }
 
     /**
@@ -169,29 +954,61 @@ public class Layer implements Serializable
      */
     public void computeHiddenGradients()
     {
-        for (var neuron : neurons)
+        computeHiddenGradients(1);
+    }
+
+    /**
+     * Computes the hidden gradients of the neurons of the layer for a batch of samples.
+     *
+     * @param batchSize the number of samples in the batch.
+     */
+    public void computeHiddenGradients(int batchSize)
+    {
+        assert (batchSize <= capacity);
+
+        if (isParallel(size, batchSize * next.getConnectionCount()))
+        {
+            forEachChunk(size, (from, to) -> computeHiddenGradients(batchSize, from, to));
+        }
+        else
+        {
+            computeHiddenGradients(batchSize, 0, size);
+        }
+    }
+
+    /**
+     * Computes the hidden gradients of the specified neurons of the layer for a batch of samples.
+     *
+     * @param batchSize the number of samples in the batch.
+     * @param from the first neuron to compute, inclusive.
+     * @param to the last neuron to compute, exclusive.
+     */
+    private void computeHiddenGradients(int batchSize, int from, int to)
+    {
+        if (next.rowStarts != null && precision.isSingle())
+        {
+            SparseKernels.multiplyTransposed(next.singleWeights, next.rowStarts, next.columns, next.size, size,
+                    next.gradients, gradients, batchSize, from, to);
+        }
+        else if (next.rowStarts != null)
         {
-            neuron.computeHiddenGradient();
+            SparseKernels.multiplyTransposed(next.weights, next.rowStarts, next.columns, next.size, size,
+                    next.gradients, gradients, batchSize, from, to);
+        }
+        else if (precision.isSingle())
+        {
+            Kernels.multiplyTransposed(next.singleWeights, next.size, size, next.gradients, gradients, batchSize,
+                    from, to);
+        }
+        else
+        {
+            Kernels.multiplyTransposed(next.weights, next.size, size, next.gradients, gradients, batchSize,
+                    from, to);
+        }
+        for (int b = 0; b < batchSize; ++b)
+        {
+            Activations.multiplyDerivative(activation, gradients, outputValues, b * size + from, b * size + to);
         }
-        
-//        List<Thread> threads = new ArrayList<>(neurons.size());
-//        for (var neuron : neurons)
-//        {
-//            Thread thread = new Thread(() -> neuron.computeHiddenGradient());
-//            thread.start();
-//            threads.add(thread);
-//        }
-//        for (var thread : threads)
-//        {
-//            try
-//            {
-//                thread.join();
-//            }
-//            catch (InterruptedException e)
-//            {
-//                System.err.println(e);
-//            }
-//        }
     }
 
     /**
@@ -199,29 +1016,126 @@ public class Layer implements Serializable
      */
     public void updateInputs()
     {
-        for (var neuron : neurons)
+        updateInputs(1);
+    }
+
+    /**
+     * Updates the weights of the neurons of the layer with the gradients
+     * averaged over a batch of samples.
+     *
+     * @param batchSize the number of samples in the batch.
+     */
+    public void updateInputs(int batchSize)
+    {
+        assert (batchSize <= capacity);
+
+        if (isParallel(size, batchSize * getConnectionCount()))
+        {
+            forEachChunk(size, (from, to) -> updateInputs(batchSize, from, to));
+        }
+        else
+        {
+            updateInputs(batchSize, 0, size);
+        }
+    }
+
+    /**
+     * Updates the weights of the specified neurons of the layer with the
+     * gradients averaged over a batch of samples.
+     *
+     * @param batchSize the number of samples in the batch.
+     * @param from the first neuron to update, inclusive.
+     * @param to the last neuron to update, exclusive.
+     */
+    private void updateInputs(int batchSize, int from, int to)
+    {
+        double batchRate = rate / batchSize;
+        subtractOuter(batchRate, gradients, previous, batchSize, from, to);
+        for (int j = from; j < to; ++j)
+        {
+            double sum = 0.0;
+            for (int b = 0; b < batchSize; ++b)
+            {
+                sum += gradients[b * size + j];
+            }
+            biases[j] -= batchRate * sum;
+        }
+    }
+
+    /**
+     * Subtracts the scaled outer products of the gradients and the output
+     * values of the previous layer from the specified rows of weights.
+     *
+     * @param batchRate the learning rate divided by the size of the batch.
+     * @param gradients the batch of gradients of this layer.
+     * @param previous the previous layer holding the batch of its output values.
+     * @param batchSize the number of samples in the batch.
+     * @param rowFrom the first neuron to update, inclusive.
+     * @param rowTo the last neuron to update, exclusive.
+     */
+    private void subtractOuter(double batchRate, double[] gradients, Layer previous, int batchSize, int rowFrom,
+            int rowTo)
+    {
+        if (rowStarts != null && precision.isSingle())
+        {
+            SparseKernels.subtractOuter(batchRate, singleWeights, rowStarts, columns, size, inputSize, gradients,
+                    previous.singleOutputValues, batchSize, rowFrom, rowTo);
+        }
+        else if (rowStarts != null)
+        {
+            SparseKernels.subtractOuter(batchRate, weights, rowStarts, columns, size, inputSize, gradients,
+                    previous.outputValues, batchSize, rowFrom, rowTo);
+        }
+        else if (precision.isSingle())
+        {
+            Kernels.subtractOuter(batchRate, singleWeights, size, inputSize, gradients,
+                    previous.singleOutputValues, batchSize, rowFrom, rowTo);
+        }
+        else
+        {
+            Kernels.subtractOuter(batchRate, weights, size, inputSize, gradients, previous.outputValues,
+                    batchSize, rowFrom, rowTo);
+        }
+    }
+
+    /**
+     * Updates the specified rows of weights of the layer with the gradients
+     * averaged over the batches of its replicas.
+     * <p>
+     * The gradients are summed in the order of the replicas, so when the
+     * replicas hold consecutive slices of one batch the result is the same
+     * as that of {@link #updateInputs(int)} for the whole batch.
+     *
+     * @param replicas the replicas holding the gradients.
+     * @param batchSizes the number of samples in the batch of each replica.
+     * @param rowFrom the first neuron to update, inclusive.
+     * @param rowTo the last neuron to update, exclusive.
+     */
+    void updateInputs(Layer[] replicas, int[] batchSizes, int rowFrom, int rowTo)
+    {
+        int batchSize = 0;
+        for (int r = 0; r < replicas.length; ++r)
+        {
+            batchSize += batchSizes[r];
+        }
+        double batchRate = rate / batchSize;
+        for (int r = 0; r < replicas.length; ++r)
         {
-            neuron.updateInputs();
+            Layer replica = replicas[r];
+            subtractOuter(batchRate, replica.gradients, replica.previous, batchSizes[r], rowFrom, rowTo);
+        }
+        for (int j = rowFrom; j < rowTo; ++j)
+        {
+            double sum = 0.0;
+            for (int r = 0; r < replicas.length; ++r)
+            {
+                for (int b = 0; b < batchSizes[r]; ++b)
+                {
+                    sum += replicas[r].gradients[b * size + j];
+                }
+            }
+            biases[j] -= batchRate * sum;
         }
-        
-//        List<Thread> threads = new ArrayList<>(neurons.size());
-//        for (var neuron : neurons)
-//        {
-//            Thread thread = new Thread(() -> neuron.updateInputs());
-//            thread.start();
-//            threads.add(thread);
-//        }
-//        for (var thread : threads)
-//        {
-//            try
-//            {
-//                thread.join();
-//            }
-//            catch (InterruptedException e)
-//            {
-//                System.err.println(e);
-//            }
-//        }
     }
 
     /**
@@ -232,13 +1146,28 @@ public class Layer implements Serializable
     @Override
     public String toString()
     {
+        int outputSize = (next != null) ? next.size : 0;
         StringBuilder description = new StringBuilder();
         description.append("Layer[")
-                .append(neurons.size())
+                .append(size)
                 .append(" neuron(s)]\n");
-        for (var neuron : neurons)
+        for (int j = 0; j < size; ++j)
         {
-            description.append(neuron.toString());
+            description.append("\tNeuron[")
+                    .append(inputSize)
+                    .append(" input(s), ")
+                    .append(outputSize)
+                    .append(" output(s), bias = ")
+                    .append(biases[j])
+                    .append("]\n");
+            for (int k = 0; k < inputSize; ++k)
+            {
+                description.append("\t (i) Connection[weight = %.3f]\n".formatted(getWeight(j * inputSize + k)));
+            }
+            for (int l = 0; l < outputSize; ++l)
+            {
+                description.append("\t (o) Connection[weight = %.3f]\n".formatted(next.getWeight(l * size + j)));
+            }
         }
 
         return description.toString();
@@ -251,15 +1180,204 @@ public class Layer implements Serializable
      */
     public List<List<Double>> serialize()
     {
-        List<List<Double>> lists = new ArrayList<>(neurons.size());
-        for (var neuron : neurons)
+        List<List<Double>> lists = new ArrayList<>(size);
+        for (int j = 0; j < size; ++j)
         {
-            List<Double> list = neuron.serialize();
+            List<Double> list = new ArrayList<>(inputSize + 1);
+            if (rowStarts != null)
+            {
+                for (int k = 0; k < inputSize; ++k)
+                {
+                    list.add(0.0);
+                }
+                for (int p = rowStarts[j]; p < rowStarts[j + 1]; ++p)
+                {
+                    list.set(columns[p], getValue(p));
+                }
+            }
+            else
+            {
+                for (int k = 0; k < inputSize; ++k)
+                {
+                    list.add(getWeight(j * inputSize + k));
+                }
+            }
+            list.add(biases[j]);
             lists.add(list);
         }
         return lists;
     }
 
+    /**
+     * Writes the weights and the biases of the layer in the binary format,
+     * as compressed sparse rows if the layer is pruned.
+     *
+     * @param writer the writer of the binary format.
+     * @throws IOException if writing fails.
+     */
+    void writeParameters(BinaryModel.Writer writer) throws IOException
+    {
+        if (rowStarts != null)
+        {
+            writer.putConnections(rowStarts, columns);
+            for (int j = 0; j < size; ++j)
+            {
+                if (precision.isSingle())
+                {
+                    writer.putWeights(singleWeights, rowStarts[j], 1, rowStarts[j + 1] - rowStarts[j]);
+                }
+                else
+                {
+                    writer.putWeights(weights, rowStarts[j], 1, rowStarts[j + 1] - rowStarts[j]);
+                }
+            }
+        }
+        else if (precision.isSingle())
+        {
+            writer.putWeights(singleWeights, size, inputSize);
+        }
+        else
+        {
+            writer.putWeights(weights, size, inputSize);
+        }
+        writer.putDoubles(biases, 0, size);
+    }
+
+    /**
+     * Returns the start of the connections of each neuron of the pruned
+     * layer. The array is replaced, never changed, when the layer is pruned
+     * again, so that it can be shared.
+     *
+     * @return the start of the connections of each neuron in the weights,
+     *         followed by their number, or null if the layer is fully
+     *         connected.
+     */
+    int[] getRowStarts()
+    {
+        return rowStarts;
+    }
+
+    /**
+     * Returns the inputs of the connections of the pruned layer, neuron after
+     * neuron. The array is replaced, never changed, when the layer is pruned
+     * again, so that it can be shared.
+     *
+     * @return the indices of the inputs of the connections, or null if the
+     *         layer is fully connected.
+     */
+    int[] getColumns()
+    {
+        return columns;
+    }
+
+    /**
+     * Prunes the layer to the specified compressed sparse rows, shared with
+     * the caller, which must not change them. The weights of the kept
+     * connections are left to be set by
+     * {@link #setParameters(double[], float[], double[])}. The layer must not
+     * have replicas yet.
+     *
+     * @param starts the start of the connections of each neuron, followed by
+     *        their number.
+     * @param indices the indices of the inputs of the connections, checked
+     *        when they were read.
+     */
+    void setConnections(int[] starts, int[] indices)
+    {
+        rowStarts = starts;
+        columns = indices;
+        weights = precision.isSingle() ? null : new double[indices.length];
+        singleWeights = precision.isSingle() ? new float[indices.length] : null;
+    }
+
+    /**
+     * Copies the weights and the biases of the layer into the specified
+     * arrays, which are sized as the weights of the layer: only the kept
+     * connections of a pruned layer, in the order of its compressed sparse
+     * rows.
+     *
+     * @param weightsCopy the array receiving the weights in double precision,
+     *        or null if the weights are in single precision.
+     * @param singleWeightsCopy the array receiving the weights in single
+     *        precision, or null if the weights are in double precision.
+     * @param biasesCopy the array receiving the biases.
+     */
+    void copyParameters(double[] weightsCopy, float[] singleWeightsCopy, double[] biasesCopy)
+    {
+        if (precision.isSingle())
+        {
+            System.arraycopy(singleWeights, 0, singleWeightsCopy, 0, singleWeights.length);
+        }
+        else
+        {
+            System.arraycopy(weights, 0, weightsCopy, 0, weights.length);
+        }
+        System.arraycopy(biases, 0, biasesCopy, 0, size);
+    }
+
+    /**
+     * Sets the weights and the biases of the layer from the specified arrays,
+     * which are sized as the weights of the layer: only the kept connections
+     * of a pruned layer, in the order of its compressed sparse rows.
+     *
+     * @param weightsSource the weights in double precision, or null if the
+     *        weights are in single precision.
+     * @param singleWeightsSource the weights in single precision, or null if
+     *        the weights are in double precision.
+     * @param biasesSource the biases.
+     */
+    void setParameters(double[] weightsSource, float[] singleWeightsSource, double[] biasesSource)
+    {
+        if (precision.isSingle())
+        {
+            System.arraycopy(singleWeightsSource, 0, singleWeights, 0, singleWeights.length);
+        }
+        else
+        {
+            System.arraycopy(weightsSource, 0, weights, 0, weights.length);
+        }
+        System.arraycopy(biasesSource, 0, biases, 0, size);
+    }
+
+    /**
+     * Reads the weights and the biases of the layer in the binary format,
+     * pruning the layer if they are compressed sparse rows.
+     *
+     * @param reader the reader of the binary format.
+     * @param sparse whether the weights are compressed sparse rows.
+     * @throws IOException if reading fails.
+     */
+    void readParameters(BinaryModel.Reader reader, boolean sparse) throws IOException
+    {
+        if (sparse)
+        {
+            rowStarts = new int[size + 1];
+            columns = reader.getConnections(rowStarts, inputSize);
+            weights = precision.isSingle() ? null : new double[columns.length];
+            singleWeights = precision.isSingle() ? new float[columns.length] : null;
+            for (int j = 0; j < size; ++j)
+            {
+                if (precision.isSingle())
+                {
+                    reader.getWeights(singleWeights, rowStarts[j], 1, rowStarts[j + 1] - rowStarts[j]);
+                }
+                else
+                {
+                    reader.getWeights(weights, rowStarts[j], 1, rowStarts[j + 1] - rowStarts[j]);
+                }
+            }
+        }
+        else if (precision.isSingle())
+        {
+            reader.getWeights(singleWeights, size, inputSize);
+        }
+        else
+        {
+            reader.getWeights(weights, size, inputSize);
+        }
+        reader.getDoubles(biases, 0, size);
+    }
+
     /**
      * Provides the size of the layer.
      *
@@ -267,7 +1385,7 @@ public class Layer implements Serializable
      */
     public int size()
     {
-        return neurons.size();
+        return size;
     }
 
     /**
@@ -278,13 +1396,24 @@ public class Layer implements Serializable
      */
     public void deserialize(List<List<Double>> weights) throws Exception
     {
-        if (weights.size() == neurons.size())
+        if (weights.size() == size)
         {
-            for (int i = 0; i < neurons.size(); ++i)
+            for (int j = 0; j < size; ++j)
+            {
+                List<Double> list = weights.get(j);
+                if (list.size() != inputSize + 1)
+                {
+                    throw new Exception("Layer.deserialize");
+                }
+            }
+            for (int j = 0; j < size; ++j)
             {
-                Neuron neuron = neurons.get(i);
-                List<Double> list = weights.get(i);
-                neuron.deserialize(list); // might throw
+                List<Double> list = weights.get(j);
+                for (int k = 0; k < inputSize; ++k)
+                {
+                    setWeight(j * inputSize + k, list.get(k));
+                }
+                biases[j] = list.get(inputSize);
             }
         }
         else
@@ -0,0 +1,43 @@
+package ann.neuralnetwork;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The flight recorder event of a phase of a layer of a network, committed
+ * by {@link TrainingMetrics} at the end of the phase.
+ */
+@Name("ann.LayerPhase")
+@Label("Layer Phase")
+@Category({"Neural Network", "Training"})
+@Description("A forward, backward or update phase of a layer")
+@StackTrace(false)
+final class LayerPhaseEvent extends Event
+{
+    /**
+     * The phase.
+     */
+    @Label("Phase")
+    String phase;
+    /**
+     * The depth of the layer.
+     */
+    @Label("Layer")
+    int layer;
+    /**
+     * The number of samples processed.
+     */
+    @Label("Samples")
+    int samples;
+    /**
+     * The duration of the phase.
+     */
+    @Label("Phase Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    long elapsed;
+}
@@ -1,6 +1,15 @@
 package ann.neuralnetwork;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 
 /**
@@ -32,6 +41,19 @@ public class Network implements Serializable
      * The learning rate of the network.
      */
     private final double learningRate;
+    /**
+     * The precision of the weights of the network.
+     */
+    private final Precision precision;
+    /**
+     * The metrics of the training of the network, shared with its replicas.
+     */
+    private final transient TrainingMetrics metrics;
+
+    /**
+     * The maximal number of inputs evaluated together by {@link #computeForBatch(double[][], double[][])}.
+     */
+    private static final int INFERENCE_BATCH_SIZE = 32;
 
     /**
      * Constructs a new network with the specified topology and learning rate.
@@ -40,21 +62,52 @@ public class Network implements Serializable
      * @param learningRate the learning rate of the network.
      */
     public Network(List<Integer> topology, double learningRate)
+    {
+        this(topology, learningRate, Precision.DOUBLE);
+    }
+
+    /**
+     * Constructs a new network with the specified topology, learning rate and precision.
+     *
+     * @param topology the topology of the network.
+     * @param learningRate the learning rate of the network.
+     * @param precision the precision of the weights of the network.
+     */
+    public Network(List<Integer> topology, double learningRate, Precision precision)
+    {
+        this(topology, learningRate, precision, Collections.nCopies(topology.size(), Activation.TANH));
+    }
+
+    /**
+     * Constructs a new network with the specified topology, learning rate,
+     * precision and transfer function of each layer.
+     *
+     * @param topology the topology of the network.
+     * @param learningRate the learning rate of the network.
+     * @param precision the precision of the weights of the network.
+     * @param activations the transfer function of each layer, the input layer
+     *        included; only the output layer may use the softmax.
+     */
+    public Network(List<Integer> topology, double learningRate, Precision precision, List<Activation> activations)
     {
         assert (topology.size() > 1);
+        assert (activations.size() == topology.size());
+        assert (!activations.subList(0, activations.size() - 1).contains(Activation.SOFTMAX));
 
         this.learningRate = learningRate;
+        this.precision = precision;
         layers = new ArrayList<>(topology.size());
-        for (var size : topology)
+        for (int i = 0; i < topology.size(); ++i)
         {
-            assert (size > 0);
+            assert (topology.get(i) > 0);
 
-            layers.add(new Layer(size, learningRate));
+            layers.add(new Layer(topology.get(i), learningRate, precision, activations.get(i)));
         }
         inputLayer = layers.get(0);
         outputLayer = layers.get(layers.size() - 1);
         inputSize = topology.get(0);
         outputSize = topology.get(topology.size() - 1);
+        metrics = new TrainingMetrics(topology.size());
         for (int i = 1; i < layers.size(); ++i)
         {
             Layer previous = layers.get(i - 1);
@@ -71,44 +124,167 @@ public class Network implements Serializable
      */
     public Network(Backup backup) throws Exception
     {
-        this(backup.getTopology(), backup.getLearningRate());
+        this(backup.getTopology(), backup.getLearningRate(), backup.getPrecision(), backup.getActivations());
         deserialize(backup.getWeights());
+        List<int[][]> connections = backup.getConnections();
+        for (int i = 1; connections != null && i < layers.size(); ++i)
+        {
+            if (connections.get(i) != null)
+            {
+                layers.get(i).setConnections(connections.get(i));
+            }
+        }
+    }
+
+    /**
+     * Constructs a replica of the specified network. The replica shares the
+     * weights of the network but has its own activations and gradients.
+     *
+     * @param shared the network to replicate.
+     */
+    Network(Network shared)
+    {
+        learningRate = shared.learningRate;
+        precision = shared.precision;
+        layers = new ArrayList<>(shared.layers.size());
+        Layer previous = null;
+        for (var layer : shared.layers)
+        {
+            previous = new Layer(layer, previous);
+            layers.add(previous);
+        }
+        inputLayer = layers.get(0);
+        outputLayer = layers.get(layers.size() - 1);
+        inputSize = shared.inputSize;
+        outputSize = shared.outputSize;
+        metrics = shared.metrics;
     }
 
     /**
      * Propagates the input forward through the network.
      *
      * @param input the input to propagate.
+     * @param timed true to record the time of each layer in the training
+     *        metrics, false for inference.
      */
-    private void propagateForward(List<Double> input)
+    private void propagateForward(List<Double> input, boolean timed)
     {
         assert (input.size() == inputSize);
         
         inputLayer.assign(input);
-        for (int i = 1; i < layers.size(); ++i)
-        {
-            layers.get(i).computeValues();
-        }
+        computeValues(1, timed);
+    }
+
+    /**
+     * Propagates the input forward through the network.
+     *
+     * @param input the input to propagate.
+     * @param timed true to record the time of each layer in the training
+     *        metrics, false for inference.
+     */
+    private void propagateForward(double[] input, boolean timed)
+    {
+        assert (input.length == inputSize);
+
+        inputLayer.assign(input, 0);
+        computeValues(1, timed);
     }
 
     /**
      * Propagates the error backward through the network.
      *
      * @param desiredOutputs the desired outputs.
+     * @return the error of the network.
      */
-    private void propagateBackward(List<Double> desiredOutputs)
+    private double propagateBackward(List<Double> desiredOutputs)
     {
         assert (desiredOutputs.size() == outputSize);
         
-        outputLayer.computeOutputGradients(desiredOutputs);
+        long start = TrainingMetrics.ENABLED ? System.nanoTime() : 0;
+        double error = outputLayer.computeOutputGradients(desiredOutputs);
+        if (TrainingMetrics.ENABLED)
+        {
+            metrics.addPhase(TrainingMetrics.Phase.BACKWARD, layers.size() - 1, 1, start);
+        }
+        computeHiddenGradients(1);
+        updateInputs(1);
+        return error;
+    }
+
+    /**
+     * Propagates the error backward through the network.
+     *
+     * @param desiredOutputs the desired outputs.
+     * @return the error of the network.
+     */
+    private double propagateBackward(double[] desiredOutputs)
+    {
+        assert (desiredOutputs.length == outputSize);
+
+        long start = TrainingMetrics.ENABLED ? System.nanoTime() : 0;
+        double error = outputLayer.computeOutputGradients(desiredOutputs, 0);
+        if (TrainingMetrics.ENABLED)
+        {
+            metrics.addPhase(TrainingMetrics.Phase.BACKWARD, layers.size() - 1, 1, start);
+        }
+        computeHiddenGradients(1);
+        updateInputs(1);
+        return error;
+    }
+
+    /**
+     * Computes the values of all layers but the input layer for a batch of samples.
+     *
+     * @param batchSize the number of samples in the batch.
+     * @param timed true to record the time of each layer in the training
+     *        metrics, false for inference, which is not part of the training.
+     */
+    private void computeValues(int batchSize, boolean timed)
+    {
+        for (int i = 1; i < layers.size(); ++i)
+        {
+            long start = (TrainingMetrics.ENABLED && timed) ? System.nanoTime() : 0;
+            layers.get(i).computeValues(batchSize);
+            if (TrainingMetrics.ENABLED && timed)
+            {
+                metrics.addPhase(TrainingMetrics.Phase.FORWARD, i, batchSize, start);
+            }
+        }
+    }
+
+    /**
+     * Computes the gradients of the hidden layers for a batch of samples.
+     *
+     * @param batchSize the number of samples in the batch.
+     */
+    private void computeHiddenGradients(int batchSize)
+    {
         for (int i = layers.size() - 2; i > 0; --i)
         {
-            layers.get(i).computeHiddenGradients();
+            long start = TrainingMetrics.ENABLED ? System.nanoTime() : 0;
+            layers.get(i).computeHiddenGradients(batchSize);
+            if (TrainingMetrics.ENABLED)
+            {
+                metrics.addPhase(TrainingMetrics.Phase.BACKWARD, i, batchSize, start);
+            }
         }
-        
+    }
+
+    /**
+     * Updates the weights of all layers for a batch of samples.
+     *
+     * @param batchSize the number of samples in the batch.
+     */
+    private void updateInputs(int batchSize)
+    {
         for (int i = layers.size() - 1; i > 0; --i)
         {
-            layers.get(i).updateInputs();
+            long start = TrainingMetrics.ENABLED ? System.nanoTime() : 0;
+            layers.get(i).updateInputs(batchSize);
+            if (TrainingMetrics.ENABLED)
+            {
+                metrics.addPhase(TrainingMetrics.Phase.UPDATE, i, batchSize, start);
+            }
         }
     }
 
@@ -123,7 +299,7 @@ public class Network implements Serializable
     {
         if (input.size() == inputSize)
         {
-            propagateForward(input);
+            propagateForward(input, false);
             return outputLayer.exportValues();
         }
         else
@@ -132,6 +308,85 @@ public class Network implements Serializable
         }
     }
 
+    /**
+     * Computes the output for the specified input and stores it in the specified array.
+     *
+     * @param input the input to compute the output for.
+     * @param output the array to store the output of the network in.
+     * @throws Exception if the input or the output is invalid.
+     */
+    public void computeFor(double[] input, double[] output) throws Exception
+    {
+        if (input.length == inputSize && output.length == outputSize)
+        {
+            propagateForward(input, false);
+            outputLayer.exportValues(output);
+        }
+        else
+        {
+            throw new Exception("Network.computeFor : incompatible vectors");
+        }
+    }
+
+    /**
+     * Computes the outputs for the specified batch of inputs.
+     *
+     * @param inputs the inputs to compute the outputs for.
+     * @return the outputs of the network, one per input.
+     * @throws Exception if any of the inputs is invalid.
+     */
+    public double[][] computeForBatch(double[][] inputs) throws Exception
+    {
+        double[][] outputs = new double[inputs.length][outputSize];
+        computeForBatch(inputs, outputs);
+        return outputs;
+    }
+
+    /**
+     * Computes the outputs for the specified batch of inputs and stores them
+     * in the specified arrays.
+     * <p>
+     * The inputs are propagated together in groups of up to 32, so every
+     * row of weights is loaded once per group rather than once per input.
+     *
+     * @param inputs the inputs to compute the outputs for.
+     * @param outputs the arrays to store the outputs of the network in, one per input.
+     * @throws Exception if any of the inputs or outputs is invalid.
+     */
+    public void computeForBatch(double[][] inputs, double[][] outputs) throws Exception
+    {
+        if (inputs.length != outputs.length)
+        {
+            throw new Exception("Network.computeForBatch : incompatible batches");
+        }
+        for (int b = 0; b < inputs.length; ++b)
+        {
+            if (inputs[b].length != inputSize || outputs[b].length != outputSize)
+            {
+                throw new Exception("Network.computeForBatch : incompatible vectors");
+            }
+        }
+
+        int groupSize = Math.min(inputs.length, INFERENCE_BATCH_SIZE);
+        for (var layer : layers)
+        {
+            layer.ensureCapacity(Math.max(groupSize, 1));
+        }
+        for (int from = 0; from < inputs.length; from += groupSize)
+        {
+            int count = Math.min(groupSize, inputs.length - from);
+            for (int b = 0; b < count; ++b)
+            {
+                inputLayer.assign(inputs[from + b], b);
+            }
+            computeValues(count, false);
+            for (int b = 0; b < count; ++b)
+            {
+                outputLayer.exportValues(outputs[from + b], b);
+            }
+        }
+    }
+
     /**
      * Trains the network with the specified training record.
      *
@@ -140,8 +395,248 @@ public class Network implements Serializable
      */
     public void trainRecord(IORecord training) throws Exception
     {
-        propagateForward(training.getInputs());
-        propagateBackward(training.getOutputs());
+        long start = TrainingMetrics.ENABLED ? System.nanoTime() : 0;
+        long allocated = TrainingMetrics.ENABLED ? TrainingMetrics.allocatedBytes() : 0;
+        propagateForward(training.getInputs(), true);
+        double error = propagateBackward(training.getOutputs());
+        if (TrainingMetrics.ENABLED)
+        {
+            metrics.addBatch(1, error, start, allocated);
+        }
+    }
+
+    /**
+     * Trains the network with the specified training record.
+     *
+     * @param training the training record.
+     * @throws Exception if the training record is invalid.
+     */
+    public void trainRecord(ArrayRecord training) throws Exception
+    {
+        validateRecord(training);
+        long start = TrainingMetrics.ENABLED ? System.nanoTime() : 0;
+        long allocated = TrainingMetrics.ENABLED ? TrainingMetrics.allocatedBytes() : 0;
+        propagateForward(training.getInputs(), true);
+        double error = propagateBackward(training.getOutputs());
+        if (TrainingMetrics.ENABLED)
+        {
+            metrics.addBatch(1, error, start, allocated);
+        }
+    }
+
+    /**
+     * Trains the network with the specified batch of training records.
+     * <p>
+     * The gradients of all records are computed with the same weights, and the
+     * weights are updated once with the gradients averaged over the batch.
+     *
+     * @param batch the training records.
+     * @throws Exception if any of the training records is invalid.
+     */
+    public void trainBatch(List<IORecord> batch) throws Exception
+    {
+        validateBatch(batch);
+        if (batch.isEmpty())
+        {
+            return;
+        }
+
+        long start = TrainingMetrics.ENABLED ? System.nanoTime() : 0;
+        long allocated = TrainingMetrics.ENABLED ? TrainingMetrics.allocatedBytes() : 0;
+        double error = computeGradients(batch, 0, batch.size());
+        updateInputs(batch.size());
+        if (TrainingMetrics.ENABLED)
+        {
+            metrics.addBatch(batch.size(), error, start, allocated);
+        }
+    }
+
+    /**
+     * Trains the network with the first records of the specified array.
+     * <p>
+     * The gradients of all records are computed with the same weights, and the
+     * weights are updated once with the gradients averaged over the batch.
+     *
+     * @param batch the training records.
+     * @param count the number of records of the batch.
+     * @throws Exception if any of the training records is invalid.
+     */
+    public void trainBatch(ArrayRecord[] batch, int count) throws Exception
+    {
+        validateBatch(batch, count);
+        if (count == 0)
+        {
+            return;
+        }
+
+        long start = TrainingMetrics.ENABLED ? System.nanoTime() : 0;
+        long allocated = TrainingMetrics.ENABLED ? TrainingMetrics.allocatedBytes() : 0;
+        double error = computeGradients(batch, 0, count);
+        updateInputs(count);
+        if (TrainingMetrics.ENABLED)
+        {
+            metrics.addBatch(count, error, start, allocated);
+        }
+    }
+
+    /**
+     * Checks that the record is compatible with the network.
+     *
+     * @param record the record.
+     * @throws Exception if the record is invalid.
+     */
+    private void validateRecord(ArrayRecord record) throws Exception
+    {
+        if (record.getInputs().length != inputSize || record.getOutputs().length != outputSize)
+        {
+            throw new Exception("Network : incompatible vectors");
+        }
+    }
+
+    /**
+     * Checks that the records of the batch are compatible with the network.
+     *
+     * @param batch the training records.
+     * @throws Exception if any of the training records is invalid.
+     */
+    void validateBatch(List<IORecord> batch) throws Exception
+    {
+        for (var record : batch)
+        {
+            if (record.getInputs().size() != inputSize || record.getOutputs().size() != outputSize)
+            {
+                throw new Exception("Network.trainBatch : incompatible vectors");
+            }
+        }
+    }
+
+    /**
+     * Checks that the first records of the batch are compatible with the network.
+     *
+     * @param batch the training records.
+     * @param count the number of records of the batch.
+     * @throws Exception if any of the training records is invalid.
+     */
+    void validateBatch(ArrayRecord[] batch, int count) throws Exception
+    {
+        if (count < 0 || count > batch.length)
+        {
+            throw new Exception("Network.trainBatch : invalid count");
+        }
+        for (int b = 0; b < count; ++b)
+        {
+            validateRecord(batch[b]);
+        }
+    }
+
+    /**
+     * Propagates the specified slice of the batch forward and computes the
+     * gradients of all layers, without updating the weights.
+     *
+     * @param batch the training records.
+     * @param from the index of the first record of the slice, inclusive.
+     * @param to the index of the last record of the slice, exclusive.
+     * @return the error of the network summed over the slice.
+     */
+    double computeGradients(List<IORecord> batch, int from, int to)
+    {
+        int batchSize = to - from;
+        for (var layer : layers)
+        {
+            layer.ensureCapacity(batchSize);
+        }
+
+        /* Forward */
+        for (int b = 0; b < batchSize; ++b)
+        {
+            inputLayer.assign(batch.get(from + b).getInputs(), b);
+        }
+        computeValues(batchSize, true);
+
+        /* Backward */
+        long start = TrainingMetrics.ENABLED ? System.nanoTime() : 0;
+        double error = 0.0;
+        for (int b = 0; b < batchSize; ++b)
+        {
+            error += outputLayer.computeOutputGradients(batch.get(from + b).getOutputs(), b);
+        }
+        if (TrainingMetrics.ENABLED)
+        {
+            metrics.addPhase(TrainingMetrics.Phase.BACKWARD, layers.size() - 1, batchSize, start);
+        }
+        computeHiddenGradients(batchSize);
+        return error;
+    }
+
+    /**
+     * Propagates the specified slice of the batch forward and computes the
+     * gradients of all layers, without updating the weights.
+     *
+     * @param batch the training records.
+     * @param from the index of the first record of the slice, inclusive.
+     * @param to the index of the last record of the slice, exclusive.
+     * @return the error of the network summed over the slice.
+     */
+    double computeGradients(ArrayRecord[] batch, int from, int to)
+    {
+        int batchSize = to - from;
+        for (var layer : layers)
+        {
+            layer.ensureCapacity(batchSize);
+        }
+
+        /* Forward */
+        for (int b = 0; b < batchSize; ++b)
+        {
+            inputLayer.assign(batch[from + b].getInputs(), b);
+        }
+        computeValues(batchSize, true);
+
+        /* Backward */
+        long start = TrainingMetrics.ENABLED ? System.nanoTime() : 0;
+        double error = 0.0;
+        for (int b = 0; b < batchSize; ++b)
+        {
+            error += outputLayer.computeOutputGradients(batch[from + b].getOutputs(), b);
+        }
+        if (TrainingMetrics.ENABLED)
+        {
+            metrics.addPhase(TrainingMetrics.Phase.BACKWARD, layers.size() - 1, batchSize, start);
+        }
+        computeHiddenGradients(batchSize);
+        return error;
+    }
+
+    /**
+     * Returns the metrics of the training of the network, which include the
+     * training of its replicas.
+     *
+     * @return the metrics.
+     */
+    public TrainingMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * Returns the layer at the specified depth.
+     *
+     * @param index the depth of the layer, 0 for the input layer.
+     * @return the layer.
+     */
+    Layer getLayer(int index)
+    {
+        return layers.get(index);
+    }
+
+    /**
+     * Returns the number of layers of the network.
+     *
+     * @return the number of layers.
+     */
+    int getDepth()
+    {
+        return layers.size();
     }
 
     /**
@@ -153,7 +648,21 @@ public class Network implements Serializable
      */
     public double testRecord(IORecord test) throws Exception
     {
-        propagateForward(test.getInputs());
+        propagateForward(test.getInputs(), false);
+        return outputLayer.calculateError(test.getOutputs());
+    }
+
+    /**
+     * Tests the network with the specified test record.
+     *
+     * @param test the test record.
+     * @return the error of the network.
+     * @throws Exception if the test record is invalid.
+     */
+    public double testRecord(ArrayRecord test) throws Exception
+    {
+        validateRecord(test);
+        propagateForward(test.getInputs(), false);
         return outputLayer.calculateError(test.getOutputs());
     }
 
@@ -170,6 +679,8 @@ public class Network implements Serializable
                 .append(layers.size())
                 .append(" layers, learningRate = ")
                 .append(learningRate)
+                .append(", precision = ")
+                .append(precision)
                 .append("]\n");
         for (var layer : layers)
         {
@@ -192,12 +703,16 @@ public class Network implements Serializable
             topology.add(layer.size());
         }
         List<List<List<Double>>> lists = new ArrayList<>(layers.size());
+        List<int[][]> connections = new ArrayList<>(layers.size());
+        boolean pruned = false;
         for (var layer : layers)
         {
             List<List<Double>> list = layer.serialize();
             lists.add(list);
+            connections.add(layer.getConnections());
+            pruned |= connections.getLast() != null;
         }
-        return new Backup(topology, learningRate, lists);
+        return new Backup(topology, learningRate, precision, lists, pruned ? connections : null, getActivations());
     }
 
     /**
@@ -223,6 +738,245 @@ public class Network implements Serializable
         }
     }
 
+    /**
+     * Writes the network in the binary format to the specified channel. The
+     * weights are streamed layer by layer straight from the layers through a
+     * fixed-size buffer.
+     *
+     * @param channel the channel to write to; it is not closed.
+     * @throws IOException if writing fails.
+     */
+    public void writeTo(WritableByteChannel channel) throws IOException
+    {
+        writeTo(channel, WeightEncoding.NATIVE, false);
+    }
+
+    /**
+     * Exports the network in the binary format to the specified channel, with
+     * the weights in the specified encoding and optionally compressed. The
+     * exported model is read back like any other, the weights being decoded
+     * into the precision of the network.
+     *
+     * @param channel the channel to write to; it is not closed.
+     * @param encoding the encoding of the weights.
+     * @param compressed true to compress the weights and the biases, false
+     *        otherwise.
+     * @throws IOException if writing fails.
+     */
+    public void writeTo(WritableByteChannel channel, WeightEncoding encoding, boolean compressed) throws IOException
+    {
+        BinaryModel.Writer writer = new BinaryModel.Writer(channel);
+        boolean[] sparse = new boolean[layers.size()];
+        for (int i = 1; i < layers.size(); ++i)
+        {
+            sparse[i] = layers.get(i).isPruned();
+        }
+        writer.writeHeader(getTopology(), learningRate, precision, encoding, compressed, sparse, getActivations());
+        for (int i = 1; i < layers.size(); ++i)
+        {
+            layers.get(i).writeParameters(writer);
+        }
+        writer.finish();
+    }
+
+    /**
+     * Writes the network in the binary format to the specified stream.
+     *
+     * @param stream the stream to write to; it is not closed.
+     * @throws IOException if writing fails.
+     */
+    public void writeTo(OutputStream stream) throws IOException
+    {
+        writeTo(Channels.newChannel(stream));
+        stream.flush();
+    }
+
+    /**
+     * Saves the network to the specified file in the binary format.
+     *
+     * @param path the path of the file to save the network to.
+     * @return true if the network was saved successfully, false otherwise.
+     */
+    public boolean saveToBinaryFile(String path)
+    {
+        return saveToBinaryFile(path, WeightEncoding.NATIVE, false);
+    }
+
+    /**
+     * Exports the network to the specified file in the binary format, with
+     * the weights in the specified encoding and optionally compressed.
+     *
+     * @param path the path of the file to save the network to.
+     * @param encoding the encoding of the weights.
+     * @param compressed true to compress the weights and the biases, false
+     *        otherwise.
+     * @return true if the network was saved successfully, false otherwise.
+     */
+    public boolean saveToBinaryFile(String path, WeightEncoding encoding, boolean compressed)
+    {
+        boolean success = true;
+        try (FileChannel channel = FileChannel.open(Path.of(path), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+        {
+            writeTo(channel, encoding, compressed);
+        }
+        catch (IOException e)
+        {
+            success = false;
+        }
+        return success;
+    }
+
+    /**
+     * Reads a network in the binary format from the specified channel. The
+     * weights are streamed layer by layer straight into the layers through
+     * a fixed-size buffer.
+     *
+     * @param channel the channel to read from; it is not closed and is left
+     *        right after the model, which may be followed by other data.
+     * @return the network.
+     * @throws Exception if reading fails or the model is invalid.
+     */
+    public static Network readFrom(ReadableByteChannel channel) throws Exception
+    {
+        return read(new BinaryModel.Reader(channel));
+    }
+
+    /**
+     * Reads a network in the binary format from the specified stream.
+     *
+     * @param stream the stream to read from; it is not closed and is left
+     *        right after the model, which may be followed by other data.
+     * @return the network.
+     * @throws Exception if reading fails or the model is invalid.
+     */
+    public static Network readFrom(InputStream stream) throws Exception
+    {
+        return readFrom(Channels.newChannel(stream));
+    }
+
+    /**
+     * Reads a network from the specified file in the binary format. The file
+     * is mapped into memory and the weights are copied straight into the layers.
+     * A delta checkpoint written by a {@link Checkpointer} is restored from
+     * the chain of its references.
+     *
+     * @param path the path of the file.
+     * @return the network.
+     * @throws Exception if the file cannot be read or is invalid.
+     */
+    public static Network readFromBinaryFile(String path) throws Exception
+    {
+        Path file = Path.of(path);
+        if (DeltaModel.isDelta(file))
+        {
+            ParameterSnapshot snapshot = DeltaModel.read(file);
+            Network network = new Network(snapshot.getTopology(), snapshot.getLearningRate(),
+                    snapshot.getPrecision(), snapshot.getActivations());
+            snapshot.copyTo(network);
+            return network;
+        }
+        return read(BinaryModel.Reader.map(file));
+    }
+
+    /**
+     * Reads a network with the specified reader of the binary format.
+     *
+     * @param reader the reader.
+     * @return the network.
+     * @throws Exception if reading fails or the model is invalid.
+     */
+    private static Network read(BinaryModel.Reader reader) throws Exception
+    {
+        reader.readHeader();
+        Network network = new Network(reader.getTopology(), reader.getLearningRate(), reader.getPrecision(),
+                reader.getActivations());
+        for (int i = 1; i < network.layers.size(); ++i)
+        {
+            network.layers.get(i).readParameters(reader, reader.isSparse(i));
+        }
+        reader.checkEnd();
+        return network;
+    }
+
+    /**
+     * Prunes the connections whose weights are smaller than the specified
+     * threshold in magnitude. The pruned layers are then evaluated and
+     * trained as compressed sparse rows, the pruned connections staying
+     * pruned. The network must be pruned before any trainer or predictor is
+     * created from it.
+     *
+     * @param threshold the smallest magnitude of the weights kept.
+     * @return the number of connections kept.
+     * @throws Exception if the network cannot be pruned.
+     */
+    public long prune(double threshold) throws Exception
+    {
+        for (int i = 1; i < layers.size(); ++i)
+        {
+            layers.get(i).prune(threshold);
+        }
+        return getConnectionCount();
+    }
+
+    /**
+     * Prunes all but the specified number of connections of each neuron, the
+     * ones with the largest weights in magnitude being kept. The network must
+     * be pruned before any trainer or predictor is created from it.
+     *
+     * @param count the number of connections kept by each neuron.
+     * @return the number of connections kept.
+     * @throws Exception if the network cannot be pruned.
+     */
+    public long pruneToTop(int count) throws Exception
+    {
+        if (count < 0)
+        {
+            throw new Exception("Network.pruneToTop : negative count");
+        }
+        for (int i = 1; i < layers.size(); ++i)
+        {
+            layers.get(i).pruneToTop(count);
+        }
+        return getConnectionCount();
+    }
+
+    /**
+     * Returns the number of connections between the layers of the network,
+     * which is the number of weights once it is pruned.
+     *
+     * @return the number of connections.
+     */
+    public long getConnectionCount()
+    {
+        long count = 0;
+        for (int i = 1; i < layers.size(); ++i)
+        {
+            count += layers.get(i).getConnectionCount();
+        }
+        return count;
+    }
+
+    /**
+     * Returns the learning rate of the network.
+     *
+     * @return the learning rate of the network.
+     */
+    public double getLearningRate()
+    {
+        return learningRate;
+    }
+
+    /**
+     * Returns the precision of the weights of the network.
+     *
+     * @return the precision of the network.
+     */
+    public Precision getPrecision()
+    {
+        return precision;
+    }
+
     /**
      * Returns the topology of the network.
      *
@@ -237,4 +991,19 @@ public class Network implements Serializable
         }
         return topology;
     }
+
+    /**
+     * Returns the transfer function of each layer of the network.
+     *
+     * @return the transfer functions, the input layer included.
+     */
+    public List<Activation> getActivations()
+    {
+        List<Activation> activations = new ArrayList<>(layers.size());
+        for (var layer : layers)
+        {
+            activations.add(layer.getActivation());
+        }
+        return activations;
+    }
 }
@@ -0,0 +1,300 @@
+package ann.neuralnetwork;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Trains a neural network on several cores by splitting each batch of
+ * training records across worker replicas of the network.
+ * <p>
+ * Every worker owns the activations and gradients of its slice of the batch,
+ * while the weights are shared by all of them. When all workers are done, the
+ * gradients are reduced row by row straight into the shared weights, so that
+ * a batch causes exactly one update, as in {@link Network#trainBatch(List)}.
+ */
+public class ParallelTrainer implements AutoCloseable
+{
+    /**
+     * The trained network.
+     */
+    private final Network network;
+    /**
+     * The worker replicas of the network.
+     */
+    private final Network[] workers;
+    /**
+     * The replicas of each layer, indexed by depth and worker.
+     */
+    private final Layer[][] replicas;
+    /**
+     * The number of records assigned to each worker in the current batch.
+     */
+    private final int[] batchSizes;
+    /**
+     * The error of the slice of each worker in the current batch.
+     */
+    private final double[] errors;
+    /**
+     * The buffers of the records read from datasets by each worker.
+     */
+    private final ArrayRecord[][] buffers;
+    /**
+     * The records of the current slice of each worker, either its buffers or
+     * the records of an in-memory dataset.
+     */
+    private final ArrayRecord[][] records;
+    /**
+     * The pool running the workers.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Constructs a new trainer for the specified network.
+     *
+     * @param network the network to train.
+     * @param parallelism the number of workers.
+     */
+    public ParallelTrainer(Network network, int parallelism)
+    {
+        assert (parallelism > 0);
+
+        this.network = network;
+        workers = new Network[parallelism];
+        for (int w = 0; w < parallelism; ++w)
+        {
+            workers[w] = new Network(network);
+        }
+        replicas = new Layer[network.getDepth()][parallelism];
+        for (int i = 0; i < network.getDepth(); ++i)
+        {
+            for (int w = 0; w < parallelism; ++w)
+            {
+                replicas[i][w] = workers[w].getLayer(i);
+            }
+        }
+        batchSizes = new int[parallelism];
+        errors = new double[parallelism];
+        buffers = new ArrayRecord[parallelism][0];
+        records = new ArrayRecord[parallelism][0];
+        pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Returns the trained network.
+     *
+     * @return the trained network.
+     */
+    public Network getNetwork()
+    {
+        return network;
+    }
+
+    /**
+     * Returns the number of workers.
+     *
+     * @return the number of workers.
+     */
+    public int getParallelism()
+    {
+        return workers.length;
+    }
+
+    /**
+     * Represents the computation of the gradients of a slice of the batch on a worker.
+     */
+    @FunctionalInterface
+    private interface Slice
+    {
+        /**
+         * Computes the gradients of the specified slice on the worker.
+         *
+         * @param worker the index of the worker.
+         * @param from the index of the first record of the slice, inclusive.
+         * @param to the index of the last record of the slice, exclusive.
+         * @return the error of the network summed over the slice.
+         */
+        double computeGradients(int worker, int from, int to);
+    }
+
+    /**
+     * Trains the network with the specified batch of training records.
+     *
+     * @param batch the training records.
+     * @throws Exception if any of the training records is invalid.
+     */
+    public void trainBatch(List<IORecord> batch) throws Exception
+    {
+        network.validateBatch(batch);
+        train(batch.size(), (worker, from, to) -> workers[worker].computeGradients(batch, from, to));
+    }
+
+    /**
+     * Trains the network with the first records of the specified array.
+     *
+     * @param batch the training records.
+     * @param count the number of records of the batch.
+     * @throws Exception if any of the training records is invalid.
+     */
+    public void trainBatch(ArrayRecord[] batch, int count) throws Exception
+    {
+        network.validateBatch(batch, count);
+        train(count, (worker, from, to) -> workers[worker].computeGradients(batch, from, to));
+    }
+
+    /**
+     * Trains the network with the records of the specified dataset at the
+     * specified range of positions of an epoch of the sampler. Each worker
+     * reads the records of its slice of the range by itself, so the records
+     * are neither gathered nor copied beforehand.
+     *
+     * @param dataset the dataset.
+     * @param sampler the sampler of the dataset.
+     * @param epoch the number of the epoch.
+     * @param from the first position of the batch, inclusive.
+     * @param to the last position of the batch, exclusive.
+     * @throws Exception if the dataset is incompatible with the network or
+     *         the range is invalid.
+     */
+    public void trainBatch(Dataset dataset, Sampler sampler, int epoch, int from, int to) throws Exception
+    {
+        List<Integer> topology = network.getTopology();
+        if (dataset.getInputSize() != topology.getFirst() || dataset.getOutputSize() != topology.getLast())
+        {
+            throw new Exception("ParallelTrainer.trainBatch : incompatible vectors");
+        }
+        if (from < 0 || from > to || to > sampler.size())
+        {
+            throw new Exception("ParallelTrainer.trainBatch : invalid range");
+        }
+        train(to - from, (worker, start, end) ->
+        {
+            ArrayRecord[] slice = read(worker, dataset, sampler, epoch, from + start, from + end);
+            return workers[worker].computeGradients(slice, 0, end - start);
+        });
+    }
+
+    /**
+     * Reads the records at the specified range of positions of an epoch of
+     * the sampler into the buffers of a worker.
+     *
+     * @param worker the index of the worker.
+     * @param dataset the dataset.
+     * @param sampler the sampler of the dataset.
+     * @param epoch the number of the epoch.
+     * @param from the first position, inclusive.
+     * @param to the last position, exclusive.
+     * @return the records, at the beginning of the array, which may be the
+     *         records of the dataset itself rather than the buffers.
+     */
+    private ArrayRecord[] read(int worker, Dataset dataset, Sampler sampler, int epoch, int from, int to)
+    {
+        int count = to - from;
+        if (buffers[worker].length < count)
+        {
+            buffers[worker] = Arrays.copyOf(buffers[worker], count);
+            records[worker] = new ArrayRecord[count];
+        }
+        ArrayRecord[] owned = buffers[worker];
+        for (int r = 0; r < count; ++r)
+        {
+            if (owned[r] == null || owned[r].getInputs().length != dataset.getInputSize()
+                    || owned[r].getOutputs().length != dataset.getOutputSize())
+            {
+                owned[r] = new ArrayRecord(dataset.getInputSize(), dataset.getOutputSize());
+            }
+            records[worker][r] = dataset.read(sampler.get(epoch, from + r), owned[r]);
+        }
+        return records[worker];
+    }
+
+    /**
+     * Trains the network with a batch of the specified size.
+     *
+     * @param batchSize the number of records in the batch.
+     * @param slice the computation of the gradients of a slice of the batch.
+     */
+    private void train(int batchSize, Slice slice)
+    {
+        if (batchSize == 0)
+        {
+            return;
+        }
+
+        long begin = TrainingMetrics.ENABLED ? System.nanoTime() : 0;
+        long allocated = TrainingMetrics.ENABLED ? TrainingMetrics.allocatedBytes() : 0;
+        TrainingMetrics metrics = network.getMetrics();
+
+        /* Split the batch into consecutive slices. */
+        int active = Math.min(workers.length, batchSize);
+        for (int w = 0; w < workers.length; ++w)
+        {
+            batchSizes[w] = 0;
+            if (w < active)
+            {
+                batchSizes[w] = sliceStart(w + 1, active, batchSize) - sliceStart(w, active, batchSize);
+            }
+        }
+
+        /* Forward and backward on the workers. */
+        pool.invoke(new RangeTask(0, active, 1, (from, to) ->
+        {
+            long threadAllocated = TrainingMetrics.ENABLED ? TrainingMetrics.allocatedBytes() : 0;
+            for (int w = from; w < to; ++w)
+            {
+                int start = sliceStart(w, active, batchSize);
+                errors[w] = slice.computeGradients(w, start, start + batchSizes[w]);
+            }
+            if (TrainingMetrics.ENABLED)
+            {
+                metrics.addAllocation(TrainingMetrics.allocatedBytes() - threadAllocated);
+            }
+        }));
+
+        /* Reduce the gradients into the shared weights. */
+        for (int i = replicas.length - 1; i > 0; --i)
+        {
+            Layer layer = network.getLayer(i);
+            Layer[] layerReplicas = replicas[i];
+            int grain = Math.max(1, layer.size() / (4 * workers.length));
+            long start = TrainingMetrics.ENABLED ? System.nanoTime() : 0;
+            pool.invoke(new RangeTask(0, layer.size(), grain, (from, to) ->
+                    layer.updateInputs(layerReplicas, batchSizes, from, to)));
+            if (TrainingMetrics.ENABLED)
+            {
+                metrics.addPhase(TrainingMetrics.Phase.UPDATE, i, batchSize, start);
+            }
+        }
+
+        if (TrainingMetrics.ENABLED)
+        {
+            double error = 0.0;
+            for (int w = 0; w < active; ++w)
+            {
+                error += errors[w];
+            }
+            metrics.addBatch(batchSize, error, begin, allocated);
+        }
+    }
+
+    /**
+     * Returns the index of the first record of the specified slice.
+     *
+     * @param slice the index of the slice.
+     * @param slices the number of slices.
+     * @param batchSize the number of records in the batch.
+     * @return the index of the first record of the slice.
+     */
+    private static int sliceStart(int slice, int slices, int batchSize)
+    {
+        return (int) ((long) slice * batchSize / slices);
+    }
+
+    /**
+     * Shuts down the workers.
+     */
+    @Override
+    public void close()
+    {
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,804 @@
+package ann.neuralnetwork;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * A copy of the weights and the biases of a network, taken between two
+ * training steps so that it is consistent, and written later in the binary
+ * format while the training goes on.
+ * <p>
+ * The arrays of a snapshot are allocated by the first copy and reused by the
+ * following ones, as long as the topology, the precision and the connections
+ * of the copied network stay the same. The weights of a pruned layer are kept
+ * as compressed sparse rows, as in the layer, whose connections are shared
+ * since a layer replaces them rather than change them when it is pruned.
+ * <p>
+ * A snapshot can also be written as a delta to a reference snapshot of the
+ * same network, as described in {@link DeltaModel}: the bit patterns of each
+ * parameter and of its reference are XORed, which leaves zeros in all the
+ * bytes the training did not change, and the bytes of the same significance
+ * are grouped together so that the zeros compress well.
+ */
+final class ParameterSnapshot
+{
+    /**
+     * The number of parameters processed at once by the delta encoding and
+     * the checksum.
+     */
+    private static final int CHUNK = 4096;
+
+    /**
+     * The topology of the copied network.
+     */
+    private List<Integer> topology = List.of();
+    /**
+     * The learning rate of the copied network.
+     */
+    private double learningRate;
+    /**
+     * The precision of the weights of the copied network.
+     */
+    private Precision precision = Precision.DOUBLE;
+    /**
+     * The transfer functions of the layers of the copied network.
+     */
+    private List<Activation> activations = List.of();
+    /**
+     * The weights of each layer in double precision, or null in single
+     * precision.
+     */
+    private double[][] weights = new double[0][];
+    /**
+     * The weights of each layer in single precision, or null in double
+     * precision.
+     */
+    private float[][] singleWeights = new float[0][];
+    /**
+     * The biases of each layer.
+     */
+    private double[][] biases = new double[0][];
+    /**
+     * The start of the connections of each neuron of each layer, or null for
+     * a fully connected layer.
+     */
+    private int[][] rowStarts = new int[0][];
+    /**
+     * The inputs of the connections of each layer, or null for a fully
+     * connected layer.
+     */
+    private int[][] columns = new int[0][];
+
+    /**
+     * Constructs a new empty snapshot.
+     */
+    ParameterSnapshot()
+    {
+    }
+
+    /**
+     * Copies the weights and the biases of the specified network, which must
+     * not be training meanwhile.
+     *
+     * @param network the network.
+     */
+    void copyFrom(Network network)
+    {
+        List<Integer> networkTopology = network.getTopology();
+        if (!networkTopology.equals(topology) || network.getPrecision() != precision)
+        {
+            allocate(networkTopology, network.getPrecision());
+        }
+        learningRate = network.getLearningRate();
+        activations = network.getActivations();
+        for (int i = 1; i < topology.size(); ++i)
+        {
+            Layer layer = network.getLayer(i);
+            if (layer.getRowStarts() != rowStarts[i] || layer.getColumns() != columns[i])
+            {
+                allocate(i, layer.getRowStarts(), layer.getColumns());
+            }
+            layer.copyParameters(weights[i], singleWeights[i], biases[i]);
+        }
+    }
+
+    /**
+     * Allocates the arrays of the snapshot for the specified network, whose
+     * layers are fully connected until they are allocated again.
+     *
+     * @param networkTopology the topology of the network.
+     * @param networkPrecision the precision of the weights of the network.
+     */
+    private void allocate(List<Integer> networkTopology, Precision networkPrecision)
+    {
+        topology = networkTopology;
+        precision = networkPrecision;
+        weights = new double[topology.size()][];
+        singleWeights = new float[topology.size()][];
+        biases = new double[topology.size()][];
+        rowStarts = new int[topology.size()][];
+        columns = new int[topology.size()][];
+        for (int i = 1; i < topology.size(); ++i)
+        {
+            allocate(i, null, null);
+            biases[i] = new double[topology.get(i)];
+        }
+    }
+
+    /**
+     * Allocates the weights of a layer for the specified connections.
+     *
+     * @param i the index of the layer.
+     * @param starts the start of the connections of each neuron, or null for
+     *        a fully connected layer.
+     * @param indices the inputs of the connections, or null for a fully
+     *        connected layer.
+     */
+    private void allocate(int i, int[] starts, int[] indices)
+    {
+        rowStarts[i] = starts;
+        columns[i] = indices;
+        int count = (indices != null) ? indices.length : topology.get(i) * topology.get(i - 1);
+        if (precision.isSingle())
+        {
+            singleWeights[i] = new float[count];
+        }
+        else
+        {
+            weights[i] = new double[count];
+        }
+    }
+
+    /**
+     * Sets the weights and the biases of the specified network from the
+     * snapshot.
+     *
+     * @param network the network, of the topology and precision of the
+     *        snapshot, fully connected and without replicas yet; its layers
+     *        are pruned as those of the snapshot.
+     */
+    void copyTo(Network network)
+    {
+        for (int i = 1; i < topology.size(); ++i)
+        {
+            Layer layer = network.getLayer(i);
+            if (rowStarts[i] != null)
+            {
+                layer.setConnections(rowStarts[i], columns[i]);
+            }
+            layer.setParameters(weights[i], singleWeights[i], biases[i]);
+        }
+    }
+
+    /**
+     * Reads the weights and the biases of a model in the binary format, whose
+     * header has been read.
+     *
+     * @param reader the reader of the binary format.
+     * @throws IOException if reading fails.
+     */
+    void readFrom(BinaryModel.Reader reader) throws IOException
+    {
+        allocate(reader.getTopology(), reader.getPrecision());
+        learningRate = reader.getLearningRate();
+        activations = reader.getActivations();
+        for (int i = 1; i < topology.size(); ++i)
+        {
+            if (reader.isSparse(i))
+            {
+                int[] starts = new int[topology.get(i) + 1];
+                allocate(i, starts, reader.getConnections(starts, topology.get(i - 1)));
+                for (int j = 0; j < topology.get(i); ++j)
+                {
+                    if (precision.isSingle())
+                    {
+                        reader.getWeights(singleWeights[i], starts[j], 1, starts[j + 1] - starts[j]);
+                    }
+                    else
+                    {
+                        reader.getWeights(weights[i], starts[j], 1, starts[j + 1] - starts[j]);
+                    }
+                }
+            }
+            else if (precision.isSingle())
+            {
+                reader.getWeights(singleWeights[i], topology.get(i), topology.get(i - 1));
+            }
+            else
+            {
+                reader.getWeights(weights[i], topology.get(i), topology.get(i - 1));
+            }
+            reader.getDoubles(biases[i], 0, biases[i].length);
+        }
+        reader.checkEnd();
+    }
+
+    /**
+     * Returns the topology of the copied network.
+     *
+     * @return the topology of the network.
+     */
+    List<Integer> getTopology()
+    {
+        return topology;
+    }
+
+    /**
+     * Returns the learning rate of the copied network.
+     *
+     * @return the learning rate of the network.
+     */
+    double getLearningRate()
+    {
+        return learningRate;
+    }
+
+    /**
+     * Sets the learning rate of the copied network.
+     *
+     * @param learningRate the learning rate of the network.
+     */
+    void setLearningRate(double learningRate)
+    {
+        this.learningRate = learningRate;
+    }
+
+    /**
+     * Returns the precision of the weights of the copied network.
+     *
+     * @return the precision of the weights.
+     */
+    Precision getPrecision()
+    {
+        return precision;
+    }
+
+    /**
+     * Returns the transfer functions of the layers of the copied network.
+     *
+     * @return the transfer functions, the input layer included.
+     */
+    List<Activation> getActivations()
+    {
+        return activations;
+    }
+
+    /**
+     * Tells whether the snapshot has the same topology, precision, transfer
+     * functions and connections as another one, so that a delta can be taken
+     * between them.
+     *
+     * @param other the other snapshot.
+     * @return true if the snapshots have the same shape.
+     */
+    boolean hasSameShape(ParameterSnapshot other)
+    {
+        return topology.equals(other.topology) && precision == other.precision
+                && activations.equals(other.activations) && Arrays.deepEquals(rowStarts, other.rowStarts)
+                && Arrays.deepEquals(columns, other.columns);
+    }
+
+    /**
+     * Computes the CRC-32 checksum of the parameters, in the order and
+     * encoding of the binary format, preceded for a pruned layer by the
+     * start of the connections of each neuron and their inputs, so that a
+     * delta is only applied to a reference with the same connections.
+     *
+     * @return the checksum.
+     */
+    long checksum()
+    {
+        CRC32 checksum = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNK * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 1; i < topology.size(); ++i)
+        {
+            if (rowStarts[i] != null)
+            {
+                update(checksum, buffer, rowStarts[i]);
+                update(checksum, buffer, columns[i]);
+            }
+            if (precision.isSingle())
+            {
+                for (int offset = 0; offset < singleWeights[i].length; offset += CHUNK)
+                {
+                    int count = Math.min(CHUNK, singleWeights[i].length - offset);
+                    buffer.clear();
+                    buffer.asFloatBuffer().put(singleWeights[i], offset, count);
+                    checksum.update(buffer.array(), 0, count * Float.BYTES);
+                }
+            }
+            else
+            {
+                update(checksum, buffer, weights[i]);
+            }
+            update(checksum, buffer, biases[i]);
+        }
+        return checksum.getValue();
+    }
+
+    /**
+     * Adds an array of doubles to a checksum.
+     *
+     * @param checksum the checksum.
+     * @param buffer the buffer through which the doubles are encoded.
+     * @param values the doubles.
+     */
+    private static void update(CRC32 checksum, ByteBuffer buffer, double[] values)
+    {
+        for (int offset = 0; offset < values.length; offset += CHUNK)
+        {
+            int count = Math.min(CHUNK, values.length - offset);
+            buffer.clear();
+            buffer.asDoubleBuffer().put(values, offset, count);
+            checksum.update(buffer.array(), 0, count * Double.BYTES);
+        }
+    }
+
+    /**
+     * Adds an array of ints to a checksum.
+     *
+     * @param checksum the checksum.
+     * @param buffer the buffer through which the ints are encoded.
+     * @param values the ints.
+     */
+    private static void update(CRC32 checksum, ByteBuffer buffer, int[] values)
+    {
+        for (int offset = 0; offset < values.length; offset += CHUNK)
+        {
+            int count = Math.min(CHUNK, values.length - offset);
+            buffer.clear();
+            buffer.asIntBuffer().put(values, offset, count);
+            checksum.update(buffer.array(), 0, count * Integer.BYTES);
+        }
+    }
+
+    /**
+     * Chooses the tolerance of a lossy delta from a reference snapshot of the
+     * same shape to this one, so that every restored parameter is within the
+     * specified tolerance. The differences are quantized with a tolerance
+     * smaller by the spacing of the parameters, which leaves room for the
+     * rounding of the restored ones. No lossy delta can hold the tolerance if
+     * the tolerance is below that spacing, as it can be for single-precision
+     * weights, or if a difference is too large for its number of steps to fit
+     * an int.
+     *
+     * @param reference the reference snapshot.
+     * @param tolerance the largest difference allowed between a parameter
+     *        and its restored value, positive.
+     * @return the tolerance of the delta, or zero if the delta must be
+     *         lossless.
+     */
+    double deltaTolerance(ParameterSnapshot reference, double tolerance)
+    {
+        assert (hasSameShape(reference) && tolerance > 0.0);
+
+        double spacing = 0.0;
+        for (int i = 1; i < topology.size(); ++i)
+        {
+            spacing = Math.max(spacing, precision.isSingle()
+                    ? Math.ulp((float) (magnitude(singleWeights[i]) + tolerance))
+                    : Math.ulp(magnitude(weights[i]) + tolerance));
+            spacing = Math.max(spacing, Math.ulp(magnitude(biases[i]) + tolerance));
+        }
+        double quantum = tolerance - spacing;
+        if (!(quantum > 0.0))
+        {
+            return 0.0;
+        }
+        double step = 2.0 * quantum;
+        for (int i = 1; i < topology.size(); ++i)
+        {
+            boolean within = precision.isSingle()
+                    ? canQuantize(singleWeights[i], reference.singleWeights[i], step, tolerance)
+                    : canQuantize(weights[i], reference.weights[i], step, tolerance);
+            if (!within || !canQuantize(biases[i], reference.biases[i], step, tolerance))
+            {
+                return 0.0;
+            }
+        }
+        return quantum;
+    }
+
+    /**
+     * Computes the largest magnitude of an array of doubles.
+     *
+     * @param values the doubles.
+     * @return the largest magnitude, NaN if a value is NaN.
+     */
+    private static double magnitude(double[] values)
+    {
+        double magnitude = 0.0;
+        for (double value : values)
+        {
+            magnitude = Math.max(magnitude, Math.abs(value));
+        }
+        return magnitude;
+    }
+
+    /**
+     * Computes the largest magnitude of an array of floats.
+     *
+     * @param values the floats.
+     * @return the largest magnitude, NaN if a value is NaN.
+     */
+    private static double magnitude(float[] values)
+    {
+        double magnitude = 0.0;
+        for (float value : values)
+        {
+            magnitude = Math.max(magnitude, Math.abs(value));
+        }
+        return magnitude;
+    }
+
+    /**
+     * Checks whether the quantized deltas of an array of doubles restore
+     * every value within the tolerance, computing the restored values as
+     * {@link #applyDelta(BinaryModel.Reader, double)} does.
+     *
+     * @param values the doubles.
+     * @param references the reference doubles.
+     * @param step the quantization step.
+     * @param tolerance the largest difference allowed between a value and its
+     *        restored value, more than half the step.
+     * @return true if every value is restored within the tolerance.
+     */
+    private static boolean canQuantize(double[] values, double[] references, double step, double tolerance)
+    {
+        for (int v = 0; v < values.length; ++v)
+        {
+            double restored = references[v] + quantize(values[v] - references[v], step) * step;
+            if (!(Math.abs(restored - values[v]) <= tolerance))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the quantized deltas of an array of floats restore every
+     * value within the tolerance, computing the restored values as
+     * {@link #applyDelta(BinaryModel.Reader, double)} does.
+     *
+     * @param values the floats.
+     * @param references the reference floats.
+     * @param step the quantization step.
+     * @param tolerance the largest difference allowed between a value and its
+     *        restored value, more than half the step.
+     * @return true if every value is restored within the tolerance.
+     */
+    private static boolean canQuantize(float[] values, float[] references, double step, double tolerance)
+    {
+        for (int v = 0; v < values.length; ++v)
+        {
+            float restored = (float) (references[v] + quantize(values[v] - references[v], step) * step);
+            if (!(Math.abs(restored - (double) values[v]) <= tolerance))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the delta from a reference snapshot of the same shape to this
+     * one. With a tolerance of zero, the delta is lossless. With a positive
+     * tolerance, the differences are quantized in steps of twice the
+     * tolerance, and the reference is turned into the snapshot restored from
+     * the delta, so that the next delta starts from what is restored. The
+     * restored parameters are within a given tolerance of these if the delta
+     * is written with the tolerance chosen by
+     * {@link #deltaTolerance(ParameterSnapshot, double)}.
+     *
+     * @param writer the writer of the delta, compressing it.
+     * @param reference the reference snapshot.
+     * @param tolerance the largest difference allowed between a parameter
+     *        and its restored value.
+     * @throws IOException if writing fails.
+     */
+    void writeDelta(BinaryModel.Writer writer, ParameterSnapshot reference, double tolerance) throws IOException
+    {
+        assert (hasSameShape(reference) && tolerance >= 0.0);
+
+        byte[] planes = new byte[CHUNK * Double.BYTES];
+        for (int i = 1; i < topology.size(); ++i)
+        {
+            if (precision.isSingle())
+            {
+                writeDelta(writer, planes, singleWeights[i], reference.singleWeights[i], tolerance);
+            }
+            else
+            {
+                writeDelta(writer, planes, weights[i], reference.weights[i], tolerance);
+            }
+            writeDelta(writer, planes, biases[i], reference.biases[i], tolerance);
+        }
+    }
+
+    /**
+     * Writes the delta between two arrays of doubles, chunk by chunk, each
+     * chunk as planes holding the bytes of the same significance: eight for
+     * the XORed bit patterns, four for the quantized differences.
+     *
+     * @param writer the writer of the delta.
+     * @param planes the buffer of the planes of a chunk.
+     * @param values the doubles.
+     * @param references the reference doubles, set to their restored values
+     *        if the tolerance is positive.
+     * @param tolerance the largest difference allowed between a value and its
+     *        restored value.
+     * @throws IOException if writing fails.
+     */
+    private static void writeDelta(BinaryModel.Writer writer, byte[] planes, double[] values, double[] references,
+            double tolerance) throws IOException
+    {
+        double step = 2.0 * tolerance;
+        for (int offset = 0; offset < values.length; offset += CHUNK)
+        {
+            int count = Math.min(CHUNK, values.length - offset);
+            if (tolerance == 0.0)
+            {
+                for (int v = 0; v < count; ++v)
+                {
+                    long bits = Double.doubleToRawLongBits(values[offset + v])
+                            ^ Double.doubleToRawLongBits(references[offset + v]);
+                    for (int b = 0; b < Double.BYTES; ++b)
+                    {
+                        planes[b * count + v] = (byte) (bits >>> (8 * b));
+                    }
+                }
+                writer.putBytes(planes, 0, count * Double.BYTES);
+            }
+            else
+            {
+                for (int v = 0; v < count; ++v)
+                {
+                    int code = quantize(values[offset + v] - references[offset + v], step);
+                    references[offset + v] += code * step;
+                    putCode(planes, count, v, (code << 1) ^ (code >> 31));
+                }
+                writer.putBytes(planes, 0, count * Integer.BYTES);
+            }
+        }
+    }
+
+    /**
+     * Writes the delta between two arrays of floats, chunk by chunk, each
+     * chunk as four planes holding the bytes of the same significance of the
+     * XORed bit patterns or of the quantized differences.
+     *
+     * @param writer the writer of the delta.
+     * @param planes the buffer of the planes of a chunk.
+     * @param values the floats.
+     * @param references the reference floats, set to their restored values if
+     *        the tolerance is positive.
+     * @param tolerance the largest difference allowed between a value and its
+     *        restored value.
+     * @throws IOException if writing fails.
+     */
+    private static void writeDelta(BinaryModel.Writer writer, byte[] planes, float[] values, float[] references,
+            double tolerance) throws IOException
+    {
+        double step = 2.0 * tolerance;
+        for (int offset = 0; offset < values.length; offset += CHUNK)
+        {
+            int count = Math.min(CHUNK, values.length - offset);
+            for (int v = 0; v < count; ++v)
+            {
+                int bits;
+                if (tolerance == 0.0)
+                {
+                    bits = Float.floatToRawIntBits(values[offset + v]) ^ Float.floatToRawIntBits(references[offset + v]);
+                }
+                else
+                {
+                    int code = quantize(values[offset + v] - references[offset + v], step);
+                    references[offset + v] = (float) (references[offset + v] + code * step);
+                    bits = (code << 1) ^ (code >> 31);
+                }
+                putCode(planes, count, v, bits);
+            }
+            writer.putBytes(planes, 0, count * Integer.BYTES);
+        }
+    }
+
+    /**
+     * Quantizes a difference, saturating to the range of an int; a saturated
+     * difference is detected by
+     * {@link #deltaTolerance(ParameterSnapshot, double)}.
+     *
+     * @param difference the difference.
+     * @param step the quantization step.
+     * @return the number of steps closest to the difference.
+     */
+    private static int quantize(double difference, double step)
+    {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, Math.round(difference / step)));
+    }
+
+    /**
+     * Puts the four bytes of an int into the planes of a chunk. The quantized
+     * differences are zigzag-encoded beforehand, so that the small negative
+     * ones have zero high bytes too.
+     *
+     * @param planes the planes of the chunk.
+     * @param count the number of values of the chunk.
+     * @param index the index of the value in the chunk.
+     * @param value the value.
+     */
+    private static void putCode(byte[] planes, int count, int index, int value)
+    {
+        for (int b = 0; b < Integer.BYTES; ++b)
+        {
+            planes[b * count + index] = (byte) (value >>> (8 * b));
+        }
+    }
+
+    /**
+     * Gets the four bytes of an int from the planes of a chunk.
+     *
+     * @param planes the planes of the chunk.
+     * @param count the number of values of the chunk.
+     * @param index the index of the value in the chunk.
+     * @return the value.
+     */
+    private static int getCode(byte[] planes, int count, int index)
+    {
+        int value = 0;
+        for (int b = 0; b < Integer.BYTES; ++b)
+        {
+            value |= (planes[b * count + index] & 0xFF) << (8 * b);
+        }
+        return value;
+    }
+
+    /**
+     * Applies a delta written by {@link #writeDelta(BinaryModel.Writer,
+     * ParameterSnapshot, double)}, turning this snapshot from the reference
+     * of the delta into its restored target.
+     *
+     * @param reader the reader of the delta, decompressing it.
+     * @param tolerance the tolerance of the delta.
+     * @throws IOException if the delta ends too early or is invalid.
+     */
+    void applyDelta(BinaryModel.Reader reader, double tolerance) throws IOException
+    {
+        byte[] planes = new byte[CHUNK * Double.BYTES];
+        for (int i = 1; i < topology.size(); ++i)
+        {
+            if (precision.isSingle())
+            {
+                applyDelta(reader, planes, singleWeights[i], tolerance);
+            }
+            else
+            {
+                applyDelta(reader, planes, weights[i], tolerance);
+            }
+            applyDelta(reader, planes, biases[i], tolerance);
+        }
+    }
+
+    /**
+     * Applies the delta of an array of doubles.
+     *
+     * @param reader the reader of the delta.
+     * @param planes the buffer of the planes of a chunk.
+     * @param values the doubles, changed in place.
+     * @param tolerance the tolerance of the delta.
+     * @throws IOException if the delta ends too early or is invalid.
+     */
+    private static void applyDelta(BinaryModel.Reader reader, byte[] planes, double[] values, double tolerance)
+            throws IOException
+    {
+        double step = 2.0 * tolerance;
+        int width = (tolerance == 0.0) ? Double.BYTES : Integer.BYTES;
+        for (int offset = 0; offset < values.length; offset += CHUNK)
+        {
+            int count = Math.min(CHUNK, values.length - offset);
+            reader.getBytes(planes, 0, count * width);
+            for (int v = 0; v < count; ++v)
+            {
+                if (tolerance == 0.0)
+                {
+                    long bits = 0;
+                    for (int b = 0; b < Double.BYTES; ++b)
+                    {
+                        bits |= (planes[b * count + v] & 0xFFL) << (8 * b);
+                    }
+                    values[offset + v] = Double.longBitsToDouble(Double.doubleToRawLongBits(values[offset + v])
+                            ^ bits);
+                }
+                else
+                {
+                    int code = getCode(planes, count, v);
+                    values[offset + v] += ((code >>> 1) ^ -(code & 1)) * step;
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the delta of an array of floats.
+     *
+     * @param reader the reader of the delta.
+     * @param planes the buffer of the planes of a chunk.
+     * @param values the floats, changed in place.
+     * @param tolerance the tolerance of the delta.
+     * @throws IOException if the delta ends too early or is invalid.
+     */
+    private static void applyDelta(BinaryModel.Reader reader, byte[] planes, float[] values, double tolerance)
+            throws IOException
+    {
+        double step = 2.0 * tolerance;
+        for (int offset = 0; offset < values.length; offset += CHUNK)
+        {
+            int count = Math.min(CHUNK, values.length - offset);
+            reader.getBytes(planes, 0, count * Float.BYTES);
+            for (int v = 0; v < count; ++v)
+            {
+                int bits = getCode(planes, count, v);
+                if (tolerance == 0.0)
+                {
+                    values[offset + v] = Float.intBitsToFloat(Float.floatToRawIntBits(values[offset + v]) ^ bits);
+                }
+                else
+                {
+                    values[offset + v] = (float) (values[offset + v] + ((bits >>> 1) ^ -(bits & 1)) * step);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the snapshot in the binary format to the specified channel, as
+     * {@link Network#writeTo(WritableByteChannel)} writes the network.
+     *
+     * @param channel the channel to write to; it is not closed.
+     * @throws IOException if writing fails.
+     */
+    void writeTo(WritableByteChannel channel) throws IOException
+    {
+        boolean[] sparse = new boolean[topology.size()];
+        for (int i = 1; i < topology.size(); ++i)
+        {
+            sparse[i] = rowStarts[i] != null;
+        }
+        BinaryModel.Writer writer = new BinaryModel.Writer(channel);
+        writer.writeHeader(topology, learningRate, precision, WeightEncoding.NATIVE, false, sparse, activations);
+        for (int i = 1; i < topology.size(); ++i)
+        {
+            if (sparse[i])
+            {
+                int[] starts = rowStarts[i];
+                writer.putConnections(starts, columns[i]);
+                for (int j = 0; j < topology.get(i); ++j)
+                {
+                    if (precision.isSingle())
+                    {
+                        writer.putWeights(singleWeights[i], starts[j], 1, starts[j + 1] - starts[j]);
+                    }
+                    else
+                    {
+                        writer.putWeights(weights[i], starts[j], 1, starts[j + 1] - starts[j]);
+                    }
+                }
+            }
+            else if (precision.isSingle())
+            {
+                writer.putWeights(singleWeights[i], topology.get(i), topology.get(i - 1));
+            }
+            else
+            {
+                writer.putWeights(weights[i], topology.get(i), topology.get(i - 1));
+            }
+            writer.putDoubles(biases[i], 0, biases[i].length);
+        }
+        writer.finish();
+    }
+}
@@ -0,0 +1,38 @@
+package ann.neuralnetwork;
+
+/**
+ * Represents the precision in which a neural network stores its weights and
+ * computes its forward pass.
+ * <p>
+ * The biases, the gradients and the values passed to the transfer function
+ * are kept in double precision in every mode.
+ */
+public enum Precision
+{
+    /**
+     * The weights and the activations are doubles.
+     */
+    DOUBLE,
+    /**
+     * The weights and the activations fed to the next layer are floats, and
+     * the dot products are accumulated in floats. This halves the memory of
+     * the weights and doubles the number of lanes of the vectorized kernels.
+     */
+    SINGLE,
+    /**
+     * The weights and the activations fed to the next layer are floats, but
+     * the dot products are accumulated in doubles, which keeps long dot
+     * products accurate at the cost of part of the speed-up.
+     */
+    MIXED;
+
+    /**
+     * Checks whether the weights are stored as floats.
+     *
+     * @return true if the weights are floats.
+     */
+    public boolean isSingle()
+    {
+        return this != DOUBLE;
+    }
+}
@@ -0,0 +1,155 @@
+package ann.neuralnetwork;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Represents a thread-safe view of a neural network for inference.
+ * <p>
+ * All threads share the weights of the network, while the activations are
+ * computed on replicas of the network taken from a pool, one per call in
+ * progress. The pool grows to the largest number of concurrent calls, so it
+ * works with virtual threads as well as with platform threads.
+ * <p>
+ * The network must not be trained while the predictor is in use.
+ */
+public final class Predictor
+{
+    /**
+     * The network whose weights are shared.
+     */
+    private final Network network;
+    /**
+     * The replicas of the network which are not in use.
+     */
+    private final ConcurrentLinkedQueue<Network> replicas;
+    /**
+     * The size of the input layer.
+     */
+    private final int inputSize;
+    /**
+     * The size of the output layer.
+     */
+    private final int outputSize;
+
+    /**
+     * Constructs a new predictor for the specified network.
+     *
+     * @param network the network whose weights are shared.
+     */
+    public Predictor(Network network)
+    {
+        this.network = network;
+        replicas = new ConcurrentLinkedQueue<>();
+        List<Integer> topology = network.getTopology();
+        inputSize = topology.getFirst();
+        outputSize = topology.getLast();
+    }
+
+    /**
+     * Takes a replica of the network from the pool, or creates one if the
+     * pool is empty.
+     *
+     * @return the replica.
+     */
+    private Network acquire()
+    {
+        Network replica = replicas.poll();
+        return (replica != null) ? replica : new Network(network);
+    }
+
+    /**
+     * Computes the output for the specified input and stores it in the specified array.
+     *
+     * @param input the input to compute the output for.
+     * @param output the array to store the output of the network in.
+     * @throws Exception if the input or the output is invalid.
+     */
+    public void computeFor(double[] input, double[] output) throws Exception
+    {
+        Network replica = acquire();
+        try
+        {
+            replica.computeFor(input, output);
+        }
+        finally
+        {
+            replicas.offer(replica);
+        }
+    }
+
+    /**
+     * Computes the output for the specified input.
+     *
+     * @param input the input to compute the output for.
+     * @return the output of the network.
+     * @throws Exception if the input is invalid.
+     */
+    public double[] computeFor(double[] input) throws Exception
+    {
+        double[] output = new double[outputSize];
+        computeFor(input, output);
+        return output;
+    }
+
+    /**
+     * Computes the output for the specified input.
+     *
+     * @param input the input to compute the output for.
+     * @return the output of the network.
+     * @throws Exception if the input is invalid.
+     */
+    public List<Double> computeFor(List<Double> input) throws Exception
+    {
+        Network replica = acquire();
+        try
+        {
+            return replica.computeFor(input);
+        }
+        finally
+        {
+            replicas.offer(replica);
+        }
+    }
+
+    /**
+     * Computes the outputs for the specified batch of inputs.
+     *
+     * @param inputs the inputs to compute the outputs for.
+     * @return the outputs of the network, one per input.
+     * @throws Exception if any of the inputs is invalid.
+     * @see Network#computeForBatch(double[][])
+     */
+    public double[][] computeForBatch(double[][] inputs) throws Exception
+    {
+        Network replica = acquire();
+        try
+        {
+            return replica.computeForBatch(inputs);
+        }
+        finally
+        {
+            replicas.offer(replica);
+        }
+    }
+
+    /**
+     * Returns the size of the input of the network.
+     *
+     * @return the size of the input.
+     */
+    public int getInputSize()
+    {
+        return inputSize;
+    }
+
+    /**
+     * Returns the size of the output of the network.
+     *
+     * @return the size of the output.
+     */
+    public int getOutputSize()
+    {
+        return outputSize;
+    }
+}
@@ -0,0 +1,166 @@
+package ann.neuralnetwork;
+
+/**
+ * Compares the outputs of a {@link QuantizedNetwork} with those of the
+ * network it was quantized from, record by record: the classes both predict,
+ * as the index of their greatest output, against the labels of the records,
+ * and the differences between their outputs.
+ */
+public final class QuantizationReport
+{
+    /**
+     * The number of records compared.
+     */
+    private int records;
+    /**
+     * The number of records whose class the network predicts.
+     */
+    private int referenceCorrect;
+    /**
+     * The number of records whose class the quantized network predicts.
+     */
+    private int quantizedCorrect;
+    /**
+     * The number of records for which both networks predict the same class.
+     */
+    private int agreements;
+    /**
+     * The largest difference between an output of the network and that of
+     * the quantized network.
+     */
+    private double maxError;
+    /**
+     * The sum of the differences between the outputs of the networks.
+     */
+    private double errorSum;
+    /**
+     * The number of outputs compared.
+     */
+    private long outputs;
+
+    /**
+     * Constructs a new empty report.
+     */
+    public QuantizationReport()
+    {
+    }
+
+    /**
+     * Adds a record to the report.
+     *
+     * @param referenceOutput the output of the network for the record.
+     * @param quantizedOutput the output of the quantized network for the record.
+     * @param label the class of the record.
+     */
+    public void add(double[] referenceOutput, double[] quantizedOutput, int label)
+    {
+        int referenceClass = argMax(referenceOutput);
+        int quantizedClass = argMax(quantizedOutput);
+        ++records;
+        referenceCorrect += (referenceClass == label) ? 1 : 0;
+        quantizedCorrect += (quantizedClass == label) ? 1 : 0;
+        agreements += (referenceClass == quantizedClass) ? 1 : 0;
+        for (int o = 0; o < referenceOutput.length; ++o)
+        {
+            double error = Math.abs(referenceOutput[o] - quantizedOutput[o]);
+            maxError = Math.max(maxError, error);
+            errorSum += error;
+        }
+        outputs += referenceOutput.length;
+    }
+
+    /**
+     * Finds the index of the greatest value of an array.
+     *
+     * @param values the array.
+     * @return the index of the first greatest value.
+     */
+    private static int argMax(double[] values)
+    {
+        int index = 0;
+        for (int o = 1; o < values.length; ++o)
+        {
+            if (values[o] > values[index])
+            {
+                index = o;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Returns the number of records compared.
+     *
+     * @return the number of records.
+     */
+    public int getRecords()
+    {
+        return records;
+    }
+
+    /**
+     * Returns the fraction of the records whose class the network predicts.
+     *
+     * @return the accuracy of the network.
+     */
+    public double getReferenceAccuracy()
+    {
+        return (records > 0) ? (double) referenceCorrect / records : 0.0;
+    }
+
+    /**
+     * Returns the fraction of the records whose class the quantized network
+     * predicts.
+     *
+     * @return the accuracy of the quantized network.
+     */
+    public double getQuantizedAccuracy()
+    {
+        return (records > 0) ? (double) quantizedCorrect / records : 0.0;
+    }
+
+    /**
+     * Returns the fraction of the records for which both networks predict the
+     * same class.
+     *
+     * @return the agreement of the networks.
+     */
+    public double getAgreement()
+    {
+        return (records > 0) ? (double) agreements / records : 0.0;
+    }
+
+    /**
+     * Returns the largest difference between an output of the network and
+     * that of the quantized network.
+     *
+     * @return the largest difference of the outputs.
+     */
+    public double getMaxError()
+    {
+        return maxError;
+    }
+
+    /**
+     * Returns the mean difference between the outputs of the networks.
+     *
+     * @return the mean difference of the outputs.
+     */
+    public double getMeanError()
+    {
+        return (outputs > 0) ? errorSum / outputs : 0.0;
+    }
+
+    /**
+     * Describes the report.
+     *
+     * @return the description of the report.
+     */
+    @Override
+    public String toString()
+    {
+        return "%d records: accuracy %.2f%% quantized vs %.2f%%, same class for %.2f%%, output error mean %.2e max %.2e"
+                .formatted(records, 100.0 * getQuantizedAccuracy(), 100.0 * getReferenceAccuracy(),
+                        100.0 * getAgreement(), getMeanError(), getMaxError());
+    }
+}
@@ -0,0 +1,79 @@
+package ann.neuralnetwork;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Represents a fork-join task which performs an action on a range of
+ * indices by splitting it in halves until the chunks are small enough.
+ * Like any fork-join task it is only run in memory, never serialized.
+ */
+@SuppressWarnings("serial")
+class RangeTask extends RecursiveAction
+{
+    /**
+     * Represents an action performed on a chunk of the range.
+     */
+    @FunctionalInterface
+    interface Action
+    {
+        /**
+         * Performs the action on the specified chunk.
+         *
+         * @param from the first index of the chunk, inclusive.
+         * @param to the last index of the chunk, exclusive.
+         */
+        void run(int from, int to);
+    }
+
+    /**
+     * The first index of the range, inclusive.
+     */
+    private final int from;
+    /**
+     * The last index of the range, exclusive.
+     */
+    private final int to;
+    /**
+     * The maximal size of a chunk which is not split any further.
+     */
+    private final int grain;
+    /**
+     * The action to perform.
+     */
+    private final Action action;
+
+    /**
+     * Constructs a new task for the specified range.
+     *
+     * @param from the first index of the range, inclusive.
+     * @param to the last index of the range, exclusive.
+     * @param grain the maximal size of a chunk which is not split any further.
+     * @param action the action to perform.
+     */
+    RangeTask(int from, int to, int grain, Action action)
+    {
+        assert (grain > 0);
+
+        this.from = from;
+        this.to = to;
+        this.grain = grain;
+        this.action = action;
+    }
+
+    /**
+     * Performs the action on the range, splitting it if needed.
+     */
+    @Override
+    protected void compute()
+    {
+        if (to - from <= grain)
+        {
+            action.run(from, to);
+        }
+        else
+        {
+            int middle = (from + to) >>> 1;
+            invokeAll(new RangeTask(from, middle, grain, action), new RangeTask(middle, to, grain, action));
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package ann.neuralnetwork;
+
+import java.util.Arrays;
+
+/**
+ * Gives the order in which the records of a dataset are visited in each
+ * epoch.
+ * <p>
+ * The order of an epoch is a pseudo-random permutation determined by the
+ * seed of the sampler and the number of the epoch, so that a run can be
+ * repeated exactly. The permutation is never stored: the index at a position
+ * is computed on demand by a small Feistel network keyed by the seed and the
+ * epoch, so that starting an epoch costs nothing and any range of positions
+ * can be handed to a worker, whatever the size of the dataset.
+ * <p>
+ * A stratified sampler spreads the classes of the records evenly over each
+ * epoch: the classes come in a fixed proportional pattern, for instance
+ * alternately for two classes of the same size, and the records of each
+ * class are shuffled within it. Any window of consecutive positions then
+ * holds the classes in about the proportions of the dataset.
+ * <p>
+ * A sampler is immutable and may be used by several threads at once.
+ */
+public final class Sampler
+{
+    /**
+     * The number of rounds of the Feistel network.
+     */
+    private static final int ROUNDS = 4;
+    /**
+     * The epoch whose permutations split samplers.
+     */
+    private static final int SPLIT_EPOCH = -1;
+
+    /**
+     * The indices of the records of each stratum, or a single null stratum
+     * standing for all the indices from zero to the size of the sampler.
+     */
+    private final int[][] strata;
+    /**
+     * The stratum of each position, or null if there is a single stratum.
+     */
+    private final int[] schedule;
+    /**
+     * The rank within its stratum of each position, or null if there is a
+     * single stratum.
+     */
+    private final int[] ranks;
+    /**
+     * The number of positions in an epoch.
+     */
+    private final int size;
+    /**
+     * The seed of the permutations.
+     */
+    private final long seed;
+
+    /**
+     * Constructs a new sampler of all the records of a dataset of the
+     * specified size.
+     *
+     * @param count the number of records.
+     * @param seed the seed of the permutations.
+     */
+    public Sampler(int count, long seed)
+    {
+        this(new int[][] {null}, count, seed);
+    }
+
+    /**
+     * Constructs a new sampler of the specified strata.
+     *
+     * @param strata the indices of the records of each stratum.
+     * @param size the number of records of all the strata.
+     * @param seed the seed of the permutations.
+     */
+    private Sampler(int[][] strata, int size, long seed)
+    {
+        this.strata = strata;
+        this.size = size;
+        this.seed = seed;
+        if (strata.length == 1)
+        {
+            schedule = null;
+            ranks = null;
+            return;
+        }
+
+        /* Merge the strata by the relative positions of their records. */
+        schedule = new int[size];
+        ranks = new int[size];
+        int[] taken = new int[strata.length];
+        for (int p = 0; p < size; ++p)
+        {
+            int next = -1;
+            double nextKey = Double.POSITIVE_INFINITY;
+            for (int s = 0; s < strata.length; ++s)
+            {
+                if (taken[s] < strata[s].length)
+                {
+                    double key = (taken[s] + 0.5) / strata[s].length;
+                    if (key < nextKey)
+                    {
+                        next = s;
+                        nextKey = key;
+                    }
+                }
+            }
+            schedule[p] = next;
+            ranks[p] = taken[next]++;
+        }
+    }
+
+    /**
+     * Constructs a new sampler of all the records of the specified dataset,
+     * stratified by their classes.
+     *
+     * @param dataset the dataset.
+     * @param seed the seed of the permutations.
+     * @return the sampler.
+     */
+    public static Sampler stratified(Dataset dataset, long seed)
+    {
+        int count = dataset.getCount();
+        int[] labels = new int[count];
+        int classes = 0;
+        for (int r = 0; r < count; ++r)
+        {
+            labels[r] = dataset.getLabel(r);
+            classes = Math.max(classes, labels[r] + 1);
+        }
+        int[] sizes = new int[classes];
+        for (int label : labels)
+        {
+            ++sizes[label];
+        }
+        int[][] strata = new int[classes][];
+        for (int c = 0; c < classes; ++c)
+        {
+            strata[c] = new int[sizes[c]];
+            sizes[c] = 0;
+        }
+        for (int r = 0; r < count; ++r)
+        {
+            strata[labels[r]][sizes[labels[r]]++] = r;
+        }
+        return new Sampler(withoutEmpty(strata), count, seed);
+    }
+
+    /**
+     * Removes the empty strata.
+     *
+     * @param strata the strata.
+     * @return the strata which are not empty, at least one.
+     */
+    private static int[][] withoutEmpty(int[][] strata)
+    {
+        int[][] kept = Arrays.stream(strata).filter(stratum -> stratum.length > 0).toArray(int[][]::new);
+        return (kept.length > 0) ? kept : new int[][] {new int[0]};
+    }
+
+    /**
+     * Returns the number of positions in an epoch.
+     *
+     * @return the number of records sampled in an epoch.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns the index of the record at the specified position of the
+     * specified epoch.
+     *
+     * @param epoch the number of the epoch.
+     * @param position the position in the epoch.
+     * @return the index of the record in the dataset.
+     */
+    public int get(int epoch, int position)
+    {
+        assert (position >= 0 && position < size);
+
+        if (schedule == null)
+        {
+            int index = permute(position, size, key(epoch, 0));
+            return (strata[0] == null) ? index : strata[0][index];
+        }
+        int s = schedule[position];
+        return strata[s][permute(ranks[position], strata[s].length, key(epoch, s))];
+    }
+
+    /**
+     * Splits the records of the sampler into two samplers, one for training
+     * and one for validation. The split is determined by the seed, and each
+     * stratum is split in the same proportion.
+     *
+     * @param validationFraction the fraction of the records for validation.
+     * @return the training sampler followed by the validation sampler.
+     */
+    public Sampler[] split(double validationFraction)
+    {
+        assert (validationFraction >= 0.0 && validationFraction <= 1.0);
+
+        int[][] training = new int[strata.length][];
+        int[][] validation = new int[strata.length][];
+        int trainingSize = 0;
+        for (int s = 0; s < strata.length; ++s)
+        {
+            int length = (strata[s] == null) ? size : strata[s].length;
+            int validating = (int) Math.round(length * validationFraction);
+            long key = key(SPLIT_EPOCH, s);
+            validation[s] = new int[validating];
+            training[s] = new int[length - validating];
+            for (int r = 0; r < length; ++r)
+            {
+                int rank = permute(r, length, key);
+                int index = (strata[s] == null) ? rank : strata[s][rank];
+                if (r < validating)
+                {
+                    validation[s][r] = index;
+                }
+                else
+                {
+                    training[s][r - validating] = index;
+                }
+            }
+            Arrays.sort(validation[s]);
+            Arrays.sort(training[s]);
+            trainingSize += training[s].length;
+        }
+        return new Sampler[] {
+            new Sampler(withoutEmpty(training), trainingSize, mix(seed + 1)),
+            new Sampler(withoutEmpty(validation), size - trainingSize, mix(seed + 2))
+        };
+    }
+
+    /**
+     * Computes the key of the permutation of a stratum in an epoch.
+     *
+     * @param epoch the number of the epoch.
+     * @param stratum the index of the stratum.
+     * @return the key.
+     */
+    private long key(int epoch, int stratum)
+    {
+        return mix(seed ^ mix(((long) epoch << 32) | stratum));
+    }
+
+    /**
+     * Permutes an index below the specified bound: the Feistel network
+     * permutes the smallest range of an even number of bits holding the
+     * bound, and is applied again until the result falls below the bound.
+     *
+     * @param index the index to permute.
+     * @param bound the number of indices.
+     * @param key the key of the permutation.
+     * @return the permuted index.
+     */
+    private static int permute(int index, int bound, long key)
+    {
+        if (bound <= 1)
+        {
+            return index;
+        }
+        int bits = 32 - Integer.numberOfLeadingZeros(bound - 1);
+        int half = (bits + 1) / 2;
+        int mask = (1 << half) - 1;
+        long permuted = index;
+        do
+        {
+            int left = (int) (permuted >>> half);
+            int right = (int) permuted & mask;
+            for (int round = 0; round < ROUNDS; ++round)
+            {
+                int next = left ^ ((int) mix(key + round ^ ((long) right << 8)) & mask);
+                left = right;
+                right = next;
+            }
+            permuted = ((long) left << half) | right;
+        }
+        while (permuted >= bound);
+        return (int) permuted;
+    }
+
+    /**
+     * Scrambles the bits of a value, with the finalizer of MurmurHash3.
+     *
+     * @param value the value.
+     * @return the scrambled value.
+     */
+    private static long mix(long value)
+    {
+        value = (value ^ (value >>> 33)) * 0xFF51AFD7ED558CCDL;
+        value = (value ^ (value >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return value ^ (value >>> 33);
+    }
+}
@@ -0,0 +1,265 @@
+package ann.neuralnetwork;
+
+import java.util.Arrays;
+
+/**
+ * Contains the numerical kernels used by the pruned layers of a neural
+ * network.
+ * <p>
+ * The matrices are stored as compressed sparse rows: the values of the kept
+ * entries row after row, the column of each value, increasing within a row,
+ * and the index of the first value of each row followed by the number of
+ * values. The kernels only visit the kept entries, so their cost is
+ * proportional to the number of values rather than to the size of the matrix.
+ * The other arguments are laid out as for the kernels of {@link Kernels}.
+ */
+final class SparseKernels
+{
+    /**
+     * Prevents instantiation.
+     */
+    private SparseKernels()
+    {
+    }
+
+    /**
+     * Multiplies the specified rows of the sparse matrix by each of the
+     * vectors and adds the bias.
+     *
+     * @param values the values of the matrix.
+     * @param rowStarts the index of the first value of each row, followed by the number of values.
+     * @param indices the column of each value.
+     * @param rows the number of rows of the matrix.
+     * @param columns the number of columns of the matrix.
+     * @param vectors the batch of vectors of length columns.
+     * @param bias the bias of length rows.
+     * @param results the batch of results of length rows.
+     * @param batchSize the number of vectors in the batch.
+     * @param rowFrom the first row to multiply, inclusive.
+     * @param rowTo the last row to multiply, exclusive.
+     */
+    static void multiply(double[] values, int[] rowStarts, int[] indices, int rows, int columns, double[] vectors,
+            double[] bias, double[] results, int batchSize, int rowFrom, int rowTo)
+    {
+        for (int b = 0; b < batchSize; ++b)
+        {
+            int offset = b * columns;
+            for (int j = rowFrom; j < rowTo; ++j)
+            {
+                double sum = bias[j];
+                for (int p = rowStarts[j]; p < rowStarts[j + 1]; ++p)
+                {
+                    sum += values[p] * vectors[offset + indices[p]];
+                }
+                results[b * rows + j] = sum;
+            }
+        }
+    }
+
+    /**
+     * Multiplies the specified columns of the transposed sparse matrix by
+     * each of the vectors. The first value of each row in the range of
+     * columns is found by a binary search.
+     *
+     * @param values the values of the matrix.
+     * @param rowStarts the index of the first value of each row, followed by the number of values.
+     * @param indices the column of each value.
+     * @param rows the number of rows of the matrix.
+     * @param columns the number of columns of the matrix.
+     * @param vectors the batch of vectors of length rows.
+     * @param results the batch of results of length columns.
+     * @param batchSize the number of vectors in the batch.
+     * @param columnFrom the first column to multiply, inclusive.
+     * @param columnTo the last column to multiply, exclusive.
+     */
+    static void multiplyTransposed(double[] values, int[] rowStarts, int[] indices, int rows, int columns,
+            double[] vectors, double[] results, int batchSize, int columnFrom, int columnTo)
+    {
+        for (int b = 0; b < batchSize; ++b)
+        {
+            Arrays.fill(results, b * columns + columnFrom, b * columns + columnTo, 0.0);
+        }
+        for (int j = 0; j < rows; ++j)
+        {
+            int first = first(rowStarts, indices, j, columnFrom);
+            for (int b = 0; b < batchSize; ++b)
+            {
+                double scale = vectors[b * rows + j];
+                int offset = b * columns;
+                for (int p = first; p < rowStarts[j + 1] && indices[p] < columnTo; ++p)
+                {
+                    results[offset + indices[p]] += scale * values[p];
+                }
+            }
+        }
+    }
+
+    /**
+     * Subtracts the scaled sum of the outer products of the pairs of vectors
+     * from the kept entries of the specified rows of the sparse matrix.
+     *
+     * @param rate the scale of the outer products.
+     * @param values the values of the matrix.
+     * @param rowStarts the index of the first value of each row, followed by the number of values.
+     * @param indices the column of each value.
+     * @param rows the number of rows of the matrix.
+     * @param columns the number of columns of the matrix.
+     * @param left the batch of vectors of length rows.
+     * @param right the batch of vectors of length columns.
+     * @param batchSize the number of pairs of vectors in the batch.
+     * @param rowFrom the first row to update, inclusive.
+     * @param rowTo the last row to update, exclusive.
+     */
+    static void subtractOuter(double rate, double[] values, int[] rowStarts, int[] indices, int rows, int columns,
+            double[] left, double[] right, int batchSize, int rowFrom, int rowTo)
+    {
+        for (int j = rowFrom; j < rowTo; ++j)
+        {
+            for (int b = 0; b < batchSize; ++b)
+            {
+                double scale = -rate * left[b * rows + j];
+                int offset = b * columns;
+                for (int p = rowStarts[j]; p < rowStarts[j + 1]; ++p)
+                {
+                    values[p] += scale * right[offset + indices[p]];
+                }
+            }
+        }
+    }
+
+    /**
+     * Multiplies the specified rows of the sparse matrix of floats by each of
+     * the vectors of floats and adds the bias.
+     *
+     * @param values the values of the matrix.
+     * @param rowStarts the index of the first value of each row, followed by the number of values.
+     * @param indices the column of each value.
+     * @param rows the number of rows of the matrix.
+     * @param columns the number of columns of the matrix.
+     * @param vectors the batch of vectors of length columns.
+     * @param bias the bias of length rows.
+     * @param results the batch of results of length rows.
+     * @param batchSize the number of vectors in the batch.
+     * @param rowFrom the first row to multiply, inclusive.
+     * @param rowTo the last row to multiply, exclusive.
+     * @param wide whether to accumulate in doubles.
+     */
+    static void multiply(float[] values, int[] rowStarts, int[] indices, int rows, int columns, float[] vectors,
+            double[] bias, double[] results, int batchSize, int rowFrom, int rowTo, boolean wide)
+    {
+        for (int b = 0; b < batchSize; ++b)
+        {
+            int offset = b * columns;
+            for (int j = rowFrom; j < rowTo; ++j)
+            {
+                double sum;
+                if (wide)
+                {
+                    sum = 0.0;
+                    for (int p = rowStarts[j]; p < rowStarts[j + 1]; ++p)
+                    {
+                        sum += (double) values[p] * vectors[offset + indices[p]];
+                    }
+                }
+                else
+                {
+                    float singleSum = 0.0f;
+                    for (int p = rowStarts[j]; p < rowStarts[j + 1]; ++p)
+                    {
+                        singleSum += values[p] * vectors[offset + indices[p]];
+                    }
+                    sum = singleSum;
+                }
+                results[b * rows + j] = bias[j] + sum;
+            }
+        }
+    }
+
+    /**
+     * Multiplies the specified columns of the transposed sparse matrix of
+     * floats by each of the vectors.
+     *
+     * @param values the values of the matrix.
+     * @param rowStarts the index of the first value of each row, followed by the number of values.
+     * @param indices the column of each value.
+     * @param rows the number of rows of the matrix.
+     * @param columns the number of columns of the matrix.
+     * @param vectors the batch of vectors of length rows.
+     * @param results the batch of results of length columns.
+     * @param batchSize the number of vectors in the batch.
+     * @param columnFrom the first column to multiply, inclusive.
+     * @param columnTo the last column to multiply, exclusive.
+     */
+    static void multiplyTransposed(float[] values, int[] rowStarts, int[] indices, int rows, int columns,
+            double[] vectors, double[] results, int batchSize, int columnFrom, int columnTo)
+    {
+        for (int b = 0; b < batchSize; ++b)
+        {
+            Arrays.fill(results, b * columns + columnFrom, b * columns + columnTo, 0.0);
+        }
+        for (int j = 0; j < rows; ++j)
+        {
+            int first = first(rowStarts, indices, j, columnFrom);
+            for (int b = 0; b < batchSize; ++b)
+            {
+                double scale = vectors[b * rows + j];
+                int offset = b * columns;
+                for (int p = first; p < rowStarts[j + 1] && indices[p] < columnTo; ++p)
+                {
+                    results[offset + indices[p]] += scale * values[p];
+                }
+            }
+        }
+    }
+
+    /**
+     * Subtracts the scaled sum of the outer products of the pairs of vectors
+     * from the kept entries of the specified rows of the sparse matrix of
+     * floats.
+     *
+     * @param rate the scale of the outer products.
+     * @param values the values of the matrix.
+     * @param rowStarts the index of the first value of each row, followed by the number of values.
+     * @param indices the column of each value.
+     * @param rows the number of rows of the matrix.
+     * @param columns the number of columns of the matrix.
+     * @param left the batch of vectors of length rows.
+     * @param right the batch of vectors of floats of length columns.
+     * @param batchSize the number of pairs of vectors in the batch.
+     * @param rowFrom the first row to update, inclusive.
+     * @param rowTo the last row to update, exclusive.
+     */
+    static void subtractOuter(double rate, float[] values, int[] rowStarts, int[] indices, int rows, int columns,
+            double[] left, float[] right, int batchSize, int rowFrom, int rowTo)
+    {
+        for (int j = rowFrom; j < rowTo; ++j)
+        {
+            for (int b = 0; b < batchSize; ++b)
+            {
+                float scale = (float) (-rate * left[b * rows + j]);
+                int offset = b * columns;
+                for (int p = rowStarts[j]; p < rowStarts[j + 1]; ++p)
+                {
+                    values[p] += scale * right[offset + indices[p]];
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the first value of a row whose column is not before the specified
+     * column.
+     *
+     * @param rowStarts the index of the first value of each row, followed by the number of values.
+     * @param indices the column of each value.
+     * @param row the row.
+     * @param column the column.
+     * @return the index of the value, or the index of the first value of the
+     *         next row if there is none.
+     */
+    static int first(int[] rowStarts, int[] indices, int row, int column)
+    {
+        int index = Arrays.binarySearch(indices, rowStarts[row], rowStarts[row + 1], column);
+        return (index >= 0) ? index : -index - 1;
+    }
+}
@@ -0,0 +1,45 @@
+package ann.neuralnetwork;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The flight recorder event of a training step of a network, a record or a
+ * batch, committed by {@link TrainingMetrics} at the end of the step.
+ */
+@Name("ann.TrainingBatch")
+@Label("Training Batch")
+@Category({"Neural Network", "Training"})
+@Description("A training step on a record or a batch")
+@StackTrace(false)
+final class TrainingBatchEvent extends Event
+{
+    /**
+     * The number of samples of the step.
+     */
+    @Label("Samples")
+    int samples;
+    /**
+     * The loss per sample.
+     */
+    @Label("Loss")
+    double loss;
+    /**
+     * The number of bytes allocated by the thread running the step.
+     */
+    @Label("Allocated")
+    @DataAmount
+    long allocated;
+    /**
+     * The duration of the step.
+     */
+    @Label("Step Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    long elapsed;
+}
@@ -0,0 +1,391 @@
+package ann.neuralnetwork;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import jdk.jfr.EventType;
+
+/**
+ * Collects the metrics of the training of a network: the time of each phase
+ * of each layer, the throughput, the running loss and the allocations.
+ * <p>
+ * The metrics are exposed as an MXBean once {@link #register(String)}ed, and
+ * as the JFR events {@code ann.LayerPhase} and {@code ann.TrainingBatch}
+ * while a flight recording enables them.
+ * <p>
+ * The collection costs a few clock readings per layer and step, and is on by
+ * default. The system property {@code ann.metrics=false} turns it off at
+ * startup, and the JIT compiler then removes it altogether. The replicas of a
+ * network share its metrics, which are safe to update from several threads.
+ * Only training steps are measured: inference, validation and the replicas
+ * serving predictions record nothing.
+ */
+public final class TrainingMetrics implements TrainingMetricsMXBean
+{
+    /**
+     * Whether the metrics are collected.
+     */
+    static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("ann.metrics", "true"));
+
+    /**
+     * The phases of the training of a layer.
+     */
+    enum Phase
+    {
+        /**
+         * The computation of the values of the neurons.
+         */
+        FORWARD,
+        /**
+         * The computation of the gradients: from the errors for the output
+         * layer, from the gradients of the next layer for the hidden layers.
+         */
+        BACKWARD,
+        /**
+         * The update of the weights.
+         */
+        UPDATE
+    }
+
+    /**
+     * The weight of the latest step in the running loss.
+     */
+    private static final double SMOOTHING = 0.01;
+    /**
+     * The type of the phase events, whose state is checked before creating
+     * one.
+     */
+    private static final EventType PHASE_EVENT = EventType.getEventType(LayerPhaseEvent.class);
+    /**
+     * The type of the batch events, whose state is checked before creating
+     * one.
+     */
+    private static final EventType BATCH_EVENT = EventType.getEventType(TrainingBatchEvent.class);
+    /**
+     * The bean measuring the allocations of the threads, or null if the
+     * platform does not measure them.
+     */
+    private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+    /**
+     * The time of each phase of each layer, in nanoseconds.
+     */
+    private final LongAdder[][] phaseTimes;
+    /**
+     * The number of samples trained on.
+     */
+    private final LongAdder samples = new LongAdder();
+    /**
+     * The number of training steps.
+     */
+    private final LongAdder batches = new LongAdder();
+    /**
+     * The time of the training steps, in nanoseconds.
+     */
+    private final LongAdder trainingTime = new LongAdder();
+    /**
+     * The number of bytes allocated by the training.
+     */
+    private final LongAdder allocatedBytes = new LongAdder();
+    /**
+     * The exponential moving average of the loss per sample.
+     */
+    private double runningLoss = Double.NaN;
+    /**
+     * The name under which the metrics are registered, or null.
+     */
+    private ObjectName name;
+
+    /**
+     * Constructs new metrics for a network of the specified depth.
+     *
+     * @param depth the number of layers of the network.
+     */
+    TrainingMetrics(int depth)
+    {
+        phaseTimes = new LongAdder[Phase.values().length][depth];
+        for (var times : phaseTimes)
+        {
+            for (int i = 0; i < depth; ++i)
+            {
+                times[i] = new LongAdder();
+            }
+        }
+    }
+
+    /**
+     * Gives the bean measuring the allocations of the threads.
+     *
+     * @return the bean, or null if the platform does not measure allocations.
+     */
+    private static com.sun.management.ThreadMXBean threadBean()
+    {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled())
+        {
+            return bean;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of bytes allocated by the current thread so far.
+     *
+     * @return the number of bytes, or 0 if the platform does not measure
+     *         allocations.
+     */
+    static long allocatedBytes()
+    {
+        return (THREADS != null) ? THREADS.getCurrentThreadAllocatedBytes() : 0;
+    }
+
+    /**
+     * Records a phase of a layer which started at the specified time and
+     * ends now.
+     *
+     * @param phase the phase.
+     * @param layer the depth of the layer.
+     * @param batchSize the number of samples processed.
+     * @param start the start of the phase, from {@link System#nanoTime()}.
+     */
+    void addPhase(Phase phase, int layer, int batchSize, long start)
+    {
+        long duration = System.nanoTime() - start;
+        phaseTimes[phase.ordinal()][layer].add(duration);
+        if (PHASE_EVENT.isEnabled())
+        {
+            LayerPhaseEvent event = new LayerPhaseEvent();
+            event.phase = phase.name();
+            event.layer = layer;
+            event.samples = batchSize;
+            event.elapsed = duration;
+            event.commit();
+        }
+    }
+
+    /**
+     * Records the bytes allocated by a thread helping with a training step.
+     *
+     * @param bytes the number of bytes.
+     */
+    void addAllocation(long bytes)
+    {
+        allocatedBytes.add(bytes);
+    }
+
+    /**
+     * Records a training step which started at the specified time and ends
+     * now.
+     *
+     * @param batchSize the number of samples of the step.
+     * @param loss the loss summed over the samples.
+     * @param start the start of the step, from {@link System#nanoTime()}.
+     * @param allocated the number of bytes allocated by the current thread at
+     *        the start of the step, from {@link #allocatedBytes()}.
+     */
+    void addBatch(int batchSize, double loss, long start, long allocated)
+    {
+        long duration = System.nanoTime() - start;
+        long bytes = allocatedBytes() - allocated;
+        samples.add(batchSize);
+        batches.increment();
+        trainingTime.add(duration);
+        allocatedBytes.add(bytes);
+        double sampleLoss = loss / batchSize;
+        synchronized (this)
+        {
+            runningLoss = Double.isNaN(runningLoss) ? sampleLoss
+                    : (1.0 - SMOOTHING) * runningLoss + SMOOTHING * sampleLoss;
+        }
+        if (BATCH_EVENT.isEnabled())
+        {
+            TrainingBatchEvent event = new TrainingBatchEvent();
+            event.samples = batchSize;
+            event.loss = sampleLoss;
+            event.allocated = bytes;
+            event.elapsed = duration;
+            event.commit();
+        }
+    }
+
+    /**
+     * Registers the metrics in the platform MBean server, under the type
+     * {@code TrainingMetrics} of the domain {@code ann}.
+     *
+     * @param networkName the name of the network, unique among the registered
+     *        ones.
+     * @return the name of the MBean.
+     * @throws JMException if the registration fails.
+     */
+    public synchronized ObjectName register(String networkName) throws JMException
+    {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = ObjectName.getInstance("ann:type=TrainingMetrics,name="
+                + ObjectName.quote(networkName));
+        server.registerMBean(this, objectName);
+        name = objectName;
+        return objectName;
+    }
+
+    /**
+     * Unregisters the metrics from the platform MBean server, if they are
+     * registered.
+     *
+     * @throws JMException if the unregistration fails.
+     */
+    public synchronized void unregister() throws JMException
+    {
+        if (name != null)
+        {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            name = null;
+        }
+    }
+
+    /**
+     * Returns the number of samples trained on.
+     *
+     * @return the number of samples.
+     */
+    @Override
+    public long getSamples()
+    {
+        return samples.sum();
+    }
+
+    /**
+     * Returns the number of training steps, each a record or a batch.
+     *
+     * @return the number of training steps.
+     */
+    @Override
+    public long getBatches()
+    {
+        return batches.sum();
+    }
+
+    /**
+     * Returns the average training throughput.
+     *
+     * @return the number of samples per second of training.
+     */
+    @Override
+    public double getSamplesPerSecond()
+    {
+        long time = trainingTime.sum();
+        return (time > 0) ? samples.sum() * 1e9 / time : 0.0;
+    }
+
+    /**
+     * Returns the exponential moving average of the loss per sample.
+     *
+     * @return the running loss, or NaN before the first training step.
+     */
+    @Override
+    public synchronized double getRunningLoss()
+    {
+        return runningLoss;
+    }
+
+    /**
+     * Returns the number of bytes allocated by the training.
+     *
+     * @return the number of allocated bytes.
+     */
+    @Override
+    public long getAllocatedBytes()
+    {
+        return allocatedBytes.sum();
+    }
+
+    /**
+     * Returns the total time of the specified phase of each layer.
+     *
+     * @param phase the phase.
+     * @return the times, in milliseconds.
+     */
+    private double[] getMillis(Phase phase)
+    {
+        LongAdder[] times = phaseTimes[phase.ordinal()];
+        double[] millis = new double[times.length];
+        for (int i = 0; i < times.length; ++i)
+        {
+            millis[i] = times[i].sum() * 1e-6;
+        }
+        return millis;
+    }
+
+    /**
+     * Returns the total time of the forward phase of each layer, the input
+     * layer first.
+     *
+     * @return the times, in milliseconds.
+     */
+    @Override
+    public double[] getForwardMillis()
+    {
+        return getMillis(Phase.FORWARD);
+    }
+
+    /**
+     * Returns the total time of the backward phase of each layer, the input
+     * layer first.
+     *
+     * @return the times, in milliseconds.
+     */
+    @Override
+    public double[] getBackwardMillis()
+    {
+        return getMillis(Phase.BACKWARD);
+    }
+
+    /**
+     * Returns the total time of the update phase of each layer, the input
+     * layer first.
+     *
+     * @return the times, in milliseconds.
+     */
+    @Override
+    public double[] getUpdateMillis()
+    {
+        return getMillis(Phase.UPDATE);
+    }
+
+    /**
+     * Resets all the metrics.
+     */
+    @Override
+    public void reset()
+    {
+        for (var times : phaseTimes)
+        {
+            for (var time : times)
+            {
+                time.reset();
+            }
+        }
+        samples.reset();
+        batches.reset();
+        trainingTime.reset();
+        allocatedBytes.reset();
+        synchronized (this)
+        {
+            runningLoss = Double.NaN;
+        }
+    }
+
+    /**
+     * Describes the metrics in one line.
+     *
+     * @return the description of the metrics.
+     */
+    @Override
+    public String toString()
+    {
+        long count = getSamples();
+        return "%.1f samples/s, running loss %.6f, %.1f bytes/sample".formatted(getSamplesPerSecond(),
+                getRunningLoss(), (count > 0) ? (double) getAllocatedBytes() / count : 0.0);
+    }
+}
@@ -0,0 +1,72 @@
+package ann.neuralnetwork;
+
+/**
+ * The management interface of the {@link TrainingMetrics} of a network, as
+ * seen by JMX clients such as JConsole or VisualVM.
+ */
+public interface TrainingMetricsMXBean
+{
+    /**
+     * Returns the number of samples trained on.
+     *
+     * @return the number of samples.
+     */
+    long getSamples();
+
+    /**
+     * Returns the number of training steps, each a record or a batch.
+     *
+     * @return the number of training steps.
+     */
+    long getBatches();
+
+    /**
+     * Returns the average training throughput.
+     *
+     * @return the number of samples per second of training.
+     */
+    double getSamplesPerSecond();
+
+    /**
+     * Returns the exponential moving average of the loss per sample.
+     *
+     * @return the running loss, or NaN before the first training step.
+     */
+    double getRunningLoss();
+
+    /**
+     * Returns the number of bytes allocated by the training.
+     *
+     * @return the number of allocated bytes.
+     */
+    long getAllocatedBytes();
+
+    /**
+     * Returns the total time of the forward phase of each layer, the input
+     * layer first.
+     *
+     * @return the times, in milliseconds.
+     */
+    double[] getForwardMillis();
+
+    /**
+     * Returns the total time of the backward phase of each layer, the input
+     * layer first.
+     *
+     * @return the times, in milliseconds.
+     */
+    double[] getBackwardMillis();
+
+    /**
+     * Returns the total time of the update phase of each layer, the input
+     * layer first.
+     *
+     * @return the times, in milliseconds.
+     */
+    double[] getUpdateMillis();
+
+    /**
+     * Resets all the metrics.
+     */
+    void reset();
+}
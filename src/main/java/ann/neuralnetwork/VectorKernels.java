@@ -0,0 +1,417 @@
+package ann.neuralnetwork;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Contains the vectorized versions of the basic kernels, built on the
+ * incubating Vector API.
+ * <p>
+ * The class is only loaded when {@link Kernels} finds the
+ * {@code jdk.incubator.vector} module at startup, so the rest of the package
+ * works without it. Each vector is summed into its own accumulator whose lanes
+ * are reduced at the end, followed by a scalar loop over the tail, so that
+ * {@link #dot} and {@link #dot4} give the same sum for the same pair of vectors.
+ */
+final class VectorKernels
+{
+    /**
+     * The preferred species of vectors of doubles on this platform.
+     */
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    /**
+     * The preferred species of vectors of floats on this platform.
+     */
+    private static final VectorSpecies<Float> FLOAT_SPECIES = FloatVector.SPECIES_PREFERRED;
+    /**
+     * The species of vectors of floats with as many lanes as {@link #SPECIES},
+     * used to widen floats to doubles.
+     */
+    private static final VectorSpecies<Float> HALF_FLOAT_SPECIES = VectorSpecies.of(float.class,
+            VectorShape.forBitSize(SPECIES.vectorBitSize() / 2));
+    /**
+     * The species of vectors of bytes widened to {@link #INT_SPECIES}, a
+     * quarter of the preferred size but at least 64 bits.
+     */
+    private static final VectorSpecies<Byte> QUARTER_BYTE_SPECIES = VectorSpecies.of(byte.class,
+            VectorShape.forBitSize(Math.max(IntVector.SPECIES_PREFERRED.vectorBitSize() / 4, Long.SIZE)));
+    /**
+     * The species of vectors of ints with as many lanes as
+     * {@link #QUARTER_BYTE_SPECIES}, used to accumulate products of bytes.
+     */
+    private static final VectorSpecies<Integer> INT_SPECIES = VectorSpecies.of(int.class,
+            VectorShape.forBitSize(QUARTER_BYTE_SPECIES.vectorBitSize() * 4));
+
+    /**
+     * Prevents instantiation.
+     */
+    private VectorKernels()
+    {
+    }
+
+    /**
+     * Checks whether the platform has vectors of more than one double.
+     *
+     * @return true if the vectorized kernels are worth using.
+     */
+    static boolean isSupported()
+    {
+        return SPECIES.length() > 1;
+    }
+
+    /**
+     * Computes the dot product of two vectors.
+     *
+     * @param a the first vector.
+     * @param aOffset the offset of the first vector.
+     * @param b the second vector.
+     * @param bOffset the offset of the second vector.
+     * @param length the length of the vectors.
+     * @return the dot product.
+     */
+    static double dot(double[] a, int aOffset, double[] b, int bOffset, int length)
+    {
+        int bound = SPECIES.loopBound(length);
+        DoubleVector accumulator = DoubleVector.zero(SPECIES);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length())
+        {
+            DoubleVector x = DoubleVector.fromArray(SPECIES, a, aOffset + i);
+            DoubleVector y = DoubleVector.fromArray(SPECIES, b, bOffset + i);
+            accumulator = x.fma(y, accumulator);
+        }
+        double sum = accumulator.reduceLanes(VectorOperators.ADD);
+        for (; i < length; ++i)
+        {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    /**
+     * Computes the dot products of one vector with four vectors and adds them
+     * to the results.
+     *
+     * @param a the shared vector.
+     * @param aOffset the offset of the shared vector.
+     * @param x the array holding the four vectors.
+     * @param xOffset the offset of the first of the four vectors.
+     * @param xStride the distance between the four vectors.
+     * @param results the array of results.
+     * @param rOffset the index of the result of the first vector.
+     * @param rStride the distance between the results.
+     * @param length the length of the vectors.
+     */
+    static void dot4(double[] a, int aOffset, double[] x, int xOffset, int xStride, double[] results, int rOffset,
+            int rStride, int length)
+    {
+        int x0 = xOffset;
+        int x1 = x0 + xStride;
+        int x2 = x1 + xStride;
+        int x3 = x2 + xStride;
+        int bound = SPECIES.loopBound(length);
+        DoubleVector s0 = DoubleVector.zero(SPECIES);
+        DoubleVector s1 = DoubleVector.zero(SPECIES);
+        DoubleVector s2 = DoubleVector.zero(SPECIES);
+        DoubleVector s3 = DoubleVector.zero(SPECIES);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length())
+        {
+            DoubleVector w = DoubleVector.fromArray(SPECIES, a, aOffset + i);
+            s0 = w.fma(DoubleVector.fromArray(SPECIES, x, x0 + i), s0);
+            s1 = w.fma(DoubleVector.fromArray(SPECIES, x, x1 + i), s1);
+            s2 = w.fma(DoubleVector.fromArray(SPECIES, x, x2 + i), s2);
+            s3 = w.fma(DoubleVector.fromArray(SPECIES, x, x3 + i), s3);
+        }
+        double sum0 = s0.reduceLanes(VectorOperators.ADD);
+        double sum1 = s1.reduceLanes(VectorOperators.ADD);
+        double sum2 = s2.reduceLanes(VectorOperators.ADD);
+        double sum3 = s3.reduceLanes(VectorOperators.ADD);
+        for (; i < length; ++i)
+        {
+            double w = a[aOffset + i];
+            sum0 += w * x[x0 + i];
+            sum1 += w * x[x1 + i];
+            sum2 += w * x[x2 + i];
+            sum3 += w * x[x3 + i];
+        }
+        results[rOffset] += sum0;
+        results[rOffset + rStride] += sum1;
+        results[rOffset + 2 * rStride] += sum2;
+        results[rOffset + 3 * rStride] += sum3;
+    }
+
+    /**
+     * Adds the scaled vector x to the vector y.
+     *
+     * @param alpha the scale of x.
+     * @param x the vector to add.
+     * @param xOffset the offset of x.
+     * @param y the vector to add to.
+     * @param yOffset the offset of y.
+     * @param length the length of the vectors.
+     */
+    static void axpy(double alpha, double[] x, int xOffset, double[] y, int yOffset, int length)
+    {
+        int bound = SPECIES.loopBound(length);
+        DoubleVector scale = DoubleVector.broadcast(SPECIES, alpha);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length())
+        {
+            DoubleVector u = DoubleVector.fromArray(SPECIES, x, xOffset + i);
+            DoubleVector v = DoubleVector.fromArray(SPECIES, y, yOffset + i);
+            u.fma(scale, v).intoArray(y, yOffset + i);
+        }
+        for (; i < length; ++i)
+        {
+            y[yOffset + i] += alpha * x[xOffset + i];
+        }
+    }
+
+    /**
+     * Computes the dot product of two vectors of floats, accumulated in floats.
+     *
+     * @param a the first vector.
+     * @param aOffset the offset of the first vector.
+     * @param b the second vector.
+     * @param bOffset the offset of the second vector.
+     * @param length the length of the vectors.
+     * @return the dot product.
+     */
+    static float dot(float[] a, int aOffset, float[] b, int bOffset, int length)
+    {
+        int bound = FLOAT_SPECIES.loopBound(length);
+        FloatVector accumulator = FloatVector.zero(FLOAT_SPECIES);
+        int i = 0;
+        for (; i < bound; i += FLOAT_SPECIES.length())
+        {
+            FloatVector x = FloatVector.fromArray(FLOAT_SPECIES, a, aOffset + i);
+            FloatVector y = FloatVector.fromArray(FLOAT_SPECIES, b, bOffset + i);
+            accumulator = x.fma(y, accumulator);
+        }
+        float sum = accumulator.reduceLanes(VectorOperators.ADD);
+        for (; i < length; ++i)
+        {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    /**
+     * Computes the dot product of two vectors of floats, accumulated in doubles.
+     *
+     * @param a the first vector.
+     * @param aOffset the offset of the first vector.
+     * @param b the second vector.
+     * @param bOffset the offset of the second vector.
+     * @param length the length of the vectors.
+     * @return the dot product.
+     */
+    static double wideDot(float[] a, int aOffset, float[] b, int bOffset, int length)
+    {
+        int bound = SPECIES.loopBound(length);
+        DoubleVector accumulator = DoubleVector.zero(SPECIES);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length())
+        {
+            DoubleVector x = widen(a, aOffset + i);
+            DoubleVector y = widen(b, bOffset + i);
+            accumulator = x.fma(y, accumulator);
+        }
+        double sum = accumulator.reduceLanes(VectorOperators.ADD);
+        for (; i < length; ++i)
+        {
+            sum += (double) a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    /**
+     * Loads floats from an array and widens them to a vector of doubles.
+     *
+     * @param array the array.
+     * @param offset the index of the first float.
+     * @return the vector of doubles.
+     */
+    private static DoubleVector widen(float[] array, int offset)
+    {
+        return (DoubleVector) FloatVector.fromArray(HALF_FLOAT_SPECIES, array, offset)
+                .convertShape(VectorOperators.F2D, SPECIES, 0);
+    }
+
+    /**
+     * Computes the dot products of one vector of floats with four vectors of
+     * floats and adds them to the results.
+     *
+     * @param a the shared vector.
+     * @param aOffset the offset of the shared vector.
+     * @param x the array holding the four vectors.
+     * @param xOffset the offset of the first of the four vectors.
+     * @param xStride the distance between the four vectors.
+     * @param results the array of results.
+     * @param rOffset the index of the result of the first vector.
+     * @param rStride the distance between the results.
+     * @param length the length of the vectors.
+     * @param wide whether to accumulate in doubles.
+     */
+    static void dot4(float[] a, int aOffset, float[] x, int xOffset, int xStride, double[] results, int rOffset,
+            int rStride, int length, boolean wide)
+    {
+        if (wide)
+        {
+            wideDot4(a, aOffset, x, xOffset, xStride, results, rOffset, rStride, length);
+            return;
+        }
+        int x0 = xOffset;
+        int x1 = x0 + xStride;
+        int x2 = x1 + xStride;
+        int x3 = x2 + xStride;
+        int bound = FLOAT_SPECIES.loopBound(length);
+        FloatVector s0 = FloatVector.zero(FLOAT_SPECIES);
+        FloatVector s1 = FloatVector.zero(FLOAT_SPECIES);
+        FloatVector s2 = FloatVector.zero(FLOAT_SPECIES);
+        FloatVector s3 = FloatVector.zero(FLOAT_SPECIES);
+        int i = 0;
+        for (; i < bound; i += FLOAT_SPECIES.length())
+        {
+            FloatVector w = FloatVector.fromArray(FLOAT_SPECIES, a, aOffset + i);
+            s0 = w.fma(FloatVector.fromArray(FLOAT_SPECIES, x, x0 + i), s0);
+            s1 = w.fma(FloatVector.fromArray(FLOAT_SPECIES, x, x1 + i), s1);
+            s2 = w.fma(FloatVector.fromArray(FLOAT_SPECIES, x, x2 + i), s2);
+            s3 = w.fma(FloatVector.fromArray(FLOAT_SPECIES, x, x3 + i), s3);
+        }
+        float sum0 = s0.reduceLanes(VectorOperators.ADD);
+        float sum1 = s1.reduceLanes(VectorOperators.ADD);
+        float sum2 = s2.reduceLanes(VectorOperators.ADD);
+        float sum3 = s3.reduceLanes(VectorOperators.ADD);
+        for (; i < length; ++i)
+        {
+            float w = a[aOffset + i];
+            sum0 += w * x[x0 + i];
+            sum1 += w * x[x1 + i];
+            sum2 += w * x[x2 + i];
+            sum3 += w * x[x3 + i];
+        }
+        results[rOffset] += sum0;
+        results[rOffset + rStride] += sum1;
+        results[rOffset + 2 * rStride] += sum2;
+        results[rOffset + 3 * rStride] += sum3;
+    }
+
+    /**
+     * Computes the dot products of one vector of floats with four vectors of
+     * floats, accumulated in doubles, and adds them to the results.
+     *
+     * @param a the shared vector.
+     * @param aOffset the offset of the shared vector.
+     * @param x the array holding the four vectors.
+     * @param xOffset the offset of the first of the four vectors.
+     * @param xStride the distance between the four vectors.
+     * @param results the array of results.
+     * @param rOffset the index of the result of the first vector.
+     * @param rStride the distance between the results.
+     * @param length the length of the vectors.
+     */
+    private static void wideDot4(float[] a, int aOffset, float[] x, int xOffset, int xStride, double[] results,
+            int rOffset, int rStride, int length)
+    {
+        int x0 = xOffset;
+        int x1 = x0 + xStride;
+        int x2 = x1 + xStride;
+        int x3 = x2 + xStride;
+        int bound = SPECIES.loopBound(length);
+        DoubleVector s0 = DoubleVector.zero(SPECIES);
+        DoubleVector s1 = DoubleVector.zero(SPECIES);
+        DoubleVector s2 = DoubleVector.zero(SPECIES);
+        DoubleVector s3 = DoubleVector.zero(SPECIES);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length())
+        {
+            DoubleVector w = widen(a, aOffset + i);
+            s0 = w.fma(widen(x, x0 + i), s0);
+            s1 = w.fma(widen(x, x1 + i), s1);
+            s2 = w.fma(widen(x, x2 + i), s2);
+            s3 = w.fma(widen(x, x3 + i), s3);
+        }
+        double sum0 = s0.reduceLanes(VectorOperators.ADD);
+        double sum1 = s1.reduceLanes(VectorOperators.ADD);
+        double sum2 = s2.reduceLanes(VectorOperators.ADD);
+        double sum3 = s3.reduceLanes(VectorOperators.ADD);
+        for (; i < length; ++i)
+        {
+            double w = a[aOffset + i];
+            sum0 += w * x[x0 + i];
+            sum1 += w * x[x1 + i];
+            sum2 += w * x[x2 + i];
+            sum3 += w * x[x3 + i];
+        }
+        results[rOffset] += sum0;
+        results[rOffset + rStride] += sum1;
+        results[rOffset + 2 * rStride] += sum2;
+        results[rOffset + 3 * rStride] += sum3;
+    }
+
+    /**
+     * Adds the scaled vector of floats x to the vector of floats y.
+     *
+     * @param alpha the scale of x.
+     * @param x the vector to add.
+     * @param xOffset the offset of x.
+     * @param y the vector to add to.
+     * @param yOffset the offset of y.
+     * @param length the length of the vectors.
+     */
+    static void axpy(float alpha, float[] x, int xOffset, float[] y, int yOffset, int length)
+    {
+        int bound = FLOAT_SPECIES.loopBound(length);
+        FloatVector scale = FloatVector.broadcast(FLOAT_SPECIES, alpha);
+        int i = 0;
+        for (; i < bound; i += FLOAT_SPECIES.length())
+        {
+            FloatVector u = FloatVector.fromArray(FLOAT_SPECIES, x, xOffset + i);
+            FloatVector v = FloatVector.fromArray(FLOAT_SPECIES, y, yOffset + i);
+            u.fma(scale, v).intoArray(y, yOffset + i);
+        }
+        for (; i < length; ++i)
+        {
+            y[yOffset + i] += alpha * x[xOffset + i];
+        }
+    }
+
+    /**
+     * Computes the dot product of two vectors of bytes, accumulated in ints.
+     * The vectors must be short enough for the sum not to overflow.
+     *
+     * @param a the first vector.
+     * @param aOffset the offset of the first vector.
+     * @param b the second vector.
+     * @param bOffset the offset of the second vector.
+     * @param length the length of the vectors.
+     * @return the dot product.
+     */
+    static int dot(byte[] a, int aOffset, byte[] b, int bOffset, int length)
+    {
+        int bound = QUARTER_BYTE_SPECIES.loopBound(length);
+        IntVector accumulator = IntVector.zero(INT_SPECIES);
+        int i = 0;
+        for (; i < bound; i += QUARTER_BYTE_SPECIES.length())
+        {
+            IntVector x = (IntVector) ByteVector.fromArray(QUARTER_BYTE_SPECIES, a, aOffset + i)
+                    .convertShape(VectorOperators.B2I, INT_SPECIES, 0);
+            IntVector y = (IntVector) ByteVector.fromArray(QUARTER_BYTE_SPECIES, b, bOffset + i)
+                    .convertShape(VectorOperators.B2I, INT_SPECIES, 0);
+            accumulator = accumulator.add(x.mul(y));
+        }
+        int sum = accumulator.reduceLanes(VectorOperators.ADD);
+        for (; i < length; ++i)
+        {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+}
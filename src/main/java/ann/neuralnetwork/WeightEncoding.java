@@ -0,0 +1,28 @@
+package ann.neuralnetwork;
+
+/**
+ * Represents the encoding of the connection weights in a binary model file.
+ * <p>
+ * The reduced encodings shrink the exported models and make loading them
+ * faster, at the cost of the accuracy of the weights. The weights are
+ * decoded into the precision of the network when the model is read, and the
+ * biases are always kept as doubles.
+ */
+public enum WeightEncoding
+{
+    /**
+     * The weights are written in the precision of the network: as doubles,
+     * or as floats in single and mixed precision. The encoding is lossless.
+     */
+    NATIVE,
+    /**
+     * The weights are written as IEEE 754 half-precision floats, with about
+     * three significant digits.
+     */
+    FLOAT16,
+    /**
+     * The weights of each neuron are written as bytes scaled by a float, so
+     * that the largest weight of the neuron is 127 in magnitude.
+     */
+    INT8
+}